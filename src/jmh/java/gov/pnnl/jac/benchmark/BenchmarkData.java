@@ -0,0 +1,73 @@
+package gov.pnnl.jac.benchmark;
+
+import gov.pnnl.jac.geom.CoordinateGenerator;
+import gov.pnnl.jac.geom.CoordinateList;
+import gov.pnnl.jac.geom.FileMappedCoordinateList;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * <p>Reproducible synthetic data sets for the benchmarks.  Coordinates are
+ * gaussian clusters from <tt>CoordinateGenerator</tt> with a fixed seed, so
+ * every run and every version being compared sees the same data.</p>
+ */
+final class BenchmarkData {
+
+    /**
+     * Seed for all the generated data.
+     */
+    static final long SEED = 1234L;
+
+    /**
+     * Storage value for coordinates held in a <tt>SimpleCoordinateList</tt>.
+     */
+    static final String RAM = "ram";
+
+    /**
+     * Storage value for coordinates held in a <tt>FileMappedCoordinateList</tt>.
+     */
+    static final String FILE = "file";
+
+    // Standard deviation of the points about their cluster centers, which
+    // are in the unit hypercube.
+    private static final double STANDARD_DEV = 0.05;
+
+    private BenchmarkData() {}
+
+    /**
+     * Generates coordinates in gaussian clusters.
+     * @param size the number of coordinates.
+     * @param dimensions the number of dimensions.
+     * @param clusters the number of clusters in the distribution.
+     * @param storage <tt>RAM</tt> or <tt>FILE</tt>.
+     * @return
+     * @throws IOException if the file for file storage cannot be created.
+     */
+    static CoordinateList coordinates(int size, int dimensions, int clusters,
+            String storage) throws IOException {
+        if (RAM.equals(storage)) {
+            return CoordinateGenerator.generateGaussianCoordinates(size, dimensions,
+                clusters, STANDARD_DEV, SEED);
+        } else if (FILE.equals(storage)) {
+            File file = File.createTempFile("jacbench", ".coords");
+            file.deleteOnExit();
+            return CoordinateGenerator.generateGaussianCoordinates(size, dimensions,
+                clusters, STANDARD_DEV, SEED, file);
+        }
+        throw new IllegalArgumentException("unknown storage: " + storage);
+    }
+
+    /**
+     * Releases the resources of coordinates made by <tt>coordinates()</tt>.
+     * @param cs
+     * @throws IOException
+     */
+    static void release(CoordinateList cs) throws IOException {
+        if (cs instanceof FileMappedCoordinateList) {
+            FileMappedCoordinateList fcs = (FileMappedCoordinateList) cs;
+            fcs.closeFile();
+            fcs.getBackingFile().delete();
+        }
+    }
+}
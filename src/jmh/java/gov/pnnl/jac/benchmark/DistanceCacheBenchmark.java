@@ -0,0 +1,95 @@
+package gov.pnnl.jac.benchmark;
+
+import gov.pnnl.jac.geom.distance.DistanceCache;
+import gov.pnnl.jac.geom.distance.FileDistanceCache;
+import gov.pnnl.jac.geom.distance.RAMDistanceCache;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <p>Times filling a <tt>DistanceCache</tt> and reading distances from it in
+ * random order, for the RAM and file caches over the number of indices.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DistanceCacheBenchmark {
+
+    // Distances read per invocation of read().
+    static final int READS = 4096;
+
+    @Param({"1000", "4000"})
+    public int indices;
+
+    @Param({BenchmarkData.RAM, BenchmarkData.FILE})
+    public String cache;
+
+    private DistanceCache mCache;
+    private File mFile;
+    private int[] mIndices1, mIndices2;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (BenchmarkData.FILE.equals(cache)) {
+            mFile = File.createTempFile("jacbench", ".dcache");
+            mFile.deleteOnExit();
+            mCache = new FileDistanceCache(indices, mFile);
+        } else {
+            mCache = new RAMDistanceCache(indices);
+        }
+        fill();
+        Random random = new Random(BenchmarkData.SEED);
+        mIndices1 = new int[READS];
+        mIndices2 = new int[READS];
+        for (int i=0; i<READS; i++) {
+            mIndices1[i] = random.nextInt(indices);
+            do {
+                mIndices2[i] = random.nextInt(indices);
+            } while (mIndices2[i] == mIndices1[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (mCache instanceof FileDistanceCache) {
+            ((FileDistanceCache) mCache).closeFile();
+        }
+        if (mFile != null) {
+            mFile.delete();
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void fill() throws Exception {
+        // A row at a time, as the hierarchical clustering does.
+        for (int i=0; i<indices-1; i++) {
+            int n = indices - 1 - i;
+            int[] rowIndices = new int[n];
+            int[] colIndices = new int[n];
+            double[] distances = new double[n];
+            for (int j=0; j<n; j++) {
+                rowIndices[j] = i;
+                colIndices[j] = i + 1 + j;
+                distances[j] = i + j;
+            }
+            mCache.setDistances(rowIndices, colIndices, distances);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double read() throws Exception {
+        double sum = 0.0;
+        for (int i=0; i<READS; i++) {
+            sum += mCache.getDistance(mIndices1[i], mIndices2[i]);
+        }
+        return sum;
+    }
+}
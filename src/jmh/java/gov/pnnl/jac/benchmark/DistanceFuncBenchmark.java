@@ -0,0 +1,59 @@
+package gov.pnnl.jac.benchmark;
+
+import gov.pnnl.jac.geom.CoordinateList;
+import gov.pnnl.jac.geom.distance.BasicDistanceMethod;
+import gov.pnnl.jac.geom.distance.DistanceFunc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <p>Times <tt>distanceBetween()</tt> for each of the basic distance methods
+ * over the dimensionality.  Each invocation computes the distances from one
+ * coordinate to all the others in a small block, so the result is the cost
+ * per block of <tt>BLOCK_SIZE</tt> distances.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DistanceFuncBenchmark {
+
+    static final int BLOCK_SIZE = 1024;
+
+    @Param({"EUCLIDEAN_NO_NAN", "EUCLIDEAN", "MANHATTAN_NO_NAN", "COSINE",
+        "TANIMOTO_NO_NAN", "BRAYCURTIS_NO_NAN", "CANBERRA_NO_NAN", "CHEBYSHEV_NO_NAN"})
+    public BasicDistanceMethod method;
+
+    @Param({"2", "16", "64", "256"})
+    public int dimensions;
+
+    private DistanceFunc mDistanceFunc;
+    private double[][] mBlock;
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        mDistanceFunc = method.newFunction();
+        CoordinateList cs = BenchmarkData.coordinates(BLOCK_SIZE, dimensions, 10,
+            BenchmarkData.RAM);
+        mBlock = new double[BLOCK_SIZE][];
+        for (int i=0; i<BLOCK_SIZE; i++) {
+            mBlock[i] = cs.getCoordinates(i, null);
+        }
+    }
+
+    @Benchmark
+    public double distances() {
+        double[] from = mBlock[mNext];
+        mNext = (mNext + 1) % BLOCK_SIZE;
+        double sum = 0.0;
+        for (int i=0; i<BLOCK_SIZE; i++) {
+            sum += mDistanceFunc.distanceBetween(from, mBlock[i]);
+        }
+        return sum;
+    }
+}
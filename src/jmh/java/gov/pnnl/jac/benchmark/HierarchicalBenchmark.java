@@ -0,0 +1,60 @@
+package gov.pnnl.jac.benchmark;
+
+import gov.pnnl.jac.cluster.ClusterList;
+import gov.pnnl.jac.cluster.HierarchicalClusterTaskParams;
+import gov.pnnl.jac.cluster.StandardHierarchicalClusterTask;
+import gov.pnnl.jac.geom.CoordinateList;
+import gov.pnnl.jac.geom.distance.BasicDistanceMethod;
+import gov.pnnl.jac.task.TaskScheduler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <p>Times a complete <tt>StandardHierarchicalClusterTask</tt> over the size,
+ * dimensionality, number of worker threads, and the kind of distance cache.
+ * The file cache is forced by setting the memory threshold to 0.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HierarchicalBenchmark {
+
+    @Param({"1000", "4000"})
+    public int size;
+
+    @Param({"2", "16", "64"})
+    public int dimensions;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({BenchmarkData.RAM, BenchmarkData.FILE})
+    public String cache;
+
+    private CoordinateList mCoords;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        mCoords = BenchmarkData.coordinates(size, dimensions, 20, BenchmarkData.RAM);
+        TaskScheduler.setComputeParallelism(Math.max(threads,
+            Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Benchmark
+    public ClusterList hierarchical() throws Exception {
+        HierarchicalClusterTaskParams params = new HierarchicalClusterTaskParams(20, false,
+            HierarchicalClusterTaskParams.Linkage.COMPLETE,
+            BasicDistanceMethod.EUCLIDEAN_NO_NAN.newFunction(), threads);
+        StandardHierarchicalClusterTask task = new StandardHierarchicalClusterTask(mCoords, params);
+        if (BenchmarkData.FILE.equals(cache)) {
+            task.setDistanceCacheMemoryThreshold(0L);
+        }
+        task.run();
+        return task.get();
+    }
+}
@@ -0,0 +1,75 @@
+package gov.pnnl.jac.benchmark;
+
+import gov.pnnl.jac.collections.IntIntHashMap;
+import gov.pnnl.jac.collections.IntIntLinearHashMap;
+import gov.pnnl.jac.collections.IntIntMap;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <p>Times filling an <tt>IntIntHashMap</tt> or an <tt>IntIntLinearHashMap</tt>
+ * and looking up keys that are and are not present, over the number of entries.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IntIntHashMapBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"prime", "linear"})
+    public String impl;
+
+    private int[] mKeys;
+    private int[] mMissingKeys;
+    private IntIntMap mMap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        mKeys = new int[size];
+        mMissingKeys = new int[size];
+        // Even keys are present, odd keys are not.
+        for (int i=0; i<size; i++) {
+            mKeys[i] = random.nextInt() & ~1;
+            mMissingKeys[i] = random.nextInt() | 1;
+        }
+        mMap = put();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public IntIntMap put() {
+        IntIntMap map = "linear".equals(impl) ? new IntIntLinearHashMap() : new IntIntHashMap();
+        for (int i=0; i<size; i++) {
+            map.put(mKeys[i], i);
+        }
+        return map;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long getPresent() {
+        long sum = 0L;
+        for (int i=0; i<size; i++) {
+            sum += mMap.get(mKeys[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long getMissing() {
+        long sum = 0L;
+        for (int i=0; i<size; i++) {
+            sum += mMap.get(mMissingKeys[i]);
+        }
+        return sum;
+    }
+}
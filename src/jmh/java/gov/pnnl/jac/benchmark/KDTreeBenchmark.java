@@ -0,0 +1,72 @@
+package gov.pnnl.jac.benchmark;
+
+import gov.pnnl.jac.geom.CoordinateList;
+import gov.pnnl.jac.geom.KDTree;
+import gov.pnnl.jac.geom.distance.BasicDistanceMethod;
+import gov.pnnl.jac.geom.distance.DistanceFunc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <p>Times building a <tt>KDTree</tt> and finding the nearest neighbors of its
+ * coordinates with <tt>nearest()</tt>, over the size, dimensionality, number
+ * of neighbors, and in-RAM versus file-mapped coordinates.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KDTreeBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"2", "8", "32"})
+    public int dimensions;
+
+    @Param({"1", "10"})
+    public int neighbors;
+
+    @Param({BenchmarkData.RAM, BenchmarkData.FILE})
+    public String storage;
+
+    private CoordinateList mCoords;
+    private KDTree mTree;
+    private DistanceFunc mDistanceFunc;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        mCoords = BenchmarkData.coordinates(size, dimensions, 20, storage);
+        mTree = KDTree.forCoordinateList(mCoords);
+        mDistanceFunc = BasicDistanceMethod.EUCLIDEAN_NO_NAN.newFunction();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        mTree = null;
+        BenchmarkData.release(mCoords);
+        mCoords = null;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public KDTree build() {
+        return KDTree.forCoordinateList(mCoords);
+    }
+
+    @State(Scope.Thread)
+    public static class Query {
+        int mNext;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int[] nearest(Query query) {
+        int ndx = query.mNext;
+        query.mNext = (ndx + 7919) % size;
+        return mTree.nearest(ndx, neighbors, mDistanceFunc);
+    }
+}
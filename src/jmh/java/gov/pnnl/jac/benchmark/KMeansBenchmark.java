@@ -0,0 +1,72 @@
+package gov.pnnl.jac.benchmark;
+
+import gov.pnnl.jac.cluster.ClusterList;
+import gov.pnnl.jac.cluster.KMeansClusterTask;
+import gov.pnnl.jac.cluster.KMeansClusterTaskParams;
+import gov.pnnl.jac.cluster.KMeansPlusPlusSeeder;
+import gov.pnnl.jac.geom.CoordinateList;
+import gov.pnnl.jac.geom.distance.BasicDistanceMethod;
+import gov.pnnl.jac.task.TaskScheduler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <p>Times a complete <tt>KMeansClusterTask</tt>, from seeding to the final
+ * clusters, over the size, dimensionality, and number of clusters, the number
+ * of worker threads, and in-RAM versus file-mapped coordinates.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KMeansBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"2", "16", "64"})
+    public int dimensions;
+
+    @Param({"10", "100"})
+    public int k;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({BenchmarkData.RAM, BenchmarkData.FILE})
+    public String storage;
+
+    private CoordinateList mCoords;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        mCoords = BenchmarkData.coordinates(size, dimensions, k, storage);
+        // The workers run on the shared compute pool, which must be
+        // large enough for them.
+        TaskScheduler.setComputeParallelism(Math.max(threads,
+            Runtime.getRuntime().availableProcessors()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkData.release(mCoords);
+        mCoords = null;
+    }
+
+    @Benchmark
+    public ClusterList kmeans() throws Exception {
+        KMeansClusterTaskParams params = new KMeansClusterTaskParams.Builder(k)
+            .numWorkerThreads(threads)
+            .distanceFunc(BasicDistanceMethod.EUCLIDEAN_NO_NAN.newFunction())
+            .seeder(new KMeansPlusPlusSeeder(BenchmarkData.SEED,
+                BasicDistanceMethod.EUCLIDEAN_NO_NAN.newFunction()))
+            .build();
+        KMeansClusterTask task = new KMeansClusterTask(mCoords, params);
+        task.run();
+        return task.get();
+    }
+}
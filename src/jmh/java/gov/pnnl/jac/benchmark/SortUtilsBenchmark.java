@@ -0,0 +1,76 @@
+package gov.pnnl.jac.benchmark;
+
+import gov.pnnl.jac.task.TaskScheduler;
+import gov.pnnl.jac.util.SortUtils;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <p>Times the <tt>SortUtils</tt> sorts which carry a parallel array along,
+ * over the number of values and compute pool threads; with more than one
+ * thread, large arrays are sorted concurrently.  The arrays are refilled with the
+ * same random values before each invocation.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SortUtilsBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private double[] mDoubles, mDoublesToSort;
+    private int[] mInts, mIntsToSort;
+    private int[] mIndices;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TaskScheduler.setComputeParallelism(threads);
+        Random random = new Random(BenchmarkData.SEED);
+        mDoubles = new double[size];
+        mInts = new int[size];
+        for (int i=0; i<size; i++) {
+            mDoubles[i] = random.nextDouble();
+            mInts[i] = random.nextInt();
+        }
+        mDoublesToSort = new double[size];
+        mIntsToSort = new int[size];
+        mIndices = new int[size];
+    }
+
+    @Setup(Level.Invocation)
+    public void refill() {
+        System.arraycopy(mDoubles, 0, mDoublesToSort, 0, size);
+        System.arraycopy(mInts, 0, mIntsToSort, 0, size);
+        for (int i=0; i<size; i++) {
+            mIndices[i] = i;
+        }
+    }
+
+    @Benchmark
+    public int[] doubleIntSort() {
+        SortUtils.parallelSort(mDoublesToSort, mIndices);
+        return mIndices;
+    }
+
+    @Benchmark
+    public int[] intIntSort() {
+        SortUtils.parallelSort(mIntsToSort, mIndices);
+        return mIndices;
+    }
+
+    @Benchmark
+    public int[] intIntQuickSort() {
+        SortUtils.parallelQuickSort(1, true, mIntsToSort, mIndices);
+        return mIndices;
+    }
+}
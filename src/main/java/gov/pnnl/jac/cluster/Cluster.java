@@ -20,6 +20,8 @@ package gov.pnnl.jac.cluster;
 
 import gov.pnnl.jac.collections.ArrayIntIterator;
 import gov.pnnl.jac.collections.IntIterator;
+import gov.pnnl.jac.collections.IntSet;
+import gov.pnnl.jac.collections.RoaringIntSet;
 import gov.pnnl.jac.geom.CoordinateList;
 
 import java.util.Arrays;
@@ -30,6 +32,11 @@ import java.util.Arrays;
  * the coordinates, but not the coordinate values themselves.
  * A <tt>Cluster</tt> object maintains a cluster center
  * (centroid) with the same dimensionality as its coordinates.</p>
+ * <p>The membership is held either as a sorted array or, for clusters
+ * constructed from an <tt>IntSet</tt>, as a compressed
+ * <tt>RoaringIntSet</tt>, which takes far less memory for large clusters.
+ * <tt>getMember(n)</tt> is slower for compressed clusters, so loop over
+ * <tt>getMembership()</tt> instead.</p>
  * <p><tt>Cluster</tt> objects are immutable.</p>
  *
  * @author R. Scarberry
@@ -38,7 +45,10 @@ import java.util.Arrays;
 public class Cluster {
 
     // Indexes of the coordinates, always kept in sorted order.
+    // Null if the membership is compressed.
     private int[] mIndexes;
+    // The compressed membership, or null.
+    private RoaringIntSet mMembers;
     // The cluster center.
     private double[] mCenter;
 
@@ -82,12 +92,31 @@ public class Cluster {
         cs.computeAverage(indexes, mCenter);
     }
 
+    /**
+     * Constructor which takes the indexes of the coordinates as a set,
+     * and the pre-computed center.  The membership is stored compressed.
+     * 
+     * @param members the indexes of the 0-indexed
+     *   members of a <code>gov.pnnl.jac.geom.CoordinateList</code>.
+     * @param center
+     */
+    public Cluster(IntSet members, double[] center) {
+        mMembers = new RoaringIntSet(members);
+        mMembers.trim();
+        int len = center.length;
+        mCenter = new double[len];
+        System.arraycopy(center, 0, mCenter, 0, len);
+    }
+
     /**
      * Returns true if this cluster contains the specified index.
      * @param index
      * @return
      */
     public boolean contains(int index) {
+        if (mMembers != null) {
+            return mMembers.contains(index);
+        }
         // Uses a binary search -- mIDs must be sorted for this to work.
         int n = mIndexes.length;
         if (n > 0) {
@@ -114,6 +143,9 @@ public class Cluster {
      * @return - an array containing the membership, sorted.
      */
     public int[] getMembership() {
+        if (mMembers != null) {
+            return mMembers.toArray();
+        }
      	int n = mIndexes.length;
         int[] ids = new int[n];
         System.arraycopy(mIndexes, 0, ids, 0, n);
@@ -126,7 +158,39 @@ public class Cluster {
      * @return
      */
     public IntIterator getMembershipIterator() {
-        return new ArrayIntIterator(mIndexes);
+        return new ArrayIntIterator(mIndexes != null ? mIndexes : mMembers.toArray());
+    }
+
+    /**
+     * Returns a copy of the membership as a compressed set.
+     * 
+     * @return
+     */
+    public RoaringIntSet getMembershipSet() {
+        if (mMembers != null) {
+            return (RoaringIntSet) mMembers.clone();
+        }
+        RoaringIntSet set = new RoaringIntSet(mIndexes);
+        set.trim();
+        return set;
+    }
+
+    /**
+     * Returns true if the membership is stored compressed.
+     * 
+     * @return
+     */
+    public boolean isCompressed() {
+        return mMembers != null;
+    }
+
+    /**
+     * Returns a reference to the compressed membership, or null if
+     * the membership is not compressed.
+     * @return
+     */
+    protected RoaringIntSet getMembershipSetDirect() {
+        return mMembers;
     }
 
     /**
@@ -134,6 +198,9 @@ public class Cluster {
      * @return
      */
     public int getSize() {
+        if (mMembers != null) {
+            return mMembers.size();
+        }
     	return mIndexes.length;
     }
 
@@ -144,6 +211,9 @@ public class Cluster {
      * @return
      */
     public int getMember(int n) {
+        if (mMembers != null) {
+            return mMembers.select(n);
+        }
      	return mIndexes[n];
     }
 
@@ -18,6 +18,7 @@
  */
 package gov.pnnl.jac.cluster;
 
+import gov.pnnl.jac.collections.RoaringIntSet;
 import gov.pnnl.jac.geom.CoordinateList;
 import gov.pnnl.jac.geom.CoordinateMath;
 import gov.pnnl.jac.geom.SimpleCoordinateList;
@@ -52,7 +53,12 @@ import org.apache.commons.math3.linear.RealMatrix;
  */
 public class ClusterList implements Externalizable {
 
-    private static final int SERIAL_VERSION = 1;
+    // Version 2 added compressed memberships.
+    private static final int SERIAL_VERSION = 2;
+
+    // How a membership is written in version 2.
+    private static final int MEMBERS_ARRAY = 0;
+    private static final int MEMBERS_COMPRESSED = 1;
     
     // For large centroid matrices, this threshold determines whether to use
     // a sparse or dense implementation.
@@ -201,6 +207,13 @@ public class ClusterList implements Externalizable {
         }
     }
     
+    /**
+     * Writes the cluster list.  Each membership is written either as an
+     * array of ints or as a compressed set, whichever is smaller.
+     * @param clusters
+     * @param out
+     * @throws IOException
+     */
     public static void save(ClusterList clusters, DataOutput out) throws IOException {
         out.writeInt(SERIAL_VERSION);
         int numClusters = clusters.getClusterCount();
@@ -208,14 +221,27 @@ public class ClusterList implements Externalizable {
         for (int i=0; i<numClusters; i++) {
             Cluster c = clusters.getCluster(i);
             double[] center = c.getCenterDirect();
-            int[] members = c.getMembership();
             out.writeInt(center.length);
             for (int j=0; j<center.length; j++) {
                 out.writeDouble(center[j]);
             }
-            out.writeInt(members.length);
-            for (int j=0; j<members.length; j++) {
-                out.writeInt(members[j]);
+            RoaringIntSet memberSet = c.getMembershipSetDirect();
+            if (memberSet == null) {
+                memberSet = c.getMembershipSet();
+            }
+            // Sizes differ only if an array membership has duplicates, which
+            // the set can't hold.
+            if (memberSet.size() == c.getSize() &&
+                    memberSet.getSerializedSize() < 4 + 4L*c.getSize()) {
+                out.writeByte(MEMBERS_COMPRESSED);
+                memberSet.write(out);
+            } else {
+                int[] members = c.getMembership();
+                out.writeByte(MEMBERS_ARRAY);
+                out.writeInt(members.length);
+                for (int j=0; j<members.length; j++) {
+                    out.writeInt(members[j]);
+                }
             }
         }
     }
@@ -240,7 +266,7 @@ public class ClusterList implements Externalizable {
     
     public static ClusterList load(DataInput in) throws IOException {
         int serialVersion = in.readInt();
-        if (serialVersion == 1) {
+        if (serialVersion == 1 || serialVersion == 2) {
             try {
                 int numClusters = in.readInt();
                 Cluster[] clusters = new Cluster[numClusters];
@@ -250,12 +276,20 @@ public class ClusterList implements Externalizable {
                     for (int j=0; j<n; j++) {
                         center[j] = in.readDouble();
                     }
-                    n = in.readInt();
-                    int[] members = new int[n];
-                    for (int j=0; j<n; j++) {
-                        members[j] = in.readInt();
+                    int format = serialVersion == 1 ? MEMBERS_ARRAY : in.readByte();
+                    if (format == MEMBERS_COMPRESSED) {
+                        // Keep it compressed in memory too.
+                        clusters[i] = new Cluster(RoaringIntSet.read(in), center);
+                    } else if (format == MEMBERS_ARRAY) {
+                        n = in.readInt();
+                        int[] members = new int[n];
+                        for (int j=0; j<n; j++) {
+                            members[j] = in.readInt();
+                        }
+                        clusters[i] = new Cluster(members, center);
+                    } else {
+                        throw new IOException("invalid membership format: " + format);
                     }
-                    clusters[i] = new Cluster(members, center);
                 }
                 return new ClusterList(clusters);
             } catch (RuntimeException e) {
@@ -1,9 +1,20 @@
 package gov.pnnl.jac.cluster;
 
+import gov.pnnl.jac.geom.CoordinateList;
+import gov.pnnl.jac.geom.FilteredCoordinateList;
+import gov.pnnl.jac.geom.FloatCoordinateList;
+import gov.pnnl.jac.geom.SimpleCoordinateList;
+import gov.pnnl.jac.geom.SimpleFloatCoordinateList;
+import gov.pnnl.jac.task.TaskScheduler;
+
 import java.util.*;
 
 public abstract class ClusterSplitter {
 	
+	// Local k-means runs on clusters with at least this many members per 
+	// worker thread are given more than one thread.
+	private static final int MIN_MEMBERS_PER_THREAD = 1 << 15;
+	
 	public ClusterSplitter() {}
 	  
 	/**
@@ -42,4 +53,76 @@ public abstract class ClusterSplitter {
 	   *         but may contain only one if the cluster isn't split for any reason.
 	   */
 	  abstract protected Collection<Cluster> splitCluster(Cluster cluster);
+
+	  /**
+	   * Copies the coordinates of the specified members into a contiguous list in
+	   * memory, so that local k-means and other passes over a cluster being split
+	   * read dense memory rather than indirecting through the member indices into 
+	   * the full list, which may be backed by a file.  Coordinate <tt>i</tt> of the
+	   * returned list is the coordinate of <tt>members[i]</tt>.  If the copy
+	   * would take more than a quarter of the maximum heap, the members are 
+	   * wrapped in a <tt>FilteredCoordinateList</tt> instead.
+	   *
+	   * @param cs the full coordinate list.
+	   * @param members the indices of the members in <tt>cs</tt>.
+	   * @param asFloats whether to copy the values as floats.
+	   * 
+	   * @return
+	   */
+	  protected static CoordinateList gatherMembers(CoordinateList cs, int[] members, 
+			  boolean asFloats) {
+		  final int n = members.length;
+		  final int dim = cs.getDimensionCount();
+		  final long valueCount = (long) n * dim;
+		  final long maxBytes = Runtime.getRuntime().maxMemory() / 4;
+		  if (valueCount > Integer.MAX_VALUE - 8 || valueCount * (asFloats ? 4 : 8) > maxBytes) {
+			  return new FilteredCoordinateList(members, cs);
+		  }
+		  if (asFloats) {
+			  float[] values = new float[(int) valueCount];
+			  if (cs instanceof FloatCoordinateList) {
+				  FloatCoordinateList fcs = (FloatCoordinateList) cs;
+				  float[] buffer = new float[dim];
+				  for (int i = 0; i < n; i++) {
+					  fcs.getCoordinates(members[i], buffer);
+					  System.arraycopy(buffer, 0, values, i * dim, dim);
+				  }
+			  } else {
+				  double[] buffer = new double[dim];
+				  for (int i = 0; i < n; i++) {
+					  cs.getCoordinates(members[i], buffer);
+					  int offset = i * dim;
+					  for (int j = 0; j < dim; j++) {
+						  values[offset + j] = (float) buffer[j];
+					  }
+				  }
+			  }
+			  return new SimpleFloatCoordinateList(dim, n, values);
+		  }
+		  double[] values = new double[(int) valueCount];
+		  double[] buffer = new double[dim];
+		  for (int i = 0; i < n; i++) {
+			  cs.getCoordinates(members[i], buffer);
+			  System.arraycopy(buffer, 0, values, i * dim, dim);
+		  }
+		  return new SimpleCoordinateList(dim, n, values);
+	  }
+
+	  /**
+	   * Returns the number of worker threads for a local k-means run on a cluster
+	   * with the specified number of members.  Small clusters get one thread, since
+	   * splitters normally run concurrently, but a large cluster may be split 
+	   * while few others are, as in the first iterations.
+	   * 
+	   * @param memberCount
+	   * @param maxThreads the number of worker threads for the whole task; if not 
+	   *   positive, the parallelism of the compute pool.
+	   * @return
+	   */
+	  protected static int localWorkerThreads(int memberCount, int maxThreads) {
+		  if (maxThreads <= 0) {
+			  maxThreads = TaskScheduler.getComputeParallelism();
+		  }
+		  return Math.max(1, Math.min(maxThreads, memberCount / MIN_MEMBERS_PER_THREAD));
+	  }
 }
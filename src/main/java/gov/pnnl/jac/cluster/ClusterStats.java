@@ -82,17 +82,34 @@ public final class ClusterStats {
 			throw new IllegalArgumentException("dimension mismatch: " + 
 					dim + " != " + cluster.getDimensions());
 		}
+		return computeMeanAndVariance(cs, cluster.getMembership(), cluster.getSize());
+	}
+	
+	/**
+	 * Computes the mean and variance in each dimension of all the coordinates
+	 * in a list, such as the members of a cluster gathered into a list of their own.
+	 * 
+	 * @param cs
+	 * @return an array of length <tt>cs.getDimensionCount()</tt>, each element of 
+	 *   which holds the mean and the variance.
+	 */
+	public static double[][] computeMeanAndVariance(CoordinateList cs) {
+		return computeMeanAndVariance(cs, null, cs.getCoordinateCount());
+	}
+	
+	// If members is null, uses the first sz coordinates.
+	private static double[][] computeMeanAndVariance(CoordinateList cs, int[] members, int sz) {
+		int dim = cs.getDimensionCount();
 		double[][] result = new double[dim][2];
 		for (int i=0; i<dim; i++) {
 			Arrays.fill(result[i], Double.NaN);
 		}
-		int sz = cluster.getSize();
 		if (sz > 0) {
 			double[] buffer = new double[dim];
 			double[] sums = new double[dim];
 			double[] sumSqs = new double[dim];
 			for (int i=0; i<sz; i++) {
-				cs.getCoordinates(cluster.getMember(i), buffer);
+				cs.getCoordinates(members != null ? members[i] : i, buffer);
 				for (int j=0; j<dim; j++) {
 					double v = buffer[j];
 					sums[j] += v;
@@ -117,12 +134,29 @@ public final class ClusterStats {
 	 * @return
 	 */
 	public static double computeBIC(CoordinateList cs, ClusterList clusters) {
+		return computeBIC(cs, clusters, null);
+	}
+
+	/**
+	 * Computes the Bayes Information Criterion (BIC) for a <tt>ClusterList</tt> object,
+	 * using and adding to a map of cluster statistics.
+	 * 
+	 * @param cs
+	 * @param clusters
+	 * @param statsCache maps clusters to their statistics.  Statistics for clusters
+	 *   not in the map are computed and put into it.  If the map is shared by threads,
+	 *   it must be thread-safe.  May be null.
+	 * 
+	 * @return
+	 */
+	public static double computeBIC(CoordinateList cs, ClusterList clusters, 
+			Map<Cluster, SufficientStatistics> statsCache) {
 		int n = clusters.getClusterCount();
 		Cluster[] c = new Cluster[n];
 		for (int i = 0; i < n; i++) {
 			c[i] = clusters.getCluster(i);
 		}
-		return computeBIC(cs, c);
+		return computeBIC(cs, c, statsCache);
 	}
 
         /**
@@ -134,7 +168,22 @@ public final class ClusterStats {
          * @return
          */
 	public static double computeBIC(CoordinateList cs, Cluster cluster) {
-		return computeBIC(cs, new Cluster[] { cluster });
+		return computeBIC(cs, new Cluster[] { cluster }, null);
+	}
+
+	/**
+	 * Computes the Bayes Information Criterion (BIC) for a single <tt>Cluster</tt> object,
+	 * using and adding to a map of cluster statistics.
+	 * 
+	 * @param cs
+	 * @param cluster
+	 * @param statsCache maps clusters to their statistics.  May be null.
+	 * 
+	 * @return
+	 */
+	public static double computeBIC(CoordinateList cs, Cluster cluster,
+			Map<Cluster, SufficientStatistics> statsCache) {
+		return computeBIC(cs, new Cluster[] { cluster }, statsCache);
 	}
 
 	/**
@@ -147,10 +196,65 @@ public final class ClusterStats {
 	 * @return
 	 */
 	public static double computeBIC(CoordinateList cs, Cluster[] clusters) {
+		return computeBIC(cs, clusters, null);
+	}
+
+	/**
+	 * Computes the Bayes Information Criterion for an array of <tt>Cluster</tt>
+	 * instances, using and adding to a map of cluster statistics.  Only clusters
+	 * not found in the map have their members read from the coordinate list.
+	 * 
+	 * @param cs contains the coordinate data for the clusters.
+	 * @param clusters an array of <tt>Cluster</tt> instances
+	 * @param statsCache maps clusters to their statistics.  Statistics for clusters
+	 *   not in the map are computed and put into it.  If the map is shared by threads,
+	 *   it must be thread-safe.  May be null.
+	 * 
+	 * @return
+	 */
+	public static double computeBIC(CoordinateList cs, Cluster[] clusters,
+			Map<Cluster, SufficientStatistics> statsCache) {
+		int K = clusters.length;
+		SufficientStatistics[] stats = new SufficientStatistics[K];
+		for (int i = 0; i < K; i++) {
+			Cluster cluster = clusters[i];
+			// Statistics aren't needed for clusters too small to contribute.
+			if (cluster.getSize() > K) {
+				stats[i] = statsCache != null ? statsCache.get(cluster) : null;
+				if (stats[i] == null) {
+					stats[i] = SufficientStatistics.compute(cs, cluster);
+					if (statsCache != null) {
+						statsCache.put(cluster, stats[i]);
+					}
+				}
+			}
+		}
+		return computeBIC(clusters, stats, cs.getDimensionCount());
+	}
+
+	/**
+	 * Computes the Bayes Information Criterion for an array of <tt>Cluster</tt>
+	 * instances from their statistics, without access to their coordinates.
+	 * 
+	 * @param clusters an array of <tt>Cluster</tt> instances
+	 * @param stats the statistics for the corresponding clusters.  Elements
+	 *   for clusters whose sizes do not exceed the number of clusters are
+	 *   not used and may be null.
+	 * @param dim the dimensionality of the coordinates.
+	 * 
+	 * @return
+	 */
+	public static double computeBIC(Cluster[] clusters, SufficientStatistics[] stats,
+			int dim) {
 
 		double bic = 0.0;
 		int K = clusters.length;
 
+		if (stats.length != K) {
+			throw new IllegalArgumentException("cluster count != statistics count: " +
+					K + " != " + stats.length);
+		}
+
 		if (K > 0) {
 
 			// Get the total number of coordinates in the clusters.
@@ -163,7 +267,7 @@ public final class ClusterStats {
 			}
 
 			// Get the dimensionality
-			int M = cs.getDimensionCount();
+			int M = dim;
 
 			double LSum = 0;
 
@@ -179,7 +283,7 @@ public final class ClusterStats {
 				if (R_n > K) {
 				
 				    // Estimate variance
-				    double sigma2 = computeDistortion(cs, cluster);
+				    double sigma2 = stats[i].computeDistortion(cluster.getCenterDirect());
 				    if (sigma2 > 0) {
 				        sigma2 /= (R_n - K);
 				    }
@@ -222,8 +326,9 @@ public final class ClusterStats {
 		double sum = 0.0;
 		if (n > 0) {
 			double[] buffer = new double[center.length];
+			int[] members = cluster.getMembership();
 			for (int i = 0; i < n; i++) {
-				cs.getCoordinates(cluster.getMember(i), buffer);
+				cs.getCoordinates(members[i], buffer);
 				double d = distFunc.distanceBetween(center, buffer);
 				sum += d * d;
 			}
@@ -232,11 +337,6 @@ public final class ClusterStats {
 		return sum;
 	}
 
-	private static double computeDistortion(CoordinateList cs, Cluster cluster) {
-		return cluster.getSize()
-				* CoordinateMath.norm1(computeVariance(cs, cluster));
-	}
-
 	private static double computeDistSqFromCenter(CoordinateList cs,
 			Cluster cluster) {
 
@@ -253,8 +353,9 @@ public final class ClusterStats {
 			double[] columnBuffer = null;
 			
 			double[] coordBuf = new double[dim];
+			int[] members = cluster.getMembership();
 			for (int i = 0; i < n; i++) {
-				cs.getCoordinates(cluster.getMember(i), coordBuf);
+				cs.getCoordinates(members[i], coordBuf);
 				for (int j = 0; j < dim; j++) {				        
 					double d = coordBuf[j] - center[j];
 					if (Double.isNaN(d)) {
@@ -284,42 +385,6 @@ public final class ClusterStats {
 		return rtn;
 	}
 
-	private static double[] computeVariance(CoordinateList cs, Cluster cluster) {
-
-		int n = cluster.getSize();
-		double[] center = cluster.getCenterDirect();
-
-		int dim = center.length;
-		double[] variance = new double[dim];
-
-		if (n > 0) {
-		    
-			double[] sum = new double[dim];
-			double[] coordBuffer = new double[dim];
-			int[] nonNaNCount = new int[dim];
-			
-			for (int i = 0; i < n; i++) {
-				cs.getCoordinates(cluster.getMember(i), coordBuffer);
-				for (int j = 0; j < dim; j++) {
-					double d = coordBuffer[j];
-					if (!Double.isNaN(d)) {
-					    sum[j] += d;
-					    variance[j] += d * d;
-					    nonNaNCount[j]++;
-					}
-				}
-			}
-			
-			for (int i = 0; i < dim; i++) {
-			    if (nonNaNCount[i] > 0) {
-			        variance[i] = Math.max(0.0, (variance[i] - center[i] * sum[i]) / nonNaNCount[i]);
-			    }
-			}
-		}
-		
-		return variance;
-	}
-
 	static double computeSigma2(CoordinateList cs, Cluster[] clusters) {
 		int K = clusters.length;
 		int R = 0;
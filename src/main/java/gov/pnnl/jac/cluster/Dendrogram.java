@@ -24,8 +24,9 @@ import gov.pnnl.jac.geom.distance.ReadOnlyDistanceCache;
 import static gov.pnnl.jac.io.IOUtils.*;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import cern.colt.bitvector.BitVector;
@@ -40,38 +41,101 @@ import cern.colt.bitvector.BitVector;
  * exceptions from trying to traverse large and highly imbalanced dendrograms.
  * </p>
  * 
+ * <p>The primitives may also be kept off the heap in a memory-mapped file.
+ * <tt>save()</tt> writes a dendrogram to such a file, <tt>open()</tt> maps
+ * one back without reading it, and <tt>create()</tt> builds a new dendrogram
+ * directly in one, for leaf counts too large to hold on the heap.  The file
+ * consists of a 64-byte big-endian header followed by one section for each
+ * array, each starting on an 8-byte boundary and stored in the byte order
+ * named in the header.  The header contains:</p>
+ * 
+ * <ul>
+ * <li>the magic number <tt>"JACDENDR"</tt> (8 bytes)</li>
+ * <li>the format version (int)</li>
+ * <li>flags for the byte order and whether coherences are computed (int)</li>
+ * <li>the leaf count and the current level (ints)</li>
+ * <li>the min and max coherence thresholds (doubles)</li>
+ * </ul>
+ * 
+ * <p>The methods that only read the dendrogram, such as
+ * <tt>getOrderedLeafIDs()</tt>, <tt>generateClusterGroupings()</tt>, and the
+ * node traversal methods, take no locks and may be called from any number of
+ * threads at once, provided nothing is modifying the dendrogram.  The exception
+ * is <tt>clustersWithCoherenceExceeding()</tt>, which the first time it is called 
+ * computes the coherences if they have not been, under a lock so that concurrent
+ * callers wait for them rather than seeing them half-computed.  Dendrograms
+ * opened read-only throw <tt>ReadOnlyBufferException</tt> from the methods 
+ * which modify them, such as <tt>mergeNodes()</tt> and <tt>flipChildren()</tt>.
+ * </p>
+ * 
  * @author d3j923
  *
  */
 public class Dendrogram implements Externalizable {
 
     private static final int EXTERNALIZABLE_VERSION = 1;
+
+    /**
+     * The magic number at the beginning of every mapped dendrogram file, 
+     * "JACDENDR" in ASCII.
+     */
+    public static final long MAPPED_MAGIC = 0x4A414344454E4452L;
+
+    /**
+     * The version of the mapped file format written by this class.
+     */
+    public static final int MAPPED_VERSION = 1;
+
+    private static final int FLAG_LITTLE_ENDIAN = 0x1;
+    private static final int FLAG_COHERENCES_COMPUTED = 0x2;
+
+    // Offsets of the fields of the mapped file header.
+    private static final int HEADER_VERSION = 8;
+    private static final int HEADER_FLAGS = 12;
+    private static final int HEADER_LEAF_COUNT = 16;
+    private static final int HEADER_CURRENT_LEVEL = 20;
+    private static final int HEADER_MIN_THRESHOLD = 24;
+    private static final int HEADER_MAX_THRESHOLD = 32;
+    private static final int HEADER_LEN = 64;
+
+    // Indices of the sections of the mapped file.
+    private static final int NODE_IDS = 0;
+    private static final int PARENT_INDICES = 1;
+    private static final int INDICES_FOR_IDS = 2;
+    private static final int LEFT_INDICES = 3;
+    private static final int RIGHT_INDICES = 4;
+    private static final int SIZES = 5;
+    private static final int DISTANCES = 6;
+    private static final int COHERENCES = 7;
+    private static final int SECTION_COUNT = 8;
     
     // Contains IDs of the nodes, both the non-leaf and leaf.
 	// Length is equal to 2*mLeafCount - 1.  The IDs are generally
     // the indexes of the items being clustered.
-	private int[] mNodeIDs;
+	private IntBuffer mNodeIDs;
 	
 	// Indices of the parent nodes - same length as mNodeIDs. Initialized to -1
 	// which means "parent not set".  When the dendrogram is finished all elements
 	// except 0 should have values >= 0.  Element 0 will remain -1 since the
 	// root node does not have a parent.
-	private int[] mParentIndices;
+	private IntBuffer mParentIndices;
 	// Stores the indices into mNodeIDs of the left and right
 	// children nodes of the non-leaf node at each level
 	// 0 - (getLeafCount() - 2).
-	private int[] mLeftIndices, mRightIndices;
+	private IntBuffer mLeftIndices, mRightIndices;
 
 	// Contains the size of the node at levels [0 - (getLeafCount() - 2)].
-	private int[] mSizes;
+	private IntBuffer mSizes;
 
 	// Given an ID, what index into the above arrays will give
 	// the pertinent info for that ID?
-	private int[] mIndicesForIDs;
+	private IntBuffer mIndicesForIDs;
 
-	private double[] mDistances, mCoherences;
+	private DoubleBuffer mDistances, mCoherences;
 	
-	private boolean mCoherencesComputed;
+	// Volatile, so readers that see it set also see the coherences, which
+	// are computed lazily under the dendrogram's lock.
+	private volatile boolean mCoherencesComputed;
 	
 	// Used in computation of coherences.  If not explicitly set,
 	// the max threshold becomes the max value in mDistances.
@@ -86,6 +150,10 @@ public class Dendrogram implements Externalizable {
 	// merged.  The leaf level is getLeafCount() - 1.  The non-leaf levels
 	// are [0 - (getLeafCount() - 2)].
 	private int mCurrentLevel;
+
+	// When the above buffers are sections of a mapped file, the header of that
+	// file followed by the sections.  Otherwise null.
+	private MappedByteBuffer[] mMappedSections;
 	
 	/**
 	 * Constructor.  Initially forms a dendrogram with only leaf nodes
@@ -108,34 +176,282 @@ public class Dendrogram implements Externalizable {
 		// Number of non-leaf nodes
 		int nonLeafCount = mLeafCount - 1;
 
+		mNodeIDs = IntBuffer.allocate(nodeCount);
+		mParentIndices = IntBuffer.allocate(nodeCount);
+		mIndicesForIDs = IntBuffer.allocate(mLeafCount);
+
+		mLeftIndices = IntBuffer.allocate(nonLeafCount);
+		mRightIndices = IntBuffer.allocate(nonLeafCount);
+		mSizes = IntBuffer.allocate(nonLeafCount);
+
+		mDistances = DoubleBuffer.allocate(nonLeafCount);
+		mCoherences = DoubleBuffer.allocate(nonLeafCount);
+
+		initialize();
+	}
+
+	// Used by create() and open(), which supply the buffers.
+	private Dendrogram() {
+	}
+
+	// Sets up the leaf nodes once the buffers have been allocated.
+	private void initialize() {
+
+		// Total number of nodes
+		int nodeCount = 2 * mLeafCount - 1;
+		// Number of non-leaf nodes
+		int nonLeafCount = mLeafCount - 1;
+
 		// The array containing the node IDs, both leaf and non-leaf.
-		mNodeIDs = new int[nodeCount];
 		// Initialize the leaf node IDs, which are at the bottom of the array
 		// and are numbered sequentially
 		int id = 0;
 		for (int i = nonLeafCount; i < nodeCount; i++) {
-			mNodeIDs[i] = id++;
+			mNodeIDs.put(i, id++);
 		}
 
 		// Initialize the parent indices.
-		mParentIndices = new int[nodeCount];
-		Arrays.fill(mParentIndices, -1);
+		for (int i = 0; i < nodeCount; i++) {
+			mParentIndices.put(i, -1);
+		}
 
 		int index = nonLeafCount;
-		mIndicesForIDs = new int[mLeafCount];
 		for (int i = 0; i < mLeafCount; i++) {
-			mIndicesForIDs[i] = index++;
+			mIndicesForIDs.put(i, index++);
 		}
 
-		mLeftIndices = new int[nonLeafCount];
-		mRightIndices = new int[nonLeafCount];
-		mSizes = new int[nonLeafCount];
+		mCurrentLevel = nonLeafCount; // == (ids.numIDs() - 1)
+		writeHeader();
 
-		mDistances = new double[nonLeafCount];
-		mCoherences = new double[nonLeafCount];
+	}
 
-		mCurrentLevel = nonLeafCount; // == (ids.numIDs() - 1)
+	/**
+	 * Creates a dendrogram like the one constructed by <code>Dendrogram(leafCount)</code>,
+	 * but with its arrays stored in the specified file, which is mapped into memory
+	 * rather than being loaded onto the heap.  The file is replaced if it exists.
+	 * Merging nodes writes through to the file, which can be reopened by 
+	 * <code>open()</code> once the dendrogram is finished.
+	 * 
+	 * @param leafCount
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static Dendrogram create(int leafCount, File file) throws IOException {
+		if (leafCount <= 0) {
+			throw new IllegalArgumentException(
+			        "number of leaves must be > 0");
+		}
+		Dendrogram d = new Dendrogram();
+		d.mLeafCount = leafCount;
+		d.mapFile(file, ByteOrder.nativeOrder(), true, true);
+		d.initialize();
+		return d;
+	}
 
+	/**
+	 * Opens a dendrogram saved by <code>save()</code> or built by <code>create()</code>
+	 * by mapping the file into memory.  None of the file is read until it is
+	 * accessed, so this takes the same time regardless of the dendrogram's size.
+	 * The dendrogram is read-only.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException if an IO error occurs or the file is not a 
+	 *   mapped dendrogram file.
+	 */
+	public static Dendrogram open(File file) throws IOException {
+		return open(file, false);
+	}
+
+	/**
+	 * Opens a dendrogram saved by <code>save()</code> or built by <code>create()</code>
+	 * by mapping the file into memory.  If writable is true, changes such
+	 * as those made by <code>flipChildren()</code> are written through to the file.
+	 * 
+	 * @param file
+	 * @param writable
+	 * @return
+	 * @throws IOException if an IO error occurs or the file is not a 
+	 *   mapped dendrogram file.
+	 */
+	public static Dendrogram open(File file, boolean writable) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LEN);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			while (header.hasRemaining()) {
+				if (channel.read(header, header.position()) < 0) {
+					throw new IOException("not a mapped dendrogram file: " + file);
+				}
+			}
+		} finally {
+			raf.close();
+		}
+		if (header.getLong(0) != MAPPED_MAGIC) {
+			throw new IOException("not a mapped dendrogram file: " + file);
+		}
+		int version = header.getInt(HEADER_VERSION);
+		if (version != MAPPED_VERSION) {
+			throw new IOException("invalid version: " + version);
+		}
+		int flags = header.getInt(HEADER_FLAGS);
+		Dendrogram d = new Dendrogram();
+		d.mLeafCount = header.getInt(HEADER_LEAF_COUNT);
+		d.mCurrentLevel = header.getInt(HEADER_CURRENT_LEVEL);
+		d.mCoherencesComputed = (flags & FLAG_COHERENCES_COMPUTED) != 0;
+		d.mMinCoherenceThreshold = header.getDouble(HEADER_MIN_THRESHOLD);
+		d.mMaxCoherenceThreshold = header.getDouble(HEADER_MAX_THRESHOLD);
+		if (d.mLeafCount <= 0 || d.mCurrentLevel < 0 || d.mCurrentLevel >= d.mLeafCount) {
+			throw new IOException("corrupt mapped dendrogram header: " + file);
+		}
+		if (file.length() < mappedFileLength(d.mLeafCount)) {
+			throw new IOException("mapped dendrogram file is truncated: " + file);
+		}
+		d.mapFile(file, (flags & FLAG_LITTLE_ENDIAN) != 0 ? 
+				ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN, writable, false);
+		return d;
+	}
+
+	/**
+	 * Saves the dendrogram to a file that can be mapped by <code>open()</code>.
+	 * The arrays are copied to the file in bulk in the platform's native byte
+	 * order.  If the dendrogram is finished, its coherences are computed first
+	 * so that dendrograms opened read-only need not compute them.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		if (isFinished() && !mCoherencesComputed) {
+			computeCoherences();
+		}
+		Dendrogram d = new Dendrogram();
+		d.mLeafCount = mLeafCount;
+		d.mapFile(file, ByteOrder.nativeOrder(), true, true);
+		d.mNodeIDs.put(mNodeIDs.duplicate());
+		d.mParentIndices.put(mParentIndices.duplicate());
+		d.mIndicesForIDs.put(mIndicesForIDs.duplicate());
+		d.mLeftIndices.put(mLeftIndices.duplicate());
+		d.mRightIndices.put(mRightIndices.duplicate());
+		d.mSizes.put(mSizes.duplicate());
+		d.mDistances.put(mDistances.duplicate());
+		d.mCoherences.put(mCoherences.duplicate());
+		d.mCurrentLevel = mCurrentLevel;
+		d.mCoherencesComputed = mCoherencesComputed;
+		d.mMinCoherenceThreshold = mMinCoherenceThreshold;
+		d.mMaxCoherenceThreshold = mMaxCoherenceThreshold;
+		d.writeHeader();
+		d.force();
+	}
+
+	/**
+	 * Is the dendrogram stored in a memory-mapped file?
+	 * 
+	 * @return
+	 */
+	public boolean isMapped() {
+		return mMappedSections != null;
+	}
+
+	/**
+	 * If the dendrogram is stored in a writable memory-mapped file, forces
+	 * any changes out to the storage device.  Otherwise, does nothing.
+	 */
+	public void force() {
+		if (mMappedSections != null && !mMappedSections[0].isReadOnly()) {
+			for (MappedByteBuffer section : mMappedSections) {
+				section.force();
+			}
+		}
+	}
+
+	// Returns the offsets of the sections of a mapped file, plus
+	// the file length as the final element.
+	private static long[] mappedSectionOffsets(int leafCount) {
+		long nodeCount = 2L * leafCount - 1;
+		long nonLeafCount = leafCount - 1;
+		long[] sizes = new long[SECTION_COUNT];
+		sizes[NODE_IDS] = sizes[PARENT_INDICES] = 4L * nodeCount;
+		sizes[INDICES_FOR_IDS] = 4L * leafCount;
+		sizes[LEFT_INDICES] = sizes[RIGHT_INDICES] = sizes[SIZES] = 4L * nonLeafCount;
+		sizes[DISTANCES] = sizes[COHERENCES] = 8L * nonLeafCount;
+		long[] offsets = new long[SECTION_COUNT + 1];
+		long offset = HEADER_LEN;
+		for (int i = 0; i < SECTION_COUNT; i++) {
+			offsets[i] = offset;
+			offset = (offset + sizes[i] + 7L) & ~7L;
+		}
+		offsets[SECTION_COUNT] = offset;
+		return offsets;
+	}
+
+	private static long mappedFileLength(int leafCount) {
+		return mappedSectionOffsets(leafCount)[SECTION_COUNT];
+	}
+
+	// Maps the header and sections of the file, first replacing it with a zeroed
+	// file of the proper length if replace is true.  mLeafCount must be set.
+	private void mapFile(File file, ByteOrder order, boolean writable, 
+			boolean replace) throws IOException {
+		long[] offsets = mappedSectionOffsets(mLeafCount);
+		int nodeCount = 2 * mLeafCount - 1;
+		int nonLeafCount = mLeafCount - 1;
+		FileChannel.MapMode mode = writable ? 
+				FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+		MappedByteBuffer[] sections = new MappedByteBuffer[SECTION_COUNT + 1];
+		RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (replace) {
+				raf.setLength(0L);
+				raf.setLength(offsets[SECTION_COUNT]);
+			}
+			sections[0] = channel.map(mode, 0L, HEADER_LEN);
+			for (int i = 0; i < SECTION_COUNT; i++) {
+				sections[i + 1] = channel.map(mode, offsets[i], offsets[i + 1] - offsets[i]);
+				sections[i + 1].order(order);
+			}
+		} finally {
+			raf.close();
+		}
+		mNodeIDs = sections[NODE_IDS + 1].asIntBuffer();
+		mParentIndices = sections[PARENT_INDICES + 1].asIntBuffer();
+		mIndicesForIDs = sections[INDICES_FOR_IDS + 1].asIntBuffer();
+		mLeftIndices = sections[LEFT_INDICES + 1].asIntBuffer();
+		mRightIndices = sections[RIGHT_INDICES + 1].asIntBuffer();
+		mSizes = sections[SIZES + 1].asIntBuffer();
+		mDistances = sections[DISTANCES + 1].asDoubleBuffer();
+		mCoherences = sections[COHERENCES + 1].asDoubleBuffer();
+		// The sections are padded to 8-byte boundaries, so limit the views.
+		mNodeIDs.limit(nodeCount);
+		mParentIndices.limit(nodeCount);
+		mIndicesForIDs.limit(mLeafCount);
+		mLeftIndices.limit(nonLeafCount);
+		mRightIndices.limit(nonLeafCount);
+		mSizes.limit(nonLeafCount);
+		mMappedSections = sections;
+		if (replace) {
+			ByteBuffer header = sections[0];
+			header.putLong(0, MAPPED_MAGIC);
+			header.putInt(HEADER_VERSION, MAPPED_VERSION);
+			header.putInt(HEADER_LEAF_COUNT, mLeafCount);
+			writeHeader();
+		}
+	}
+
+	// Writes the fields which change after construction to the header of 
+	// the mapped file, if the dendrogram is in a writable mapped file.
+	private void writeHeader() {
+		if (mMappedSections != null && !mMappedSections[0].isReadOnly()) {
+			ByteBuffer header = mMappedSections[0];
+			int flags = (mNodeIDs.order() == ByteOrder.LITTLE_ENDIAN ? FLAG_LITTLE_ENDIAN : 0) |
+				(mCoherencesComputed ? FLAG_COHERENCES_COMPUTED : 0);
+			header.putInt(HEADER_FLAGS, flags);
+			header.putInt(HEADER_CURRENT_LEVEL, mCurrentLevel);
+			header.putDouble(HEADER_MIN_THRESHOLD, mMinCoherenceThreshold);
+			header.putDouble(HEADER_MAX_THRESHOLD, mMaxCoherenceThreshold);
+		}
 	}
 
 	public double getMinCoherenceThreshold() {
@@ -145,6 +461,7 @@ public class Dendrogram implements Externalizable {
 	public void setMinCoherenceThreshold(double d) {
 		mMinCoherenceThreshold = d;
 		mCoherencesComputed = false;
+		writeHeader();
 	}
 	
 	public double getMaxCoherenceThreshold() {
@@ -154,6 +471,7 @@ public class Dendrogram implements Externalizable {
 	public void setMaxCoherenceThreshold(double d) {
 		mMaxCoherenceThreshold = d;
 		mCoherencesComputed = false;
+		writeHeader();
 	}
 	
 	/**
@@ -250,12 +568,12 @@ public class Dendrogram implements Externalizable {
 
 			OUTER:
 			while (true) {
-				int leftLevel = mLeftIndices[currentLevel];
-				int rightLevel = mRightIndices[currentLevel];
+				int leftLevel = mLeftIndices.get(currentLevel);
+				int rightLevel = mRightIndices.get(currentLevel);
 				if (leftLevel >= leafLevel) { // Encountered a leaf on the left
-					rtnList.add(mNodeIDs[leftLevel]);
+					rtnList.add(mNodeIDs.get(leftLevel));
 					if (rightLevel >= leafLevel) { // Encountered a leaf on the right.
-						rtnList.add(mNodeIDs[rightLevel]);
+						rtnList.add(mNodeIDs.get(rightLevel));
 						int sz = intList.size();
 						INNER:
 						while(true) {
@@ -264,7 +582,7 @@ public class Dendrogram implements Externalizable {
 							intList.removeAt(sz - 1);
 							sz--;
 							if (currentLevel >= leafLevel) {
-								rtnList.add(mNodeIDs[currentLevel]);
+								rtnList.add(mNodeIDs.get(currentLevel));
 							} else {
 								break INNER;
 							}
@@ -285,7 +603,7 @@ public class Dendrogram implements Externalizable {
 
 			// Must be only one leaf, so the dendrogram starts out
 			// finished with one leaf node and no others.
-			rtnList.add(mNodeIDs[0]);
+			rtnList.add(mNodeIDs.get(0));
 		}
 
 		return rtnList.toArray();
@@ -313,8 +631,8 @@ public class Dendrogram implements Externalizable {
 				rtnList.add(currentLevel);
 			}
 
-			int leftLevel = mLeftIndices[currentLevel];
-			int rightLevel = mRightIndices[currentLevel];
+			int leftLevel = mLeftIndices.get(currentLevel);
+			int rightLevel = mRightIndices.get(currentLevel);
 
 			if (leftLevel < leafLevel) {
 				currentLevel = leftLevel;
@@ -344,7 +662,7 @@ public class Dendrogram implements Externalizable {
 	public int getRootID() {
 		checkFinished();
 		// mCurrentLevel == 0
-		return mNodeIDs[mCurrentLevel];
+		return mNodeIDs.get(mCurrentLevel);
 	}
 
 	/**
@@ -355,8 +673,8 @@ public class Dendrogram implements Externalizable {
 	 * @return - the ID for the specified level.
 	 */
 	public int getLevelID(int level) {
-		if (level >= mCurrentLevel && level < mLeftIndices.length) {
-			return mNodeIDs[level];
+		if (level >= mCurrentLevel && level < (mLeafCount - 1)) {
+			return mNodeIDs.get(level);
 		}
 		return -1;
 	}
@@ -418,20 +736,20 @@ public class Dendrogram implements Externalizable {
 
 	// Gets the left or right child id of the non-leaf node at the specified
 	// level.
-	private int getChildID(int parentLevel, int[] childIndices) {
-		if (parentLevel >= mCurrentLevel && parentLevel < childIndices.length) {
-			return mNodeIDs[childIndices[parentLevel]];
+	private int getChildID(int parentLevel, IntBuffer childIndices) {
+		if (parentLevel >= mCurrentLevel && parentLevel < (mLeafCount - 1)) {
+			return mNodeIDs.get(childIndices.get(parentLevel));
 		}
 		return -1;
 	}
 
 	// Gets the level of the left or right child of the non-leaf node at the
 	// specified level.
-	private int getChildLevel(int parentLevel, int[] childIndices) {
-		if (parentLevel >= mCurrentLevel && parentLevel < childIndices.length) {
-			int childLevel = childIndices[parentLevel];
-			if (childLevel > childIndices.length) {
-				childLevel = childIndices.length;
+	private int getChildLevel(int parentLevel, IntBuffer childIndices) {
+		if (parentLevel >= mCurrentLevel && parentLevel < (mLeafCount - 1)) {
+			int childLevel = childIndices.get(parentLevel);
+			if (childLevel > (mLeafCount - 1)) {
+				childLevel = (mLeafCount - 1);
 			}
 			return childLevel;
 		}
@@ -446,7 +764,7 @@ public class Dendrogram implements Externalizable {
 	 */
 	public Node getRoot() {
 		checkFinished();
-		return new Node(0, mNodeIDs[0]);
+		return new Node(0, mNodeIDs.get(0));
 	}
 
 	/**
@@ -459,7 +777,7 @@ public class Dendrogram implements Externalizable {
 	public Node getNode(int level) {
 		checkFinished();
 		if (level >= mCurrentLevel && level < getLeafLevel()) {
-			return new Node(level, mNodeIDs[level]);
+			return new Node(level, mNodeIDs.get(level));
 		}
 		throw new IndexOutOfBoundsException("level not in [" +
 				mCurrentLevel + " - (" + getLeafLevel() + " - 1)]: " +
@@ -485,7 +803,7 @@ public class Dendrogram implements Externalizable {
 	public boolean flipChildren(int parentLevel,
 			ReadOnlyDistanceCache cache, double[] distChange) throws IOException {
 
-		if (parentLevel >= mCurrentLevel && parentLevel < mLeftIndices.length) {
+		if (parentLevel >= mCurrentLevel && parentLevel < (mLeafCount - 1)) {
 
 			boolean computeDistChange = cache != null && distChange != null;
 			double dsub = 0.0;
@@ -494,9 +812,9 @@ public class Dendrogram implements Externalizable {
 				dsub = flipDistanceSum(parentLevel, cache);
 			}
 
-			int tmp = mLeftIndices[parentLevel];
-			mLeftIndices[parentLevel] = mRightIndices[parentLevel];
-			mRightIndices[parentLevel] = tmp;
+			int tmp = mLeftIndices.get(parentLevel);
+			mLeftIndices.put(parentLevel, mRightIndices.get(parentLevel));
+			mRightIndices.put(parentLevel, tmp);
 
 			if (computeDistChange) {
 				distChange[0] = flipDistanceSum(parentLevel, cache) - dsub;
@@ -520,8 +838,8 @@ public class Dendrogram implements Externalizable {
 		leftMostID = getLeftMostLeafID(parentLevel);
 		rightMostID = getRightMostLeafID(parentLevel);
 
-		childLevel = mLeftIndices[parentLevel];
-		if (childLevel < mLeftIndices.length) {
+		childLevel = mLeftIndices.get(parentLevel);
+		if (childLevel < (mLeafCount - 1)) {
 			// Left child is not a leaf, so the middle left
 			// is its rightmost descendent.
 			middleLeftID = getRightMostLeafID(childLevel);
@@ -531,8 +849,8 @@ public class Dendrogram implements Externalizable {
 			middleLeftID = leftMostID;
 		}
 
-		childLevel = mRightIndices[parentLevel];
-		if (childLevel < mRightIndices.length) {
+		childLevel = mRightIndices.get(parentLevel);
+		if (childLevel < (mLeafCount - 1)) {
 			// Right child is not a leaf, so the middle right
 			// is its leftmost descendent.
 			middleRightID = getLeftMostLeafID(childLevel);
@@ -582,16 +900,16 @@ public class Dendrogram implements Externalizable {
 	public boolean flipGrandChildren(int grandParentLevel,
 			ReadOnlyDistanceCache cache, double[] distChange) throws IOException {
 		boolean rtn = false;
-		if (grandParentLevel >= mCurrentLevel && grandParentLevel < mLeftIndices.length) {
+		if (grandParentLevel >= mCurrentLevel && grandParentLevel < (mLeafCount - 1)) {
 			double dchange = 0.0;
 			boolean computeDistChange = cache != null && distChange != null;
-			if (flipChildren(mLeftIndices[grandParentLevel], cache, distChange)) {
+			if (flipChildren(mLeftIndices.get(grandParentLevel), cache, distChange)) {
 				rtn = true;
 				if (computeDistChange) {
 					dchange += distChange[0];
 				}
 			}
-			if (flipChildren(mRightIndices[grandParentLevel], cache, distChange)) {
+			if (flipChildren(mRightIndices.get(grandParentLevel), cache, distChange)) {
 				rtn = true;
 				if (computeDistChange) {
 					dchange += distChange[0];
@@ -666,17 +984,17 @@ public class Dendrogram implements Externalizable {
 	}
 
 	public int getRightMostLeafID(int parentLevel) {
-		while(parentLevel < mRightIndices.length) {
-			parentLevel = mRightIndices[parentLevel];
+		while(parentLevel < (mLeafCount - 1)) {
+			parentLevel = mRightIndices.get(parentLevel);
 		}
-		return mNodeIDs[parentLevel];
+		return mNodeIDs.get(parentLevel);
 	}
 
 	public int getLeftMostLeafID(int parentLevel) {
-		while(parentLevel < mLeftIndices.length) {
-			parentLevel = mLeftIndices[parentLevel];
+		while(parentLevel < (mLeafCount - 1)) {
+			parentLevel = mLeftIndices.get(parentLevel);
 		}
-		return mNodeIDs[parentLevel];
+		return mNodeIDs.get(parentLevel);
 	}
 
 
@@ -695,33 +1013,37 @@ public class Dendrogram implements Externalizable {
 		if (mCurrentLevel == 0) {
 			throw new IllegalStateException("dendrogram is already finished");
 		}
+		if (mNodeIDs.isReadOnly()) {
+			throw new ReadOnlyBufferException();
+		}
 
 		int mergeID = Math.min(id1, id2);
 
 		mCurrentLevel--;
-		mNodeIDs[mCurrentLevel] = mergeID;
-		int leftIndex = mIndicesForIDs[id1];
-		int rightIndex = mIndicesForIDs[id2];
-		mLeftIndices[mCurrentLevel] = leftIndex;
-		mRightIndices[mCurrentLevel] = rightIndex;
-		mParentIndices[leftIndex] = mCurrentLevel;
-		mParentIndices[rightIndex] = mCurrentLevel;
-		mDistances[mCurrentLevel] = distance;
-		mSizes[mCurrentLevel] = nodeSize(id1) + nodeSize(id2);
-
-		mIndicesForIDs[mergeID] = mCurrentLevel;
+		mNodeIDs.put(mCurrentLevel, mergeID);
+		int leftIndex = mIndicesForIDs.get(id1);
+		int rightIndex = mIndicesForIDs.get(id2);
+		mLeftIndices.put(mCurrentLevel, leftIndex);
+		mRightIndices.put(mCurrentLevel, rightIndex);
+		mParentIndices.put(leftIndex, mCurrentLevel);
+		mParentIndices.put(rightIndex, mCurrentLevel);
+		mDistances.put(mCurrentLevel, distance);
+		mSizes.put(mCurrentLevel, nodeSize(id1) + nodeSize(id2));
+
+		mIndicesForIDs.put(mergeID, mCurrentLevel);
+		writeHeader();
 
 		return mergeID;
 	}
 
 	public int leftChildID(int parentID) {
-		int parentIndex = mIndicesForIDs[parentID];
-		return mNodeIDs[mLeftIndices[parentIndex]];
+		int parentIndex = mIndicesForIDs.get(parentID);
+		return mNodeIDs.get(mLeftIndices.get(parentIndex));
 	}
 
 	public int rightChildID(int parentID) {
-		int parentIndex = mIndicesForIDs[parentID];
-		return mNodeIDs[mRightIndices[parentIndex]];
+		int parentIndex = mIndicesForIDs.get(parentID);
+		return mNodeIDs.get(mRightIndices.get(parentIndex));
 	}
 
 	/**
@@ -746,31 +1068,31 @@ public class Dendrogram implements Externalizable {
 		return neighborID(id, mLeftIndices, mRightIndices);
 	}
 
-	private int neighborID(int id, int[] indices1, int[] indices2) {
+	private int neighborID(int id, IntBuffer indices1, IntBuffer indices2) {
 		if (id >= 0 && id < mLeafCount) {
 			// Start off with lastIndex being the leaf index for id, and
 			// index being the parent level of the leaf with id.
 			int lastIndex = mLeafCount - 1 + id;
-			int index = mParentIndices[lastIndex];
+			int index = mParentIndices.get(lastIndex);
 			// If looking for the left neighbor id, we tranverse up the
 			// parent hierarchy until we've gone one level to the left.
 			// Then we go down one level to the left, then down to the right
 			// until a leaf is encountered. (Draw a diagram of a dendrogram
 			// and trace the path with a pen -- you'll understand.)
-			while (index >= 0 && indices1[index] == lastIndex) {
+			while (index >= 0 && indices1.get(index) == lastIndex) {
 				lastIndex = index;
-				index = mParentIndices[index];
+				index = mParentIndices.get(index);
 			}
 			// If there is no neighbor index will be -1 here.
 			if (index >= mCurrentLevel) {
 				// Go down one level to the left if looking for a left neighbor.
-				index = indices1[index];
+				index = indices1.get(index);
 				// Until a leaf is encounted, go down to the right.
-				while (index < indices2.length) {
-					index = indices2[index];
+				while (index < (mLeafCount - 1)) {
+					index = indices2.get(index);
 				}
 				// Return the leaf id.
-				return mNodeIDs[index];
+				return mNodeIDs.get(index);
 			}
 		}
 		// Either the id was out of range or it had no neighbor on the
@@ -779,11 +1101,11 @@ public class Dendrogram implements Externalizable {
 	}
 
 	public int nodeSize(int id) {
-		int index = mIndicesForIDs[id];
-		return index < mSizes.length ? mSizes[index] : 1;
+		int index = mIndicesForIDs.get(id);
+		return index < (mLeafCount - 1) ? mSizes.get(index) : 1;
 	}
 
-	public void computeCoherences() {
+	public synchronized void computeCoherences() {
 		
 		checkFinished();
 		
@@ -792,9 +1114,9 @@ public class Dendrogram implements Externalizable {
 		if (!Double.isNaN(mMaxCoherenceThreshold)) {
 			maxd = mMaxCoherenceThreshold;
 		} else {
-			for (int i = 0; i < mDistances.length; i++) {
-				if (maxd < mDistances[i]) {
-					maxd = mDistances[i];
+			for (int i = 0; i < (mLeafCount - 1); i++) {
+				if (maxd < mDistances.get(i)) {
+					maxd = mDistances.get(i);
 				}
 			}
 		}
@@ -805,28 +1127,37 @@ public class Dendrogram implements Externalizable {
 			mind = mMinCoherenceThreshold;
 		}
 		
+		// The coherences of a dendrogram opened read-only are recomputed 
+		// on the heap.
+		DoubleBuffer coherences = mCoherences.isReadOnly() ? 
+				DoubleBuffer.allocate(mLeafCount - 1) : mCoherences;
+		
 		if (maxd > 0.0) {
 			
 			double denom = maxd - mind;
 			
-			for (int i = 0; i < mDistances.length; i++) {
+			for (int i = 0; i < (mLeafCount - 1); i++) {
 				// Coherences will range from 0.0 to 1.0. 1.0 means
 				// the decision distance was 0.0, such as when merging
 				// 2 identical coordinates. The coherence is 0.0 for
 				// the node with the maximum decision distance.
 				// The usual case is for the root node to have a
 				// coherence of 0.0.
-				mCoherences[i] = 1.0 - (mDistances[i] - mind)/denom;
+				coherences.put(i, 1.0 - (mDistances.get(i) - mind)/denom);
 			}
 			
 		} else {
 			// All decision distances are 0.0, meaning all coordinates
 			// are the same. Just set all the coherences to their max
 			// value 1.0
-			Arrays.fill(mCoherences, 1.0);
+			for (int i = 0; i < (mLeafCount - 1); i++) {
+				coherences.put(i, 1.0);
+			}
 		}
 		
+		mCoherences = coherences;
 		mCoherencesComputed = true;
+		writeHeader();
 	}
 
 	/**
@@ -863,7 +1194,7 @@ public class Dendrogram implements Externalizable {
 
 		int nonLeafCount = mLeafCount - 1;
 
-		int n = index < nonLeafCount ? mSizes[index] : 1;
+		int n = index < nonLeafCount ? mSizes.get(index) : 1;
 
 		int[] rtn = new int[n];
 		IntArrayList intList = null;
@@ -875,10 +1206,10 @@ public class Dendrogram implements Externalizable {
 		int currentIndex = index;
 		while (count < n) {
 			if (currentIndex < nonLeafCount) {
-				intList.add(mRightIndices[currentIndex]);
-				currentIndex = mLeftIndices[currentIndex];
+				intList.add(mRightIndices.get(currentIndex));
+				currentIndex = mLeftIndices.get(currentIndex);
 			} else {
-				rtn[count++] = mNodeIDs[currentIndex];
+				rtn[count++] = mNodeIDs.get(currentIndex);
 				int lastIndex = intList != null ? intList.size() - 1 : -1;
 				if (lastIndex >= 0) {
 					currentIndex = intList.get(lastIndex);
@@ -890,7 +1221,7 @@ public class Dendrogram implements Externalizable {
 		return rtn;
 	}
 
-	public synchronized List<int[]> generateClusterGroupings(int clustersDesired) {
+	public List<int[]> generateClusterGroupings(int clustersDesired) {
 	    
             // Ensures current level == 0.
             checkFinished();
@@ -900,7 +1231,7 @@ public class Dendrogram implements Externalizable {
                                     + mLeafCount + " - 1)]: " + clustersDesired);
             }
 
-            int nodeCount = mNodeIDs.length;
+            int nodeCount = (2*mLeafCount - 1);
             BitVector bits = new BitVector(nodeCount);
 
             List<int[]> clusters = new ArrayList<int[]>(clustersDesired);
@@ -918,11 +1249,11 @@ public class Dendrogram implements Externalizable {
                             // from also being turned into clusters.
                             int ci = i;
                             while (true) {
-                                    if (ci < mLeftIndices.length) {
-                                            bits.set(mLeftIndices[ci]);
-                                            bits.set(mRightIndices[ci]);
-                                            intList.add(mRightIndices[ci]);
-                                            ci = mLeftIndices[ci];
+                                    if (ci < (mLeafCount - 1)) {
+                                            bits.set(mLeftIndices.get(ci));
+                                            bits.set(mRightIndices.get(ci));
+                                            intList.add(mRightIndices.get(ci));
+                                            ci = mLeftIndices.get(ci);
                                     } else {
                                             int lastIndex = intList.size() - 1;
                                             if (lastIndex >= 0) {
@@ -939,7 +1270,7 @@ public class Dendrogram implements Externalizable {
             return clusters;
 	}
 	
-	public synchronized ClusterList generateClusters(int clustersDesired,
+	public ClusterList generateClusters(int clustersDesired,
 			CoordinateList cs) {
 
 		// Ensures current level == 0.
@@ -963,7 +1294,7 @@ public class Dendrogram implements Externalizable {
 		return new ClusterList(clusters);
 	}
 	
-	public synchronized ClusterList generateOptimalClusters(CoordinateList cs) {
+	public ClusterList generateOptimalClusters(CoordinateList cs) {
 
 	    // Ensures current level == 0.
         checkFinished();
@@ -1006,14 +1337,18 @@ public class Dendrogram implements Externalizable {
 		}
 		
 		if (!mCoherencesComputed) {
-			computeCoherences();
+			synchronized (this) {
+				if (!mCoherencesComputed) {
+					computeCoherences();
+				}
+			}
 		}
 
 		int nonLeafCount = mLeafCount - 1;
 
 		int clusters = mLeafCount;
 		for (int i = 0; i < nonLeafCount; i++) {
-			if (mCoherences[i] >= coherence) {
+			if (mCoherences.get(i) >= coherence) {
 				clusters = i + 1;
 				break;
 			}
@@ -1031,14 +1366,14 @@ public class Dendrogram implements Externalizable {
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
         out.writeInt(EXTERNALIZABLE_VERSION);
-        writeIntArray(out, this.mNodeIDs);
-        writeIntArray(out, this.mParentIndices);
-        writeIntArray(out, this.mLeftIndices);
-        writeIntArray(out, this.mRightIndices);
-        writeIntArray(out, this.mSizes);
-        writeIntArray(out, this.mIndicesForIDs);
-        writeDoubleArray(out, this.mDistances);
-        writeDoubleArray(out, this.mCoherences);
+        writeIntArray(out, toArray(this.mNodeIDs));
+        writeIntArray(out, toArray(this.mParentIndices));
+        writeIntArray(out, toArray(this.mLeftIndices));
+        writeIntArray(out, toArray(this.mRightIndices));
+        writeIntArray(out, toArray(this.mSizes));
+        writeIntArray(out, toArray(this.mIndicesForIDs));
+        writeDoubleArray(out, toArray(this.mDistances));
+        writeDoubleArray(out, toArray(this.mCoherences));
         out.writeInt(mLeafCount);
         out.writeInt(mCurrentLevel);
     }
@@ -1050,16 +1385,37 @@ public class Dendrogram implements Externalizable {
         if (version != EXTERNALIZABLE_VERSION) {
             throw new IOException("invalid version: " + version);
         }
-        this.mNodeIDs = readIntArray(in);
-        this.mParentIndices = readIntArray(in);
-        this.mLeftIndices = readIntArray(in);
-        this.mRightIndices = readIntArray(in);
-        this.mSizes = readIntArray(in);
-        this.mIndicesForIDs = readIntArray(in);
-        this.mDistances = readDoubleArray(in);
-        this.mCoherences = readDoubleArray(in);
+        this.mNodeIDs = IntBuffer.wrap(readIntArray(in));
+        this.mParentIndices = IntBuffer.wrap(readIntArray(in));
+        this.mLeftIndices = IntBuffer.wrap(readIntArray(in));
+        this.mRightIndices = IntBuffer.wrap(readIntArray(in));
+        this.mSizes = IntBuffer.wrap(readIntArray(in));
+        this.mIndicesForIDs = IntBuffer.wrap(readIntArray(in));
+        this.mDistances = DoubleBuffer.wrap(readDoubleArray(in));
+        this.mCoherences = DoubleBuffer.wrap(readDoubleArray(in));
         this.mLeafCount = in.readInt();
         this.mCurrentLevel = in.readInt();
+        this.mMappedSections = null;
+    }
+
+    // Returns the contents of the buffer, without copying if the buffer wraps 
+    // an array of the same length.
+    private static int[] toArray(IntBuffer buf) {
+        if (buf.hasArray() && buf.arrayOffset() == 0 && buf.array().length == buf.limit()) {
+            return buf.array();
+        }
+        int[] arr = new int[buf.limit()];
+        buf.duplicate().get(arr);
+        return arr;
+    }
+
+    private static double[] toArray(DoubleBuffer buf) {
+        if (buf.hasArray() && buf.arrayOffset() == 0 && buf.array().length == buf.limit()) {
+            return buf.array();
+        }
+        double[] arr = new double[buf.limit()];
+        buf.duplicate().get(arr);
+        return arr;
     }
 
 	public class Node {
@@ -1103,11 +1459,11 @@ public class Dendrogram implements Externalizable {
 		}
 
 		public double distance() {
-			return isLeaf() ? Double.NaN : mDistances[mLevel];
+			return isLeaf() ? Double.NaN : mDistances.get(mLevel);
 		}
 
 		public double coherence() {
-			return isLeaf() ? Double.NaN : mCoherences[mLevel];
+			return isLeaf() ? Double.NaN : mCoherences.get(mLevel);
 		}
 
 	}
@@ -6,12 +6,12 @@ import gov.pnnl.jac.geom.CoordinateMath;
 import gov.pnnl.jac.geom.SimpleCoordinateList;
 import gov.pnnl.jac.geom.distance.DistanceFunc;
 import gov.pnnl.jac.task.ProgressHandler;
-import gov.pnnl.jac.util.MethodTimer;
+import gov.pnnl.jac.task.TaskScheduler;
+import gov.pnnl.jac.util.Metrics;
 
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 
 public class FuzzyCMeansClusterTask extends ClusterTask {
@@ -103,7 +103,7 @@ public class FuzzyCMeansClusterTask extends ClusterTask {
 			}
 			
 			if (numThreads > 0) {
-				mThreadPool = Executors.newFixedThreadPool(numThreads);
+				mThreadPool = TaskScheduler.newComputeExecutor(numThreads);
 			}
 
 			initCenters(ph);
@@ -164,6 +164,7 @@ public class FuzzyCMeansClusterTask extends ClusterTask {
 				ph.postStep();
 
 				iteration++;
+				ITERATIONS.increment();
 
 				double errorChange = Math.abs(previousError - error);
 
@@ -203,11 +204,12 @@ public class FuzzyCMeansClusterTask extends ClusterTask {
 		return super.mClusters;
 	}
 
-	static MethodTimer.Marker MARKER;
+	private static final Metrics.Counter ITERATIONS = Metrics.counter("fuzzycmeans.iterations");
+	private static final Metrics.Timer CENTER_UPDATE = Metrics.timer("fuzzycmeans.centerUpdate");
 	
 	private void updateClusterCenters() throws Exception {
 
-		MARKER = MethodTimer.startMethodTimer(MARKER, null);
+		long start = CENTER_UPDATE.start();
 		
 		try {
 
@@ -218,17 +220,17 @@ public class FuzzyCMeansClusterTask extends ClusterTask {
 			}
 			
 		} finally {
-			MethodTimer.endMethodTimer(MARKER);
+			CENTER_UPDATE.stop(start);
 		}
 	}
 
-	private static MethodTimer.Marker UPDATE_DEGREES;
+	private static final Metrics.Timer ASSIGNMENT = Metrics.timer("fuzzycmeans.assignment");
 	
 	private void updateDegreesOfMembership() throws Exception {
 		
 		synchronized (mMFLock) {
 		
-			UPDATE_DEGREES = MethodTimer.startMethodTimer(UPDATE_DEGREES, null);
+			long start = ASSIGNMENT.start();
 
 			try {
 				if (mThreadPool != null) {
@@ -237,7 +239,7 @@ public class FuzzyCMeansClusterTask extends ClusterTask {
 					mMembershipUpdaters.get(0).call();
 				}
 			} finally {
-				MethodTimer.endMethodTimer(UPDATE_DEGREES);
+				ASSIGNMENT.stop(start);
 			}
 		}
 	}
@@ -300,13 +302,13 @@ public class FuzzyCMeansClusterTask extends ClusterTask {
 		return new ClusterList(clist.toArray(new Cluster[sz]));
 	}
 
-	private static MethodTimer.Marker CALC_ERROR;
+	private static final Metrics.Timer ERROR = Metrics.timer("fuzzycmeans.error");
 	
 	// This is the objective function we wish to minimize. It should decrease
 	// for every iteration.
 	private double calculateError() throws Exception {
 
-		CALC_ERROR = MethodTimer.startMethodTimer(CALC_ERROR, null);
+		long start = ERROR.start();
 
 		try {
 
@@ -326,16 +328,16 @@ public class FuzzyCMeansClusterTask extends ClusterTask {
 			
 		} finally {
 
-			MethodTimer.endMethodTimer(CALC_ERROR);
+			ERROR.stop(start);
 
 		}
 	}
 
-	private static MethodTimer.Marker INIT_CENTERS;
+	private static final Metrics.Timer SEEDING = Metrics.timer("fuzzycmeans.seeding");
 	
 	private void initCenters(ProgressHandler ph) {
 
-		INIT_CENTERS = MethodTimer.startMethodTimer(INIT_CENTERS, null);
+		long start = SEEDING.start();
 
 		try {
 
@@ -370,7 +372,7 @@ public class FuzzyCMeansClusterTask extends ClusterTask {
 
 		} finally {
 
-			MethodTimer.endMethodTimer(INIT_CENTERS);
+			SEEDING.stop(start);
 
 		}
 	}	
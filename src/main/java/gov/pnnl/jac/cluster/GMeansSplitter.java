@@ -20,7 +20,6 @@ package gov.pnnl.jac.cluster;
 
 import gov.pnnl.jac.geom.CoordinateList;
 import gov.pnnl.jac.geom.CoordinateMath;
-import gov.pnnl.jac.geom.FilteredCoordinateList;
 import gov.pnnl.jac.geom.SimpleCoordinateList;
 import gov.pnnl.jac.geom.distance.BasicDistanceMethod;
 import gov.pnnl.jac.geom.distance.DistanceFunc;
@@ -42,6 +41,13 @@ public class GMeansSplitter extends ClusterSplitter {
 
     private CoordinateList mCoordinates;
     private KMeansSplittingClusterTaskParams mParams;
+    
+    // The cluster last split, the coordinates of its members gathered by 
+    // gatherMembers(), and its members.  The gathered coordinates are used
+    // for the seeds, the local k-means, and the projection.
+    private Cluster mGatheredCluster;
+    private CoordinateList mGathered;
+    private int[] mGatheredMembers;
 
     public GMeansSplitter(CoordinateList coordinates,
             KMeansSplittingClusterTaskParams params) {
@@ -52,6 +58,19 @@ public class GMeansSplitter extends ClusterSplitter {
         mParams = params;
     }
 
+    @Override
+    protected Collection<Cluster> possiblySplitCluster(Cluster cluster) {
+        try {
+            return super.possiblySplitCluster(cluster);
+        } finally {
+            // Splitters are kept until all clusters have been considered,
+            // so don't hold onto the gathered coordinates.
+            mGatheredCluster = null;
+            mGathered = null;
+            mGatheredMembers = null;
+        }
+    }
+
     @Override
     protected boolean preferSplit(Cluster cluster, Collection<Cluster> children) {
         return !CoordinateMath
@@ -95,8 +114,9 @@ public class GMeansSplitter extends ClusterSplitter {
         int dim = mCoordinates.getDimensionCount();
         double[] projectedData = new double[n];
         double[] coords = new double[dim];
+        CoordinateList gathered = gather(cluster);
         for (int i = 0; i < n; i++) {
-            mCoordinates.getCoordinates(cluster.getMember(i), coords);
+            gathered.getCoordinates(i, coords);
             projectedData[i] = CoordinateMath.dotProduct(coords, projection);
         }
         return projectedData;
@@ -111,8 +131,7 @@ public class GMeansSplitter extends ClusterSplitter {
     private CoordinateList createTwoSeeds(Cluster cluster) {
         int dim = mCoordinates.getDimensionCount();
 
-        double[][] stats = ClusterStats.computeMeanAndVariance(mCoordinates,
-                cluster);
+        double[][] stats = ClusterStats.computeMeanAndVariance(gather(cluster));
 
         CoordinateList seeds = new SimpleCoordinateList(dim, 2);
 
@@ -129,22 +148,20 @@ public class GMeansSplitter extends ClusterSplitter {
     protected Collection<Cluster> runLocalKMeans(Cluster cluster,
             CoordinateList seeds) {
 
-        int[] members = cluster.getMembership();
-
-        FilteredCoordinateList fcs = new FilteredCoordinateList(members,
-                mCoordinates);
+        CoordinateList gathered = gather(cluster);
+        int[] members = mGatheredMembers;
         
         DistanceFunc distFunc = mParams.getDistanceFunc();
 
         KMeansClusterTaskParams.Builder builder = new KMeansClusterTaskParams.Builder(seeds.getCoordinateCount())
             .maxIterations(1000)
             .movesGoal(0)
-            .numWorkerThreads(1)
+            .numWorkerThreads(localWorkerThreads(members.length, mParams.getNumWorkerThreads()))
             .replaceEmptyClusters(false)
             .distanceFunc(distFunc)
             .seeder(new PreassignedSeeder(seeds));
         
-        KMeansClusterTask kmeans = new KMeansClusterTask(fcs, builder.build());
+        KMeansClusterTask kmeans = new KMeansClusterTask(gathered, builder.build());
         kmeans.run();
         
         ClusterList clusters = kmeans.getClusterList();
@@ -155,10 +172,23 @@ public class GMeansSplitter extends ClusterSplitter {
             Cluster c = clusters.getCluster(i);
             int[] indexes = c.getMembership();
             for (int j = 0; j < indexes.length; j++) {
-                indexes[j] = fcs.getWrappedIndex(indexes[j]);
+                indexes[j] = members[indexes[j]];
             }
             clusterList.add(new Cluster(indexes, c.getCenter()));
         }
         return clusterList;
     }
+
+    // Returns the coordinates of the members of the cluster gathered into a 
+    // list of their own, gathering them if the cluster was not the last one
+    // gathered.
+    private CoordinateList gather(Cluster cluster) {
+        if (cluster != mGatheredCluster) {
+            mGatheredMembers = cluster.getMembership();
+            mGathered = gatherMembers(mCoordinates, mGatheredMembers, 
+                    mParams.getGatherAsFloats());
+            mGatheredCluster = cluster;
+        }
+        return mGathered;
+    }
 }
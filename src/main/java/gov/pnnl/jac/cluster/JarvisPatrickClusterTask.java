@@ -8,9 +8,14 @@ import gov.pnnl.jac.geom.CoordinateList;
 import gov.pnnl.jac.geom.KDTree;
 import gov.pnnl.jac.geom.distance.DistanceFunc;
 import gov.pnnl.jac.task.*;
+import gov.pnnl.jac.util.Metrics;
 
 public class JarvisPatrickClusterTask extends ClusterTask {
 
+	private static final Metrics.Timer NEAREST_NEIGHBORS = Metrics.timer("jarvispatrick.nearestNeighbors");
+	private static final Metrics.Timer ASSIGNMENT = Metrics.timer("jarvispatrick.assignment");
+	private static final Metrics.Counter MERGES = Metrics.counter("jarvispatrick.merges");
+
 	public JarvisPatrickClusterTask(CoordinateList cs,
 			ClusterTaskParams params) {
 		super(cs, params);
@@ -70,7 +75,13 @@ public class JarvisPatrickClusterTask extends ClusterTask {
 	    // For now, assume we can compute the nearest neighbors of every
 	    // tuple once up front. (Might have to revisit this issue for large
 	    // numbers of tuples and large numbers for nearestNeighborsToExamine)
-	    int[][] nearestNeighbors = computeNearestNeighbors(ph, nearestNeighborsToExamine);
+	    int[][] nearestNeighbors;
+	    long start = NEAREST_NEIGHBORS.start();
+	    try {
+	      nearestNeighbors = computeNearestNeighbors(ph, nearestNeighborsToExamine);
+	    } finally {
+	      NEAREST_NEIGHBORS.stop(start);
+	    }
 
 	    // This ends the subsection of progress.
 	    ph.postEnd();
@@ -83,62 +94,68 @@ public class JarvisPatrickClusterTask extends ClusterTask {
 	    // Give this main assignment loop the remaining 5% of the progress.
 	    ph.subsection(0.05, remainingSteps);
 	    
-	    for (int i = 0; i < coordCount; i++) {
-
-	      int icluster = clusterAssignments[i];
-
-	      int[] inearestNeighbors = nearestNeighbors[i];
-
-	      for (int j = i + 1; j < coordCount; j++) {
-
-	        int jcluster = clusterAssignments[j];
-
-	        // If they're already both in the same cluster, there's no
-	        // reason to test further.
-	        //
-	        if (icluster < 0 || jcluster < 0 || icluster != jcluster) {
-
-	          // j must be one of i's nearest neighbors
-	          if (!mutualNN || Arrays.binarySearch(inearestNeighbors, j) >= 0) {
-
-	            int[] jnearestNeighbors = nearestNeighbors[j];
-
-	            // And i must be one of j's nearest neighbors.
-	            if (!mutualNN || Arrays.binarySearch(jnearestNeighbors, i) >= 0) {
-	              // If the overlap is large enough, place them in the same cluster.
-	              if (overlapAtLeast(inearestNeighbors, jnearestNeighbors,
-	                  nearestNeighborOverlap)) {
-	                // If they're already assigned to different clusters, merge
-	                // them.
-	                if (icluster >= 0 && jcluster >= 0) {
-	                  icluster = mergeClusters(icluster, jcluster,
-	                      clusterMemberships, clusterAssignments);
-	                  // Assign to i's cluster
-	                } else if (icluster >= 0) {
-	                  assignToCluster(j, icluster, clusterMemberships);
-	                  clusterAssignments[j] = icluster;
-	                  // Assign to j's cluster
-	                } else if (jcluster >= 0) {
-	                  assignToCluster(i, jcluster, clusterMemberships);
-	                  clusterAssignments[i] = jcluster;
-	                  icluster = jcluster;
-	                  // Assign them both to a new cluster, since neither are in a
-	                  // cluster already.
-	                } else {
-	                  icluster = assignToNextCluster(i, clusterMemberships);
-	                  assignToCluster(j, icluster, clusterMemberships);
-	                  clusterAssignments[i] = clusterAssignments[j] = icluster;
+	    start = ASSIGNMENT.start();
+	    try {
+	      for (int i = 0; i < coordCount; i++) {
+
+	        int icluster = clusterAssignments[i];
+
+	        int[] inearestNeighbors = nearestNeighbors[i];
+
+	        for (int j = i + 1; j < coordCount; j++) {
+
+	          int jcluster = clusterAssignments[j];
+
+	          // If they're already both in the same cluster, there's no
+	          // reason to test further.
+	          //
+	          if (icluster < 0 || jcluster < 0 || icluster != jcluster) {
+
+	            // j must be one of i's nearest neighbors
+	            if (!mutualNN || Arrays.binarySearch(inearestNeighbors, j) >= 0) {
+
+	              int[] jnearestNeighbors = nearestNeighbors[j];
+
+	              // And i must be one of j's nearest neighbors.
+	              if (!mutualNN || Arrays.binarySearch(jnearestNeighbors, i) >= 0) {
+	                // If the overlap is large enough, place them in the same cluster.
+	                if (overlapAtLeast(inearestNeighbors, jnearestNeighbors,
+	                    nearestNeighborOverlap)) {
+	                  // If they're already assigned to different clusters, merge
+	                  // them.
+	                  if (icluster >= 0 && jcluster >= 0) {
+	                    icluster = mergeClusters(icluster, jcluster,
+	                        clusterMemberships, clusterAssignments);
+	                    MERGES.increment();
+	                    // Assign to i's cluster
+	                  } else if (icluster >= 0) {
+	                    assignToCluster(j, icluster, clusterMemberships);
+	                    clusterAssignments[j] = icluster;
+	                    // Assign to j's cluster
+	                  } else if (jcluster >= 0) {
+	                    assignToCluster(i, jcluster, clusterMemberships);
+	                    clusterAssignments[i] = jcluster;
+	                    icluster = jcluster;
+	                    // Assign them both to a new cluster, since neither are in a
+	                    // cluster already.
+	                  } else {
+	                    icluster = assignToNextCluster(i, clusterMemberships);
+	                    assignToCluster(j, icluster, clusterMemberships);
+	                    clusterAssignments[i] = clusterAssignments[j] = icluster;
+	                  }
 	                }
 	              }
 	            }
 	          }
+
+	          ph.postStep();
 	        }
 
-	        ph.postStep();
 	      }
-
+	    } finally {
+	      ASSIGNMENT.stop(start);
 	    }
-	    
+
 	    // Finish the main assignment loop subsection.
 	    ph.postEnd();
 	    
@@ -254,7 +271,7 @@ public class JarvisPatrickClusterTask extends ClusterTask {
 	    if (workerCount > 1) {
 	        ExecutorService threadPool = null;
 	        try {
-	          threadPool = Executors.newFixedThreadPool(workerCount);
+	          threadPool = TaskScheduler.newComputeExecutor(workerCount);
 	          // This will block. However, canceling will cause execution
 	          // to stop when the workers post progress.
 	          threadPool.invokeAll(workers);
@@ -335,9 +352,8 @@ public class JarvisPatrickClusterTask extends ClusterTask {
 	        // not by tuple index.
 	        Arrays.sort(nn);
 	        nnArray[i] = nn;
-	        synchronized (ph) {
-	          ph.postStep();
-	        }
+	        // Safe to call from multiple workers.
+	        ph.postStep();
 	      }
 	      return null;
 	    }
@@ -18,14 +18,14 @@
  */
 package gov.pnnl.jac.cluster;
 
-import gov.pnnl.jac.collections.IntObjectHashMap;
+import gov.pnnl.jac.collections.IntObjectLinearHashMap;
 import gov.pnnl.jac.collections.IntObjectMap;
 import gov.pnnl.jac.geom.*;
 import gov.pnnl.jac.geom.distance.*;
 import gov.pnnl.jac.task.*;
+import gov.pnnl.jac.util.Metrics;
 import gov.pnnl.jac.util.SortUtils;
 
-import cern.colt.list.*;
 import java.util.concurrent.*;
 
 import java.util.*;
@@ -50,6 +50,12 @@ public class KMeansClusterTask extends ClusterTask {
     // The number of iterations over which to monitor the number of moves in
     // order to detect when caught in an oscillation.
     private static final int TRACK_MOVES_LEN = 10;
+
+    private static final Metrics.Timer SEEDING = Metrics.timer("kmeans.seeding");
+    private static final Metrics.Timer ASSIGNMENT = Metrics.timer("kmeans.assignment");
+    private static final Metrics.Timer CENTER_UPDATE = Metrics.timer("kmeans.centerUpdate");
+    private static final Metrics.Counter ITERATIONS = Metrics.counter("kmeans.iterations");
+    private static final Metrics.Counter MOVES = Metrics.counter("kmeans.moves");
     
     // The distance function.
     private DistanceFunc mDistanceFunc;
@@ -72,6 +78,17 @@ public class KMeansClusterTask extends ClusterTask {
     // during each iteration.
     private int[] mClusterAssignments;
     
+    // The index of the cluster to which each coordinate belongs, or -1 if it
+    // belongs to none.  This usually matches mClusterAssignments, but 
+    // unlike mClusterAssignments it also reflects membership given to clusters
+    // by splitting.  The memberships of the protoclusters are gathered from it
+    // after each round of assignments.
+    private int[] mLabels;
+    
+    // Flags for the clusters whose memberships changed in the latest
+    // round of assignments or by splitting.
+    private boolean[] mClusterChanged;
+    
     // The cluster seeder -- only set during use.  It's maintained
     // in case it's a kind of seeder such as KMeansPlusPlusSeeder that
     // may require canceling, so that this task can be cancelled in a 
@@ -80,6 +97,37 @@ public class KMeansClusterTask extends ClusterTask {
     
     // Set to true if it appears we may be caught in an assignment oscillation.
     private boolean mTrackMoves;
+    
+    // The sum of the distances between the coordinates and the centers of
+    // the clusters to which they were assigned in the latest round of assignments.
+    private double mDistortion = Double.NaN;
+    
+    // If set, told of the distortion after each iteration.
+    private AssignmentMonitor mAssignmentMonitor;
+    
+    // If set, the clusters from which to warm-start, and the indices of the 
+    // coordinates appended or modified since they were found.
+    private ClusterList mWarmStartClusters;
+    private int[] mWarmStartChanged;
+
+    /**
+     * Interface for an object told of the distortion after each iteration,
+     * which may end the clustering early.
+     */
+    interface AssignmentMonitor {
+        
+        /**
+         * Called after the assignments of each iteration.
+         * 
+         * @param iteration the number of iterations completed.
+         * @param distortion the sum of the distances between the coordinates
+         *   and the centers of the clusters to which they were assigned.
+         *   
+         * @return true to continue, false to stop clustering with the 
+         *   current clusters.
+         */
+        boolean assignmentsMade(int iteration, double distortion);
+    }
 
     /**
      * Fully-qualified constructor.
@@ -122,6 +170,35 @@ public class KMeansClusterTask extends ClusterTask {
     public void setInitCentersSamplingLimit(int samplingLimit) {
         mInitCentersSamplingLimit = samplingLimit;
     }
+    
+    /**
+     * Sets clusters found by an earlier run from which to start, in place of
+     * the seeds of the cluster seeder, for reclustering coordinates of which only
+     * a few have been appended or modified since the earlier run.  The
+     * coordinates start as members of their clusters in the earlier result, and
+     * the first round of assignments only assigns those which have changed, 
+     * along with any which were not members of an earlier cluster.  After 
+     * that, clustering proceeds as usual, but since the memberships of most 
+     * clusters are unchanged, the assignments only need to consider the few clusters 
+     * whose memberships did change.  The number of clusters is that of the earlier 
+     * result, rather than the number in the parameters.
+     * 
+     * <p>The earlier result should have been found by k-means over the same 
+     * coordinates, apart from the changed ones, with the same distance function, 
+     * and it should have converged.  Otherwise, coordinates may remain in clusters 
+     * other than their nearest.</p>
+     * 
+     * @param previous the earlier clusters, or null to cluster from the 
+     *   seeder's seeds.
+     * @param changedIndices the indices of the coordinates which have been appended
+     *   or modified since the earlier run.  Appended coordinates need not be 
+     *   included, since they do not belong to earlier clusters.  May be null.
+     */
+    public void setWarmStart(ClusterList previous, int[] changedIndices) {
+        mWarmStartClusters = previous;
+        mWarmStartChanged = previous != null && changedIndices != null ? 
+                (int[]) changedIndices.clone() : null;
+    }
 
     /**
      * Returns the algorithm name "k-means"
@@ -138,56 +215,36 @@ public class KMeansClusterTask extends ClusterTask {
     public DistanceFunc getDistanceFunc() {
         return mDistanceFunc;
     }
-
-    // Finds the nearest cluster to the coordinate with the
-    // given index. If not using a cache to store coordinate-to-cluster
-    // distances, coordBuf is used as a scratch buffer for fetching
-    // coordinates.
-    private int nearestCluster(int ndx, double[] coordBuf, DistanceFunc df) {
-
-        // If the nearest cluster from the previous iteration did not change in
-        // the previous iteration, then we can omit from consideration all those
-        // other clusters that also didn't change.  This optimization speeds up
-        // clustering by nearly a factor of 3!
-        //
-        int nearest = -1;
-        double min = Double.MAX_VALUE;
-        int oldNearest = mClusterAssignments[ndx];
-        boolean onlyConsiderChanged = false;
-
-        // Load up the coordinates, since we'll need 'em.
-        getCoordinateList().getCoordinates(ndx, coordBuf);
-
-        if (oldNearest >= 0) {
-            ProtoCluster oldCluster = mProtoClusters[oldNearest];
-            if (oldCluster.getConsiderForAssignment() && !oldCluster.getUpdateFlag()) {
-                onlyConsiderChanged = true;
-                nearest = oldNearest;
-                min = df.distanceBetween(coordBuf, mProtoClusters[oldNearest].mCenter);
-            }
-        }
-
-        int numClusters = mProtoClusters.length;
-        for (int c = 0; c < numClusters; c++) {
-            ProtoCluster cluster = mProtoClusters[c];
-            if (cluster.getConsiderForAssignment()) {
-                if (!onlyConsiderChanged || cluster.getUpdateFlag()) {
-                    double d = mDistanceFunc.distanceBetween(coordBuf,
-                            mProtoClusters[c].mCenter);
-                    if (d < min) {
-                        min = d;
-                        nearest = c;
-                    }
-                }
-            }
-        }
-
-        return nearest;
+    
+    /**
+     * Returns the sum of the distances between the coordinates and the centers
+     * of the clusters to which they were last assigned, or NaN if no assignments
+     * have been made.  Once the task has finished, the centers are those of the
+     * clusters in the result.
+     * 
+     * @return
+     */
+    public double getDistortion() {
+        return mDistortion;
+    }
+    
+    // Sets the monitor told of the distortion after each iteration.
+    void setAssignmentMonitor(AssignmentMonitor monitor) {
+        mAssignmentMonitor = monitor;
     }
 
     // Recomputes the centroids of the protoclusters with
     // update flags set to true.
     private void computeCenters() {
+        long start = CENTER_UPDATE.start();
+        try {
+            updateCenters();
+        } finally {
+            CENTER_UPDATE.stop(start);
+        }
+    }
+
+    private void updateCenters() {
         // Update the update flags of the clusters that haven't been deleted.
         // (Empty clusters are deleted in makeAssignments().)
         int numClusters = mProtoClusters.length;
@@ -202,7 +259,7 @@ public class KMeansClusterTask extends ClusterTask {
                 // splitting clusters with no bics will appear empty,
                 // so their flags will remain as they are with only
                 // the distance update flag true.
-                cluster.setUpdateFlag();
+                cluster.setUpdateFlag(mClusterChanged[c]);
             }
             checkForCancel();
         }
@@ -213,24 +270,133 @@ public class KMeansClusterTask extends ClusterTask {
     // Make the cluster assignments for a given iteration.
     //
     private int makeAssignments() {
-        // Checkpoint the clusters, so we'll be able to tell
-        // which have changed after all the assignments have been
-        // made.
-        int numClusters = mProtoClusters.length;
-        for (int c = 0; c < numClusters; c++) {
-            // This moves the current membership to the
-            // previous membership list. After making all the
-            // assignments setUpdateFlag() compares the lists to
-            // determine if the cluster center needs to be updated.
-            mProtoClusters[c].checkPoint();
+        long start = ASSIGNMENT.start();
+        try {
+            return assign();
+        } finally {
+            ASSIGNMENT.stop(start);
         }
+    }
+
+    private int assign() {
         // Delegate the bulk of the work to the subtask manager and
-        // its pool of worker threads.
-        mSubtaskManager.makeAssignments();
+        // its pool of worker threads.  The workers record the new 
+        // assignments in mLabels, and the subtask manager merges their 
+        // per-cluster counts and change flags.
+        int[] counts = mSubtaskManager.makeAssignments();
+        // If canceled, the workers may not have finished, so the counts
+        // cannot be trusted.
+        checkForCancel();
+        gatherMemberships(counts);
+        mDistortion = mSubtaskManager.getDistortion();
         // Get the number of moves from the subtask manager
         return mSubtaskManager.getMoves();
     }
 
+    // Assigns only the coordinates with the specified indices, leaving the others
+    // in their clusters.
+    private int makeAssignments(int[] indices) {
+        long start = ASSIGNMENT.start();
+        try {
+            int moves = mSubtaskManager.makeAssignments(indices);
+            checkForCancel();
+            int[] counts = new int[mProtoClusters.length];
+            int[] labels = mLabels;
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] >= 0) {
+                    counts[labels[i]]++;
+                }
+            }
+            gatherMemberships(counts);
+            return moves;
+        } finally {
+            ASSIGNMENT.stop(start);
+        }
+    }
+    
+    // Gives the coordinates the memberships of the warm-start clusters, except
+    // for the changed ones, whose former clusters are flagged as changed.  Returns
+    // the indices of the coordinates without memberships, in ascending order.
+    private int[] applyWarmStartMemberships() {
+        int coordCount = mLabels.length;
+        int numClusters = mProtoClusters.length;
+        for (int c = 0; c < numClusters; c++) {
+            int[] members = mWarmStartClusters.getCluster(c).getMembership();
+            for (int i = 0; i < members.length; i++) {
+                int m = members[i];
+                if (m < 0 || m >= coordCount) {
+                    error("warm-start cluster " + c + " has invalid member " + m);
+                }
+                mLabels[m] = c;
+                mClusterAssignments[m] = c;
+            }
+        }
+        if (mWarmStartChanged != null) {
+            for (int i = 0; i < mWarmStartChanged.length; i++) {
+                int ndx = mWarmStartChanged[i];
+                if (ndx < 0 || ndx >= coordCount) {
+                    error("invalid changed coordinate index: " + ndx);
+                }
+                int c = mLabels[ndx];
+                if (c >= 0) {
+                    mClusterChanged[c] = true;
+                    mLabels[ndx] = -1;
+                    mClusterAssignments[ndx] = -1;
+                }
+            }
+        }
+        int unassignedCount = 0;
+        for (int i = 0; i < coordCount; i++) {
+            if (mLabels[i] < 0) {
+                unassignedCount++;
+            }
+        }
+        int[] unassigned = new int[unassignedCount];
+        int n = 0;
+        for (int i = 0; i < coordCount; i++) {
+            if (mLabels[i] < 0) {
+                unassigned[n++] = i;
+            }
+        }
+        return unassigned;
+    }
+
+    // Rebuilds the membership arrays of the protoclusters from mLabels.  
+    // Since the labels are scanned in order, the memberships come out sorted.
+    private void gatherMemberships(int[] counts) {
+        int numClusters = mProtoClusters.length;
+        int[][] memberships = new int[numClusters][];
+        for (int c = 0; c < numClusters; c++) {
+            memberships[c] = mProtoClusters[c].resetMembership(counts[c]);
+        }
+        int[] filled = new int[numClusters];
+        int[] labels = mLabels;
+        int coordCount = labels.length;
+        for (int i = 0; i < coordCount; i++) {
+            int c = labels[i];
+            if (c >= 0) {
+                memberships[c][filled[c]++] = i;
+            }
+        }
+    }
+    
+    // Removes the members of a cluster that's been split from any cluster.
+    private void clearMembership(ProtoCluster cluster) {
+        int[] members = cluster.getMembership();
+        for (int i = 0; i < members.length; i++) {
+            mLabels[members[i]] = -1;
+        }
+    }
+    
+    // Assigns the members of a cluster made by splitting to the cluster.
+    private void setMembership(int c, ProtoCluster cluster) {
+        int[] members = cluster.getMembership();
+        for (int i = 0; i < members.length; i++) {
+            mLabels[members[i]] = c;
+        }
+        mClusterChanged[c] = true;
+    }
+
     private boolean replaceEmptyClusters() {
 
         boolean emptyClustersReplaced = false;
@@ -291,6 +457,9 @@ public class KMeansClusterTask extends ClusterTask {
                             if (newClusters.length == 2) {
                                 mProtoClusters[indices[count]] = newClusters[0];
                                 mProtoClusters[i] = newClusters[1];
+                                clearMembership(clusterToSplit);
+                                setMembership(indices[count], newClusters[0]);
+                                setMembership(i, newClusters[1]);
                                 replaced = true;
                                 emptyClustersReplaced = true;
                             }
@@ -363,6 +532,7 @@ public class KMeansClusterTask extends ClusterTask {
             ph.postBegin();
 
             mDistanceFunc = params.getDistanceFunc();
+            mDistortion = Double.NaN;
 
             CoordinateList cs = getCoordinateList();
             int coordCount = cs.getCoordinateCount();
@@ -382,7 +552,11 @@ public class KMeansClusterTask extends ClusterTask {
             // array mProtoClusters, and may reduce the actual number of
             // clusters if there are too few unique coordinates in the
             // coordinate set.
-            initCenters(ph);
+            if (mWarmStartClusters != null) {
+                initWarmStartCenters(ph);
+            } else {
+                initCenters(ph);
+            }
             
             ph.postMessage("initial cluster seeds generated");
             
@@ -393,11 +567,18 @@ public class KMeansClusterTask extends ClusterTask {
             // Trival case -- put everything in one big cluster.
             if (numClusters == 1) {
 
-                ProtoCluster cluster = mProtoClusters[0];
+                mLabels = new int[coordCount];
+                gatherMemberships(new int[] { coordCount });
+                mProtoClusters[0].updateCenter(cs);
+                
+                double[] center = mProtoClusters[0].mCenter;
+                double[] coords = new double[cs.getDimensionCount()];
+                double distortion = 0.0;
                 for (int i = 0; i < coordCount; i++) {
-                    cluster.add(i);
+                    distortion += mDistanceFunc.distanceBetween(
+                            cs.getCoordinates(i, coords), center);
                 }
-                cluster.updateCenter(cs);
+                mDistortion = distortion;
 
             } else { // More than 1 cluster, so we can perform k-means.
 
@@ -424,9 +605,22 @@ public class KMeansClusterTask extends ClusterTask {
                 mClusterAssignments = new int[coordCount];
                 // Init. to -1, meaning no coordinates assigned yet.
                 Arrays.fill(mClusterAssignments, -1);
-
-                // Make the initial cluster assignments.
-                makeAssignments();
+                
+                mLabels = new int[coordCount];
+                Arrays.fill(mLabels, -1);
+                mClusterChanged = new boolean[numClusters];
+
+                if (mWarmStartClusters != null) {
+                    // Start from the earlier memberships, assigning only the 
+                    // coordinates without them.
+                    int[] unassigned = applyWarmStartMemberships();
+                    makeAssignments(unassigned);
+                    ph.postMessage("warm start assigned " + unassigned.length + " of " 
+                            + coordCount + " coordinates");
+                } else {
+                    // Make the initial cluster assignments.
+                    makeAssignments();
+                }
                 
                 ph.postMessage("initial cluster assignments made");
                 
@@ -497,8 +691,16 @@ public class KMeansClusterTask extends ClusterTask {
                     
                     // Post a progress event.
                     it++;
+                    ITERATIONS.increment();
+                    MOVES.add(moves);
                     // Post a message about the number of moves.
                     ph.postMessage("moves in iteration " + it + " = " + moves);
+                    
+                    if (mAssignmentMonitor != null && 
+                            !mAssignmentMonitor.assignmentsMade(it, mDistortion)) {
+                        ph.postMessage("stopped after iteration " + it);
+                        break;
+                    }
 
                     if (moves <= movesGoal || it >= itLimit || caughtInOscillation) {
                         
@@ -572,6 +774,8 @@ public class KMeansClusterTask extends ClusterTask {
             mDistanceFunc = null;
             mProtoClusters = null;
             mClusterAssignments = null;
+            mLabels = null;
+            mClusterChanged = null;
             mPastProtoClusterStates = null;
             if (mSubtaskManager != null) {
                 mSubtaskManager.shutdown();
@@ -588,7 +792,7 @@ public class KMeansClusterTask extends ClusterTask {
         
         if (numLists > 1) {
             
-            IntObjectMap<int[]> stateMap = new IntObjectHashMap<int[]>();
+            IntObjectMap<int[]> stateMap = new IntObjectLinearHashMap<int[]>();
             List<Move> lastList = moveLists.get(numLists - 1);
             
             for (Move mv : lastList) {
@@ -665,6 +869,8 @@ public class KMeansClusterTask extends ClusterTask {
     //
     private void initCenters(ProgressHandler ph) {
 
+        long start = SEEDING.start();
+
         try {
             
             KMeansClusterTaskParams params = (KMeansClusterTaskParams) getParams();
@@ -701,10 +907,53 @@ public class KMeansClusterTask extends ClusterTask {
         } finally {
             
             mSeeder = null;
+
+            SEEDING.stop(start);
             
         }
     }
     
+    // Create the initial ProtoClusters from the centers of the warm-start clusters.
+    private void initWarmStartCenters(ProgressHandler ph) {
+        
+        long start = SEEDING.start();
+        
+        try {
+            
+            KMeansClusterTaskParams params = (KMeansClusterTaskParams) getParams();
+            
+            int dim = getCoordinateList().getDimensionCount();
+            int numClusters = mWarmStartClusters.getClusterCount();
+            
+            if (numClusters == 0) {
+                error("no warm-start clusters");
+            }
+            
+            if (numClusters != params.getNumClusters()) {
+                ph.postMessage("using the " + numClusters + " warm-start clusters instead of " 
+                        + params.getNumClusters());
+            }
+            
+            mProtoClusters = new ProtoCluster[numClusters];
+            
+            for (int c = 0; c < numClusters; c++) {
+                Cluster cluster = mWarmStartClusters.getCluster(c);
+                if (cluster.getDimensions() != dim) {
+                    error("warm-start cluster dimensions != coordinate dimensions: " 
+                            + cluster.getDimensions() + " != " + dim);
+                }
+                mProtoClusters[c] = new ProtoCluster(new int[0], cluster.getCenter());
+            }
+            
+            ph.postMessage("cluster centers initialized from warm-start clusters");
+            
+        } finally {
+            
+            SEEDING.stop(start);
+            
+        }
+    }
+
     private static class ProtoClusterState {
         
         private int[] mMembers;
@@ -796,13 +1045,17 @@ public class KMeansClusterTask extends ClusterTask {
         }
     }
 
-    private static class ProtoCluster {
+    private static final int[] EMPTY_MEMBERSHIP = new int[0];
 
-        private IntArrayList mPreviousMembership = new IntArrayList();
+    private static class ProtoCluster {
 
-        private IntArrayList mCurrentMembership = new IntArrayList();
+        // Indexes of the members, in ascending order.
+        private int[] mMembership = EMPTY_MEMBERSHIP;
 
         private double[] mCenter;
+        
+        // Sum of the squares of mCenter, needed by sparse distance functions.
+        private double mCenterSquaredNorm;
 
         private boolean mUpdateFlag;
 
@@ -815,62 +1068,54 @@ public class KMeansClusterTask extends ClusterTask {
             for (int i = 0; i < dim; i++) {
                 mCenter[i] = point.getCoordinate(i);
             }
+            mCenterSquaredNorm = CoordinateMath.squaredNorm(mCenter);
         }
 
         ProtoCluster(int[] membership, double[] center) {
-            int n = membership.length;
-            for (int i = 0; i < n; i++) {
-                mCurrentMembership.add(membership[i]);
-            }
-            mCurrentMembership.trimToSize();
+            mMembership = membership;
             mCenter = center;
+            mCenterSquaredNorm = CoordinateMath.squaredNorm(mCenter);
         }
 
         // Returns the Bayes Information Criterion. Must only be called AFTER
         // the center has
         // been updated.
         double computeBIC(CoordinateList cs) {
-            mCurrentMembership.trimToSize();
             return ClusterStats.computeBIC(cs, new Cluster[] { new Cluster(
-                    mCurrentMembership.elements(), mCenter) });
+                    mMembership, mCenter) });
         }
 
         int size() {
-            return mCurrentMembership.size();
+            return mMembership.length;
         }
 
         int[] getMembership() {
-            mCurrentMembership.trimToSize();
-            return mCurrentMembership.elements();
+            return mMembership;
+        }
+        
+        // Returns an array of the specified size to be filled with the
+        // membership, reusing the current array if it's the right size.
+        int[] resetMembership(int size) {
+            if (mMembership.length != size) {
+                mMembership = size > 0 ? new int[size] : EMPTY_MEMBERSHIP;
+            }
+            return mMembership;
         }
         
         double[] getCenter() {
             return mCenter;
         }
-
-        synchronized void add(int ndx) {
-            mCurrentMembership.add(ndx);
+        
+        double getCenterSquaredNorm() {
+            return mCenterSquaredNorm;
         }
 
         boolean isEmpty() {
-            return mCurrentMembership.size() == 0;
-        }
-
-        void setUpdateFlag() {
-            mCurrentMembership.trimToSize();
-            // Must sort the elements! Since multiple threads may be calling
-            // making the cluster assignments, the coordinates may be added out
-            // of order. Have to ensure both mCurrentMembership and
-            // mPreviousMembership are sorted before the equality check.
-            Arrays.sort(mCurrentMembership.elements());
-            mUpdateFlag = !mPreviousMembership.equals(mCurrentMembership);
+            return mMembership.length == 0;
         }
 
-        void checkPoint() {
-            mPreviousMembership.clear();
-            mPreviousMembership.addAllOf(mCurrentMembership);
-            mPreviousMembership.trimToSize();
-            mCurrentMembership.clear();
+        void setUpdateFlag(boolean membershipChanged) {
+            mUpdateFlag = membershipChanged;
         }
 
         boolean getConsiderForAssignment() {
@@ -886,8 +1131,9 @@ public class KMeansClusterTask extends ClusterTask {
         }
 
         void updateCenter(CoordinateList cs) {
-            if (mCurrentMembership.size() > 0) {
-                cs.computeAverage(mCurrentMembership.elements(), mCenter);
+            if (mMembership.length > 0) {
+                cs.computeAverage(mMembership, mCenter);
+                mCenterSquaredNorm = CoordinateMath.squaredNorm(mCenter);
             }
         }
     }
@@ -952,7 +1198,7 @@ public class KMeansClusterTask extends ClusterTask {
             }
 
             if (numWorkers > 1) {
-                mThreadPool = Executors.newFixedThreadPool(numWorkers);
+                mThreadPool = TaskScheduler.newComputeExecutor(numWorkers);
             }
         }
 
@@ -964,13 +1210,13 @@ public class KMeansClusterTask extends ClusterTask {
             }
         }
 
-        // Update the cluster centers.
-        boolean makeAssignments() {
-            boolean ok = false;
+        // Make the assignments, then merge the workers' counts of members
+        // in each cluster, which are returned, and their flags for the clusters 
+        // whose memberships changed into mClusterChanged.
+        int[] makeAssignments() {
             if (mThreadPool != null) {
                 try {
                     mThreadPool.invokeAll(mAssigners);
-                    ok = true;
                 } catch (InterruptedException ex) {
                     // Can occur if you cancel while the assigners are working.
                     if (!isCancelled()) {
@@ -981,12 +1227,66 @@ public class KMeansClusterTask extends ClusterTask {
                 try {
                     // No thread pool, so call the single worker directly.
                     mAssigners.get(0).call();
-                    ok = true;
                 } catch (Exception ex) {
                     Logger.getLogger(KMeansClusterTask.class.getName()).log(Level.SEVERE, null, ex);
                 }
             }
-            return ok;
+            int numClusters = mProtoClusters.length;
+            int[] counts = new int[numClusters];
+            Arrays.fill(mClusterChanged, false);
+            for (MakeAssignments m : mAssigners) {
+                int[] workerCounts = m.getCounts();
+                boolean[] workerChanged = m.getChanged();
+                for (int c = 0; c < numClusters; c++) {
+                    counts[c] += workerCounts[c];
+                    if (workerChanged[c]) {
+                        mClusterChanged[c] = true;
+                    }
+                }
+            }
+            return counts;
+        }
+
+        // Make the assignments of only the coordinates with the specified indices,
+        // which are divided among workers like the coordinates.  Their flags for the 
+        // clusters whose memberships changed are added to mClusterChanged, and the 
+        // number of moves is returned.
+        int makeAssignments(int[] indices) {
+            int numWorkers = mAssigners.size();
+            List<MakeAssignments> assigners = new ArrayList<MakeAssignments>(numWorkers);
+            for (int w = 0; w < numWorkers; w++) {
+                int start = (int) ((long) w * indices.length / numWorkers);
+                int end = (int) ((long) (w + 1) * indices.length / numWorkers);
+                assigners.add(new MakeAssignments(start, end, indices));
+            }
+            if (mThreadPool != null) {
+                try {
+                    mThreadPool.invokeAll(assigners);
+                } catch (InterruptedException ex) {
+                    // Can occur if you cancel while the assigners are working.
+                    if (!isCancelled()) {
+                        Logger.getLogger(KMeansClusterTask.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                }
+            } else {
+                try {
+                    assigners.get(0).call();
+                } catch (Exception ex) {
+                    Logger.getLogger(KMeansClusterTask.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+            int numClusters = mProtoClusters.length;
+            int moves = 0;
+            for (MakeAssignments m : assigners) {
+                boolean[] workerChanged = m.getChanged();
+                for (int c = 0; c < numClusters; c++) {
+                    if (workerChanged[c]) {
+                        mClusterChanged[c] = true;
+                    }
+                }
+                moves += m.getMoves();
+            }
+            return moves;
         }
 
         // Compute the distances between the coordinates and those centers with
@@ -1019,6 +1319,14 @@ public class KMeansClusterTask extends ClusterTask {
             return moves;
         }
         
+        double getDistortion() {
+            double distortion = 0.0;
+            for (MakeAssignments m: mAssigners) {
+                distortion += m.getDistortion();
+            }
+            return distortion;
+        }
+        
         List<Move> getMoveList() {
             List<Move> moveList = null;
             if (mTrackMoves) {
@@ -1062,17 +1370,50 @@ public class KMeansClusterTask extends ClusterTask {
     private class MakeAssignments implements Callable<Void> {
 
         private int mStartCoord, mEndCoord;
+        // If non-null, the indices of the coordinates to assign, of which
+        // this worker assigns those from mStartCoord up to mEndCoord.
+        private int[] mIndices;
         private double[] mCoordBuf;
+        // Only allocated when the coordinates are floats and the distance
+        // function can operate on them directly.
+        private float[] mFloatBuf;
+        // Only allocated when the coordinates are sparse and the distance
+        // function can operate on their nonzeros directly.
+        private int[] mNonZeroIndices;
+        private double[] mNonZeroValues;
+        private int mNonZeroCount;
         private DistanceFunc mDistFunc;
         private int mMoves;
+        // Sum of the distances to the nearest centers.
+        private double mDistortion;
+        // The distance to the center found by nearestCluster().
+        private double mNearestDistance;
         private List<Move> mMoveList;
+        // The number of coordinates assigned to each cluster by this worker.
+        private int[] mCounts;
+        // Flags for the clusters which coordinates have joined or left.
+        private boolean[] mChanged;
         
         MakeAssignments(int startCoord, int endCoord) {
+            this(startCoord, endCoord, null);
+        }
+        
+        MakeAssignments(int startCoord, int endCoord, int[] indices) {
             mStartCoord = startCoord;
             mEndCoord = endCoord;
+            mIndices = indices;
             CoordinateList coords = getCoordinateList();
             mCoordBuf = new double[coords.getDimensionCount()];
             mDistFunc = (DistanceFunc) getDistanceFunc().clone();
+            mCounts = new int[mProtoClusters.length];
+            mChanged = new boolean[mProtoClusters.length];
+            if (coords instanceof SparseRowCoordinateList && mDistFunc instanceof SparseDistanceFunc) {
+                int maxNonZeros = ((SparseRowCoordinateList) coords).getMaxNonZeroCount();
+                mNonZeroIndices = new int[maxNonZeros];
+                mNonZeroValues = new double[maxNonZeros];
+            } else if (coords instanceof FloatCoordinateList && mDistFunc instanceof FloatDistanceFunc) {
+                mFloatBuf = new float[coords.getDimensionCount()];
+            }
         }
         
         public int getMoves() {
@@ -1083,16 +1424,114 @@ public class KMeansClusterTask extends ClusterTask {
             return mMoveList;
         }
         
+        double getDistortion() {
+            return mDistortion;
+        }
+        
+        int[] getCounts() {
+            return mCounts;
+        }
+        
+        boolean[] getChanged() {
+            return mChanged;
+        }
+        
+        // Loads the coordinate with the given index into whichever buffers
+        // are in use.
+        private void loadCoordinates(int ndx) {
+            if (mNonZeroIndices != null) {
+                mNonZeroCount = ((SparseRowCoordinateList) getCoordinateList()).getNonZeros(
+                    ndx, mNonZeroIndices, mNonZeroValues);
+            } else if (mFloatBuf != null) {
+                ((FloatCoordinateList) getCoordinateList()).getCoordinates(ndx, mFloatBuf);
+            } else {
+                getCoordinateList().getCoordinates(ndx, mCoordBuf);
+            }
+        }
+        
+        // Computes the distance from the coordinate last loaded to the
+        // center of the cluster.
+        private double distanceTo(ProtoCluster cluster) {
+            if (mNonZeroIndices != null) {
+                return ((SparseDistanceFunc) mDistFunc).distanceBetween(mNonZeroIndices, 
+                    mNonZeroValues, mNonZeroCount, cluster.mCenter, cluster.getCenterSquaredNorm());
+            } else if (mFloatBuf != null) {
+                return ((FloatDistanceFunc) mDistFunc).distanceBetween(mFloatBuf, cluster.mCenter);
+            }
+            return mDistFunc.distanceBetween(mCoordBuf, cluster.mCenter);
+        }
+
+        // Finds the nearest cluster to the coordinate with the
+        // given index.
+        private int nearestCluster(int ndx) {
+
+            // If the nearest cluster from the previous iteration did not change in
+            // the previous iteration, then we can omit from consideration all those
+            // other clusters that also didn't change.  This optimization speeds up
+            // clustering by nearly a factor of 3!
+            //
+            int nearest = -1;
+            double min = Double.MAX_VALUE;
+            int oldNearest = mClusterAssignments[ndx];
+            boolean onlyConsiderChanged = false;
+
+            // Load up the coordinates, since we'll need 'em.
+            loadCoordinates(ndx);
+
+            if (oldNearest >= 0) {
+                ProtoCluster oldCluster = mProtoClusters[oldNearest];
+                if (oldCluster.getConsiderForAssignment() && !oldCluster.getUpdateFlag()) {
+                    onlyConsiderChanged = true;
+                    nearest = oldNearest;
+                    min = distanceTo(oldCluster);
+                }
+            }
+
+            int numClusters = mProtoClusters.length;
+            for (int c = 0; c < numClusters; c++) {
+                ProtoCluster cluster = mProtoClusters[c];
+                if (cluster.getConsiderForAssignment()) {
+                    if (!onlyConsiderChanged || cluster.getUpdateFlag()) {
+                        double d = distanceTo(cluster);
+                        if (d < min) {
+                            min = d;
+                            nearest = c;
+                        }
+                    }
+                }
+            }
+
+            mNearestDistance = min;
+            return nearest;
+        }
+        
         public Void call() throws Exception {
             try {
                 mMoves = 0;
+                mDistortion = 0.0;
+                Arrays.fill(mCounts, 0);
+                Arrays.fill(mChanged, false);
                 if (mTrackMoves) {
                     mMoveList = new ArrayList<Move> ();
                 }
-                for (int i = mStartCoord; i < mEndCoord; i++) {
-                    int c = nearestCluster(i, mCoordBuf, mDistFunc);
+                for (int n = mStartCoord; n < mEndCoord; n++) {
+                    int i = mIndices != null ? mIndices[n] : n;
+                    int c = nearestCluster(i);
+                    // Each worker has its own range of labels, so no
+                    // synchronization is needed.
+                    int label = mLabels[i];
+                    if (label != c) {
+                        if (label >= 0) {
+                            mChanged[label] = true;
+                        }
+                        if (c >= 0) {
+                            mChanged[c] = true;
+                        }
+                        mLabels[i] = c;
+                    }
                     if (c >= 0) {
-                        mProtoClusters[c].add(i);
+                        mCounts[c]++;
+                        mDistortion += mNearestDistance;
                         if (mClusterAssignments[i] != c) {
                             if (mTrackMoves) {
                                 mMoveList.add(new Move(i, mClusterAssignments[i], c));
@@ -61,15 +61,9 @@ public class KMeansPlusPlusSeeder extends RandomSeeder {
 		return potentialSeeds;
 	}
 	
-    public synchronized CoordinateList generateSeeds(final CoordinateList coords, int numSeeds) {
-
-            long seed = this.getRandomSeed();
-            if (seed == 0L) {
-                seed = System.currentTimeMillis();
-            }
-
-            Random random = this.getRandom();
-            random.setSeed(seed);
+    @Override
+    protected CoordinateList generateSeeds(final CoordinateList coords, int numSeeds, 
+            final Random random) {
 
             final int coordCount = coords.getCoordinateCount();
             final int coordLen = coords.getDimensionCount();
@@ -8,6 +8,8 @@ import gov.pnnl.jac.geom.distance.DistanceFunc;
 import gov.pnnl.jac.task.ProgressHandler;
 import gov.pnnl.jac.task.TaskEvent;
 import gov.pnnl.jac.task.TaskListener;
+import gov.pnnl.jac.task.TaskScheduler;
+import gov.pnnl.jac.util.Metrics;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -18,7 +20,6 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -26,6 +27,10 @@ import java.util.concurrent.TimeUnit;
 
 public abstract class KMeansSplittingClusterTask extends ClusterTask {
     
+    private static final Metrics.Timer SPLIT_TEST = Metrics.timer("kmeanssplitting.splitTest");
+    private static final Metrics.Counter SPLITS = Metrics.counter("kmeanssplitting.splits");
+    private static final Metrics.Counter ITERATIONS = Metrics.counter("kmeanssplitting.iterations");
+
 	private CoordinateList mInitialClusterSeeds;
 	
     public KMeansSplittingClusterTask(CoordinateList cs, 
@@ -83,7 +88,7 @@ public abstract class KMeansSplittingClusterTask extends ClusterTask {
         try {
             
             if (numWorkerThreads > 1) {
-                threadPool = Executors.newFixedThreadPool(numWorkerThreads);
+                threadPool = TaskScheduler.newComputeExecutor(numWorkerThreads);
             }
 
             int minClusters = Math.max(1, params.getMinClusters());
@@ -188,6 +193,7 @@ public abstract class KMeansSplittingClusterTask extends ClusterTask {
                 workingList = new ClusterList(c);
                 
                 iteration++;
+                ITERATIONS.increment();
                 
                 int pctSplit = (int) (0.5 + 100.0 * ((double) mSplits)/numClusters);
                 
@@ -365,6 +371,7 @@ public abstract class KMeansSplittingClusterTask extends ClusterTask {
 
     private void incrementSplits() {
         mSplits++;
+        SPLITS.increment();
     }
 
     class SplitCallable implements Callable<Collection<Cluster>> {
@@ -378,7 +385,12 @@ public abstract class KMeansSplittingClusterTask extends ClusterTask {
         }
 
         public Collection<Cluster> call() throws Exception {
-            return mSplitter.possiblySplitCluster(mCluster);
+            long start = SPLIT_TEST.start();
+            try {
+                return mSplitter.possiblySplitCluster(mCluster);
+            } finally {
+                SPLIT_TEST.stop(start);
+            }
         }
     }
 }
@@ -43,6 +43,9 @@ public class KMeansSplittingClusterTaskParams implements ClusterTaskParams {
 
     private ClusterSeeder mSeeder;   
 
+    // If true, the members of clusters being split are gathered as floats.
+    private boolean mGatherAsFloats;
+
     public KMeansSplittingClusterTaskParams(int numWorkerThreads,
             DistanceFunc distanceFunc, ClusterSeeder seeder, int minClusters,
             int maxClusters) {
@@ -132,6 +135,22 @@ public class KMeansSplittingClusterTaskParams implements ClusterTaskParams {
         mSeeder = seeder;
     }
 
+    /**
+     * Returns whether the coordinates of the members of clusters being split
+     * are copied into float buffers rather than double buffers for the local
+     * k-means runs.  This halves the memory used, but for coordinate lists 
+     * holding doubles, it loses precision and may change the splits.
+     * 
+     * @return
+     */
+    public boolean getGatherAsFloats() {
+        return mGatherAsFloats;
+    }
+
+    public void setGatherAsFloats(boolean b) {
+        mGatherAsFloats = b;
+    }
+
     public int hashCode() {
         int hc = mNumWorkerThreads;
         hc = 31 * hc + mMinClusters;
@@ -139,6 +158,7 @@ public class KMeansSplittingClusterTaskParams implements ClusterTaskParams {
         hc = 31 * hc + mDistanceFunc.hashCode();
         hc = 31 * hc + mSeeder.hashCode();
         hc = 31 * hc + HashFunctions.hash(mMinClusterToMeanThreshold);
+        hc = 31 * hc + (mGatherAsFloats ? 1 : 0);
         return hc;
     }
 
@@ -150,6 +170,7 @@ public class KMeansSplittingClusterTaskParams implements ClusterTaskParams {
             return this.mMinClusters == other.mMinClusters
             && this.mMaxClusters == other.mMaxClusters
             && this.mNumWorkerThreads == other.mNumWorkerThreads
+            && this.mGatherAsFloats == other.mGatherAsFloats
             && Double.doubleToLongBits(this.mMinClusterToMeanThreshold) ==
                 Double.doubleToLongBits(other.mMinClusterToMeanThreshold)
             && this.mDistanceFunc.equals(other.mDistanceFunc)
@@ -194,6 +215,11 @@ public class KMeansSplittingClusterTaskParams implements ClusterTaskParams {
             return this;
         }
 
+        public Builder gatherAsFloats(boolean b) {
+            mParams.setGatherAsFloats(b);
+            return this;
+        }
+
         public KMeansSplittingClusterTaskParams build() {
             return mParams;
         }
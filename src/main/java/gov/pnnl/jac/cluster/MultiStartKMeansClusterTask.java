@@ -0,0 +1,261 @@
+package gov.pnnl.jac.cluster;
+
+import gov.pnnl.jac.geom.CoordinateList;
+import gov.pnnl.jac.task.ProgressHandler;
+import gov.pnnl.jac.task.TaskOutcome;
+import gov.pnnl.jac.task.TaskScheduler;
+import gov.pnnl.jac.util.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Runs k-means several times from different initial centers and keeps the
+ * best result, since the quality of a k-means result depends heavily on its
+ * initial centers.  The runs share the coordinates and proceed concurrently,
+ * dividing the worker threads among them.  The result is that of the run with
+ * the lowest distortion, the sum of the distances between coordinates and
+ * their cluster centers, or with the highest Bayes Information Criterion,
+ * as the parameters specify.</p>
+ *
+ * <p>After each iteration, every run compares its distortion to the lowest
+ * distortion of any run so far.  A run whose distortion exceeds that by more
+ * than the abandon margin of the parameters, after a few iterations to
+ * settle, is abandoned, so its threads go to the other runs.  Since the
+ * runs are compared by distortion, this may abandon runs that would have
+ * had the best BIC, though that is unlikely for runs far behind.  Which runs
+ * are abandoned depends on how far along the others are, so it may vary
+ * from one execution to the next.</p>
+ */
+public class MultiStartKMeansClusterTask extends ClusterTask {
+
+    // Number of iterations a run completes before it may be abandoned.
+    private static final int MIN_ITERATIONS = 3;
+
+    private static final Metrics.Counter ABANDONED = Metrics.counter("multistart.abandoned");
+
+    // The runs currently in progress, so they can be cancelled.
+    private volatile KMeansClusterTask[] mRuns;
+
+    // Results of the latest execution.
+    private int mSelectedRestart = -1;
+    private double[] mDistortions;
+    private boolean[] mAbandoned;
+
+    // The lowest distortion of any run in the current execution.
+    private double mBestDistortion;
+
+    public MultiStartKMeansClusterTask(CoordinateList cs,
+            MultiStartKMeansClusterTaskParams params) {
+        super(cs, params);
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return "multi-start k-means";
+    }
+
+    /**
+     * Returns the index of the run whose result was selected, or -1 if the
+     * task has not finished successfully.
+     */
+    public int getSelectedRestart() {
+        return mSelectedRestart;
+    }
+
+    /**
+     * Returns the distortion of each run when it ended, or null if the task
+     * has not finished successfully.  Abandoned runs have the distortion of their
+     * last iteration.
+     */
+    public double[] getDistortions() {
+        return mDistortions != null ? (double[]) mDistortions.clone() : null;
+    }
+
+    /**
+     * Returns whether the specified run was abandoned for falling behind.
+     */
+    public boolean isAbandoned(int restart) {
+        return mAbandoned != null && mAbandoned[restart];
+    }
+
+    @Override
+    protected ClusterList doTask() throws Exception {
+
+        final CoordinateList cs = getCoordinateList();
+        if (cs.getCoordinateCount() == 0) {
+            error("zero coordinates");
+        }
+
+        MultiStartKMeansClusterTaskParams params = (MultiStartKMeansClusterTaskParams) getParams();
+
+        mSelectedRestart = -1;
+        mDistortions = null;
+        mAbandoned = null;
+
+        final int numRestarts = params.getNumRestarts();
+        int threads = params.getNumWorkerThreads();
+        if (threads <= 0) {
+            threads = TaskScheduler.getComputeParallelism();
+        }
+        int concurrentRuns = Math.min(numRestarts, threads);
+        int threadsPerRun = Math.max(1, threads / concurrentRuns);
+
+        ProgressHandler ph = new ProgressHandler(this, numRestarts + 1);
+        ph.postBegin();
+        ph.postMessage(numRestarts + " runs, " + concurrentRuns + " at a time with " +
+                threadsPerRun + " threads each");
+
+        KMeansClusterTaskParams[] runParams = params.createRunParams(threadsPerRun);
+        final double abandonMargin = params.getAbandonMargin();
+        final boolean[] abandoned = new boolean[numRestarts];
+        mBestDistortion = Double.MAX_VALUE;
+
+        final KMeansClusterTask[] runs = new KMeansClusterTask[numRestarts];
+        List<Callable<Void>> callables = new ArrayList<Callable<Void>>(numRestarts);
+        for (int r = 0; r < numRestarts; r++) {
+            final int restart = r;
+            final KMeansClusterTask run = new KMeansClusterTask(cs, runParams[r]);
+            run.setAssignmentMonitor(new KMeansClusterTask.AssignmentMonitor() {
+                public boolean assignmentsMade(int iteration, double distortion) {
+                    return continueRun(restart, iteration, distortion, abandonMargin, abandoned);
+                }
+            });
+            runs[r] = run;
+            callables.add(new Callable<Void>() {
+                public Void call() {
+                    if (!isCancelled()) {
+                        run.run();
+                    }
+                    return null;
+                }
+            });
+        }
+
+        mRuns = runs;
+        try {
+            if (concurrentRuns == 1) {
+                for (Callable<Void> callable : callables) {
+                    callable.call();
+                    checkForCancel();
+                    ph.postStep();
+                }
+            } else {
+                ExecutorService threadPool = TaskScheduler.newComputeExecutor(concurrentRuns);
+                try {
+                    for (Future<Void> future : threadPool.invokeAll(callables)) {
+                        future.get();
+                        ph.postStep();
+                    }
+                } finally {
+                    threadPool.shutdownNow();
+                }
+            }
+        } finally {
+            mRuns = null;
+        }
+
+        checkForCancel();
+
+        double[] distortions = new double[numRestarts];
+        for (int r = 0; r < numRestarts; r++) {
+            KMeansClusterTask run = runs[r];
+            if (run.getTaskOutcome() != TaskOutcome.SUCCESS) {
+                String msg = run.getErrorMessage();
+                error("run " + r + " failed" + (msg != null ? ": " + msg : ""));
+            }
+            distortions[r] = run.getDistortion();
+        }
+
+        // Choose the best of the runs that finished, or of all of them in the
+        // unlikely event that every one was abandoned.
+        MultiStartKMeansClusterTaskParams.Selection selection = params.getSelection();
+        int best = selectRun(cs, runs, abandoned, false, selection);
+        if (best < 0) {
+            best = selectRun(cs, runs, abandoned, true, selection);
+        }
+        if (best < 0) {
+            // All the scores were NaN.
+            best = 0;
+        }
+
+        int abandonedCount = 0;
+        for (int r = 0; r < numRestarts; r++) {
+            if (abandoned[r]) {
+                abandonedCount++;
+            }
+        }
+        ABANDONED.add(abandonedCount);
+
+        ph.postMessage("run " + best + " selected; " + abandonedCount + " of " +
+                numRestarts + " runs abandoned");
+
+        mDistortions = distortions;
+        mAbandoned = abandoned;
+        mSelectedRestart = best;
+
+        ClusterList clusters = runs[best].getClusterList();
+        setClusterList(clusters);
+
+        ph.postStep();
+
+        ph.postEnd();
+
+        return clusters;
+    }
+
+    // Returns the index of the best run, or -1 if none have scores.
+    private static int selectRun(CoordinateList cs, KMeansClusterTask[] runs, boolean[] abandoned,
+            boolean includeAbandoned, MultiStartKMeansClusterTaskParams.Selection selection) {
+        int best = -1;
+        double bestScore = 0.0;
+        for (int r = 0; r < runs.length; r++) {
+            if (abandoned[r] && !includeAbandoned) {
+                continue;
+            }
+            double score;
+            if (selection == MultiStartKMeansClusterTaskParams.Selection.BIC) {
+                // Higher BICs are better.
+                score = -ClusterStats.computeBIC(cs, runs[r].getClusterList());
+            } else {
+                score = runs[r].getDistortion();
+            }
+            if (!Double.isNaN(score) && (best < 0 || score < bestScore)) {
+                best = r;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    // Called by each run after each iteration to update the lowest distortion
+    // and decide whether to continue the run.
+    private synchronized boolean continueRun(int restart, int iteration, double distortion,
+            double abandonMargin, boolean[] abandoned) {
+        if (distortion < mBestDistortion) {
+            mBestDistortion = distortion;
+        }
+        if (abandonMargin > 0.0 && iteration >= MIN_ITERATIONS &&
+                distortion > mBestDistortion * (1.0 + abandonMargin)) {
+            abandoned[restart] = true;
+            return false;
+        }
+        return !isCancelled();
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (super.cancel(mayInterruptIfRunning)) {
+            KMeansClusterTask[] runs = mRuns;
+            if (runs != null) {
+                for (KMeansClusterTask run : runs) {
+                    run.cancel(mayInterruptIfRunning);
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,309 @@
+package gov.pnnl.jac.cluster;
+
+import gov.pnnl.jac.geom.distance.*;
+import gov.pnnl.jac.util.ExceptionUtil;
+import gov.pnnl.jac.util.XoroshiroRandom;
+
+/**
+ * <p>Parameters for <tt>MultiStartKMeansClusterTask</tt>.</p>
+ */
+public class MultiStartKMeansClusterTaskParams implements ClusterTaskParams {
+
+    private static final long serialVersionUID = 4140238874421620921L;
+
+    public static final int DEFAULT_NUM_RESTARTS = 8;
+    public static final double DEFAULT_ABANDON_MARGIN = 0.25;
+
+    /**
+     * How the initial centers of each run are chosen.
+     */
+    public enum Seeding {
+        KMEANS_PLUS_PLUS, RANDOM
+    };
+
+    /**
+     * How the result is chosen from the runs.
+     */
+    public enum Selection {
+        // The run with the lowest distortion.
+        DISTORTION,
+        // The run with the highest Bayes Information Criterion.
+        BIC
+    };
+
+    // Desired number of clusters.
+    private int mNumClusters;
+    // Number of k-means runs from different initial centers.
+    private int mNumRestarts = DEFAULT_NUM_RESTARTS;
+    // Maximum number of iterations of each run.
+    private int mMaxIterations = Integer.MAX_VALUE;
+    // Number of moves in an iteration that, when not exceeded, ends a run.
+    private int mMovesGoal;
+    // If true, the runs attempt to replace empty clusters.
+    private boolean mReplaceEmptyClusters = true;
+    // The number of worker threads shared by the runs.
+    // If -1, then select based on the compute parallelism.
+    private int mNumWorkerThreads = -1;
+    // Seed from which the seeds of the runs are derived.
+    private long mRandomSeed;
+    // How the initial centers are chosen.
+    private Seeding mSeeding = Seeding.KMEANS_PLUS_PLUS;
+    // How the result is chosen.
+    private Selection mSelection = Selection.DISTORTION;
+    // A run is abandoned when its distortion exceeds the lowest distortion of
+    // any run by more than this fraction.  If not positive, runs are never abandoned.
+    private double mAbandonMargin = DEFAULT_ABANDON_MARGIN;
+    // The distance function.
+    private DistanceFunc mDistanceFunc;
+
+    public MultiStartKMeansClusterTaskParams(
+            int numClusters,
+            int numRestarts,
+            int maxIterations,
+            int movesGoal,
+            boolean replaceEmptyClusters,
+            int numWorkerThreads,
+            long randomSeed,
+            Seeding seeding,
+            Selection selection,
+            double abandonMargin,
+            DistanceFunc distanceFunc) {
+        ExceptionUtil.checkPositive(numClusters);
+        ExceptionUtil.checkPositive(numRestarts);
+        if (movesGoal < 0) {
+            throw new IllegalArgumentException("moves goal cannot be negative");
+        }
+        if (seeding == null || selection == null || distanceFunc == null) {
+            throw new NullPointerException();
+        }
+        mNumClusters = numClusters;
+        mNumRestarts = numRestarts;
+        if (maxIterations > 0) {
+            mMaxIterations = maxIterations;
+        }
+        mMovesGoal = movesGoal;
+        mReplaceEmptyClusters = replaceEmptyClusters;
+        if (numWorkerThreads > 0) {
+            mNumWorkerThreads = numWorkerThreads;
+        }
+        mRandomSeed = randomSeed;
+        mSeeding = seeding;
+        mSelection = selection;
+        mAbandonMargin = abandonMargin;
+        mDistanceFunc = distanceFunc;
+    }
+
+    public MultiStartKMeansClusterTaskParams(int numClusters, int numRestarts,
+            DistanceFunc distanceFunc) {
+        this(numClusters, numRestarts, Integer.MAX_VALUE, 0, true, -1,
+                System.currentTimeMillis(), Seeding.KMEANS_PLUS_PLUS, Selection.DISTORTION,
+                DEFAULT_ABANDON_MARGIN, distanceFunc);
+    }
+
+    public final int getNumClusters() {
+        return mNumClusters;
+    }
+
+    public final int getNumRestarts() {
+        return mNumRestarts;
+    }
+
+    public final int getMaxIterations() {
+        return mMaxIterations;
+    }
+
+    public final int getMovesGoal() {
+        return mMovesGoal;
+    }
+
+    public final boolean getReplaceEmptyClusters() {
+        return mReplaceEmptyClusters;
+    }
+
+    public final int getNumWorkerThreads() {
+        return mNumWorkerThreads;
+    }
+
+    public final long getRandomSeed() {
+        return mRandomSeed;
+    }
+
+    public final Seeding getSeeding() {
+        return mSeeding;
+    }
+
+    public final Selection getSelection() {
+        return mSelection;
+    }
+
+    public final double getAbandonMargin() {
+        return mAbandonMargin;
+    }
+
+    public final DistanceFunc getDistanceFunc() {
+        return mDistanceFunc;
+    }
+
+    /**
+     * Returns the parameters for each of the k-means runs, which differ
+     * only in the seeds of their cluster seeders.
+     *
+     * @param numWorkerThreads the number of threads for each run.
+     *
+     * @return an array with an element for each run.
+     */
+    public KMeansClusterTaskParams[] createRunParams(int numWorkerThreads) {
+        XoroshiroRandom random = new XoroshiroRandom(mRandomSeed);
+        KMeansClusterTaskParams[] runParams = new KMeansClusterTaskParams[mNumRestarts];
+        for (int r = 0; r < mNumRestarts; r++) {
+            long seed = random.nextLong();
+            // The seeders take a seed of 0 to mean the current time.
+            if (seed == 0L) {
+                seed = 1L;
+            }
+            DistanceFunc distanceFunc = mDistanceFunc.clone();
+            // Seeders with XoroshiroRandom generators may be used concurrently.
+            ClusterSeeder seeder = mSeeding == Seeding.KMEANS_PLUS_PLUS ?
+                    new KMeansPlusPlusSeeder(seed, new XoroshiroRandom(), distanceFunc) :
+                        new RandomSeeder(seed, new XoroshiroRandom());
+            runParams[r] = new KMeansClusterTaskParams(mNumClusters, mMaxIterations,
+                    mMovesGoal, numWorkerThreads, mReplaceEmptyClusters, distanceFunc, seeder);
+        }
+        return runParams;
+    }
+
+    public Object clone() {
+        try {
+            return super.clone();
+        } catch (CloneNotSupportedException cnse) {
+            throw new InternalError();
+        }
+    }
+
+    public int hashCode() {
+        int hc = mNumClusters;
+        hc = 31 * hc + mNumRestarts;
+        hc = 31 * hc + mMaxIterations;
+        hc = 31 * hc + mMovesGoal;
+        hc = 31 * hc + (mReplaceEmptyClusters ? 1 : 0);
+        hc = 31 * hc + mNumWorkerThreads;
+        hc = 31 * hc + (int) (mRandomSeed ^ (mRandomSeed >>> 32));
+        hc = 31 * hc + mSeeding.hashCode();
+        hc = 31 * hc + mSelection.hashCode();
+        long bits = Double.doubleToLongBits(mAbandonMargin);
+        hc = 31 * hc + (int) (bits ^ (bits >>> 32));
+        hc = 31 * hc + mDistanceFunc.hashCode();
+        return hc;
+    }
+
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (o instanceof MultiStartKMeansClusterTaskParams) {
+            MultiStartKMeansClusterTaskParams other = (MultiStartKMeansClusterTaskParams) o;
+            return this.mNumClusters == other.mNumClusters
+                    && this.mNumRestarts == other.mNumRestarts
+                    && this.mMaxIterations == other.mMaxIterations
+                    && this.mMovesGoal == other.mMovesGoal
+                    && this.mReplaceEmptyClusters == other.mReplaceEmptyClusters
+                    && this.mNumWorkerThreads == other.mNumWorkerThreads
+                    && this.mRandomSeed == other.mRandomSeed
+                    && this.mSeeding == other.mSeeding
+                    && this.mSelection == other.mSelection
+                    && Double.doubleToLongBits(this.mAbandonMargin) ==
+                        Double.doubleToLongBits(other.mAbandonMargin)
+                    && this.mDistanceFunc.equals(other.mDistanceFunc);
+        }
+        return false;
+    }
+
+    public static class Builder {
+
+        private int mNumClusters;
+        private int mNumRestarts = DEFAULT_NUM_RESTARTS;
+        private int mMaxIterations = Integer.MAX_VALUE;
+        private int mMovesGoal;
+        private boolean mReplaceEmptyClusters = true;
+        private int mNumWorkerThreads = -1;
+        private long mRandomSeed = System.currentTimeMillis();
+        private Seeding mSeeding = Seeding.KMEANS_PLUS_PLUS;
+        private Selection mSelection = Selection.DISTORTION;
+        private double mAbandonMargin = DEFAULT_ABANDON_MARGIN;
+        private DistanceFunc mDistanceFunc;
+
+        public Builder(int numClusters) {
+            ExceptionUtil.checkPositive(numClusters);
+            mNumClusters = numClusters;
+        }
+
+        public Builder numRestarts(int numRestarts) {
+            ExceptionUtil.checkPositive(numRestarts);
+            mNumRestarts = numRestarts;
+            return this;
+        }
+
+        public Builder maxIterations(int maxIterations) {
+            if (maxIterations <= 0) {
+                maxIterations = Integer.MAX_VALUE;
+            }
+            mMaxIterations = maxIterations;
+            return this;
+        }
+
+        public Builder movesGoal(int movesGoal) {
+            ExceptionUtil.checkNonNegative(movesGoal);
+            mMovesGoal = movesGoal;
+            return this;
+        }
+
+        public Builder replaceEmptyClusters(boolean b) {
+            mReplaceEmptyClusters = b;
+            return this;
+        }
+
+        public Builder numWorkerThreads(int numWorkerThreads) {
+            if (numWorkerThreads <= 0) {
+                numWorkerThreads = -1;
+            }
+            mNumWorkerThreads = numWorkerThreads;
+            return this;
+        }
+
+        public Builder randomSeed(long randomSeed) {
+            mRandomSeed = randomSeed;
+            return this;
+        }
+
+        public Builder seeding(Seeding seeding) {
+            ExceptionUtil.checkNotNull(seeding);
+            mSeeding = seeding;
+            return this;
+        }
+
+        public Builder selection(Selection selection) {
+            ExceptionUtil.checkNotNull(selection);
+            mSelection = selection;
+            return this;
+        }
+
+        public Builder abandonMargin(double abandonMargin) {
+            mAbandonMargin = abandonMargin;
+            return this;
+        }
+
+        public Builder distanceFunc(DistanceFunc distanceFunc) {
+            ExceptionUtil.checkNotNull(distanceFunc);
+            mDistanceFunc = distanceFunc;
+            return this;
+        }
+
+        public MultiStartKMeansClusterTaskParams build() {
+            if (mDistanceFunc == null) {
+                mDistanceFunc = new EuclideanNoNaN();
+            }
+            return new MultiStartKMeansClusterTaskParams(mNumClusters, mNumRestarts,
+                    mMaxIterations, mMovesGoal, mReplaceEmptyClusters, mNumWorkerThreads,
+                    mRandomSeed, mSeeding, mSelection, mAbandonMargin, mDistanceFunc);
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Set;
 
 import gov.pnnl.jac.geom.*;
+import gov.pnnl.jac.util.XoroshiroRandom;
 import cern.colt.map.HashFunctions;
 
 public class RandomSeeder implements ClusterSeeder {
@@ -57,7 +58,34 @@ public class RandomSeeder implements ClusterSeeder {
 		return false;
 	}
 	
-	public synchronized CoordinateList generateSeeds(final CoordinateList coords, final int numSeeds) {
+	/**
+	 * Generates the seeds.  If the generator given to the constructor is a 
+	 * <tt>XoroshiroRandom</tt>, each call uses a new generator of that class 
+	 * with the seed, so calls from multiple threads proceed concurrently.  
+	 * Otherwise, calls reseed the shared generator and are serialized.
+	 */
+	public CoordinateList generateSeeds(final CoordinateList coords, final int numSeeds) {
+		long seed = mSeed != 0L ? mSeed : System.currentTimeMillis();
+		if (mRandom instanceof XoroshiroRandom) {
+			return generateSeeds(coords, numSeeds, new XoroshiroRandom(seed));
+		}
+		synchronized (this) {
+			mRandom.setSeed(seed);
+			return generateSeeds(coords, numSeeds, mRandom);
+		}
+	}
+	
+	/**
+	 * Generates the seeds using the specified generator, which has been
+	 * seeded and is not used by any other thread.
+	 * 
+	 * @param coords
+	 * @param numSeeds
+	 * @param random
+	 * @return
+	 */
+	protected CoordinateList generateSeeds(final CoordinateList coords, final int numSeeds,
+			final Random random) {
 
 		if (numSeeds <= 0) {
 			throw new IllegalArgumentException();
@@ -70,11 +98,8 @@ public class RandomSeeder implements ClusterSeeder {
             indices[i] = i;
         }
 
-        long seed = mSeed != 0L ? mSeed : System.currentTimeMillis();
-        mRandom.setSeed(seed);
-        
         for (int i = 0, m = coordCount; m > 0; i++, m--) {
-            int j = i + mRandom.nextInt(m);
+            int j = i + random.nextInt(m);
             if (i != j) {
                 indices[i] ^= indices[j];
                 indices[j] ^= indices[i];
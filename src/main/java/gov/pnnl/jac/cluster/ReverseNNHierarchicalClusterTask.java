@@ -29,8 +29,9 @@ import gov.pnnl.jac.task.Task;
 import gov.pnnl.jac.task.TaskEvent;
 import gov.pnnl.jac.task.TaskListener;
 import gov.pnnl.jac.task.TaskOutcome;
+import gov.pnnl.jac.task.TaskScheduler;
 import gov.pnnl.jac.util.ArrayUtils;
-import gov.pnnl.jac.util.MethodTimer;
+import gov.pnnl.jac.util.Metrics;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -39,7 +40,6 @@ import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import cern.colt.bitvector.BitVector;
 
@@ -136,9 +136,10 @@ AbstractHierarchicalClusterTask {
     // The two buffers are passed to avoid repeated reallocation.
     private int nearestNeighbor(int index /*, ClusterList hintClusters */) throws Exception {
 
+        long start = NEAREST_NEIGHBOR.start();
+
         try {
 
-            FROM1 = MethodTimer.startMethodTimer(FROM1, null);
             int nn = mNearestNeighbors[index];
 
             if (nn == -1) {
@@ -199,7 +200,7 @@ AbstractHierarchicalClusterTask {
             return nn;
 
         } finally {
-            MethodTimer.endMethodTimer(FROM1);
+            NEAREST_NEIGHBOR.stop(start);
         }
     }
 
@@ -263,8 +264,8 @@ AbstractHierarchicalClusterTask {
         return result;
     }
     
-    // Used with MethodTimer to benchmark sections.
-    private static MethodTimer.Marker FROM1, FROM2;
+    private static final Metrics.Timer NEAREST_NEIGHBOR = Metrics.timer("reversenn.nearestNeighbor");
+    private static final Metrics.Timer MERGE = Metrics.timer("reversenn.merge");
 
     @Override
     protected void buildDendrogram() throws Exception {
@@ -312,7 +313,7 @@ AbstractHierarchicalClusterTask {
 
             ArrayUtils.shuffle(shuffledCoordIndices, r);
 
-            mCentroidMap = new IntObjectHashMap<double[]>();
+            mCentroidMap = new IntObjectLinearHashMap<double[]>();
 
             int threadCount = params.getNumWorkerThreads();
             if (threadCount <= 0) {
@@ -344,7 +345,7 @@ AbstractHierarchicalClusterTask {
             assert coordsSoFar == coordCount;
 
             if (threadCount > 1) {
-                mThreadPool = Executors.newFixedThreadPool(threadCount);
+                mThreadPool = TaskScheduler.newComputeExecutor(threadCount);
             }
 
             final double[] coordBuf1 = new double[dim];
@@ -362,9 +363,9 @@ AbstractHierarchicalClusterTask {
 
                 if (nearestNeighbor(nn) == currentIndex) {
 
-                    try {
+                    long start = MERGE.start();
 
-                        FROM2 = MethodTimer.startMethodTimer(FROM2, null);
+                    try {
 
                         int sz1 = mDendrogram.nodeSize(currentIndex);
                         int sz2 = mDendrogram.nodeSize(nn);
@@ -485,7 +486,7 @@ AbstractHierarchicalClusterTask {
 
                     } finally {
 
-                        MethodTimer.endMethodTimer(FROM2);
+                        MERGE.stop(start);
 
                     }
 
@@ -1,13 +1,24 @@
 package gov.pnnl.jac.cluster;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import gov.pnnl.jac.collections.IntArrayList;
 import gov.pnnl.jac.geom.*;
 import gov.pnnl.jac.task.*;
+import gov.pnnl.jac.util.XoroshiroRandom;
 
 public class SamplingXMeansClusterTask extends ClusterTask {
 
+    // Coordinates are sampled in blocks of this many, each block with
+    // a random stream of its own, so the sample does not depend on the
+    // number of threads.
+    private static final int SAMPLING_BLOCK_SIZE = 1 << 16;
+
     private XMeansClusterTask mSubTask;
 
     public SamplingXMeansClusterTask(CoordinateList cs,
@@ -73,22 +84,16 @@ public class SamplingXMeansClusterTask extends ClusterTask {
             // Will be sampling -- run two phases of x-means
 
             double actualSamplingFraction = (double) coordsToSample / numCoords;
-            IntArrayList samplingList = new IntArrayList(coordsToSample);
-
-            Random random = new Random(params.getRandomSeed());
-
-            for (int i = 0; i < numCoords; i++) {
-                if (random.nextDouble() <= actualSamplingFraction) {
-                    samplingList.add(i);
-                }
-            }
+            
+            int[] sample = sample(numCoords, actualSamplingFraction, 
+                    params.getRandomSeed(), params.getNumWorkerThreads());
 
-            postMessage("clustering a sample of " + samplingList.size()
+            postMessage("clustering a sample of " + sample.length
                     + " out of " + numCoords + " coordinates");
 
             FilteredCoordinateList filteredCoords = new FilteredCoordinateList(
-                    samplingList.toArray(), coords);
-            samplingList = null;
+                    sample, coords);
+            sample = null;
 
             double beginP = getBeginProgress();
             double endP = getEndProgress();
@@ -150,6 +155,65 @@ public class SamplingXMeansClusterTask extends ClusterTask {
         return mClusters;
     }
 
+    // Returns the indices of the coordinates selected, each with the
+    // specified probability, in ascending order.
+    private static int[] sample(final int numCoords, final double fraction, 
+            long seed, int numWorkerThreads) throws Exception {
+        
+        final int blockCount = (numCoords + SAMPLING_BLOCK_SIZE - 1)/SAMPLING_BLOCK_SIZE;
+        final XoroshiroRandom[] streams = XoroshiroRandom.streams(seed, blockCount);
+        
+        List<Callable<IntArrayList>> blocks = new ArrayList<Callable<IntArrayList>>(blockCount);
+        for (int b = 0; b < blockCount; b++) {
+            final int start = b * SAMPLING_BLOCK_SIZE;
+            final int end = Math.min(numCoords, start + SAMPLING_BLOCK_SIZE);
+            final Random random = streams[b];
+            blocks.add(new Callable<IntArrayList>() {
+                @Override
+                public IntArrayList call() {
+                    IntArrayList selected = new IntArrayList(
+                            (int) ((end - start) * fraction) + 16);
+                    for (int i = start; i < end; i++) {
+                        if (random.nextDouble() <= fraction) {
+                            selected.add(i);
+                        }
+                    }
+                    return selected;
+                }
+            });
+        }
+        
+        List<IntArrayList> selections = new ArrayList<IntArrayList>(blockCount);
+        if (numWorkerThreads > 1 && blockCount > 1) {
+            ExecutorService threadPool = TaskScheduler.newComputeExecutor(numWorkerThreads);
+            try {
+                for (Future<IntArrayList> future : threadPool.invokeAll(blocks)) {
+                    selections.add(future.get());
+                }
+            } finally {
+                threadPool.shutdownNow();
+            }
+        } else {
+            for (Callable<IntArrayList> block : blocks) {
+                selections.add(block.call());
+            }
+        }
+        
+        int total = 0;
+        for (IntArrayList selected : selections) {
+            total += selected.size();
+        }
+        int[] sample = new int[total];
+        int offset = 0;
+        for (IntArrayList selected : selections) {
+            int n = selected.size();
+            for (int i = 0; i < n; i++) {
+                sample[offset++] = selected.get(i);
+            }
+        }
+        return sample;
+    }
+
     /**
      * Override cancel in order to cancel the current subtask.
      */
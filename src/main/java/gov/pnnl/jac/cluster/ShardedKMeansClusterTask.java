@@ -0,0 +1,482 @@
+package gov.pnnl.jac.cluster;
+
+import gov.pnnl.jac.geom.CoordinateList;
+import gov.pnnl.jac.geom.FilteredCoordinateList;
+import gov.pnnl.jac.geom.SimpleCoordinateList;
+import gov.pnnl.jac.geom.distance.AbstractDistanceFunc;
+import gov.pnnl.jac.geom.distance.CoordinateListColumnarDoubles;
+import gov.pnnl.jac.geom.distance.DistanceFunc;
+import gov.pnnl.jac.task.ProgressHandler;
+import gov.pnnl.jac.task.TaskScheduler;
+import gov.pnnl.jac.util.Metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>A partition-and-merge k-means, for data sets too large to be clustered
+ * by a single k-means over all the coordinates at once.  It proceeds in three
+ * stages:</p>
+ *
+ * <ol>
+ * <li>The coordinates are partitioned into shards, and k-means is run on each
+ * shard independently by <tt>clusterShard()</tt> to find a number of
+ * clusters somewhat larger than the final number.  The result for each
+ * shard is a <tt>ClusterList</tt>, which can be written with
+ * <tt>ClusterList.save()</tt>.  Memberships are stored with global
+ * indexes, and the size of each cluster serves as the weight of its center.</li>
+ * <li><tt>mergeShardResults()</tt> reads the shard results and runs a
+ * weighted k-means over all the shard centers to produce the final centers.</li>
+ * <li><tt>assignToCenters()</tt> assigns every coordinate to its nearest
+ * final center.</li>
+ * </ol>
+ *
+ * <p>The static methods for the stages only need the coordinates of one
+ * shard at a time, so each shard may be processed by a separate process,
+ * possibly on a separate host, with only the small shard results brought together
+ * for the merge.  When run as a task, this class is a local stand-in for
+ * that arrangement: it processes the shards one after another in this JVM,
+ * passing each shard result through the <tt>ClusterList.save()</tt> format just
+ * as a separate process would, and assigns all the coordinates itself.</p>
+ */
+public class ShardedKMeansClusterTask extends ClusterTask {
+
+    private static final Metrics.Timer SHARD = Metrics.timer("sharded.shard");
+    private static final Metrics.Timer MERGE = Metrics.timer("sharded.merge");
+    private static final Metrics.Timer ASSIGNMENT = Metrics.timer("sharded.assignment");
+
+    // The k-means task for the current shard.
+    private volatile KMeansClusterTask mShardKMeans;
+
+    public ShardedKMeansClusterTask(CoordinateList cs,
+            ShardedKMeansClusterTaskParams params) {
+        super(cs, params);
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return "sharded k-means";
+    }
+
+    @Override
+    protected ClusterList doTask() throws Exception {
+
+        final CoordinateList cs = getCoordinateList();
+        final int numCoords = cs.getCoordinateCount();
+
+        ShardedKMeansClusterTaskParams params = (ShardedKMeansClusterTaskParams) getParams();
+
+        final int numShards = Math.max(1, Math.min(params.getNumShards(), numCoords));
+
+        ProgressHandler ph = new ProgressHandler(this, numShards + 2);
+        ph.postBegin();
+
+        List<ClusterList> shardResults = new ArrayList<ClusterList>(numShards);
+
+        for (int shard=0; shard<numShards; shard++) {
+
+            checkForCancel();
+
+            int start = shardStart(shard, numShards, numCoords);
+            int end = shardStart(shard + 1, numShards, numCoords);
+            int[] indices = new int[end - start];
+            for (int i=0; i<indices.length; i++) {
+                indices[i] = start + i;
+            }
+
+            ClusterList shardResult = clusterShard(
+                new FilteredCoordinateList(indices, cs), start);
+
+            // Round-trip through the serialized form sent by a remote shard.
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            ClusterList.save(shardResult, out);
+            out.flush();
+            shardResults.add(ClusterList.load(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+
+            ph.postMessage("shard " + (shard + 1) + " of " + numShards + ": " +
+                shardResult.getClusterCount() + " clusters");
+            ph.postStep();
+        }
+
+        checkForCancel();
+
+        CoordinateList centers = mergeShardResults(shardResults, params);
+        shardResults = null;
+
+        ph.postMessage("merged shard centers into " + centers.getCoordinateCount() + " clusters");
+        ph.postStep();
+
+        checkForCancel();
+
+        int[] assignments = assignToCenters(cs, centers, params.getDistanceFunc(),
+            params.getNumWorkerThreads());
+
+        ClusterList clusters = buildClusters(cs, assignments, centers.getCoordinateCount());
+
+        ph.postStep();
+        ph.postEnd();
+
+        setClusterList(clusters);
+
+        return clusters;
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (super.cancel(mayInterruptIfRunning)) {
+            KMeansClusterTask shardKMeans = mShardKMeans;
+            if (shardKMeans != null) {
+                shardKMeans.cancel(mayInterruptIfRunning);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // Returns the index of the first coordinate in a shard.
+    private static int shardStart(int shard, int numShards, int numCoords) {
+        return (int) ((long) shard * numCoords / numShards);
+    }
+
+    /**
+     * Runs k-means on a single shard, the first stage of sharded k-means.
+     *
+     * @param shard the coordinates of the shard.
+     * @param indexOffset the global index of the first coordinate in the shard,
+     *   which is added to the membership indexes of the returned clusters.
+     * @param params
+     *
+     * @return the clusters for the shard.
+     *
+     * @throws Exception if k-means fails.
+     */
+    public static ClusterList clusterShard(CoordinateList shard, int indexOffset,
+            ShardedKMeansClusterTaskParams params) throws Exception {
+        return new ShardedKMeansClusterTask(shard, params).clusterShard(shard, indexOffset);
+    }
+
+    private ClusterList clusterShard(CoordinateList shard, int indexOffset) throws Exception {
+
+        ShardedKMeansClusterTaskParams params = (ShardedKMeansClusterTaskParams) getParams();
+
+        KMeansClusterTaskParams shardParams = params.createShardParams(shard.getCoordinateCount());
+        DistanceFunc distanceFunc = shardParams.getDistanceFunc();
+        // Ensure that the data source is set for the distance function.
+        if (distanceFunc instanceof AbstractDistanceFunc) {
+            ((AbstractDistanceFunc) distanceFunc).setDataSource(
+                    new CoordinateListColumnarDoubles(shard));
+        }
+
+        long start = SHARD.start();
+        mShardKMeans = new KMeansClusterTask(shard, shardParams);
+        try {
+            mShardKMeans.run();
+            ClusterList clusters = mShardKMeans.get();
+            if (indexOffset == 0) {
+                return clusters;
+            }
+            int numClusters = clusters.getClusterCount();
+            Cluster[] shifted = new Cluster[numClusters];
+            for (int i=0; i<numClusters; i++) {
+                Cluster c = clusters.getCluster(i);
+                int[] members = c.getMembership();
+                for (int j=0; j<members.length; j++) {
+                    members[j] += indexOffset;
+                }
+                shifted[i] = new Cluster(members, c.getCenterDirect());
+            }
+            return new ClusterList(shifted);
+        } finally {
+            mShardKMeans = null;
+            SHARD.stop(start);
+        }
+    }
+
+    /**
+     * Merges the results of clustering the shards, the second stage of sharded
+     * k-means.  The centers of all the shard clusters are clustered by a
+     * weighted k-means, with each center weighted by the size of its cluster.
+     * Empty shard clusters are ignored.
+     *
+     * @param shardResults the results of <tt>clusterShard()</tt> for all shards.
+     * @param params
+     *
+     * @return the final cluster centers, of which there may be fewer than the
+     *   number of clusters requested if there are too few shard clusters.
+     */
+    public static CoordinateList mergeShardResults(List<ClusterList> shardResults,
+            ShardedKMeansClusterTaskParams params) {
+        long start = MERGE.start();
+        try {
+            return mergeCenters(shardResults, params);
+        } finally {
+            MERGE.stop(start);
+        }
+    }
+
+    private static CoordinateList mergeCenters(List<ClusterList> shardResults,
+            ShardedKMeansClusterTaskParams params) {
+
+        List<double[]> centerList = new ArrayList<double[]>();
+        List<Integer> weightList = new ArrayList<Integer>();
+        for (ClusterList clusters : shardResults) {
+            int numClusters = clusters.getClusterCount();
+            for (int i=0; i<numClusters; i++) {
+                Cluster c = clusters.getCluster(i);
+                if (c.getSize() > 0) {
+                    centerList.add(c.getCenterDirect());
+                    weightList.add(c.getSize());
+                }
+            }
+        }
+
+        final int numCenters = centerList.size();
+        if (numCenters == 0) {
+            throw new IllegalArgumentException("no nonempty shard clusters to merge");
+        }
+
+        double[][] centers = centerList.toArray(new double[numCenters][]);
+        double[] weights = new double[numCenters];
+        for (int i=0; i<numCenters; i++) {
+            weights[i] = weightList.get(i);
+        }
+
+        final int k = Math.min(params.getNumClusters(), numCenters);
+        final int dim = centers[0].length;
+        DistanceFunc distanceFunc = params.getDistanceFunc().clone();
+
+        double[][] means = seedWeighted(centers, weights, k, distanceFunc,
+            new Random(params.getRandomSeed()));
+
+        int[] labels = new int[numCenters];
+        java.util.Arrays.fill(labels, -1);
+
+        double[][] sums = new double[k][dim];
+        double[][] sumWeights = new double[k][dim];
+
+        for (int iteration=0; iteration<params.getMergeMaxIterations(); iteration++) {
+
+            int moves = 0;
+            for (int i=0; i<numCenters; i++) {
+                int nearest = nearest(centers[i], means, distanceFunc);
+                if (nearest != labels[i]) {
+                    labels[i] = nearest;
+                    moves++;
+                }
+            }
+
+            if (moves == 0) {
+                break;
+            }
+
+            for (int j=0; j<k; j++) {
+                java.util.Arrays.fill(sums[j], 0.0);
+                java.util.Arrays.fill(sumWeights[j], 0.0);
+            }
+            for (int i=0; i<numCenters; i++) {
+                double[] sum = sums[labels[i]];
+                double[] sumWeight = sumWeights[labels[i]];
+                double[] center = centers[i];
+                double w = weights[i];
+                for (int d=0; d<dim; d++) {
+                    double v = center[d];
+                    if (!Double.isNaN(v)) {
+                        sum[d] += w*v;
+                        sumWeight[d] += w;
+                    }
+                }
+            }
+            for (int j=0; j<k; j++) {
+                for (int d=0; d<dim; d++) {
+                    // An empty merged cluster keeps its previous mean.
+                    if (sumWeights[j][d] > 0.0) {
+                        means[j][d] = sums[j][d]/sumWeights[j][d];
+                    }
+                }
+            }
+        }
+
+        CoordinateList result = new SimpleCoordinateList(dim, k);
+        for (int j=0; j<k; j++) {
+            result.setCoordinates(j, means[j]);
+        }
+        return result;
+    }
+
+    // Chooses k initial means from the centers by k-means++ seeding, with the
+    // probability of choosing a center proportional to its weight times the
+    // squared distance to the nearest mean already chosen.
+    private static double[][] seedWeighted(double[][] centers, double[] weights, int k,
+            DistanceFunc distanceFunc, Random random) {
+
+        final int n = centers.length;
+        double[][] means = new double[k][];
+        double[] minDistSq = new double[n];
+        java.util.Arrays.fill(minDistSq, Double.POSITIVE_INFINITY);
+
+        means[0] = centers[choose(weights, null, random)].clone();
+
+        for (int j=1; j<k; j++) {
+            double[] latest = means[j-1];
+            for (int i=0; i<n; i++) {
+                double d = distanceFunc.distanceBetween(centers[i], latest);
+                double dsq = d*d;
+                if (dsq < minDistSq[i]) {
+                    minDistSq[i] = dsq;
+                }
+            }
+            means[j] = centers[choose(weights, minDistSq, random)].clone();
+        }
+
+        return means;
+    }
+
+    // Chooses an index with probability proportional to weights[i]*factors[i].
+    // If factors is null or all products are 0, chooses in proportion to weights.
+    private static int choose(double[] weights, double[] factors, Random random) {
+        final int n = weights.length;
+        double total = 0.0;
+        if (factors != null) {
+            for (int i=0; i<n; i++) {
+                total += weights[i]*factors[i];
+            }
+        }
+        if (!(total > 0.0) || Double.isInfinite(total)) {
+            factors = null;
+            total = 0.0;
+            for (int i=0; i<n; i++) {
+                total += weights[i];
+            }
+        }
+        double r = random.nextDouble()*total;
+        double cumulative = 0.0;
+        for (int i=0; i<n; i++) {
+            cumulative += factors != null ? weights[i]*factors[i] : weights[i];
+            if (r < cumulative) {
+                return i;
+            }
+        }
+        return n - 1;
+    }
+
+    private static int nearest(double[] coord, double[][] means, DistanceFunc distanceFunc) {
+        int nearest = 0;
+        double minDist = Double.MAX_VALUE;
+        for (int j=0; j<means.length; j++) {
+            double d = distanceFunc.distanceBetween(coord, means[j]);
+            if (d < minDist) {
+                minDist = d;
+                nearest = j;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Assigns each coordinate to its nearest center, the third stage of sharded
+     * k-means.  When the shards are processed separately, each may call this
+     * method with its own coordinates and the merged centers.
+     *
+     * @param coords the coordinates to assign.
+     * @param centers the centers.
+     * @param distanceFunc the distance function.
+     * @param numWorkerThreads the number of threads to use.  If not positive,
+     *   the number of processors is used.
+     *
+     * @return an array containing the index of the nearest center for each coordinate.
+     *
+     * @throws Exception if the assignment is interrupted or fails.
+     */
+    public static int[] assignToCenters(CoordinateList coords, CoordinateList centers,
+            DistanceFunc distanceFunc, int numWorkerThreads) throws Exception {
+        long start = ASSIGNMENT.start();
+        try {
+            return assign(coords, centers, distanceFunc, numWorkerThreads);
+        } finally {
+            ASSIGNMENT.stop(start);
+        }
+    }
+
+    private static int[] assign(final CoordinateList coords, CoordinateList centers,
+            final DistanceFunc distanceFunc, int numWorkerThreads) throws Exception {
+
+        final int numCoords = coords.getCoordinateCount();
+        final int numCenters = centers.getCoordinateCount();
+        final double[][] means = new double[numCenters][];
+        for (int j=0; j<numCenters; j++) {
+            means[j] = centers.getCoordinates(j, null);
+        }
+
+        final int[] assignments = new int[numCoords];
+
+        if (numWorkerThreads <= 0) {
+            numWorkerThreads = Runtime.getRuntime().availableProcessors();
+        }
+        final int numRanges = Math.max(1, Math.min(numWorkerThreads, numCoords));
+
+        List<Callable<Void>> assigners = new ArrayList<Callable<Void>>(numRanges);
+        for (int r=0; r<numRanges; r++) {
+            final int start = shardStart(r, numRanges, numCoords);
+            final int end = shardStart(r + 1, numRanges, numCoords);
+            assigners.add(new Callable<Void>() {
+                public Void call() throws Exception {
+                    DistanceFunc df = distanceFunc.clone();
+                    double[] buffer = new double[coords.getDimensionCount()];
+                    for (int i=start; i<end; i++) {
+                        coords.getCoordinates(i, buffer);
+                        assignments[i] = nearest(buffer, means, df);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        if (numRanges > 1) {
+            ExecutorService threadPool = TaskScheduler.newComputeExecutor(numRanges);
+            try {
+                for (Future<Void> future : threadPool.invokeAll(assigners)) {
+                    future.get();
+                }
+            } finally {
+                threadPool.shutdownNow();
+            }
+        } else {
+            assigners.get(0).call();
+        }
+
+        return assignments;
+    }
+
+    // Builds the final clusters from the assignments, discarding any that are empty.
+    private static ClusterList buildClusters(CoordinateList cs, int[] assignments, int numCenters) {
+        int[] counts = new int[numCenters];
+        for (int i=0; i<assignments.length; i++) {
+            counts[assignments[i]]++;
+        }
+        int[][] members = new int[numCenters][];
+        for (int j=0; j<numCenters; j++) {
+            members[j] = new int[counts[j]];
+        }
+        int[] filled = new int[numCenters];
+        for (int i=0; i<assignments.length; i++) {
+            int j = assignments[i];
+            members[j][filled[j]++] = i;
+        }
+        List<Cluster> clusters = new ArrayList<Cluster>(numCenters);
+        for (int j=0; j<numCenters; j++) {
+            if (counts[j] > 0) {
+                clusters.add(new Cluster(members[j], cs));
+            }
+        }
+        return new ClusterList(clusters.toArray(new Cluster[clusters.size()]));
+    }
+}
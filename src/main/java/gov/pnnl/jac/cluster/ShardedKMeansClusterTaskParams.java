@@ -0,0 +1,260 @@
+package gov.pnnl.jac.cluster;
+
+import gov.pnnl.jac.geom.distance.*;
+import gov.pnnl.jac.util.ExceptionUtil;
+
+/**
+ * <p>Parameters for <tt>ShardedKMeansClusterTask</tt>.</p>
+ */
+public class ShardedKMeansClusterTaskParams implements ClusterTaskParams {
+
+    private static final long serialVersionUID = -2461387430995817264L;
+
+    // Desired number of final clusters.
+    private int mNumClusters;
+    // The number of shards into which the coordinates are partitioned.
+    private int mNumShards;
+    // The number of clusters found by k-means on each shard, whose centers
+    // are re-clustered by the merge stage.
+    private int mShardClusters;
+    // Maximum number of iterations of k-means on each shard.
+    private int mMaxIterations = Integer.MAX_VALUE;
+    // Maximum number of iterations of weighted k-means in the merge stage.
+    private int mMergeMaxIterations = 100;
+    // The number of worker threads. If -1, then select based on the number of processors.
+    private int mNumWorkerThreads = -1;
+    // Seed for the random selection of initial centers in the merge stage.
+    private long mRandomSeed;
+    // The distance function.
+    private DistanceFunc mDistanceFunc;
+    // The cluster seeder used for each shard.
+    private ClusterSeeder mSeeder;
+
+    public ShardedKMeansClusterTaskParams(
+            int numClusters,
+            int numShards,
+            int shardClusters,
+            int maxIterations,
+            int mergeMaxIterations,
+            int numWorkerThreads,
+            long randomSeed,
+            DistanceFunc distanceFunc,
+            ClusterSeeder seeder) {
+        ExceptionUtil.checkPositive(numClusters);
+        ExceptionUtil.checkPositive(numShards);
+        if (shardClusters < numClusters) {
+            throw new IllegalArgumentException(
+                "shard clusters must be at least the number of clusters: " +
+                shardClusters + " < " + numClusters);
+        }
+        if (distanceFunc == null || seeder == null) {
+            throw new NullPointerException();
+        }
+        mNumClusters = numClusters;
+        mNumShards = numShards;
+        mShardClusters = shardClusters;
+        if (maxIterations > 0) {
+            mMaxIterations = maxIterations;
+        }
+        if (mergeMaxIterations > 0) {
+            mMergeMaxIterations = mergeMaxIterations;
+        }
+        if (numWorkerThreads > 0) {
+            mNumWorkerThreads = numWorkerThreads;
+        }
+        mRandomSeed = randomSeed;
+        mDistanceFunc = distanceFunc;
+        mSeeder = seeder;
+    }
+
+    public final int getNumClusters() {
+        return mNumClusters;
+    }
+
+    public final int getNumShards() {
+        return mNumShards;
+    }
+
+    public final int getShardClusters() {
+        return mShardClusters;
+    }
+
+    public final int getMaxIterations() {
+        return mMaxIterations;
+    }
+
+    public final int getMergeMaxIterations() {
+        return mMergeMaxIterations;
+    }
+
+    public final int getNumWorkerThreads() {
+        return mNumWorkerThreads;
+    }
+
+    public final long getRandomSeed() {
+        return mRandomSeed;
+    }
+
+    public final DistanceFunc getDistanceFunc() {
+        return mDistanceFunc;
+    }
+
+    public final ClusterSeeder getClusterSeeder() {
+        return mSeeder;
+    }
+
+    /**
+     * Returns parameters for running k-means on a single shard.
+     * @param numCoords the number of coordinates in the shard.
+     * @return
+     */
+    public KMeansClusterTaskParams createShardParams(int numCoords) {
+        return new KMeansClusterTaskParams(
+            Math.max(1, Math.min(mShardClusters, numCoords)),
+            mMaxIterations, 0,
+            mNumWorkerThreads,
+            true,
+            mDistanceFunc,
+            mSeeder);
+    }
+
+    public Object clone() {
+        try {
+            return super.clone();
+        } catch (CloneNotSupportedException cnse) {
+            throw new InternalError();
+        }
+    }
+
+    public int hashCode() {
+        int hc = mNumClusters;
+        hc = 31 * hc + mNumShards;
+        hc = 31 * hc + mShardClusters;
+        hc = 31 * hc + mMaxIterations;
+        hc = 31 * hc + mMergeMaxIterations;
+        hc = 31 * hc + mNumWorkerThreads;
+        hc = 31 * hc + (int) (mRandomSeed ^ (mRandomSeed >>> 32));
+        hc = 31 * hc + mDistanceFunc.hashCode();
+        hc = 31 * hc + mSeeder.hashCode();
+        return hc;
+    }
+
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (o instanceof ShardedKMeansClusterTaskParams) {
+            ShardedKMeansClusterTaskParams other = (ShardedKMeansClusterTaskParams) o;
+            return this.mNumClusters == other.mNumClusters
+                    && this.mNumShards == other.mNumShards
+                    && this.mShardClusters == other.mShardClusters
+                    && this.mMaxIterations == other.mMaxIterations
+                    && this.mMergeMaxIterations == other.mMergeMaxIterations
+                    && this.mNumWorkerThreads == other.mNumWorkerThreads
+                    && this.mRandomSeed == other.mRandomSeed
+                    && this.mDistanceFunc.equals(other.mDistanceFunc)
+                    && this.mSeeder.equals(other.mSeeder);
+        }
+        return false;
+    }
+
+    /**
+     * Builder for conveniently building an instance of the
+     * immutable class ShardedKMeansClusterTaskParams without having to call a constructor
+     * with every parameter.
+     */
+    public static class Builder {
+
+        private int mNumClusters;
+        private int mNumShards = Runtime.getRuntime().availableProcessors();
+        private int mShardClusters;
+        private int mMaxIterations = Integer.MAX_VALUE;
+        private int mMergeMaxIterations = 100;
+        private int mNumWorkerThreads = -1;
+        private long mRandomSeed = System.currentTimeMillis();
+        private DistanceFunc mDistanceFunc;
+        private ClusterSeeder mSeeder;
+
+        public Builder(int numClusters) {
+            ExceptionUtil.checkPositive(numClusters);
+            this.mNumClusters = numClusters;
+        }
+
+        public Builder numShards(int numShards) {
+            ExceptionUtil.checkPositive(numShards);
+            this.mNumShards = numShards;
+            return this;
+        }
+
+        /**
+         * Sets the number of clusters found on each shard.  If not set, or
+         * set to less than the number of final clusters, twice the number of final
+         * clusters is used.
+         * @param shardClusters
+         * @return
+         */
+        public Builder shardClusters(int shardClusters) {
+            this.mShardClusters = shardClusters;
+            return this;
+        }
+
+        public Builder maxIterations(int maxIterations) {
+            if (maxIterations <= 0) {
+                maxIterations = Integer.MAX_VALUE;
+            }
+            this.mMaxIterations = maxIterations;
+            return this;
+        }
+
+        public Builder mergeMaxIterations(int mergeMaxIterations) {
+            ExceptionUtil.checkPositive(mergeMaxIterations);
+            this.mMergeMaxIterations = mergeMaxIterations;
+            return this;
+        }
+
+        public Builder numWorkerThreads(int numWorkerThreads) {
+            if (numWorkerThreads <= 0) {
+                numWorkerThreads = -1;
+            }
+            this.mNumWorkerThreads = numWorkerThreads;
+            return this;
+        }
+
+        public Builder randomSeed(long randomSeed) {
+            this.mRandomSeed = randomSeed;
+            return this;
+        }
+
+        public Builder distanceFunc(DistanceFunc distanceFunc) {
+            ExceptionUtil.checkNotNull(distanceFunc);
+            this.mDistanceFunc = distanceFunc;
+            return this;
+        }
+
+        public Builder seeder(ClusterSeeder seeder) {
+            ExceptionUtil.checkNotNull(seeder);
+            this.mSeeder = seeder;
+            return this;
+        }
+
+        public ShardedKMeansClusterTaskParams build() {
+            if (this.mDistanceFunc == null) {
+                this.mDistanceFunc = new EuclideanNoNaN();
+            }
+            if (this.mSeeder == null) {
+                this.mSeeder = new KMeansPlusPlusSeeder(this.mRandomSeed, this.mDistanceFunc);
+            }
+            int shardClusters = this.mShardClusters >= this.mNumClusters ?
+                this.mShardClusters : 2*this.mNumClusters;
+            return new ShardedKMeansClusterTaskParams(
+                    this.mNumClusters,
+                    this.mNumShards,
+                    shardClusters,
+                    this.mMaxIterations,
+                    this.mMergeMaxIterations,
+                    this.mNumWorkerThreads,
+                    this.mRandomSeed,
+                    this.mDistanceFunc,
+                    this.mSeeder);
+        }
+    }
+}
@@ -27,6 +27,8 @@ import gov.pnnl.jac.task.ProgressHandler;
 import gov.pnnl.jac.task.TaskEvent;
 import gov.pnnl.jac.task.TaskListener;
 import gov.pnnl.jac.task.TaskOutcome;
+import gov.pnnl.jac.task.TaskScheduler;
+import gov.pnnl.jac.util.Metrics;
 
 import java.io.File;
 import java.io.IOException;
@@ -39,7 +41,6 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -57,6 +58,9 @@ public class StandardHierarchicalClusterTask extends AbstractHierarchicalCluster
 	public static final long DEFAULT_MEM_THRESHOLD = 128L * 1024L * 1024L;
 	public static final long DEFAULT_FILE_THRESHOLD = 2L * 1024L * 1024L * 1024L;
 	
+	private static final Metrics.Timer DISTANCE_CACHE_INIT = Metrics.timer("hierarchical.distanceCacheInit");
+	private static final Metrics.Timer MERGE = Metrics.timer("hierarchical.merge");
+
 	private DistanceFunc mDistanceFunc;
 	private InterleafDistanceMinimizerTask mMinimizerTask;
 
@@ -251,7 +255,12 @@ public class StandardHierarchicalClusterTask extends AbstractHierarchicalCluster
 			ph.postMessage("initializing distances in the cache");
 
 			if (mgr != null) {
-			    mgr.initializeDistances();
+			    long start = DISTANCE_CACHE_INIT.start();
+			    try {
+			        mgr.initializeDistances();
+			    } finally {
+			        DISTANCE_CACHE_INIT.stop(start);
+			    }
 			}
 
 			ph.postEnd();
@@ -267,6 +276,8 @@ public class StandardHierarchicalClusterTask extends AbstractHierarchicalCluster
 
 		    while (!done) {
 
+		    	long start = MERGE.start();
+
 		    	if (!mgr.lookupNearestNeighbors(nnPair, nnDistance)) {
 		    		error("problem finding nearest neighbors");
 		    	}
@@ -280,6 +291,8 @@ public class StandardHierarchicalClusterTask extends AbstractHierarchicalCluster
 		    		mgr.updateNearestNeighbors();
 		    	}
 
+		    	MERGE.stop(start);
+
 		    	ph.postStep();
 
 		    } // while
@@ -438,7 +451,7 @@ public class StandardHierarchicalClusterTask extends AbstractHierarchicalCluster
 		    }
 
 		    if (numWorkers > 1) {
-		        mThreadPool = Executors.newFixedThreadPool(numWorkers);
+		        mThreadPool = TaskScheduler.newComputeExecutor(numWorkers);
 		    }
 		}
 
@@ -0,0 +1,200 @@
+package gov.pnnl.jac.cluster;
+
+import gov.pnnl.jac.geom.CoordinateList;
+import gov.pnnl.jac.geom.CoordinateMath;
+
+/**
+ * <p>Holds the sufficient statistics of a set of coordinates: the number of
+ * coordinates, and for each dimension, the number of values that are not
+ * NaN, their sum, and the sum of their squares.  These are all that is
+ * needed to compute the variance and distortion of a cluster about any
+ * center, so once they have been gathered for a cluster, its contribution
+ * to the Bayes Information Criterion may be computed without reading its
+ * members again.  Statistics for the union of disjoint sets of coordinates
+ * are obtained by adding those of the sets with <tt>add()</tt>.</p>
+ *
+ * <p><tt>ClusterStats.computeBIC()</tt> accepts a map from clusters to their
+ * statistics, which it uses and fills in, so statistics of clusters that
+ * have not changed are computed only once.  Since <tt>Cluster</tt> objects
+ * are immutable, statistics never go stale while the clusters are mapped
+ * to them.</p>
+ */
+public final class SufficientStatistics {
+
+    private int mCount;
+    private int[] mValueCounts;
+    private double[] mSums;
+    private double[] mSumSqs;
+
+    /**
+     * Constructs statistics for an empty set of coordinates of the specified
+     * dimensionality.
+     *
+     * @param dim
+     */
+    public SufficientStatistics(int dim) {
+        mValueCounts = new int[dim];
+        mSums = new double[dim];
+        mSumSqs = new double[dim];
+    }
+
+    /**
+     * Computes the statistics of the members of a cluster.
+     *
+     * @param cs
+     * @param cluster
+     * @return
+     */
+    public static SufficientStatistics compute(CoordinateList cs, Cluster cluster) {
+        return compute(cs, cluster.getMembership());
+    }
+
+    /**
+     * Computes the statistics of the coordinates with the specified indices.
+     *
+     * @param cs
+     * @param indices
+     * @return
+     */
+    public static SufficientStatistics compute(CoordinateList cs, int[] indices) {
+        int dim = cs.getDimensionCount();
+        SufficientStatistics stats = new SufficientStatistics(dim);
+        double[] buffer = new double[dim];
+        for (int i=0; i<indices.length; i++) {
+            cs.getCoordinates(indices[i], buffer);
+            stats.add(buffer);
+        }
+        return stats;
+    }
+
+    /**
+     * Adds a coordinate to the statistics.
+     *
+     * @param coords
+     */
+    public void add(double[] coords) {
+        checkDimensions(coords.length);
+        int dim = mSums.length;
+        for (int j=0; j<dim; j++) {
+            double d = coords[j];
+            if (!Double.isNaN(d)) {
+                mSums[j] += d;
+                mSumSqs[j] += d * d;
+                mValueCounts[j]++;
+            }
+        }
+        mCount++;
+    }
+
+    /**
+     * Adds the statistics for a disjoint set of coordinates, so that
+     * these become the statistics of the union of the two sets.
+     *
+     * @param other
+     */
+    public void add(SufficientStatistics other) {
+        checkDimensions(other.mSums.length);
+        int dim = mSums.length;
+        for (int j=0; j<dim; j++) {
+            mSums[j] += other.mSums[j];
+            mSumSqs[j] += other.mSumSqs[j];
+            mValueCounts[j] += other.mValueCounts[j];
+        }
+        mCount += other.mCount;
+    }
+
+    /**
+     * Returns the number of coordinates.
+     * @return
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the dimensionality of the coordinates.
+     * @return
+     */
+    public int getDimensions() {
+        return mSums.length;
+    }
+
+    /**
+     * Returns the number of values in the specified dimension which are not NaN.
+     * @param dim
+     * @return
+     */
+    public int getValueCount(int dim) {
+        return mValueCounts[dim];
+    }
+
+    /**
+     * Returns the sum of the values in the specified dimension which are not NaN.
+     * @param dim
+     * @return
+     */
+    public double getSum(int dim) {
+        return mSums[dim];
+    }
+
+    /**
+     * Returns the sum of the squares of the values in the specified dimension
+     * which are not NaN.
+     * @param dim
+     * @return
+     */
+    public double getSumOfSquares(int dim) {
+        return mSumSqs[dim];
+    }
+
+    /**
+     * Returns the mean of the coordinates, with NaN in those dimensions
+     * which have no values.
+     * @return
+     */
+    public double[] getMean() {
+        int dim = mSums.length;
+        double[] mean = new double[dim];
+        for (int j=0; j<dim; j++) {
+            mean[j] = mValueCounts[j] > 0 ? mSums[j]/mValueCounts[j] : Double.NaN;
+        }
+        return mean;
+    }
+
+    /**
+     * Computes the variance of the coordinates in each dimension about the
+     * specified center.  Dimensions with no values have a variance of 0.
+     *
+     * @param center
+     * @return
+     */
+    public double[] computeVariance(double[] center) {
+        checkDimensions(center.length);
+        int dim = mSums.length;
+        double[] variance = new double[dim];
+        for (int j=0; j<dim; j++) {
+            if (mValueCounts[j] > 0) {
+                variance[j] = Math.max(0.0, (mSumSqs[j] - center[j] * mSums[j]) / mValueCounts[j]);
+            }
+        }
+        return variance;
+    }
+
+    /**
+     * Computes the distortion of the coordinates about the specified center,
+     * which is the number of coordinates times the sum of the variances.
+     *
+     * @param center
+     * @return
+     */
+    public double computeDistortion(double[] center) {
+        return mCount * CoordinateMath.norm1(computeVariance(center));
+    }
+
+    private void checkDimensions(int dim) {
+        if (dim != mSums.length) {
+            throw new IllegalArgumentException("dimension mismatch: " +
+                    dim + " != " + mSums.length);
+        }
+    }
+}
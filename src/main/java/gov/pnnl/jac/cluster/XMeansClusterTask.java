@@ -20,6 +20,9 @@ package gov.pnnl.jac.cluster;
 
 import gov.pnnl.jac.geom.CoordinateList;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Variant of k-means clustering that automatically determines k. This begins
  * with all coordinates belonging to one large cluster.
@@ -38,6 +41,11 @@ public class XMeansClusterTask extends KMeansSplittingClusterTask {
 
     private double mOverallBIC;
     
+    // Statistics of the clusters, shared by the splitters, so the statistics
+    // of clusters which are not split are computed only once.
+    private Map<Cluster, SufficientStatistics> mStatsCache = 
+        new ConcurrentHashMap<Cluster, SufficientStatistics>();
+    
     public XMeansClusterTask(CoordinateList cs, XMeansClusterTaskParams params) {
         super(cs, params);
     }
@@ -56,7 +64,7 @@ public class XMeansClusterTask extends KMeansSplittingClusterTask {
     protected ClusterSplitter createSplitter(ClusterList clusters,
             Cluster cluster) {
         return new XMeansSplitter(getCoordinateList(), clusters, mOverallBIC, 
-                (XMeansClusterTaskParams) getParams());
+                (XMeansClusterTaskParams) getParams(), mStatsCache);
     }
 
     /**
@@ -65,6 +73,19 @@ public class XMeansClusterTask extends KMeansSplittingClusterTask {
      */
     @Override
     protected void initializeIteration(ClusterList clusters) {
-        mOverallBIC = ClusterStats.computeBIC(getCoordinateList(), clusters);
+        // Keep only the statistics of the current clusters, which are those
+        // not split in the last iteration and the children of those that were.
+        Map<Cluster, SufficientStatistics> statsCache = 
+            new ConcurrentHashMap<Cluster, SufficientStatistics>();
+        int numClusters = clusters.getClusterCount();
+        for (int i=0; i<numClusters; i++) {
+            Cluster cluster = clusters.getCluster(i);
+            SufficientStatistics stats = mStatsCache.get(cluster);
+            if (stats != null) {
+                statsCache.put(cluster, stats);
+            }
+        }
+        mStatsCache = statsCache;
+        mOverallBIC = ClusterStats.computeBIC(getCoordinateList(), clusters, mStatsCache);
     }
 }
@@ -85,6 +85,11 @@ public class XMeansClusterTaskParams extends KMeansSplittingClusterTaskParams {
             return this;
         }
 
+        public Builder gatherAsFloats(boolean b) {
+            mParams.setGatherAsFloats(b);
+            return this;
+        }
+
         public Builder useOverallBIC(boolean b) {
             ((XMeansClusterTaskParams) mParams).setUseOverallBIC(b);
             return this;
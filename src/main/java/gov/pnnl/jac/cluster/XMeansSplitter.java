@@ -19,13 +19,14 @@
 package gov.pnnl.jac.cluster;
 
 import gov.pnnl.jac.geom.CoordinateList;
-import gov.pnnl.jac.geom.FilteredCoordinateList;
 import gov.pnnl.jac.task.TaskOutcome;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class XMeansSplitter extends ClusterSplitter {
 
@@ -38,15 +39,38 @@ public class XMeansSplitter extends ClusterSplitter {
     
     private double mOverallBIC;
     
+    // Statistics of the clusters, used to compute BICs without reading
+    // the coordinates of clusters whose statistics are already known.
+    private Map<Cluster, SufficientStatistics> mStatsCache;
+    
     public XMeansSplitter(CoordinateList coordinates, ClusterList clusterList,
             double overallBIC, XMeansClusterTaskParams params) {
-        if (coordinates == null || clusterList == null || params == null) {
+        this(coordinates, clusterList, overallBIC, params, 
+                new ConcurrentHashMap<Cluster, SufficientStatistics>());
+    }
+    
+    /**
+     * Constructor taking a map of cluster statistics, which may be shared
+     * by splitters running concurrently, so it must be thread-safe.  Statistics
+     * of candidate children are added to it.
+     * 
+     * @param coordinates
+     * @param clusterList
+     * @param overallBIC
+     * @param params
+     * @param statsCache
+     */
+    public XMeansSplitter(CoordinateList coordinates, ClusterList clusterList,
+            double overallBIC, XMeansClusterTaskParams params, 
+            Map<Cluster, SufficientStatistics> statsCache) {
+        if (coordinates == null || clusterList == null || params == null || statsCache == null) {
             throw new NullPointerException();
         }
         mCoordinates = coordinates;
         mClusterList = clusterList;
         mParams = params;
         mOverallBIC = overallBIC;
+        mStatsCache = statsCache;
     }
     
     @Override
@@ -61,7 +85,7 @@ public class XMeansSplitter extends ClusterSplitter {
         
         double bicThreshold = mOverallBIC;
         if (!useOverallBIC) {
-            bicThreshold = ClusterStats.computeBIC(mCoordinates, cluster);
+            bicThreshold = ClusterStats.computeBIC(mCoordinates, cluster, mStatsCache);
         }
         
         Collection<Cluster> result = null;
@@ -70,10 +94,18 @@ public class XMeansSplitter extends ClusterSplitter {
         int[] splitsToTry = clusterCount <= 3 ?
                 MANY_SPLITS : FEW_SPLITS;
         
+        // Gathered once and used for every split tried.
+        int[] members = null;
+        CoordinateList gathered = null;
+        
         for (int i=0; i<splitsToTry.length; i++) {
             int splitDiv = splitsToTry[i];
             if (sz >= splitDiv) {
-                Collection<Cluster> children = split(cluster, splitDiv);
+                if (gathered == null) {
+                    members = cluster.getMembership();
+                    gathered = gatherMembers(mCoordinates, members, mParams.getGatherAsFloats());
+                }
+                Collection<Cluster> children = split(members, gathered, splitDiv);
                 int numChildren = children.size();
                 if (numChildren > 1) {
                     
@@ -81,10 +113,12 @@ public class XMeansSplitter extends ClusterSplitter {
                     
                     if (useOverallBIC) {
                         bic = ClusterStats.computeBIC(mCoordinates, 
-                                prepareClusterArray(mClusterList, children, cluster));
+                                prepareClusterArray(mClusterList, children, cluster), 
+                                mStatsCache);
                     } else {
                         bic = ClusterStats.computeBIC(mCoordinates, 
-                                children.toArray(new Cluster[children.size()]));
+                                children.toArray(new Cluster[children.size()]), 
+                                mStatsCache);
                     }
                 
                     if (!Double.isNaN(bic) && bic > bicThreshold) {
@@ -92,6 +126,11 @@ public class XMeansSplitter extends ClusterSplitter {
                         break;
                     }
                 }
+
+                // Rejected, so their statistics won't be needed again.
+                for (Cluster child : children) {
+                    mStatsCache.remove(child);
+                }
                 
                 if (numChildren < splitDiv) {
                     break;
@@ -106,13 +145,14 @@ public class XMeansSplitter extends ClusterSplitter {
         return result;
     }
 
-    private Collection<Cluster> split(Cluster cluster, int howMany) {
-        
-        int[] memberIndices = cluster.getMembership();
-        FilteredCoordinateList fcs = new FilteredCoordinateList(memberIndices, mCoordinates);
+    // Splits the cluster with the specified members, whose coordinates have been 
+    // gathered into the specified list.  The statistics of the children are 
+    // computed from the gathered coordinates and put into the statistics cache.
+    private Collection<Cluster> split(int[] members, CoordinateList gathered, int howMany) {
         
-        KMeansClusterTask kmeans = new KMeansClusterTask(fcs,
-                new KMeansClusterTaskParams(howMany, Integer.MAX_VALUE, 0, 1, false,
+        KMeansClusterTask kmeans = new KMeansClusterTask(gathered,
+                new KMeansClusterTaskParams(howMany, Integer.MAX_VALUE, 0, 
+                localWorkerThreads(members.length, mParams.getNumWorkerThreads()), false,
                 mParams.getDistanceFunc(), mParams.getClusterSeeder()));
         
         kmeans.run();
@@ -135,12 +175,15 @@ public class XMeansSplitter extends ClusterSplitter {
         
         for (int i=0; i<numClusters; i++) {
                 Cluster c = clusters.getCluster(i);
-                int[] indices = c.getMembership();
-                int n = indices.length;
+                int[] localIndices = c.getMembership();
+                int n = localIndices.length;
+                int[] indices = new int[n];
                 for (int j=0; j<n; j++) {
-                        indices[j] = fcs.getWrappedIndex(indices[j]);
+                        indices[j] = members[localIndices[j]];
                 }
-                rtn.add(new Cluster(indices, c.getCenter()));
+                Cluster child = new Cluster(indices, c.getCenter());
+                mStatsCache.put(child, SufficientStatistics.compute(gathered, localIndices));
+                rtn.add(child);
         }
         
         return rtn;
@@ -111,7 +111,7 @@ public abstract class AbstractHierarchicalSimilarityClusterTask extends Similari
 
         if (mDendrogram == null) {
             // This should build a completely new dendrogram.
-            mDistances = new SimilarityDistances(similarities);
+            mDistances = new SimilarityDistances(similarities, params.getNumWorkerThreads());
             buildDendrogram();
         } else {
             postMessage("reclustering from existing dendrogram");
@@ -0,0 +1,27 @@
+package gov.pnnl.jac.cluster.similarity;
+
+/**
+ * Defines a container of pairwise similarities able to supply a run of
+ * similarities at once, so consumers needing many of them avoid a call
+ * to <tt>getSimilarity()</tt> per pair.
+ */
+public interface BlockSimilarities extends Similarities {
+
+    /**
+     * Returns the similarities between a record and a range of records.
+     * The similarity between <tt>row</tt> and <tt>fromColumn + k</tt> is
+     * placed in element <tt>k</tt> of the returned array.
+     *
+     * @param row the index of the record.
+     * @param fromColumn the index of the first record of the range.
+     * @param toColumn the index following the last record of the range.
+     * @param similarities a buffer to receive the similarities. If null or
+     *   shorter than <tt>toColumn - fromColumn</tt>, a new array is allocated.
+     *
+     * @return the array holding the similarities.
+     *
+     * @throws IndexOutOfBoundsException if any of the indices are out of range.
+     */
+    double[] getSimilarities(int row, int fromColumn, int toColumn, double[] similarities);
+
+}
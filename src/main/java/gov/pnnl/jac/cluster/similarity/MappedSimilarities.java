@@ -0,0 +1,288 @@
+package gov.pnnl.jac.cluster.similarity;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>Similarities read from a precomputed dense matrix in a file mapped
+ * into memory, so opening even a very large matrix does not read it.  The file
+ * is big-endian, starting with an int, the record count <tt>n</tt>.  The
+ * similarities between each pair of distinct records follow, as either all floats
+ * or all doubles, for pairs (0, 1), (0, 2), ..., (0, n-1), (1, 2), ..., (n-2, n-1).
+ * This is the upper triangle of the matrix in row-major order, the order of the
+ * distances in distance cache files.  Which of the two types the similarities are
+ * is inferred from the length of the file.  The similarity of a record to
+ * itself is taken to be the maximum possible similarity.</p>
+ *
+ * <p>Since the similarities are only read, instances may be used by multiple
+ * threads at once.</p>
+ */
+public class MappedSimilarities implements BlockSimilarities {
+
+    // Length of the header.
+    private static final int HEADER_LEN = 4;
+
+    // Log base 2 of the number of similarities in a chunk.
+    private static final int CHUNK_SHIFT = 27;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1L;
+
+    // Size of the buffer used for writing files.
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private int mRecordCount;
+    private double mMinPossible, mMaxPossible;
+    private boolean mSinglePrecision;
+
+    // The chunks of similarities, only one of which is non-null.
+    private FloatBuffer[] mFloatChunks;
+    private DoubleBuffer[] mDoubleChunks;
+
+    private MappedSimilarities(int recordCount, double minPossible, double maxPossible,
+            boolean singlePrecision) {
+        mRecordCount = recordCount;
+        mMinPossible = minPossible;
+        mMaxPossible = maxPossible;
+        mSinglePrecision = singlePrecision;
+    }
+
+    /**
+     * Opens a matrix of similarities for which the minimum and maximum
+     * possible similarities are not known.
+     *
+     * @param file
+     * @return
+     * @throws IOException if an IO error occurs or the file does not
+     *   have the proper format.
+     */
+    public static MappedSimilarities open(File file) throws IOException {
+        return open(file, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Opens a matrix of similarities.
+     *
+     * @param file
+     * @param minPossible the minimum possible similarity, or NaN if not known.
+     * @param maxPossible the maximum possible similarity, or NaN if not known.
+     * @return
+     * @throws IOException if an IO error occurs or the file does not
+     *   have the proper format.
+     */
+    public static MappedSimilarities open(File file, double minPossible,
+            double maxPossible) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long flen = raf.length();
+            if (flen < HEADER_LEN) {
+                throw new IOException("not a similarity matrix file: " + file);
+            }
+            int recordCount = raf.readInt();
+            if (recordCount < 0) {
+                throw new IOException("invalid record count: " + recordCount);
+            }
+            long pairCount = pairCount(recordCount);
+            boolean singlePrecision;
+            if (flen == HEADER_LEN + 4L * pairCount) {
+                singlePrecision = true;
+            } else if (flen == HEADER_LEN + 8L * pairCount) {
+                singlePrecision = false;
+            } else {
+                throw new IOException("invalid similarity matrix file length for " +
+                        recordCount + " records: " + flen);
+            }
+            MappedSimilarities sims = new MappedSimilarities(recordCount, minPossible,
+                    maxPossible, singlePrecision);
+            FileChannel channel = raf.getChannel();
+            int chunkCount = (int) ((pairCount + CHUNK_MASK) >>> CHUNK_SHIFT);
+            int bytesPer = singlePrecision ? 4 : 8;
+            if (singlePrecision) {
+                sims.mFloatChunks = new FloatBuffer[chunkCount];
+            } else {
+                sims.mDoubleChunks = new DoubleBuffer[chunkCount];
+            }
+            for (int i = 0; i < chunkCount; i++) {
+                long first = (long) i << CHUNK_SHIFT;
+                long count = Math.min(1L << CHUNK_SHIFT, pairCount - first);
+                ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_LEN + first * bytesPer, count * bytesPer);
+                if (singlePrecision) {
+                    sims.mFloatChunks[i] = chunk.asFloatBuffer();
+                } else {
+                    sims.mDoubleChunks[i] = chunk.asDoubleBuffer();
+                }
+            }
+            return sims;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Saves similarities to a file in the format read by <tt>open()</tt>.
+     *
+     * @param similarities
+     * @param file
+     * @param singlePrecision if true, the similarities are saved as floats, otherwise
+     *   as doubles.
+     * @throws IOException
+     */
+    public static void save(Similarities similarities, File file, boolean singlePrecision)
+        throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            FileChannel channel = fos.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            int rc = similarities.getRecordCount();
+            buffer.putInt(rc);
+            int blockLen = WRITE_BUFFER_SIZE / 8;
+            double[] row = null;
+            for (int i = 0; i < rc; i++) {
+                for (int j = i + 1; j < rc; j += blockLen) {
+                    int end = (int) Math.min(rc, (long) j + blockLen);
+                    int len = end - j;
+                    if (similarities instanceof BlockSimilarities) {
+                        row = ((BlockSimilarities) similarities).getSimilarities(i, j, end, row);
+                    } else {
+                        if (row == null) {
+                            row = new double[blockLen];
+                        }
+                        for (int k = 0; k < len; k++) {
+                            row[k] = similarities.getSimilarity(i, j + k);
+                        }
+                    }
+                    for (int k = 0; k < len; k++) {
+                        if (buffer.remaining() < 8) {
+                            writeFully(channel, buffer);
+                        }
+                        if (singlePrecision) {
+                            buffer.putFloat((float) row[k]);
+                        } else {
+                            buffer.putDouble(row[k]);
+                        }
+                    }
+                }
+            }
+            writeFully(channel, buffer);
+            fos.close();
+            fos = null;
+        } finally {
+            if (fos != null) {
+                try {
+                    fos.close();
+                } catch (IOException e) {
+                    // Ignore -- don't want to mask the other problem.
+                }
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static long pairCount(int recordCount) {
+        return (long) recordCount * (recordCount - 1L) / 2L;
+    }
+
+    /**
+     * Returns true if the similarities are stored as floats, false if as doubles.
+     */
+    public boolean isSinglePrecision() {
+        return mSinglePrecision;
+    }
+
+    public int getRecordCount() {
+        return mRecordCount;
+    }
+
+    public double getMaxPossible() {
+        return mMaxPossible;
+    }
+
+    public double getMinPossible() {
+        return mMinPossible;
+    }
+
+    // Position of the similarity for i < j.
+    private long pairPos(int i, int j) {
+        return (long) i * (2L * mRecordCount - i - 1L) / 2L + (j - i - 1);
+    }
+
+    private void checkIndex(int ndx) {
+        if (ndx < 0 || ndx >= mRecordCount) {
+            throw new IndexOutOfBoundsException("index out of bounds: " + ndx);
+        }
+    }
+
+    private double get(long pos) {
+        int chunk = (int) (pos >>> CHUNK_SHIFT);
+        int offset = (int) (pos & CHUNK_MASK);
+        return mSinglePrecision ? mFloatChunks[chunk].get(offset) :
+            mDoubleChunks[chunk].get(offset);
+    }
+
+    public double getSimilarity(int i, int j) {
+        checkIndex(i);
+        checkIndex(j);
+        if (i == j) {
+            return mMaxPossible;
+        }
+        return i < j ? get(pairPos(i, j)) : get(pairPos(j, i));
+    }
+
+    public double[] getSimilarities(int row, int fromColumn, int toColumn, double[] similarities) {
+        checkIndex(row);
+        if (fromColumn < 0 || toColumn > mRecordCount || fromColumn > toColumn) {
+            throw new IndexOutOfBoundsException("invalid column range: [" + fromColumn +
+                    ", " + toColumn + ")");
+        }
+        int len = toColumn - fromColumn;
+        if (similarities == null || similarities.length < len) {
+            similarities = new double[len];
+        }
+        int k = 0;
+        int j = fromColumn;
+        // Columns before the row are in earlier rows of the upper triangle.
+        for (; j < toColumn && j < row; j++) {
+            similarities[k++] = get(pairPos(j, row));
+        }
+        if (j == row && j < toColumn) {
+            similarities[k++] = mMaxPossible;
+            j++;
+        }
+        if (j < toColumn) {
+            // Columns after the row are contiguous, though they may
+            // cross into the next chunk.
+            long pos = pairPos(row, j);
+            while (k < len) {
+                int chunk = (int) (pos >>> CHUNK_SHIFT);
+                int offset = (int) (pos & CHUNK_MASK);
+                int n = (int) Math.min(len - k, (1L << CHUNK_SHIFT) - offset);
+                if (mSinglePrecision) {
+                    FloatBuffer fb = mFloatChunks[chunk];
+                    for (int m = 0; m < n; m++) {
+                        similarities[k++] = fb.get(offset + m);
+                    }
+                } else {
+                    DoubleBuffer db = mDoubleChunks[chunk];
+                    for (int m = 0; m < n; m++) {
+                        similarities[k++] = db.get(offset + m);
+                    }
+                }
+                pos += n;
+            }
+        }
+        return similarities;
+    }
+
+}
@@ -1,16 +1,45 @@
 package gov.pnnl.jac.cluster.similarity;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import gov.pnnl.jac.geom.distance.DistanceCacheFactory;
 import gov.pnnl.jac.geom.distance.ReadOnlyDistanceCache;
+import gov.pnnl.jac.task.TaskScheduler;
 
 public class SimilarityDistances {
 
+    // Fewest pairs worth giving a thread of their own when searching for
+    // the similarity range.
+    private static final long MIN_PAIRS_PER_THREAD = 1L << 16;
+    
+    // Number of similarities requested at once from a BlockSimilarities.
+    private static final int BLOCK_SIZE = 4096;
+    
     private double mSimRange, mMaxSim;
     private Similarities mSimilarities;
     
     public SimilarityDistances(Similarities similarities) {
+        this(similarities, -1);
+    }
+    
+    /**
+     * Constructor.  If the similarities do not define their maximum or minimum
+     * possible values, they are found by a pass over all pairs, split among
+     * the specified number of threads.
+     * 
+     * @param similarities
+     * @param numWorkerThreads the number of threads.  If not positive,
+     *   the compute parallelism of the <tt>TaskScheduler</tt> is used.
+     */
+    public SimilarityDistances(Similarities similarities, int numWorkerThreads) {
         if (similarities == null) {
             throw new NullPointerException();
         }
@@ -19,31 +48,130 @@ public class SimilarityDistances {
         boolean computeMax = Double.isNaN(mMaxSim);
         boolean computeMin = Double.isNaN(minSim);
         if (computeMax || computeMin) {
-            int rc = similarities.getRecordCount();
-            double max = -Double.MAX_VALUE;
-            double min = Double.MAX_VALUE;
-            for (int i=0; i<rc; i++) {
-                for (int j=i+1; j<rc; j++) {
-                    double s = similarities.getSimilarity(i, j);
-                    if (computeMax && s > max) {
-                        max = s;
-                    }
-                    if (computeMin && s < min) {
-                        min = s;
-                    }
-                }
-            }
+            double[] range = findRange(similarities, numWorkerThreads);
             if (computeMax) {
-                mMaxSim = max;
+                mMaxSim = range[1];
             }
             if (computeMin) {
-                minSim = min;
+                minSim = range[0];
             }
         }
         mSimilarities = similarities;
         mSimRange = mMaxSim - minSim;
     }
     
+    // Returns the minimum and maximum similarities of all pairs of distinct records.
+    private static double[] findRange(final Similarities similarities, int numWorkerThreads) {
+        
+        final int rc = similarities.getRecordCount();
+        long pairCount = (long) rc * (rc - 1L) / 2L;
+        
+        int threads = numWorkerThreads > 0 ? numWorkerThreads : TaskScheduler.getComputeParallelism();
+        int workers = (int) Math.max(1L, Math.min(threads, pairCount / MIN_PAIRS_PER_THREAD));
+        
+        // Rows are split so each worker has about the same number of pairs, since
+        // the earlier rows have more of them.
+        List<Callable<double[]>> ranges = new ArrayList<Callable<double[]>>(workers);
+        int rowStart = 0;
+        for (int w=1; w<=workers; w++) {
+            final int from = rowStart;
+            final int to = w == workers ? rc : rowForPairCount(rc, w * pairCount / workers);
+            ranges.add(new Callable<double[]>() {
+                public double[] call() {
+                    double min = Double.MAX_VALUE;
+                    double max = -Double.MAX_VALUE;
+                    double[] buffer = null;
+                    for (int i=from; i<to; i++) {
+                        for (int j=i+1; j<rc; j+=BLOCK_SIZE) {
+                            int end = (int) Math.min(rc, (long) j + BLOCK_SIZE);
+                            buffer = getSimilarities(similarities, i, j, end, buffer);
+                            int len = end - j;
+                            for (int k=0; k<len; k++) {
+                                double s = buffer[k];
+                                if (s > max) {
+                                    max = s;
+                                }
+                                if (s < min) {
+                                    min = s;
+                                }
+                            }
+                        }
+                    }
+                    return new double[] { min, max };
+                }
+            });
+            rowStart = to;
+        }
+        
+        if (workers == 1) {
+            try {
+                return ranges.get(0).call();
+            } catch (RuntimeException re) {
+                throw re;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        double[] range = new double[] { Double.MAX_VALUE, -Double.MAX_VALUE };
+        ExecutorService threadPool = TaskScheduler.newComputeExecutor(workers);
+        try {
+            for (Future<double[]> future : threadPool.invokeAll(ranges)) {
+                double[] r = future.get();
+                range[0] = Math.min(range[0], r[0]);
+                range[1] = Math.max(range[1], r[1]);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted");
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            threadPool.shutdownNow();
+        }
+        
+        return range;
+    }
+    
+    // Returns the first row such that the rows preceding it have at least
+    // the specified number of pairs with later rows.
+    private static int rowForPairCount(int rc, long pairs) {
+        int lo = 0, hi = rc;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            long before = (long) mid * (rc - 1L) - (long) mid * (mid - 1L) / 2L;
+            if (before < pairs) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    // Gets a run of similarities in one call if the similarities support it, 
+    // otherwise one pair at a time.
+    private static double[] getSimilarities(Similarities similarities, 
+            int row, int fromColumn, int toColumn, double[] buffer) {
+        if (similarities instanceof BlockSimilarities) {
+            return ((BlockSimilarities) similarities).getSimilarities(row, fromColumn, toColumn, buffer);
+        }
+        int len = toColumn - fromColumn;
+        if (buffer == null || buffer.length < len) {
+            buffer = new double[len];
+        }
+        for (int k=0; k<len; k++) {
+            buffer[k] = similarities.getSimilarity(row, fromColumn + k);
+        }
+        return buffer;
+    }
+    
     public int getRecordCount() {
         return mSimilarities.getRecordCount();
     }
@@ -53,6 +181,32 @@ public class SimilarityDistances {
         return (mMaxSim - mSimilarities.getSimilarity(i, j))/mSimRange;
     }
     
+    /**
+     * Returns the distances between a record and a range of records, the distance
+     * between <tt>row</tt> and <tt>fromColumn + k</tt> placed in element <tt>k</tt>.
+     * The similarities are requested in one call if they are 
+     * <tt>BlockSimilarities</tt>.
+     * 
+     * @param row
+     * @param fromColumn
+     * @param toColumn
+     * @param distances a buffer for the distances.  If null or too short, a new
+     *   array is allocated.
+     * @return the array holding the distances.
+     */
+    public double[] getDistances(int row, int fromColumn, int toColumn, double[] distances) {
+        distances = getSimilarities(mSimilarities, row, fromColumn, toColumn, distances);
+        int len = toColumn - fromColumn;
+        if (mSimRange == 0.0) {
+            Arrays.fill(distances, 0, len, 0.0);
+        } else {
+            for (int k=0; k<len; k++) {
+                distances[k] = (mMaxSim - distances[k])/mSimRange;
+            }
+        }
+        return distances;
+    }
+    
     public ReadOnlyDistanceCache asReadOnlyDistanceCache() {
         return new SimilarityDistancesReadOnlyDistanceCache();
     }
@@ -74,8 +228,7 @@ public class SimilarityDistances {
         }
 
         public double getDistance(long n) throws IOException {
-            int[] ids = new int[2];
-            DistanceCacheFactory.getIndicesForDistance(n, this);
+            int[] ids = DistanceCacheFactory.getIndicesForDistance(n, this);
             return getDistance(ids[0], ids[1]);
         }
 
@@ -0,0 +1,273 @@
+package gov.pnnl.jac.cluster.similarity;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * <p>Similarities loaded from a file of triplets, for matrices in which most
+ * pairs share a default similarity, often 0.  The file is big-endian, starting
+ * with an int, the record count.  Triplets follow to the end of the file, each
+ * an int, another int, and a double: the indices of two records and their
+ * similarity.  Pairs may be given in either order.  If a pair appears
+ * more than once, the last triplet for it is used.  Triplets pairing
+ * a record with itself are ignored, since the similarity of a record to
+ * itself is taken to be the maximum possible similarity.</p>
+ *
+ * <p>The file is mapped into memory to be read, and the similarities are kept
+ * in compressed rows, each sorted by column.  Since they are only read, instances
+ * may be used by multiple threads at once.</p>
+ */
+public class SparseSimilarities implements BlockSimilarities {
+
+    private static final int HEADER_LEN = 4;
+    private static final int TRIPLET_LEN = 16;
+
+    // Maximum number of triplets mapped at once.
+    private static final int TRIPLETS_PER_CHUNK = 1 << 26;
+
+    private int mRecordCount;
+    private double mDefaultSimilarity;
+    private double mMinPossible, mMaxPossible;
+
+    // Row i has columns mColumns[mRowStarts[i]] through
+    // mColumns[mRowStarts[i+1] - 1], in ascending order.
+    private int[] mRowStarts;
+    private int[] mColumns;
+    private double[] mSimilarities;
+
+    private SparseSimilarities(int recordCount, double defaultSimilarity,
+            double minPossible, double maxPossible) {
+        mRecordCount = recordCount;
+        mDefaultSimilarity = defaultSimilarity;
+        mMinPossible = minPossible;
+        mMaxPossible = maxPossible;
+    }
+
+    /**
+     * Loads similarities for which the minimum and maximum possible
+     * similarities are not known.
+     *
+     * @param file
+     * @param defaultSimilarity the similarity of pairs without triplets.
+     * @return
+     * @throws IOException if an IO error occurs or the file does not
+     *   have the proper format.
+     */
+    public static SparseSimilarities load(File file, double defaultSimilarity) throws IOException {
+        return load(file, defaultSimilarity, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Loads similarities.
+     *
+     * @param file
+     * @param defaultSimilarity the similarity of pairs without triplets.
+     * @param minPossible the minimum possible similarity, or NaN if not known.
+     * @param maxPossible the maximum possible similarity, or NaN if not known.
+     * @return
+     * @throws IOException if an IO error occurs or the file does not
+     *   have the proper format.
+     */
+    public static SparseSimilarities load(File file, double defaultSimilarity,
+            double minPossible, double maxPossible) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long flen = raf.length();
+            if (flen < HEADER_LEN || (flen - HEADER_LEN) % TRIPLET_LEN != 0) {
+                throw new IOException("invalid similarity triplet file length: " + flen);
+            }
+            int recordCount = raf.readInt();
+            if (recordCount < 0) {
+                throw new IOException("invalid record count: " + recordCount);
+            }
+            long tripletCount = (flen - HEADER_LEN) / TRIPLET_LEN;
+            // Each triplet is stored in the rows of both records.
+            if (tripletCount > (Integer.MAX_VALUE - 8) / 2) {
+                throw new IOException("too many similarity triplets: " + tripletCount);
+            }
+            SparseSimilarities sims = new SparseSimilarities(recordCount, defaultSimilarity,
+                    minPossible, maxPossible);
+            sims.build(raf.getChannel(), (int) tripletCount);
+            return sims;
+        } finally {
+            raf.close();
+        }
+    }
+
+    // Builds the compressed rows from the triplets, using two stable counting sorts,
+    // by column and then by row, so that each row is sorted by column and repeated
+    // pairs remain in the order of the file.
+    private void build(FileChannel channel, int tripletCount) throws IOException {
+
+        int rc = mRecordCount;
+        int entryCount = 0;
+
+        // First pass counts the entries of each column, which are the same
+        // as the entries of each row, since both orders of each pair are stored.
+        int[] counts = new int[rc + 1];
+        for (int first = 0; first < tripletCount; first += TRIPLETS_PER_CHUNK) {
+            int n = Math.min(TRIPLETS_PER_CHUNK, tripletCount - first);
+            ByteBuffer chunk = mapTriplets(channel, first, n);
+            for (int t = 0; t < n; t++) {
+                int offset = t * TRIPLET_LEN;
+                int i = chunk.getInt(offset);
+                int j = chunk.getInt(offset + 4);
+                if (i < 0 || i >= rc || j < 0 || j >= rc) {
+                    throw new IOException("invalid record indices in triplet " +
+                            (first + t) + ": (" + i + ", " + j + ")");
+                }
+                if (i != j) {
+                    counts[i + 1]++;
+                    counts[j + 1]++;
+                    entryCount += 2;
+                }
+            }
+        }
+        for (int i = 0; i < rc; i++) {
+            counts[i + 1] += counts[i];
+        }
+        int[] starts = counts.clone();
+
+        // Second pass sorts by column.
+        int[] byColumnRows = new int[entryCount];
+        int[] byColumnColumns = new int[entryCount];
+        double[] byColumnSims = new double[entryCount];
+        int[] next = starts.clone();
+        for (int first = 0; first < tripletCount; first += TRIPLETS_PER_CHUNK) {
+            int n = Math.min(TRIPLETS_PER_CHUNK, tripletCount - first);
+            ByteBuffer chunk = mapTriplets(channel, first, n);
+            for (int t = 0; t < n; t++) {
+                int offset = t * TRIPLET_LEN;
+                int i = chunk.getInt(offset);
+                int j = chunk.getInt(offset + 4);
+                if (i != j) {
+                    double s = chunk.getDouble(offset + 8);
+                    int e = next[j]++;
+                    byColumnRows[e] = i;
+                    byColumnColumns[e] = j;
+                    byColumnSims[e] = s;
+                    e = next[i]++;
+                    byColumnRows[e] = j;
+                    byColumnColumns[e] = i;
+                    byColumnSims[e] = s;
+                }
+            }
+        }
+
+        // Then by row.
+        int[] columns = new int[entryCount];
+        double[] sims = new double[entryCount];
+        System.arraycopy(starts, 0, next, 0, rc + 1);
+        for (int e = 0; e < entryCount; e++) {
+            int ndx = next[byColumnRows[e]]++;
+            columns[ndx] = byColumnColumns[e];
+            sims[ndx] = byColumnSims[e];
+        }
+        byColumnRows = byColumnColumns = null;
+        byColumnSims = null;
+
+        // Drop all but the last of repeated pairs.
+        int kept = 0;
+        int begin = 0;
+        for (int i = 0; i < rc; i++) {
+            int end = starts[i + 1];
+            starts[i] = kept;
+            for (int e = begin; e < end; e++) {
+                if (e + 1 < end && columns[e + 1] == columns[e]) {
+                    continue;
+                }
+                columns[kept] = columns[e];
+                sims[kept] = sims[e];
+                kept++;
+            }
+            begin = end;
+        }
+        starts[rc] = kept;
+        if (kept < entryCount) {
+            columns = Arrays.copyOf(columns, kept);
+            sims = Arrays.copyOf(sims, kept);
+        }
+
+        mRowStarts = starts;
+        mColumns = columns;
+        mSimilarities = sims;
+    }
+
+    private static ByteBuffer mapTriplets(FileChannel channel, int first, int count)
+        throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY,
+                HEADER_LEN + (long) first * TRIPLET_LEN, (long) count * TRIPLET_LEN);
+    }
+
+    public int getRecordCount() {
+        return mRecordCount;
+    }
+
+    public double getMaxPossible() {
+        return mMaxPossible;
+    }
+
+    public double getMinPossible() {
+        return mMinPossible;
+    }
+
+    /**
+     * Returns the similarity of pairs without triplets.
+     */
+    public double getDefaultSimilarity() {
+        return mDefaultSimilarity;
+    }
+
+    /**
+     * Returns the number of pairs with triplets.
+     */
+    public int getPairCount() {
+        return mRowStarts[mRecordCount] / 2;
+    }
+
+    private void checkIndex(int ndx) {
+        if (ndx < 0 || ndx >= mRecordCount) {
+            throw new IndexOutOfBoundsException("index out of bounds: " + ndx);
+        }
+    }
+
+    public double getSimilarity(int i, int j) {
+        checkIndex(i);
+        checkIndex(j);
+        if (i == j) {
+            return mMaxPossible;
+        }
+        int ndx = Arrays.binarySearch(mColumns, mRowStarts[i], mRowStarts[i + 1], j);
+        return ndx >= 0 ? mSimilarities[ndx] : mDefaultSimilarity;
+    }
+
+    public double[] getSimilarities(int row, int fromColumn, int toColumn, double[] similarities) {
+        checkIndex(row);
+        if (fromColumn < 0 || toColumn > mRecordCount || fromColumn > toColumn) {
+            throw new IndexOutOfBoundsException("invalid column range: [" + fromColumn +
+                    ", " + toColumn + ")");
+        }
+        int len = toColumn - fromColumn;
+        if (similarities == null || similarities.length < len) {
+            similarities = new double[len];
+        }
+        Arrays.fill(similarities, 0, len, mDefaultSimilarity);
+        int end = mRowStarts[row + 1];
+        int ndx = Arrays.binarySearch(mColumns, mRowStarts[row], end, fromColumn);
+        if (ndx < 0) {
+            ndx = -ndx - 1;
+        }
+        for (; ndx < end && mColumns[ndx] < toColumn; ndx++) {
+            similarities[mColumns[ndx] - fromColumn] = mSimilarities[ndx];
+        }
+        if (row >= fromColumn && row < toColumn) {
+            similarities[row - fromColumn] = mMaxPossible;
+        }
+        return similarities;
+    }
+
+}
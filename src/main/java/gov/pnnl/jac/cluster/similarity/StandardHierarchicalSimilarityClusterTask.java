@@ -28,18 +28,21 @@ import gov.pnnl.jac.task.ProgressHandler;
 import gov.pnnl.jac.task.TaskEvent;
 import gov.pnnl.jac.task.TaskListener;
 import gov.pnnl.jac.task.TaskOutcome;
+import gov.pnnl.jac.task.TaskScheduler;
+import gov.pnnl.jac.util.Metrics;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.BrokenBarrierException;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.CyclicBarrier;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import cern.colt.list.IntArrayList;
 
@@ -50,6 +53,9 @@ import cern.colt.list.IntArrayList;
 public class StandardHierarchicalSimilarityClusterTask extends
         AbstractHierarchicalSimilarityClusterTask {
 
+    private static final Metrics.Timer DISTANCE_CACHE_INIT = Metrics.timer("similarity.distanceCacheInit");
+    private static final Metrics.Timer MERGE = Metrics.timer("similarity.merge");
+
     private InterleafDistanceMinimizerTask mMinimizerTask;
 
     // Threshold that determines the number of coordinates whose
@@ -240,7 +246,12 @@ public class StandardHierarchicalSimilarityClusterTask extends
 
                 ph.postMessage("initializing distances in the cache");
 
-                mgr.initializeDistances();
+                long start = DISTANCE_CACHE_INIT.start();
+                try {
+                    mgr.initializeDistances();
+                } finally {
+                    DISTANCE_CACHE_INIT.stop(start);
+                }
 
                 ph.postEnd();
                 
@@ -263,6 +274,8 @@ public class StandardHierarchicalSimilarityClusterTask extends
 
             while (!done) {
 
+                long start = MERGE.start();
+
                 if (!mgr.lookupNearestNeighbors(nnPair, nnDistance)) {
                     error("problem finding nearest neighbors");
                 }
@@ -277,6 +290,8 @@ public class StandardHierarchicalSimilarityClusterTask extends
                     mgr.updateNearestNeighbors();
                 }
 
+                MERGE.stop(start);
+
                 ph.postStep();
 
             } // while
@@ -368,24 +383,16 @@ public class StandardHierarchicalSimilarityClusterTask extends
         // What the object is currently doing.
         private int mDoing = DOING_NOTHING;
 
-        // True if the at least one of the Workers is doing something.
-        private boolean mWorking;
-
-        // The executor that runs the Workers. When in single-processor mode, it
-        // directly calls
-        // the run method of the single worker instead of using a separate
-        // thread.
-        // In multiple-processor mode, it's a ThreadPoolExecutor.
-        private Executor mExecutor;
-
-        // A Barrier to wait on multiple Workers to finish up the current task.
-        // This is null if in single-processor mode, since there's only one
-        // Worker.
-        private CyclicBarrier mBarrier;
+        // The executor that runs the Workers when in multi-processor mode.
+        // O/W, it is null and the single worker is run directly.
+        private ExecutorService mExecutor;
 
         // The worker objects which implement Runnable.
         private Worker[] mWorkers;
 
+        // The workers wrapped as callables for invokeAll().
+        private List<Callable<Object>> mCallables;
+
         // Indices of nearest neighbors. The index of the nearest neighbor of
         // node n is
         // found at mNNIndices[n]
@@ -463,40 +470,12 @@ public class StandardHierarchicalSimilarityClusterTask extends
                 coordsSoFar += coordsForThisWorker;
             }
 
-            if (numWorkers == 1) {
-                // Assign a simple executor which directly calls the single
-                // worker's run method. Don't instantiate a barrier.
-                mExecutor = new Executor() {
-                    public void execute(Runnable runnable) {
-                        if (!Thread.interrupted()) {
-                            runnable.run();
-                        } else {
-                            throw new RejectedExecutionException();
-                        }
-                    }
-                };
-            } else { // numWorkers > 1 -- multi-processor mode.
-
-                // Need the barrier to coordinate waiting on all the workers,
-                // executing on different threads, to finish the current task.
-
-                mBarrier = new CyclicBarrier(numWorkers, new Runnable() {
-                    public void run() {
-                        // Method to execute when all threads reach the barrier. This
-                        // will break the subtask manager out of a wait.
-                        notifyBarrier();
-                    }
-                });
-
-                // Use the pooled executor, which manages the workers as a
-                // thread pool.
-                ThreadPoolExecutor pooledExecutor = (ThreadPoolExecutor) Executors
-                        .newFixedThreadPool(numWorkers);
-                // Keeps all threads alive until we interrupt them.
-                pooledExecutor.setKeepAliveTime(Long.MAX_VALUE,
-                        TimeUnit.MILLISECONDS);
-
-                mExecutor = pooledExecutor;
+            if (numWorkers > 1) {
+                mExecutor = TaskScheduler.newComputeExecutor(numWorkers);
+                mCallables = new ArrayList<Callable<Object>>(numWorkers);
+                for (int i = 0; i < numWorkers; i++) {
+                    mCallables.add(Executors.callable(mWorkers[i]));
+                }
             }
         }
 
@@ -510,8 +489,8 @@ public class StandardHierarchicalSimilarityClusterTask extends
         // Called to stop the threads of the thread pool, which would otherwise
         // keep waiting for another request to do something.
         void shutdown() {
-            if (mExecutor instanceof ThreadPoolExecutor) {
-                ((ThreadPoolExecutor) mExecutor).shutdownNow();
+            if (mExecutor != null) {
+                mExecutor.shutdownNow();
             }
         }
 
@@ -590,55 +569,35 @@ public class StandardHierarchicalSimilarityClusterTask extends
         // Perform the current -- mDoing should be set to the proper value.
         private boolean work() {
             boolean ok = false;
-            mWorking = true;
             try {
-                if (mBarrier != null) { // In multi-processor mode.
-                    // Resets the barrier.
-                    mBarrier.reset();
-                }
-                // Now execute the run methods on the Updaters.
-                for (int i = 0; i < mWorkers.length; i++) {
-                    mExecutor.execute(mWorkers[i]);
-                }
-                if (mBarrier != null) {
-                    // All threads wait until the barrier issues a notify() to them all.
-                    waitOnBarrier();
-                    // Check the status of the barrier.
-                    ok = !mBarrier.isBroken();
+                if (mExecutor != null) { // In multi-processor mode.
+                    for (Future<Object> future : mExecutor.invokeAll(mCallables)) {
+                        future.get();
+                    }
                 } else {
-                    // No barrier, so everything must be ok.
-                    ok = true;
+                    // Just run the single worker directly.
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    mWorkers[0].run();
                 }
-            } catch (RejectedExecutionException ree) {
+                ok = true;
+            } catch (InterruptedException ie) {
                 // Could happen if shutdown while in the middle of something.
-            } finally {
-                mWorking = false;
-            }
-            return ok;
-        }
-
-        // Not called unless in multi-processor mode.
-        private synchronized void waitOnBarrier() {
-            // Don't wait unless mWorking is true. It's possible for the work to
-            // be done so quickly, notifyBarrier() gets called before this
-            // method.
-            // If it went into a wait() after notifyBarrier(), it would
-            // deadlock.
-            if (mWorking) {
-                try {
-                    wait();
-                } catch (InterruptedException ie) {
+            } catch (RejectedExecutionException ree) {
+                // Ditto.
+            } catch (CancellationException ce) {
+                // Ditto.
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
                 }
             }
-        }
-
-        // Again, only applicable when in multi-processor mode when there's a
-        // non-null barrier.
-        private synchronized void notifyBarrier() {
-            // Prevents waitOnBarrier() from waiting if notifyBarrier() gets
-            // called first.
-            mWorking = false;
-            notify();
+            return ok;
         }
 
         // Class that does the deeds.
@@ -683,33 +642,16 @@ public class StandardHierarchicalSimilarityClusterTask extends
 
             public void run() {
 
-                try {
-
-                    switch (mDoing) {
-                    case INITIALIZING_DISTANCES:
-                        workerInitializeDistances();
-                        break;
-                    case UPDATING_DISTANCES:
-                        workerUpdateDistances();
-                        break;
-                    case UPDATING_NEAREST_NEIGHBORS:
-                        workerUpdateNearestNeighbors();
-                        break;
-                    }
-
-                } finally {
-                    // Barrier non-null only if in multi-processor mode.
-                    if (mBarrier != null) {
-                        try {
-                            mBarrier.await();
-                        }
-                        // barrier.broken() will return true if either of these
-                        // exceptions
-                        // happen.
-                        catch (InterruptedException ex) {
-                        } catch (BrokenBarrierException ex) {
-                        }
-                    }
+                switch (mDoing) {
+                case INITIALIZING_DISTANCES:
+                    workerInitializeDistances();
+                    break;
+                case UPDATING_DISTANCES:
+                    workerUpdateDistances();
+                    break;
+                case UPDATING_NEAREST_NEIGHBORS:
+                    workerUpdateNearestNeighbors();
+                    break;
                 }
             }
 
@@ -726,6 +668,9 @@ public class StandardHierarchicalSimilarityClusterTask extends
                     int count = 0;
 
                     int numIndices = mCache.getNumIndices();
+                    // Distances from the current row, obtained a block at a time.
+                    double[] rowDistances = null;
+                    int blockStart = 0, blockEnd = 0;
 
                     try {
 
@@ -734,13 +679,21 @@ public class StandardHierarchicalSimilarityClusterTask extends
                             int jmin = i == mIndex1Min ? mIndex2Min : i + 1;
                             int jmax = i == mIndex1Max ? mIndex2Max
                                     : numIndices - 1;
+                            blockEnd = jmin;
 
                             for (int j = jmin; j <= jmax; j++) {
 
+                                if (j == blockEnd) {
+                                    blockStart = j;
+                                    blockEnd = Math.min(jmax + 1, j + setAtATime);
+                                    rowDistances = mDistances.getDistances(i, 
+                                            blockStart, blockEnd, rowDistances);
+                                }
+
                                 indices1[count] = i;
                                 indices2[count] = j;
 
-                                double distance = mDistances.getDistance(i, j);
+                                double distance = rowDistances[j - blockStart];
                                 // These 2 if-blocks initialize the mNNDistances and
                                 // mNNIndices.
                                 if (distance < mNNDistances[i]) {
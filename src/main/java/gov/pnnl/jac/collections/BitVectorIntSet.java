@@ -259,10 +259,35 @@ public class BitVectorIntSet implements IntSet, Serializable {
 		return new Itr();
 	}
 
+	/**
+	 * Returns a compressed copy of the receiver.
+	 * 
+	 * @return
+	 */
+	public RoaringIntSet toRoaringIntSet() {
+		RoaringIntSet set = new RoaringIntSet();
+		final long[] lbits = mBits.getBits();
+		final int len = mBits.getNumWords();
+		for (int i=0; i<len; i++) {
+			long w = lbits[i];
+			while (w != 0) {
+				set.add(mMinValue + (i << 6) + Long.numberOfTrailingZeros(w));
+				w &= w - 1;
+			}
+		}
+		set.trim();
+		return set;
+	}
+
 	@Override
 	public IntSet unionWith(IntSet other) {
 		
-		if (other instanceof BitVectorIntSet) {
+		if (other instanceof RoaringIntSet) {
+			
+			// The result is compressed like the other set.
+			return toRoaringIntSet().unionWithLocal(other);
+			
+		} else if (other instanceof BitVectorIntSet) {
 			
 			BitVectorIntSet bvIntSet = (BitVectorIntSet) other;
 			
@@ -377,7 +402,21 @@ public class BitVectorIntSet implements IntSet, Serializable {
 	@Override
 	public IntSet intersectionWith(IntSet other) {
 
-		if (other instanceof BitVectorIntSet) {
+		if (other instanceof RoaringIntSet) {
+
+			// No larger than the other set, so build it from that.
+			RoaringIntSet result = new RoaringIntSet();
+			IntCollectionIterator it = other.iterator();
+			while(it.hasNext()) {
+				int n = it.next();
+				if (contains(n)) {
+					result.add(n);
+				}
+			}
+			result.trim();
+			return result;
+
+		} else if (other instanceof BitVectorIntSet) {
 
 			BitVectorIntSet bvIntSet = (BitVectorIntSet) other;
 
@@ -422,7 +461,11 @@ public class BitVectorIntSet implements IntSet, Serializable {
 	@Override
 	public IntSet xorWith(IntSet other) {
 
-		if (other instanceof BitVectorIntSet) {
+		if (other instanceof RoaringIntSet) {
+
+			return toRoaringIntSet().xorWithLocal(other);
+
+		} else if (other instanceof BitVectorIntSet) {
 
 			BitVectorIntSet bvIntSet = (BitVectorIntSet) other;
 
@@ -0,0 +1,607 @@
+package gov.pnnl.jac.collections;
+
+import java.util.*;
+
+/**
+* <tt>IntIntLinearHashMap</tt> is an implementation of <tt>IntIntMap</tt> which
+* behaves the same as <tt>IntIntHashMap</tt>, but is faster, especially when
+* keys are frequently removed.
+*
+* <p>The table length is a power of 2, so slots are found by masking a mixed
+* hash of the key rather than by division.  Collisions are resolved by linear
+* probing, which keeps a probe sequence within a few cache lines.  There is no
+* array of slot states: an empty slot holds the key 0, and a mapping for 0 itself
+* is kept outside the table.  Removal shifts the following entries of the
+* probe sequence back instead of leaving a tombstone, so the table never
+* fills up with removed slots.  Lookups touch only the key array and, on a hit,
+* the value array.</p>
+*
+* <p>As with <tt>IntIntHashMap</tt>, -1 is returned for missing keys.</p>
+*/
+public class IntIntLinearHashMap implements IntIntMap, Cloneable {
+
+    // The largest table length.
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    // Marks an empty slot.
+    private static final int FREE_KEY = 0;
+
+    private int[] mKeys;
+
+    private int[] mValues;
+
+    // mKeys.length - 1.
+    private int mMask;
+
+    // Whether FREE_KEY is mapped, and its value.
+    private boolean mHasFreeKey;
+
+    private int mFreeKeyValue;
+
+    // The load factor;  used to determine when to resize.
+    private float mLoadFactor;
+
+    // Number of mappings, including the one for FREE_KEY.
+    private int mSize;
+
+    // Max number of mappings before having to resize.
+    private int mMaxFill;
+
+    // Mainly for iterators to determine if modifications have been made
+    // while iterating outside of the iterator.
+    private int mModCount;
+
+    /**
+    * Constructor
+    * @param     int expectedSize the number of mappings to hold before
+    *   having to resize.
+    * @param     float loadFactor The load factor to use in determining when
+    *   to resize.  This should be > 0.0f and < 1.0f.
+    * @exception IllegalArgumentException If expectedSize < 0 or if the loadFactor is invalid.
+    */
+    public IntIntLinearHashMap(int expectedSize, float loadFactor) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("invalid initial capacity: "
+                    + expectedSize);
+        }
+        if (Float.isNaN(loadFactor) || loadFactor <= 0.0f || loadFactor >= 1.0f) {
+            throw new IllegalArgumentException("invalid load factor: "
+                    + loadFactor);
+        }
+        mLoadFactor = loadFactor;
+        allocate(MapUtils.powerOfTwoCapacity(expectedSize, loadFactor));
+    }
+
+    /**
+    * Constructor specifying the expected size only.  The load factor defaults
+    * to 0.75f.
+    * @param     int expectedSize the number of mappings to hold before
+    *   having to resize.
+    * @exception IllegalArgumentException If expectedSize < 0.
+    */
+    public IntIntLinearHashMap(int expectedSize) {
+        this(expectedSize, 0.75f);
+    }
+
+    /**
+    * Default constructor.  The expected size defaults to 11 and the
+    * load factor defaults to 0.75f.
+    */
+    public IntIntLinearHashMap() {
+        this(11, 0.75f);
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new int[capacity];
+        mValues = new int[capacity];
+        mMask = capacity - 1;
+        // Always leave at least one free slot, or probing won't terminate.
+        mMaxFill = Math.min(capacity - 1, Math.max(1, (int) Math.ceil(mLoadFactor * capacity)));
+    }
+
+    /**
+    * Returns the number of key-value pairs contained in the map.
+    *
+    * @return the number of mappings.
+    */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+    * Returns the length of the hash table.
+    *
+    * @return the capacity, a power of 2.
+    */
+    public int capacity() {
+        return mKeys.length;
+    }
+
+    /**
+    * Returns <tt>true</tt> if this map contains no key-value pairs.
+    *
+    * @return <tt>true</tt> if the number of mappings is zero.
+    */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+    * Returns <tt>true</tt> if the receiver maps the specifed integer key
+    * to a value.
+    *
+    * @param key an integer key.
+    * @return <tt>true</tt> if this map contains a mapping for the key.
+    */
+    public boolean containsKey(int key) {
+        if (key == FREE_KEY) {
+            return mHasFreeKey;
+        }
+        return find(key) >= 0;
+    }
+
+    /**
+    * Returns <tt>true</tt> if the receiver maps at least one key to the
+    * specified value.
+    *
+    * @param value the value.
+    * @return <tt>true</tt> if at least one key maps to the value.
+    */
+    public boolean containsValue(int value) {
+        if (mHasFreeKey && mFreeKeyValue == value) {
+            return true;
+        }
+        final int[] keys = mKeys;
+        final int[] values = mValues;
+        for (int i = keys.length - 1; i >= 0; i--) {
+            if (keys[i] != FREE_KEY && values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+    * Returns the value to which the receiver maps the given key, or
+    * -1 if the key is not contained.  Since a key may be
+    * mapped to -1, this return value does not
+    * <i>necessarily</i> prove that the map does not contain the key.
+    * Use <tt>containsKey</tt> to conclusively determine if the receiver
+    * contains a mapping for the given key.
+    *
+    * @param key the key.
+    * @return the value to which the receiver maps the key, or
+    *           -1 if the map does not contain the key.
+    */
+    public int get(int key) {
+        if (key == FREE_KEY) {
+            return mHasFreeKey ? mFreeKeyValue : -1;
+        }
+        final int[] keys = mKeys;
+        final int mask = mMask;
+        int pos = MapUtils.mix(key) & mask;
+        int k;
+        while ((k = keys[pos]) != FREE_KEY) {
+            if (k == key) {
+                return mValues[pos];
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int getSum(int[] keys) {
+        int sum = 0;
+        for (int k: keys) {
+            if (k == FREE_KEY) {
+                if (mHasFreeKey) {
+                    sum += mFreeKeyValue;
+                }
+            } else {
+                int pos = find(k);
+                if (pos >= 0) {
+                    sum += mValues[pos];
+                }
+            }
+        }
+        return sum;
+    }
+
+    // Modification Operations
+
+    /**
+    * Maps the specified integer key to the specified value in this map.
+    * The previous mapping for the key, if present, is overwritten.
+    *
+    * @param key the key.
+    * @param value the value to be associated with the key.
+    * @return the previous value paired to the given key, or -1 if no
+    *   previous mapping was present.
+    *
+    * @throws UnsupportedOperationException if the map is full and cannot be
+    *   expanded.
+    */
+    public int put(int key, int value) {
+        if (key == FREE_KEY) {
+            int rtn = mHasFreeKey ? mFreeKeyValue : -1;
+            if (!mHasFreeKey) {
+                mHasFreeKey = true;
+                mSize++;
+            }
+            mFreeKeyValue = value;
+            mModCount++;
+            return rtn;
+        }
+        int pos = find(key);
+        if (pos >= 0) {
+            int rtn = mValues[pos];
+            mValues[pos] = value;
+            mModCount++;
+            return rtn;
+        }
+        insert(-pos - 1, key, value);
+        return -1;
+    }
+
+    /**
+    * Adds the specified value to the value mapped to the key, or maps the key
+    * to the value if there is no mapping.
+    *
+    * @param key the key.
+    * @param value the value to be added.
+    * @return the previous value paired to the given key, or -1 if no
+    *   previous mapping was present.
+    */
+    public int putOrIncrement(int key, int value) {
+        if (key == FREE_KEY) {
+            int rtn = -1;
+            if (mHasFreeKey) {
+                rtn = mFreeKeyValue;
+                mFreeKeyValue += value;
+            } else {
+                mHasFreeKey = true;
+                mFreeKeyValue = value;
+                mSize++;
+            }
+            mModCount++;
+            return rtn;
+        }
+        int pos = find(key);
+        if (pos >= 0) {
+            int rtn = mValues[pos];
+            mValues[pos] += value;
+            mModCount++;
+            return rtn;
+        }
+        insert(-pos - 1, key, value);
+        return -1;
+    }
+
+    /**
+    * Remove the mapping for the specified key from the receiver.
+    *
+    * @param key the key.
+    * @return the previous value paired to the given key, or -1 if no
+    *   previous mapping was present.  (A -1 return does not
+    *   <i>necessarily</i> prove that no mapping was present: the key may have
+    *   been explicitly mapped to this value.)
+    */
+    public int remove(int key) {
+        if (key == FREE_KEY) {
+            if (mHasFreeKey) {
+                mHasFreeKey = false;
+                mSize--;
+                mModCount++;
+                return mFreeKeyValue;
+            }
+            return -1;
+        }
+        int pos = find(key);
+        if (pos >= 0) {
+            int rtn = mValues[pos];
+            shiftKeys(pos, null);
+            mSize--;
+            mModCount++;
+            return rtn;
+        }
+        return -1;
+    }
+
+    // Bulk Operations
+    /**
+    * Adds all key-value mapping from the specified <tt>IntIntMap</tt> to the
+    * receiver.  These mappings may replace mappings already present
+    * in the receiver.
+    *
+    * @param map contains mappings to be copied to this map.
+    */
+    public void putAll(IntIntMap map) {
+        int[] keys = map.keys();
+        int n = keys.length;
+        ensureCapacity(mSize + n);
+        for (int i = 0; i < n; i++) {
+            int k = keys[i];
+            put(k, map.get(k));
+        }
+    }
+
+    /**
+    * Remove all key-value mappings from the receiver.
+    */
+    public void clear() {
+        if (mSize > 0) {
+            Arrays.fill(mKeys, FREE_KEY);
+            mHasFreeKey = false;
+            mSize = 0;
+        }
+        mModCount++;
+    }
+
+    // Views
+
+    /**
+    * Returns the integer keys for which the receiver contains mappings.  The
+    * order of the returned keys is undefined.  In the event the receiver contains
+    * no mappings, the returned array is length zero, not <tt>null</tt>.
+    *
+    * @return an array containing the keys with mappings.
+    */
+    public int[] keys() {
+        int[] rtn = new int[mSize];
+        int count = 0;
+        if (mHasFreeKey) {
+            rtn[count++] = FREE_KEY;
+        }
+        final int[] keys = mKeys;
+        for (int i = 0; count < rtn.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                rtn[count++] = keys[i];
+            }
+        }
+        return rtn;
+    }
+
+    /**
+    * Returns an iterator over the keys of this map.
+    * @return IntIterator
+    */
+    public IntCollectionIterator keyIterator() {
+        return new Itr();
+    }
+
+    /**
+    * Returns an array containing the values stored in the map, in the same
+    * order as the keys returned by <tt>keys()</tt>.
+    * @return an array of integer values.
+    */
+    public int[] values() {
+        int[] rtn = new int[mSize];
+        int count = 0;
+        if (mHasFreeKey) {
+            rtn[count++] = mFreeKeyValue;
+        }
+        final int[] keys = mKeys;
+        final int[] values = mValues;
+        for (int i = 0; count < rtn.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                rtn[count++] = values[i];
+            }
+        }
+        return rtn;
+    }
+
+    // Comparison and hashing
+    /**
+    * Compares the receiver with the specified object for equality.  Returns
+    * <tt>true</tt> if the specified object is also an <tt>IntIntMap</tt> and the two
+    * represent the same mappings.  They may not be the same implementation class.
+    *
+    * @param o object to be compared with this map.
+    * @return <tt>true</tt> if the specified object contains the same
+    *   key-value mappings as this map.
+    */
+    public boolean equals(Object o) {
+        return (o instanceof IntIntMap ? MapUtils.checkEqual(this,
+                (IntIntMap) o) : false);
+    }
+
+    /**
+    * Returns the hash code for this map.
+    *
+    * @return the hash code for this map.
+    */
+    public int hashCode() {
+        return MapUtils.computeHash(this);
+    }
+
+    /**
+    * Returns a deep-copy clone.
+    * @return Object
+    */
+    public Object clone() {
+        try {
+            IntIntLinearHashMap clone = (IntIntLinearHashMap) super.clone();
+            clone.mKeys = (int[]) this.mKeys.clone();
+            clone.mValues = (int[]) this.mValues.clone();
+            clone.mModCount = 0;
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError();
+        }
+    }
+
+    // Returns the slot containing the key, or -(slot + 1) for the free
+    // slot at which it would be inserted.  The key must not be FREE_KEY.
+    private int find(int key) {
+        final int[] keys = mKeys;
+        final int mask = mMask;
+        int pos = MapUtils.mix(key) & mask;
+        int k;
+        while ((k = keys[pos]) != FREE_KEY) {
+            if (k == key) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -pos - 1;
+    }
+
+    // Inserts a mapping for a key not in the table at the free slot
+    // found by find(), first resizing if necessary.
+    private void insert(int pos, int key, int value) {
+        if (mSize >= mMaxFill) {
+            rehash(mKeys.length << 1);
+            pos = -find(key) - 1;
+        }
+        mKeys[pos] = key;
+        mValues[pos] = value;
+        mSize++;
+        mModCount++;
+    }
+
+    // Ensures the map can hold the number of mappings without resizing.
+    private void ensureCapacity(int size) {
+        if (size > mMaxFill) {
+            rehash(MapUtils.powerOfTwoCapacity(size, mLoadFactor));
+        }
+    }
+
+    // Fills the hole at pos left by a removal by shifting back the entries
+    // that follow it in the probe sequence, until reaching a free slot.  An
+    // entry may be moved back to pos only if its home slot is not between
+    // pos and its current slot, cyclically.  If wrapped is not null, keys moved
+    // from the start of the table to its end are added to it for the iterator.
+    private void shiftKeys(int pos, IntArrayList wrapped) {
+        final int[] keys = mKeys;
+        final int[] values = mValues;
+        final int mask = mMask;
+        int last, slot, k;
+        for (;;) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            for (;;) {
+                if ((k = keys[pos]) == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    return;
+                }
+                slot = MapUtils.mix(k) & mask;
+                if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            if (wrapped != null && pos < last) {
+                wrapped.add(k);
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        if (newCapacity > MAX_CAPACITY || newCapacity <= 0) {
+            if (mMaxFill < mKeys.length - 1) {
+                // Can't grow, but can fill up to the last free slot.
+                mMaxFill = mKeys.length - 1;
+                return;
+            }
+            throw new UnsupportedOperationException("map cannot be expanded");
+        }
+        final int[] oldKeys = mKeys;
+        final int[] oldValues = mValues;
+        allocate(newCapacity);
+        final int[] keys = mKeys;
+        final int[] values = mValues;
+        final int mask = mMask;
+        for (int i = oldKeys.length - 1; i >= 0; i--) {
+            int k = oldKeys[i];
+            if (k != FREE_KEY) {
+                int pos = MapUtils.mix(k) & mask;
+                while (keys[pos] != FREE_KEY) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = k;
+                values[pos] = oldValues[i];
+            }
+        }
+        mModCount++;
+    }
+
+    // Iterates over the table from the end to the beginning, so that the
+    // entries shifted back by a removal have already been visited -- except
+    // those that wrap around from the beginning to the end, which are
+    // collected and returned after the table.
+    private class Itr implements IntCollectionIterator {
+
+        // Current slot, or, when negative, -(index into mWrapped) - 1.
+        private int mPos = mKeys.length;
+
+        // Slot of the last key returned, or -1 if none, or -2 for FREE_KEY.
+        private int mLast = -1;
+
+        private int mRemaining = mSize;
+
+        private boolean mMustReturnFreeKey = mHasFreeKey;
+
+        private IntArrayList mWrapped;
+
+        private int mExpectedModCount = mModCount;
+
+        public boolean hasNext() {
+            return mRemaining > 0;
+        }
+
+        public int next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            checkForComodification();
+            mRemaining--;
+            if (mMustReturnFreeKey) {
+                mMustReturnFreeKey = false;
+                mLast = -2;
+                return FREE_KEY;
+            }
+            final int[] keys = mKeys;
+            for (;;) {
+                if (--mPos < 0) {
+                    mLast = Integer.MIN_VALUE;
+                    return mWrapped.get(-mPos - 1);
+                }
+                if (keys[mPos] != FREE_KEY) {
+                    mLast = mPos;
+                    return keys[mPos];
+                }
+            }
+        }
+
+        public void remove() {
+            if (mLast == -1) {
+                throw new IllegalStateException();
+            }
+            checkForComodification();
+            if (mLast == -2) {
+                IntIntLinearHashMap.this.remove(FREE_KEY);
+            } else if (mPos >= 0) {
+                if (mWrapped == null) {
+                    mWrapped = new IntArrayList(2);
+                }
+                shiftKeys(mLast, mWrapped);
+                mSize--;
+                mModCount++;
+            } else {
+                // All the table has been visited, so it doesn't matter
+                // what moves.
+                IntIntLinearHashMap.this.remove(mWrapped.get(-mPos - 1));
+            }
+            mLast = -1;
+            mExpectedModCount = mModCount;
+        }
+
+        private void checkForComodification() {
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+}
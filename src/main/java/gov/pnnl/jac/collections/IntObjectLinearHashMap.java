@@ -0,0 +1,616 @@
+package gov.pnnl.jac.collections;
+
+import gov.pnnl.jac.util.ClassUtils;
+
+import java.util.*;
+
+/**
+* <tt>IntObjectLinearHashMap</tt> is an implementation of <tt>IntObjectMap</tt>
+* which behaves the same as <tt>IntObjectHashMap</tt>, but uses a power-of-2 table
+* with linear probing, no slot states, and removal by backward shifting, as
+* described for <tt>IntIntLinearHashMap</tt>.
+*/
+public class IntObjectLinearHashMap<E> implements IntObjectMap<E>, Cloneable {
+
+    // The largest table length.
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    // Marks an empty slot.
+    private static final int FREE_KEY = 0;
+
+    private int[] mKeys;
+
+    private Object[] mValues;
+
+    // mKeys.length - 1.
+    private int mMask;
+
+    // Whether FREE_KEY is mapped, and its value.
+    private boolean mHasFreeKey;
+
+    private Object mFreeKeyValue;
+
+    // The load factor;  used to determine when to resize.
+    private float mLoadFactor;
+
+    // Number of mappings, including the one for FREE_KEY.
+    private int mSize;
+
+    // Max number of mappings before having to resize.
+    private int mMaxFill;
+
+    // Mainly used by iterator to check for concurrent modification.
+    private int mModCount;
+
+    // This never has to be instantiated.
+    private transient ClassUtils<E> mCU;
+
+    /**
+    * Constructor
+    * @param     int expectedSize the number of mappings to hold before
+    *   having to resize.
+    * @param     float loadFactor The load factor to use in determining when
+    *   to resize.  This should be > 0.0f and < 1.0f.
+    * @exception IllegalArgumentException If expectedSize < 0 or if the loadFactor is invalid.
+    */
+    public IntObjectLinearHashMap(int expectedSize, float loadFactor) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("invalid initial capacity: "
+                    + expectedSize);
+        }
+        if (Float.isNaN(loadFactor) || loadFactor <= 0.0f || loadFactor >= 1.0f) {
+            throw new IllegalArgumentException("invalid load factor: "
+                    + loadFactor);
+        }
+        mLoadFactor = loadFactor;
+        allocate(MapUtils.powerOfTwoCapacity(expectedSize, loadFactor));
+    }
+
+    /**
+    * Constructor specifying the expected size only.  The load factor defaults
+    * to 0.75f.
+    * @param     int expectedSize the number of mappings to hold before
+    *   having to resize.
+    * @exception IllegalArgumentException If expectedSize < 0.
+    */
+    public IntObjectLinearHashMap(int expectedSize) {
+        this(expectedSize, 0.75f);
+    }
+
+    /**
+    * Default constructor.  The expected size defaults to 11 and the
+    * load factor defaults to 0.75f.
+    */
+    public IntObjectLinearHashMap() {
+        this(11, 0.75f);
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new int[capacity];
+        mValues = new Object[capacity];
+        mMask = capacity - 1;
+        // Always leave at least one free slot, or probing won't terminate.
+        mMaxFill = Math.min(capacity - 1, Math.max(1, (int) Math.ceil(mLoadFactor * capacity)));
+    }
+
+    /**
+    * Returns the number of key-value pairs contained in the map.
+    *
+    * @return the number of mappings.
+    */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+    * Returns the length of the hash table.
+    *
+    * @return the capacity, a power of 2.
+    */
+    public int capacity() {
+        return mKeys.length;
+    }
+
+    /**
+    * Returns <tt>true</tt> if this map contains no key-value pairs.
+    *
+    * @return <tt>true</tt> if the number of mappings is zero.
+    */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+    * Returns <tt>true</tt> if the receiver maps the specifed integer key
+    * to an Object value.
+    *
+    * @param key an integer key.
+    * @return <tt>true</tt> if this map contains a mapping for the key.
+    */
+    public boolean containsKey(int key) {
+        if (key == FREE_KEY) {
+            return mHasFreeKey;
+        }
+        return find(key) >= 0;
+    }
+
+    /**
+    * Returns <tt>true</tt> if the receiver maps at least one key to the
+    * specified value.
+    *
+    * @param value the value.
+    * @return <tt>true</tt> if at least one key maps to the value.
+    */
+    public boolean containsValue(E value) {
+        if (mHasFreeKey && equal(value, mFreeKeyValue)) {
+            return true;
+        }
+        final int[] keys = mKeys;
+        final Object[] values = mValues;
+        for (int i = keys.length - 1; i >= 0; i--) {
+            if (keys[i] != FREE_KEY && equal(value, values[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    /**
+    * Returns the value to which the receiver maps the given key, or
+    * <tt>null</tt> if the key is not contained.  Since a key may be
+    * mapped to <tt>null</tt>, a <tt>null</tt> return value does not
+    * <i>necessarily</i> prove that the map does not contain the key.
+    * Use <tt>containsKey</tt> to conclusively determine if the receiver
+    * contains a mapping for the given key.
+    *
+    * @param key the key.
+    * @return the value to which the receiver maps the key, or
+    *	       <tt>null</tt> if the map does not contain the key.
+    */
+    public E get(int key) {
+        if (key == FREE_KEY) {
+            return mHasFreeKey ? ClassUtils.uncheckedCast(mFreeKeyValue, mCU) : null;
+        }
+        final int[] keys = mKeys;
+        final int mask = mMask;
+        int pos = MapUtils.mix(key) & mask;
+        int k;
+        while ((k = keys[pos]) != FREE_KEY) {
+            if (k == key) {
+                return ClassUtils.uncheckedCast(mValues[pos], mCU);
+            }
+            pos = (pos + 1) & mask;
+        }
+        return null;
+    }
+
+    // Modification Operations
+
+    /**
+    * Maps the specified integer key to the specified value in this map.
+    * The previous mapping for the key, if present, is overwritten.
+    *
+    * @param key the key.
+    * @param value value to be associated with the key.
+    * @return the previous value paired to the given key, or <tt>null</tt> if no
+    *   previous mapping was present.
+    *
+    * @throws UnsupportedOperationException if the map is full and cannot be
+    *   expanded.
+    */
+    public E put(int key, E value) {
+        if (key == FREE_KEY) {
+            E rtn = mHasFreeKey ? ClassUtils.uncheckedCast(mFreeKeyValue, mCU) : null;
+            if (!mHasFreeKey) {
+                mHasFreeKey = true;
+                mSize++;
+            }
+            mFreeKeyValue = value;
+            mModCount++;
+            return rtn;
+        }
+        int pos = find(key);
+        if (pos >= 0) {
+            E rtn = ClassUtils.uncheckedCast(mValues[pos], mCU);
+            mValues[pos] = value;
+            mModCount++;
+            return rtn;
+        }
+        insert(-pos - 1, key, value);
+        return null;
+    }
+
+    /**
+    * Remove the mapping for the specified key from the receiver.
+    *
+    * @param key the key.
+    * @return the previous value paired to the given key, or <tt>null</tt> if no
+    *   previous mapping was present.  (A <tt>null</tt> return does not
+    *   <i>necessarily</i> prove that no mapping was present: the key may have
+    *   been explicitly mapped to <tt>null</tt>.)
+    */
+    public E remove(int key) {
+        if (key == FREE_KEY) {
+            if (mHasFreeKey) {
+                E rtn = ClassUtils.uncheckedCast(mFreeKeyValue, mCU);
+                mHasFreeKey = false;
+                // DO NOT hang onto the reference or may cause the object to "loiter".
+                mFreeKeyValue = null;
+                mSize--;
+                mModCount++;
+                return rtn;
+            }
+            return null;
+        }
+        int pos = find(key);
+        if (pos >= 0) {
+            E rtn = ClassUtils.uncheckedCast(mValues[pos], mCU);
+            shiftKeys(pos, null);
+            mSize--;
+            mModCount++;
+            return rtn;
+        }
+        return null;
+    }
+
+    // Bulk Operations
+    /**
+    * Adds all key-value mapping from the specified <tt>IntObjectMap</tt> to the
+    * receiver.   These mappings may replace mappings already present
+    * in the receiver.
+    *
+    * @param map contains mappings to be copied to this map.
+    */
+    public void putAll(IntObjectMap<? extends E> map) {
+        int[] keys = map.keys();
+        int n = keys.length;
+        ensureCapacity(mSize + n);
+        for (int i = 0; i < n; i++) {
+            int k = keys[i];
+            put(k, map.get(k));
+        }
+    }
+
+    /**
+    * Remove all key-value mappings from the receiver.
+    */
+    public void clear() {
+        if (mSize > 0) {
+            Arrays.fill(mKeys, FREE_KEY);
+            Arrays.fill(mValues, null);
+            mHasFreeKey = false;
+            mFreeKeyValue = null;
+            mSize = 0;
+        }
+        mModCount++;
+    }
+
+    // Views
+
+    /**
+    * Returns the integer keys for which the receiver contains mappings.  The
+    * order of the returned keys is undefined.  In the event the receiver contains
+    * no mappings, the returned array is length zero, not <tt>null</tt>.
+    *
+    * @return an array containing the keys with mappings.
+    */
+    public int[] keys() {
+        int[] rtn = new int[mSize];
+        int count = 0;
+        if (mHasFreeKey) {
+            rtn[count++] = FREE_KEY;
+        }
+        final int[] keys = mKeys;
+        for (int i = 0; count < rtn.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                rtn[count++] = keys[i];
+            }
+        }
+        return rtn;
+    }
+
+    /**
+    * Returns an iterator over the keys of this map.
+    * @return IntIterator
+    */
+    public IntCollectionIterator keyIterator() {
+        return new Itr();
+    }
+
+    /**
+    * Returns a collection of the values contained in the receiver, in the
+    * same order as the keys returned by <tt>keys()</tt>.  The
+    * returned collection is not the backing store for the map, so
+    * changes to the collection do not affect the map and vice-versa.
+    *
+    * @return a collection containing the values contained in the map.
+    */
+    public Collection<E> values() {
+        List<E> valueList = new ArrayList<E>(mSize);
+        if (mHasFreeKey) {
+            valueList.add(ClassUtils.uncheckedCast(mFreeKeyValue, mCU));
+        }
+        final int[] keys = mKeys;
+        final Object[] values = mValues;
+        for (int i = 0; valueList.size() < mSize; i++) {
+            if (keys[i] != FREE_KEY) {
+                valueList.add(ClassUtils.uncheckedCast(values[i], mCU));
+            }
+        }
+        return valueList;
+    }
+
+    /**
+    * Returns the key-value pairs in a <tt>Set</tt>.  The elements of the set
+    * are instances of <tt>IntObjectMap.Entry</tt>.  Modifications to this set do not
+    * affect the map and vice-versa.
+    * @return set containing instances of <tt>IntObjectMap.Entry</tt>.
+    */
+    public Set<IntObjectMap.Entry<E>> entrySet() {
+        Set<IntObjectMap.Entry<E>> set = new HashSet<IntObjectMap.Entry<E>>(2*mSize);
+        if (mHasFreeKey) {
+            set.add(new Entry<E>(FREE_KEY, ClassUtils.uncheckedCast(mFreeKeyValue, mCU)));
+        }
+        final int[] keys = mKeys;
+        final Object[] values = mValues;
+        for (int i = keys.length - 1; i >= 0; i--) {
+            if (keys[i] != FREE_KEY) {
+                set.add(new Entry<E>(keys[i], ClassUtils.uncheckedCast(values[i], mCU)));
+            }
+        }
+        return set;
+    }
+
+    // Comparison and hashing
+    /**
+    * Compares the receiver with the specified object for equality.  Returns
+    * <tt>true</tt> if the specified object is also an <tt>IntObjectMap</tt> and the two
+    * represent the same mappings.  They may not be the same implementation class.
+    *
+    * @param o object to be compared with this map.
+    * @return <tt>true</tt> if the specified object contains the same
+    *   key-value mappings as this map.
+    */
+    public boolean equals(Object o) {
+        return (o instanceof IntObjectMap<?> ?
+                MapUtils.checkEqual(this, (IntObjectMap<?>) o) : false);
+    }
+
+    /**
+    * Returns the hash code for this map.
+    *
+    * @return the hash code for this map.
+    */
+    public int hashCode() {
+        return MapUtils.computeHash(this);
+    }
+
+    /**
+    * Returns a clone.  The arrays are copied, but not the values.
+    * @return Object
+    */
+    public Object clone() {
+        try {
+            @SuppressWarnings("unchecked")
+            IntObjectLinearHashMap<E> clone = (IntObjectLinearHashMap<E>) super.clone();
+            clone.mKeys = (int[]) this.mKeys.clone();
+            clone.mValues = (Object[]) this.mValues.clone();
+            clone.mModCount = 0;
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError();
+        }
+    }
+
+    // Returns the slot containing the key, or -(slot + 1) for the free
+    // slot at which it would be inserted.  The key must not be FREE_KEY.
+    private int find(int key) {
+        final int[] keys = mKeys;
+        final int mask = mMask;
+        int pos = MapUtils.mix(key) & mask;
+        int k;
+        while ((k = keys[pos]) != FREE_KEY) {
+            if (k == key) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -pos - 1;
+    }
+
+    // Inserts a mapping for a key not in the table at the free slot
+    // found by find(), first resizing if necessary.
+    private void insert(int pos, int key, Object value) {
+        if (mSize >= mMaxFill) {
+            rehash(mKeys.length << 1);
+            pos = -find(key) - 1;
+        }
+        mKeys[pos] = key;
+        mValues[pos] = value;
+        mSize++;
+        mModCount++;
+    }
+
+    // Ensures the map can hold the number of mappings without resizing.
+    private void ensureCapacity(int size) {
+        if (size > mMaxFill) {
+            rehash(MapUtils.powerOfTwoCapacity(size, mLoadFactor));
+        }
+    }
+
+    // Fills the hole at pos left by a removal by shifting back the entries
+    // that follow it in the probe sequence.  See IntIntLinearHashMap.
+    private void shiftKeys(int pos, IntArrayList wrapped) {
+        final int[] keys = mKeys;
+        final Object[] values = mValues;
+        final int mask = mMask;
+        int last, slot, k;
+        for (;;) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            for (;;) {
+                if ((k = keys[pos]) == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    values[last] = null;
+                    return;
+                }
+                slot = MapUtils.mix(k) & mask;
+                if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            if (wrapped != null && pos < last) {
+                wrapped.add(k);
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        if (newCapacity > MAX_CAPACITY || newCapacity <= 0) {
+            if (mMaxFill < mKeys.length - 1) {
+                // Can't grow, but can fill up to the last free slot.
+                mMaxFill = mKeys.length - 1;
+                return;
+            }
+            throw new UnsupportedOperationException("map cannot be expanded");
+        }
+        final int[] oldKeys = mKeys;
+        final Object[] oldValues = mValues;
+        allocate(newCapacity);
+        final int[] keys = mKeys;
+        final Object[] values = mValues;
+        final int mask = mMask;
+        for (int i = oldKeys.length - 1; i >= 0; i--) {
+            int k = oldKeys[i];
+            if (k != FREE_KEY) {
+                int pos = MapUtils.mix(k) & mask;
+                while (keys[pos] != FREE_KEY) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = k;
+                values[pos] = oldValues[i];
+            }
+        }
+        mModCount++;
+    }
+
+    // Iterates from the end of the table to the beginning.
+    // See IntIntLinearHashMap.
+    private class Itr implements IntCollectionIterator {
+
+        // Current slot, or, when negative, -(index into mWrapped) - 1.
+        private int mPos = mKeys.length;
+
+        // Slot of the last key returned, or -1 if none, or -2 for FREE_KEY.
+        private int mLast = -1;
+
+        private int mRemaining = mSize;
+
+        private boolean mMustReturnFreeKey = mHasFreeKey;
+
+        private IntArrayList mWrapped;
+
+        private int mExpectedModCount = mModCount;
+
+        public boolean hasNext() {
+            return mRemaining > 0;
+        }
+
+        public int next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            checkForComodification();
+            mRemaining--;
+            if (mMustReturnFreeKey) {
+                mMustReturnFreeKey = false;
+                mLast = -2;
+                return FREE_KEY;
+            }
+            final int[] keys = mKeys;
+            for (;;) {
+                if (--mPos < 0) {
+                    mLast = Integer.MIN_VALUE;
+                    return mWrapped.get(-mPos - 1);
+                }
+                if (keys[mPos] != FREE_KEY) {
+                    mLast = mPos;
+                    return keys[mPos];
+                }
+            }
+        }
+
+        public void remove() {
+            if (mLast == -1) {
+                throw new IllegalStateException();
+            }
+            checkForComodification();
+            if (mLast == -2) {
+                IntObjectLinearHashMap.this.remove(FREE_KEY);
+            } else if (mPos >= 0) {
+                if (mWrapped == null) {
+                    mWrapped = new IntArrayList(2);
+                }
+                shiftKeys(mLast, mWrapped);
+                mSize--;
+                mModCount++;
+            } else {
+                IntObjectLinearHashMap.this.remove(mWrapped.get(-mPos - 1));
+            }
+            mLast = -1;
+            mExpectedModCount = mModCount;
+        }
+
+        private void checkForComodification() {
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    private static class Entry<E> implements IntObjectMap.Entry<E> {
+
+        int key;
+        E value;
+
+        Entry(int key, E value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public int getKey() {
+            return key;
+        }
+
+        public E getValue() {
+            return value;
+        }
+
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (o instanceof IntObjectMap.Entry<?>) {
+                IntObjectMap.Entry<?> e = (IntObjectMap.Entry<?>) o;
+                return (key == e.getKey() &&
+                        (value==null ? e.getValue()==null : value.equals(e.getValue())));
+            }
+            return false;
+        }
+
+        public int hashCode() {
+            return 37*key + (value == null ? 0 : value.hashCode());
+        }
+
+        public String toString() {
+            return String.valueOf(key) + "=" + value;
+        }
+    }
+}
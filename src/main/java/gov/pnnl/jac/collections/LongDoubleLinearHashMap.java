@@ -0,0 +1,560 @@
+package gov.pnnl.jac.collections;
+
+import java.util.*;
+
+/**
+* <tt>LongDoubleLinearHashMap</tt> is an implementation of <tt>LongDoubleMap</tt>
+* which behaves the same as <tt>LongDoubleHashMap</tt>, but uses a power-of-2 table
+* with linear probing, no slot states, and removal by backward shifting, as
+* described for <tt>IntIntLinearHashMap</tt>.
+*/
+public class LongDoubleLinearHashMap implements LongDoubleMap, Cloneable {
+
+    // The largest table length.
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    // Marks an empty slot.
+    private static final long FREE_KEY = 0L;
+
+    private long[] mKeys;
+
+    private double[] mValues;
+
+    // mKeys.length - 1.
+    private int mMask;
+
+    // Whether FREE_KEY is mapped, and its value.
+    private boolean mHasFreeKey;
+
+    private double mFreeKeyValue;
+
+    // Returned by get(), put(), and remove() for absent keys.
+    private double mMissingValue = Double.NaN;
+
+    // The load factor;  used to determine when to resize.
+    private float mLoadFactor;
+
+    // Number of mappings, including the one for FREE_KEY.
+    private int mSize;
+
+    // Max number of mappings before having to resize.
+    private int mMaxFill;
+
+    // Mainly used by iterator to check for concurrent modification.
+    private int mModCount;
+
+    /**
+    * Constructor
+    * @param     int expectedSize the number of mappings to hold before
+    *   having to resize.
+    * @param     float loadFactor The load factor to use in determining when
+    *   to resize.  This should be > 0.0f and < 1.0f.
+    * @exception IllegalArgumentException If expectedSize < 0 or if the loadFactor is invalid.
+    */
+    public LongDoubleLinearHashMap(int expectedSize, float loadFactor) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("invalid initial capacity: "
+                    + expectedSize);
+        }
+        if (Float.isNaN(loadFactor) || loadFactor <= 0.0f || loadFactor >= 1.0f) {
+            throw new IllegalArgumentException("invalid load factor: "
+                    + loadFactor);
+        }
+        mLoadFactor = loadFactor;
+        allocate(MapUtils.powerOfTwoCapacity(expectedSize, loadFactor));
+    }
+
+    /**
+    * Constructor specifying the expected size only.  The load factor defaults
+    * to 0.75f.
+    * @param     int expectedSize the number of mappings to hold before
+    *   having to resize.
+    * @exception IllegalArgumentException If expectedSize < 0.
+    */
+    public LongDoubleLinearHashMap(int expectedSize) {
+        this(expectedSize, 0.75f);
+    }
+
+    /**
+    * Default constructor.  The expected size defaults to 11 and the
+    * load factor defaults to 0.75f.
+    */
+    public LongDoubleLinearHashMap() {
+        this(11, 0.75f);
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new double[capacity];
+        mMask = capacity - 1;
+        // Always leave at least one free slot, or probing won't terminate.
+        mMaxFill = Math.min(capacity - 1, Math.max(1, (int) Math.ceil(mLoadFactor * capacity)));
+    }
+
+    /**
+    * Returns the number of key-value pairs contained in the map.
+    *
+    * @return the number of mappings.
+    */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+    * Returns the length of the hash table.
+    *
+    * @return the capacity, a power of 2.
+    */
+    public int capacity() {
+        return mKeys.length;
+    }
+
+    /**
+    * Returns <tt>true</tt> if this map contains no key-value pairs.
+    *
+    * @return <tt>true</tt> if the number of mappings is zero.
+    */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+    * Returns <tt>true</tt> if the receiver maps the specifed long key
+    * to a double value.
+    *
+    * @param key a long key.
+    * @return <tt>true</tt> if this map contains a mapping for the key.
+    */
+    public boolean containsKey(long key) {
+        if (key == FREE_KEY) {
+            return mHasFreeKey;
+        }
+        return find(key) >= 0;
+    }
+
+    /**
+    * Returns <tt>true</tt> if the receiver maps at least one key to the
+    * specified value.  Values are compared by their bits, so <tt>Double.NaN</tt>
+    * may be found.
+    *
+    * @param value the value.
+    * @return <tt>true</tt> if at least one key maps to the value.
+    */
+    public boolean containsValue(double value) {
+        final long valueBits = Double.doubleToLongBits(value);
+        if (mHasFreeKey && valueBits == Double.doubleToLongBits(mFreeKeyValue)) {
+            return true;
+        }
+        final long[] keys = mKeys;
+        final double[] values = mValues;
+        for (int i = keys.length - 1; i >= 0; i--) {
+            if (keys[i] != FREE_KEY && valueBits == Double.doubleToLongBits(values[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+    * Returns the value returned by get(key) when the key is not
+    * contained in the map.  <tt>Double.NaN</tt> unless changed.
+    *
+    * @return the missing value.
+    */
+    public double getMissingValue() {
+        return mMissingValue;
+    }
+
+    /**
+    * Set the value returned by get(key) when the key is not
+    * contained in the map.
+    *
+    * @param v the missing value.
+    */
+    public void setMissingValue(double v) {
+        mMissingValue = v;
+    }
+
+    /**
+    * Returns the value to which the receiver maps the given key, or
+    * the missing value if the key is not contained.
+    * Use <tt>containsKey</tt> to conclusively determine if the receiver
+    * contains a mapping for the given key.
+    *
+    * @param key the key.
+    * @return the value to which the receiver maps the key, or
+    *	       the missing value if the map does not contain the key.
+    */
+    public double get(long key) {
+        if (key == FREE_KEY) {
+            return mHasFreeKey ? mFreeKeyValue : mMissingValue;
+        }
+        final long[] keys = mKeys;
+        final int mask = mMask;
+        int pos = MapUtils.mix(key) & mask;
+        long k;
+        while ((k = keys[pos]) != FREE_KEY) {
+            if (k == key) {
+                return mValues[pos];
+            }
+            pos = (pos + 1) & mask;
+        }
+        return mMissingValue;
+    }
+
+    // Modification Operations
+
+    /**
+    * Maps the specified long key to the specified value in this map.
+    * The previous mapping for the key, if present, is overwritten.
+    *
+    * @param key the key.
+    * @param value value to be associated with the key.
+    * @return the previous value paired to the given key, or the missing value
+    *   if no previous mapping was present.
+    *
+    * @throws UnsupportedOperationException if the map is full and cannot be
+    *   expanded.
+    */
+    public double put(long key, double value) {
+        if (key == FREE_KEY) {
+            double rtn = mHasFreeKey ? mFreeKeyValue : mMissingValue;
+            if (!mHasFreeKey) {
+                mHasFreeKey = true;
+                mSize++;
+            }
+            mFreeKeyValue = value;
+            mModCount++;
+            return rtn;
+        }
+        int pos = find(key);
+        if (pos >= 0) {
+            double rtn = mValues[pos];
+            mValues[pos] = value;
+            mModCount++;
+            return rtn;
+        }
+        insert(-pos - 1, key, value);
+        return mMissingValue;
+    }
+
+    /**
+    * Remove the mapping for the specified key from the receiver.
+    *
+    * @param key the key.
+    * @return the previous value paired to the given key, or the missing value
+    *   if no previous mapping was present.
+    */
+    public double remove(long key) {
+        if (key == FREE_KEY) {
+            if (mHasFreeKey) {
+                mHasFreeKey = false;
+                mSize--;
+                mModCount++;
+                return mFreeKeyValue;
+            }
+            return mMissingValue;
+        }
+        int pos = find(key);
+        if (pos >= 0) {
+            double rtn = mValues[pos];
+            shiftKeys(pos, null);
+            mSize--;
+            mModCount++;
+            return rtn;
+        }
+        return mMissingValue;
+    }
+
+    // Bulk Operations
+    /**
+    * Adds all key-value mapping from the specified <tt>LongDoubleMap</tt> to the
+    * receiver.   These mappings may replace mappings already present
+    * in the receiver.
+    *
+    * @param map contains mappings to be copied to this map.
+    */
+    public void putAll(LongDoubleMap map) {
+        long[] keys = map.keys();
+        int n = keys.length;
+        ensureCapacity(mSize + n);
+        for (int i = 0; i < n; i++) {
+            long k = keys[i];
+            put(k, map.get(k));
+        }
+    }
+
+    /**
+    * Remove all key-value mappings from the receiver.
+    */
+    public void clear() {
+        if (mSize > 0) {
+            Arrays.fill(mKeys, FREE_KEY);
+            mHasFreeKey = false;
+            mSize = 0;
+        }
+        mModCount++;
+    }
+
+    // Views
+
+    /**
+    * Returns the long keys for which the receiver contains mappings.  The
+    * order of the returned keys is undefined.  In the event the receiver contains
+    * no mappings, the returned array is length zero, not <tt>null</tt>.
+    *
+    * @return an array containing the keys with mappings.
+    */
+    public long[] keys() {
+        long[] rtn = new long[mSize];
+        int count = 0;
+        if (mHasFreeKey) {
+            rtn[count++] = FREE_KEY;
+        }
+        final long[] keys = mKeys;
+        for (int i = 0; count < rtn.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                rtn[count++] = keys[i];
+            }
+        }
+        return rtn;
+    }
+
+    /**
+    * Returns an iterator over the keys of this map.
+    * @return LongCollectionIterator
+    */
+    public LongCollectionIterator keyIterator() {
+        return new Itr();
+    }
+
+    /**
+    * Returns an array of the values contained in the receiver, in the
+    * same order as the keys returned by <tt>keys()</tt>.
+    *
+    * @return an array containing the values contained in the map.
+    */
+    public double[] values() {
+        double[] rtn = new double[mSize];
+        int count = 0;
+        if (mHasFreeKey) {
+            rtn[count++] = mFreeKeyValue;
+        }
+        final long[] keys = mKeys;
+        final double[] values = mValues;
+        for (int i = 0; count < rtn.length; i++) {
+            if (keys[i] != FREE_KEY) {
+                rtn[count++] = values[i];
+            }
+        }
+        return rtn;
+    }
+
+    // Comparison and hashing
+    /**
+    * Compares the receiver with the specified object for equality.  Returns
+    * <tt>true</tt> if the specified object is also an <tt>LongDoubleMap</tt> and the two
+    * represent the same mappings.  They may not be the same implementation class.
+    *
+    * @param o object to be compared with this map.
+    * @return <tt>true</tt> if the specified object contains the same
+    *   key-value mappings as this map.
+    */
+    public boolean equals(Object o) {
+        return (o instanceof LongDoubleMap ? MapUtils.checkEqual(this, (LongDoubleMap) o) : false);
+    }
+
+    /**
+    * Returns the hash code for this map.
+    *
+    * @return the hash code for this map.
+    */
+    public int hashCode() {
+        return MapUtils.computeHash(this);
+    }
+
+    /**
+    * Returns a deep-copy clone.
+    * @return Object
+    */
+    public Object clone() {
+        try {
+            LongDoubleLinearHashMap clone = (LongDoubleLinearHashMap) super.clone();
+            clone.mKeys = (long[]) this.mKeys.clone();
+            clone.mValues = (double[]) this.mValues.clone();
+            clone.mModCount = 0;
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError();
+        }
+    }
+
+    // Returns the slot containing the key, or -(slot + 1) for the free
+    // slot at which it would be inserted.  The key must not be FREE_KEY.
+    private int find(long key) {
+        final long[] keys = mKeys;
+        final int mask = mMask;
+        int pos = MapUtils.mix(key) & mask;
+        long k;
+        while ((k = keys[pos]) != FREE_KEY) {
+            if (k == key) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -pos - 1;
+    }
+
+    // Inserts a mapping for a key not in the table at the free slot
+    // found by find(), first resizing if necessary.
+    private void insert(int pos, long key, double value) {
+        if (mSize >= mMaxFill) {
+            rehash(mKeys.length << 1);
+            pos = -find(key) - 1;
+        }
+        mKeys[pos] = key;
+        mValues[pos] = value;
+        mSize++;
+        mModCount++;
+    }
+
+    // Ensures the map can hold the number of mappings without resizing.
+    private void ensureCapacity(int size) {
+        if (size > mMaxFill) {
+            rehash(MapUtils.powerOfTwoCapacity(size, mLoadFactor));
+        }
+    }
+
+    // Fills the hole at pos left by a removal by shifting back the entries
+    // that follow it in the probe sequence.  See IntIntLinearHashMap.
+    private void shiftKeys(int pos, LongArrayList wrapped) {
+        final long[] keys = mKeys;
+        final double[] values = mValues;
+        final int mask = mMask;
+        int last, slot;
+        long k;
+        for (;;) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            for (;;) {
+                if ((k = keys[pos]) == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    return;
+                }
+                slot = MapUtils.mix(k) & mask;
+                if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            if (wrapped != null && pos < last) {
+                wrapped.add(k);
+            }
+            keys[last] = k;
+            values[last] = values[pos];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        if (newCapacity > MAX_CAPACITY || newCapacity <= 0) {
+            if (mMaxFill < mKeys.length - 1) {
+                // Can't grow, but can fill up to the last free slot.
+                mMaxFill = mKeys.length - 1;
+                return;
+            }
+            throw new UnsupportedOperationException("map cannot be expanded");
+        }
+        final long[] oldKeys = mKeys;
+        final double[] oldValues = mValues;
+        allocate(newCapacity);
+        final long[] keys = mKeys;
+        final double[] values = mValues;
+        final int mask = mMask;
+        for (int i = oldKeys.length - 1; i >= 0; i--) {
+            long k = oldKeys[i];
+            if (k != FREE_KEY) {
+                int pos = MapUtils.mix(k) & mask;
+                while (keys[pos] != FREE_KEY) {
+                    pos = (pos + 1) & mask;
+                }
+                keys[pos] = k;
+                values[pos] = oldValues[i];
+            }
+        }
+        mModCount++;
+    }
+
+    // Iterates from the end of the table to the beginning.
+    // See IntIntLinearHashMap.
+    private class Itr implements LongCollectionIterator {
+
+        // Current slot, or, when negative, -(index into mWrapped) - 1.
+        private int mPos = mKeys.length;
+
+        // Slot of the last key returned, or -1 if none, or -2 for FREE_KEY.
+        private int mLast = -1;
+
+        private int mRemaining = mSize;
+
+        private boolean mMustReturnFreeKey = mHasFreeKey;
+
+        private LongArrayList mWrapped;
+
+        private int mExpectedModCount = mModCount;
+
+        public boolean hasNext() {
+            return mRemaining > 0;
+        }
+
+        public long next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            checkForComodification();
+            mRemaining--;
+            if (mMustReturnFreeKey) {
+                mMustReturnFreeKey = false;
+                mLast = -2;
+                return FREE_KEY;
+            }
+            final long[] keys = mKeys;
+            for (;;) {
+                if (--mPos < 0) {
+                    mLast = Integer.MIN_VALUE;
+                    return mWrapped.get(-mPos - 1);
+                }
+                if (keys[mPos] != FREE_KEY) {
+                    mLast = mPos;
+                    return keys[mPos];
+                }
+            }
+        }
+
+        public void remove() {
+            if (mLast == -1) {
+                throw new IllegalStateException();
+            }
+            checkForComodification();
+            if (mLast == -2) {
+                LongDoubleLinearHashMap.this.remove(FREE_KEY);
+            } else if (mPos >= 0) {
+                if (mWrapped == null) {
+                    mWrapped = new LongArrayList(2);
+                }
+                shiftKeys(mLast, mWrapped);
+                mSize--;
+                mModCount++;
+            } else {
+                LongDoubleLinearHashMap.this.remove(mWrapped.get(-mPos - 1));
+            }
+            mLast = -1;
+            mExpectedModCount = mModCount;
+        }
+
+        private void checkForComodification() {
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+}
@@ -73,6 +73,53 @@ public final class MapUtils {
 		return mPrimes[ndx];
 	}
 
+	/**
+	 * Returns the power-of-two table length needed by the linear probing maps
+	 * to hold the specified number of entries without exceeding the load
+	 * factor.  The result is at least 2 and at most 2^30.
+	 * 
+	 * @param expected
+	 *            the number of entries.
+	 * @param loadFactor
+	 *            the load factor, which should be in (0, 1).
+	 * @return int
+	 */
+	public static int powerOfTwoCapacity(int expected, float loadFactor) {
+		long needed = (long) Math.ceil(expected / (double) loadFactor);
+		if (needed >= (1L << 30)) {
+			return 1 << 30;
+		}
+		return Math.max(2, Integer.highestOneBit((int) needed - 1) << 1);
+	}
+
+	/**
+	 * Scrambles the bits of an integer key, so that keys differing only in
+	 * their high bits, or forming regular sequences, are spread evenly over
+	 * the slots of a power-of-two table when masked.
+	 * 
+	 * @param key
+	 *            int
+	 * @return int
+	 */
+	public static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Scrambles the bits of a long key into an int, for the same purpose as
+	 * <tt>mix(int)</tt>.
+	 * 
+	 * @param key
+	 *            long
+	 * @return int
+	 */
+	public static int mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		return (int) (h ^ (h >>> 16));
+	}
+
 	/**
 	 * Computes the hash code for the <tt>IntObjectMap</tt> argument. Returns
 	 * the same value for different maps containing the same key/value pairs
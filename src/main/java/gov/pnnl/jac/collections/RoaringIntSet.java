@@ -0,0 +1,1217 @@
+package gov.pnnl.jac.collections;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+/**
+ * <p><tt>RoaringIntSet</tt> is a compressed <tt>IntSet</tt> in the style of a
+ * roaring bitmap.  The values are partitioned by their upper 16 bits into chunks
+ * of 65536 possible values, and each nonempty chunk is stored in a container
+ * suited to its density: a sorted array of 16-bit values when the chunk holds
+ * at most 4096 values, otherwise a 65536-bit bitmap.  So a set never takes
+ * much more than 2 bytes per value, nor more than 1 bit per value in the
+ * span of a dense chunk, and unions, intersections, and cardinalities are
+ * computed chunk by chunk with merges or word-wise operations.</p>
+ *
+ * <p>Values are kept in ascending order, so <tt>toArray()</tt> and
+ * iterators return them sorted.  Negative values are permitted.</p>
+ */
+public class RoaringIntSet implements IntSet, Serializable, Cloneable {
+
+    private static final long serialVersionUID = 6177542386231864451L;
+
+    // A chunk with more values than this is stored as a bitmap.
+    static final int ARRAY_MAX = 4096;
+
+    // Number of longs in a bitmap container.
+    private static final int BITMAP_WORDS = 1024;
+
+    // Keys (upper 16 bits, sign-flipped so they sort the same as the values)
+    // of the containers, ascending.
+    private transient char[] mKeys;
+
+    private transient Container[] mContainers;
+
+    private transient int mContainerCount;
+
+    private transient int mModCount;
+
+    /**
+     * Constructs an empty set.
+     */
+    public RoaringIntSet() {
+        mKeys = new char[4];
+        mContainers = new Container[4];
+    }
+
+    /**
+     * Constructs a set containing the specified values, which may be
+     * in any order and may contain duplicates.
+     * @param values
+     */
+    public RoaringIntSet(int[] values) {
+        this();
+        addAll(values);
+    }
+
+    /**
+     * Constructs a set containing the values of another collection.
+     * @param c
+     */
+    public RoaringIntSet(IntCollection c) {
+        this();
+        if (c instanceof RoaringIntSet) {
+            copyFrom((RoaringIntSet) c);
+        } else {
+            addAll(c.toArray());
+        }
+    }
+
+    /**
+     * Returns the specified set as a <tt>RoaringIntSet</tt>, converting it
+     * only if necessary.
+     * @param set
+     * @return
+     */
+    public static RoaringIntSet valueOf(IntSet set) {
+        if (set instanceof RoaringIntSet) {
+            return (RoaringIntSet) set;
+        }
+        return new RoaringIntSet(set);
+    }
+
+    private static int key(int value) {
+        return (value ^ Integer.MIN_VALUE) >>> 16;
+    }
+
+    private static int low(int value) {
+        return value & 0xFFFF;
+    }
+
+    private static int value(int key, int low) {
+        return ((key << 16) | low) ^ Integer.MIN_VALUE;
+    }
+
+    // Returns the index of the container with the key, or -(insertion point + 1).
+    private int indexOf(int key) {
+        // Values are very often added in order.
+        int n = mContainerCount;
+        if (n > 0 && mKeys[n - 1] == key) {
+            return n - 1;
+        }
+        int lo = 0, hi = n - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int k = mKeys[mid];
+            if (k < key) {
+                lo = mid + 1;
+            } else if (k > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    private void insertContainer(int index, int key, Container c) {
+        if (mContainerCount == mKeys.length) {
+            int newLen = Math.max(4, 2 * mContainerCount);
+            mKeys = Arrays.copyOf(mKeys, newLen);
+            mContainers = Arrays.copyOf(mContainers, newLen);
+        }
+        int moved = mContainerCount - index;
+        if (moved > 0) {
+            System.arraycopy(mKeys, index, mKeys, index + 1, moved);
+            System.arraycopy(mContainers, index, mContainers, index + 1, moved);
+        }
+        mKeys[index] = (char) key;
+        mContainers[index] = c;
+        mContainerCount++;
+    }
+
+    private void removeContainer(int index) {
+        int moved = mContainerCount - index - 1;
+        if (moved > 0) {
+            System.arraycopy(mKeys, index + 1, mKeys, index, moved);
+            System.arraycopy(mContainers, index + 1, mContainers, index, moved);
+        }
+        mContainers[--mContainerCount] = null;
+    }
+
+    // Appends a container with a key greater than all present.
+    private void append(int key, Container c) {
+        insertContainer(mContainerCount, key, c);
+    }
+
+    private void copyFrom(RoaringIntSet other) {
+        int n = other.mContainerCount;
+        mKeys = Arrays.copyOf(other.mKeys, Math.max(4, n));
+        mContainers = new Container[mKeys.length];
+        for (int i=0; i<n; i++) {
+            mContainers[i] = other.mContainers[i].copy();
+        }
+        mContainerCount = n;
+    }
+
+    // Takes the contents of the other set, which is discarded.
+    private void takeFrom(RoaringIntSet other) {
+        mKeys = other.mKeys;
+        mContainers = other.mContainers;
+        mContainerCount = other.mContainerCount;
+        mModCount++;
+    }
+
+    public int size() {
+        int sz = 0;
+        for (int i=0; i<mContainerCount; i++) {
+            sz += mContainers[i].cardinality();
+        }
+        return sz;
+    }
+
+    public boolean isEmpty() {
+        // Empty containers are never kept.
+        return mContainerCount == 0;
+    }
+
+    public boolean contains(int value) {
+        int i = indexOf(key(value));
+        return i >= 0 && mContainers[i].contains(low(value));
+    }
+
+    /**
+     * Returns the values in ascending order.
+     */
+    public int[] toArray() {
+        int[] values = new int[size()];
+        int offset = 0;
+        for (int i=0; i<mContainerCount; i++) {
+            offset = mContainers[i].fill(values, offset, mKeys[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the nth smallest value, counting from 0.
+     * @param n
+     * @return
+     * @throws IndexOutOfBoundsException if n is negative or not less than the size.
+     */
+    public int select(int n) {
+        if (n >= 0) {
+            int remaining = n;
+            for (int i=0; i<mContainerCount; i++) {
+                Container c = mContainers[i];
+                int card = c.cardinality();
+                if (remaining < card) {
+                    return value(mKeys[i], c.select(remaining));
+                }
+                remaining -= card;
+            }
+        }
+        throw new IndexOutOfBoundsException(String.valueOf(n));
+    }
+
+    public boolean add(int value) {
+        int key = key(value);
+        int i = indexOf(key);
+        if (i >= 0) {
+            Container c = mContainers[i];
+            int card = c.cardinality();
+            c = c.add(low(value));
+            mContainers[i] = c;
+            if (c.cardinality() > card) {
+                mModCount++;
+                return true;
+            }
+            return false;
+        }
+        ArrayContainer c = new ArrayContainer(4);
+        c.add(low(value));
+        insertContainer(-i - 1, key, c);
+        mModCount++;
+        return true;
+    }
+
+    public boolean remove(int value) {
+        int i = indexOf(key(value));
+        if (i >= 0) {
+            Container c = mContainers[i];
+            int card = c.cardinality();
+            c = c.remove(low(value));
+            if (c.cardinality() < card) {
+                if (c.cardinality() == 0) {
+                    removeContainer(i);
+                } else {
+                    mContainers[i] = c;
+                }
+                mModCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean containsAll(IntCollection c) {
+        IntCollectionIterator it = c.iterator();
+        while(it.hasNext()) {
+            if (!contains(it.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean containsAll(int[] values) {
+        final int n = values != null ? values.length : 0;
+        for (int i=0; i<n; i++) {
+            if (!contains(values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean addAll(IntCollection c) {
+        if (c instanceof RoaringIntSet) {
+            int sz = size();
+            takeFrom(or(this, (RoaringIntSet) c));
+            return size() != sz;
+        }
+        return addAll(c.toArray());
+    }
+
+    public boolean addAll(int[] values) {
+        if (values == null) {
+            return false;
+        }
+        // Adding in order only ever appends to the containers.
+        int[] sorted = values;
+        for (int i=1; i<sorted.length; i++) {
+            if (sorted[i] < sorted[i-1]) {
+                sorted = (int[]) values.clone();
+                Arrays.sort(sorted);
+                break;
+            }
+        }
+        boolean rtn = false;
+        for (int i=0; i<sorted.length; i++) {
+            if (add(sorted[i])) {
+                rtn = true;
+            }
+        }
+        return rtn;
+    }
+
+    public boolean removeAll(IntCollection c) {
+        if (c instanceof RoaringIntSet) {
+            RoaringIntSet other = (RoaringIntSet) c;
+            int sz = size();
+            takeFrom(andNot(this, other));
+            return size() != sz;
+        }
+        return removeAll(c.toArray());
+    }
+
+    public boolean removeAll(int[] values) {
+        boolean rtn = false;
+        final int n = values != null ? values.length : 0;
+        for (int i=0; i<n; i++) {
+            if (remove(values[i])) {
+                rtn = true;
+            }
+        }
+        return rtn;
+    }
+
+    public boolean retainAll(IntCollection c) {
+        if (c != this) {
+            int sz = size();
+            takeFrom(and(this, c instanceof RoaringIntSet ?
+                (RoaringIntSet) c : new RoaringIntSet(c.toArray())));
+            return size() != sz;
+        }
+        return false;
+    }
+
+    public boolean retainAll(int[] values) {
+        int sz = size();
+        takeFrom(and(this, new RoaringIntSet(values != null ? values : new int[0])));
+        return size() != sz;
+    }
+
+    public void clear() {
+        if (mContainerCount > 0) {
+            Arrays.fill(mContainers, 0, mContainerCount, null);
+            mContainerCount = 0;
+            mModCount++;
+        }
+    }
+
+    public IntCollectionIterator iterator() {
+        return new Itr();
+    }
+
+    /**
+     * Returns a new <tt>RoaringIntSet</tt> containing the union.
+     */
+    public IntSet unionWith(IntSet other) {
+        return or(this, valueOf(other));
+    }
+
+    /**
+     * Returns a new <tt>RoaringIntSet</tt> containing the intersection.
+     */
+    public IntSet intersectionWith(IntSet other) {
+        return and(this, valueOf(other));
+    }
+
+    /**
+     * Returns a new <tt>RoaringIntSet</tt> containing the values in exactly
+     * one of the sets.
+     */
+    public IntSet xorWith(IntSet other) {
+        return xor(this, valueOf(other));
+    }
+
+    /**
+     * Modifies the receiver so that its elements become a union of its
+     * current elements with those in the other IntSet.
+     *
+     * @param other
+     * @return
+     */
+    public IntSet unionWithLocal(IntSet other) {
+        takeFrom(or(this, valueOf(other)));
+        return this;
+    }
+
+    /**
+     * Modifies the receiver so that its elements become the intersection of its
+     * current elements with those in the other IntSet.
+     *
+     * @param other
+     * @return
+     */
+    public IntSet intersectionWithLocal(IntSet other) {
+        takeFrom(and(this, valueOf(other)));
+        return this;
+    }
+
+    /**
+     * Modifies the receiver so that its elements become the xor of its
+     * current elements with those in the other IntSet.
+     *
+     * @param other
+     * @return
+     */
+    public IntSet xorWithLocal(IntSet other) {
+        takeFrom(xor(this, valueOf(other)));
+        return this;
+    }
+
+    /**
+     * Returns the size of the intersection with another set without
+     * computing the intersection.
+     * @param other
+     * @return
+     */
+    public int intersectionSize(RoaringIntSet other) {
+        int sz = 0;
+        int i = 0, j = 0;
+        while (i < mContainerCount && j < other.mContainerCount) {
+            int ka = mKeys[i], kb = other.mKeys[j];
+            if (ka < kb) {
+                i++;
+            } else if (ka > kb) {
+                j++;
+            } else {
+                sz += mContainers[i++].andCardinality(other.mContainers[j++]);
+            }
+        }
+        return sz;
+    }
+
+    /**
+     * Releases unused capacity.  Sets which will not be modified further,
+     * such as cluster memberships, should be trimmed.
+     */
+    public void trim() {
+        for (int i=0; i<mContainerCount; i++) {
+            mContainers[i] = mContainers[i].trim();
+        }
+        if (mKeys.length > mContainerCount) {
+            mKeys = Arrays.copyOf(mKeys, mContainerCount);
+            mContainers = Arrays.copyOf(mContainers, mContainerCount);
+        }
+    }
+
+    /**
+     * Returns an estimate of the memory occupied by the set, in bytes.
+     * @return
+     */
+    public long getSizeInBytes() {
+        long sz = 32L + 2L*mKeys.length + 4L*mContainers.length;
+        for (int i=0; i<mContainerCount; i++) {
+            sz += mContainers[i].sizeInBytes();
+        }
+        return sz;
+    }
+
+    /**
+     * Returns the number of bytes written by <tt>write()</tt>.
+     * @return
+     */
+    public int getSerializedSize() {
+        int sz = 4;
+        for (int i=0; i<mContainerCount; i++) {
+            int card = mContainers[i].cardinality();
+            sz += 4 + (card <= ARRAY_MAX ? 2*card : 8*BITMAP_WORDS);
+        }
+        return sz;
+    }
+
+    /**
+     * Writes the set in a compact binary form which may be read by
+     * <tt>read()</tt>.
+     * @param out
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(mContainerCount);
+        for (int i=0; i<mContainerCount; i++) {
+            Container c = mContainers[i];
+            out.writeChar(mKeys[i]);
+            // Cardinalities range from 1 to 65536.
+            out.writeChar(c.cardinality() - 1);
+            c.write(out);
+        }
+    }
+
+    /**
+     * Reads a set written by <tt>write()</tt>.
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    public static RoaringIntSet read(DataInput in) throws IOException {
+        int n = in.readInt();
+        if (n < 0 || n > 65536) {
+            throw new IOException("invalid container count: " + n);
+        }
+        RoaringIntSet set = new RoaringIntSet();
+        set.mKeys = new char[n];
+        set.mContainers = new Container[n];
+        int prevKey = -1;
+        for (int i=0; i<n; i++) {
+            int key = in.readChar();
+            if (key <= prevKey) {
+                throw new IOException("container keys out of order");
+            }
+            int card = in.readChar() + 1;
+            set.mKeys[i] = (char) key;
+            set.mContainers[i] = card <= ARRAY_MAX ?
+                ArrayContainer.read(in, card) : BitmapContainer.read(in, card);
+            prevKey = key;
+        }
+        set.mContainerCount = n;
+        return set;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        write(out);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        RoaringIntSet set = read(in);
+        mKeys = set.mKeys;
+        mContainers = set.mContainers;
+        mContainerCount = set.mContainerCount;
+    }
+
+    public int hashCode() {
+        return MapUtils.computeHash(this);
+    }
+
+    /**
+     * Check equality with another <tt>IntSet</tt>.
+     * @param o Object
+     * @return true if the other set is the same size as this set and contains
+     *   the same values, whether or not the other set is the same class as
+     *   this set.
+     */
+    public boolean equals(Object o) {
+        if (o instanceof IntSet) {
+            return MapUtils.checkEqual(this, (IntSet) o);
+        }
+        return false;
+    }
+
+    /**
+     * Returns a deep-copy clone.
+     * @return Object
+     */
+    public Object clone() {
+        try {
+            RoaringIntSet clone = (RoaringIntSet) super.clone();
+            clone.copyFrom(this);
+            clone.mModCount = 0;
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError();
+        }
+    }
+
+    private static RoaringIntSet or(RoaringIntSet a, RoaringIntSet b) {
+        RoaringIntSet r = new RoaringIntSet();
+        int i = 0, j = 0;
+        while (i < a.mContainerCount && j < b.mContainerCount) {
+            int ka = a.mKeys[i], kb = b.mKeys[j];
+            if (ka < kb) {
+                r.append(ka, a.mContainers[i++].copy());
+            } else if (ka > kb) {
+                r.append(kb, b.mContainers[j++].copy());
+            } else {
+                r.append(ka, a.mContainers[i++].or(b.mContainers[j++]));
+            }
+        }
+        for (; i < a.mContainerCount; i++) {
+            r.append(a.mKeys[i], a.mContainers[i].copy());
+        }
+        for (; j < b.mContainerCount; j++) {
+            r.append(b.mKeys[j], b.mContainers[j].copy());
+        }
+        return r;
+    }
+
+    private static RoaringIntSet and(RoaringIntSet a, RoaringIntSet b) {
+        RoaringIntSet r = new RoaringIntSet();
+        int i = 0, j = 0;
+        while (i < a.mContainerCount && j < b.mContainerCount) {
+            int ka = a.mKeys[i], kb = b.mKeys[j];
+            if (ka < kb) {
+                i++;
+            } else if (ka > kb) {
+                j++;
+            } else {
+                Container c = a.mContainers[i++].and(b.mContainers[j++]);
+                if (c.cardinality() > 0) {
+                    r.append(ka, c);
+                }
+            }
+        }
+        return r;
+    }
+
+    private static RoaringIntSet andNot(RoaringIntSet a, RoaringIntSet b) {
+        RoaringIntSet r = new RoaringIntSet();
+        int i = 0, j = 0;
+        while (i < a.mContainerCount) {
+            int ka = a.mKeys[i];
+            while (j < b.mContainerCount && b.mKeys[j] < ka) {
+                j++;
+            }
+            Container c = a.mContainers[i++];
+            if (j < b.mContainerCount && b.mKeys[j] == ka) {
+                // a - b == a ^ (a & b)
+                c = c.xor(c.and(b.mContainers[j]));
+                if (c.cardinality() == 0) {
+                    continue;
+                }
+            } else {
+                c = c.copy();
+            }
+            r.append(ka, c);
+        }
+        return r;
+    }
+
+    private static RoaringIntSet xor(RoaringIntSet a, RoaringIntSet b) {
+        RoaringIntSet r = new RoaringIntSet();
+        int i = 0, j = 0;
+        while (i < a.mContainerCount && j < b.mContainerCount) {
+            int ka = a.mKeys[i], kb = b.mKeys[j];
+            if (ka < kb) {
+                r.append(ka, a.mContainers[i++].copy());
+            } else if (ka > kb) {
+                r.append(kb, b.mContainers[j++].copy());
+            } else {
+                Container c = a.mContainers[i++].xor(b.mContainers[j++]);
+                if (c.cardinality() > 0) {
+                    r.append(ka, c);
+                }
+            }
+        }
+        for (; i < a.mContainerCount; i++) {
+            r.append(a.mKeys[i], a.mContainers[i].copy());
+        }
+        for (; j < b.mContainerCount; j++) {
+            r.append(b.mKeys[j], b.mContainers[j].copy());
+        }
+        return r;
+    }
+
+    // Holds the values in one chunk of 65536, as 16-bit lows.  Operations
+    // between containers return new containers and never modify their
+    // arguments.  add() and remove() may return a container of the other
+    // type, which replaces the receiver.
+    private static abstract class Container {
+
+        abstract int cardinality();
+
+        abstract boolean contains(int low);
+
+        abstract Container add(int low);
+
+        abstract Container remove(int low);
+
+        // The smallest low >= from, or -1 if none.
+        abstract int nextValue(int from);
+
+        abstract int select(int n);
+
+        // Writes the full values into dest starting at offset, returning
+        // the offset following the last.
+        abstract int fill(int[] dest, int offset, int key);
+
+        abstract Container or(Container c);
+
+        abstract Container and(Container c);
+
+        abstract Container xor(Container c);
+
+        abstract int andCardinality(Container c);
+
+        abstract Container copy();
+
+        abstract Container trim();
+
+        abstract long sizeInBytes();
+
+        abstract void write(DataOutput out) throws IOException;
+    }
+
+    private static final class ArrayContainer extends Container {
+
+        // Sorted.
+        private char[] mValues;
+        private int mCard;
+
+        ArrayContainer(int capacity) {
+            mValues = new char[capacity];
+        }
+
+        ArrayContainer(char[] values, int card) {
+            mValues = values;
+            mCard = card;
+        }
+
+        static ArrayContainer read(DataInput in, int card) throws IOException {
+            char[] values = new char[card];
+            for (int i=0; i<card; i++) {
+                values[i] = in.readChar();
+                if (i > 0 && values[i] <= values[i-1]) {
+                    throw new IOException("container values out of order");
+                }
+            }
+            return new ArrayContainer(values, card);
+        }
+
+        int cardinality() {
+            return mCard;
+        }
+
+        boolean contains(int low) {
+            return Arrays.binarySearch(mValues, 0, mCard, (char) low) >= 0;
+        }
+
+        Container add(int low) {
+            int i = mCard > 0 && mValues[mCard - 1] < low ? -(mCard + 1) :
+                Arrays.binarySearch(mValues, 0, mCard, (char) low);
+            if (i >= 0) {
+                return this;
+            }
+            if (mCard >= ARRAY_MAX) {
+                return toBitmap().add(low);
+            }
+            i = -i - 1;
+            if (mCard == mValues.length) {
+                mValues = Arrays.copyOf(mValues, Math.min(ARRAY_MAX, Math.max(4, 2*mCard)));
+            }
+            System.arraycopy(mValues, i, mValues, i + 1, mCard - i);
+            mValues[i] = (char) low;
+            mCard++;
+            return this;
+        }
+
+        Container remove(int low) {
+            int i = Arrays.binarySearch(mValues, 0, mCard, (char) low);
+            if (i >= 0) {
+                System.arraycopy(mValues, i + 1, mValues, i, mCard - i - 1);
+                mCard--;
+            }
+            return this;
+        }
+
+        int nextValue(int from) {
+            if (from > 0xFFFF) {
+                return -1;
+            }
+            int i = Arrays.binarySearch(mValues, 0, mCard, (char) from);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return i < mCard ? mValues[i] : -1;
+        }
+
+        int select(int n) {
+            return mValues[n];
+        }
+
+        int fill(int[] dest, int offset, int key) {
+            for (int i=0; i<mCard; i++) {
+                dest[offset++] = value(key, mValues[i]);
+            }
+            return offset;
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer b = new BitmapContainer();
+            long[] words = b.mWords;
+            for (int i=0; i<mCard; i++) {
+                int v = mValues[i];
+                words[v >>> 6] |= 1L << v;
+            }
+            b.mCard = mCard;
+            return b;
+        }
+
+        Container or(Container c) {
+            if (c instanceof BitmapContainer) {
+                return c.or(this);
+            }
+            ArrayContainer a = (ArrayContainer) c;
+            if (mCard + a.mCard > ARRAY_MAX) {
+                BitmapContainer b = toBitmap();
+                b.setAll(a);
+                return b.normalize();
+            }
+            char[] values = new char[mCard + a.mCard];
+            int i = 0, j = 0, n = 0;
+            while (i < mCard && j < a.mCard) {
+                char v1 = mValues[i], v2 = a.mValues[j];
+                if (v1 < v2) {
+                    values[n++] = v1;
+                    i++;
+                } else if (v1 > v2) {
+                    values[n++] = v2;
+                    j++;
+                } else {
+                    values[n++] = v1;
+                    i++;
+                    j++;
+                }
+            }
+            while (i < mCard) {
+                values[n++] = mValues[i++];
+            }
+            while (j < a.mCard) {
+                values[n++] = a.mValues[j++];
+            }
+            return new ArrayContainer(values, n);
+        }
+
+        Container and(Container c) {
+            char[] values = new char[mCard];
+            int n = 0;
+            if (c instanceof BitmapContainer) {
+                long[] words = ((BitmapContainer) c).mWords;
+                for (int i=0; i<mCard; i++) {
+                    char v = mValues[i];
+                    if ((words[v >>> 6] & (1L << v)) != 0) {
+                        values[n++] = v;
+                    }
+                }
+            } else {
+                ArrayContainer a = (ArrayContainer) c;
+                int i = 0, j = 0;
+                while (i < mCard && j < a.mCard) {
+                    char v1 = mValues[i], v2 = a.mValues[j];
+                    if (v1 < v2) {
+                        i++;
+                    } else if (v1 > v2) {
+                        j++;
+                    } else {
+                        values[n++] = v1;
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            return new ArrayContainer(values, n);
+        }
+
+        Container xor(Container c) {
+            if (c instanceof BitmapContainer) {
+                return c.xor(this);
+            }
+            ArrayContainer a = (ArrayContainer) c;
+            if (mCard + a.mCard > ARRAY_MAX) {
+                BitmapContainer b = toBitmap();
+                b.flipAll(a);
+                return b.normalize();
+            }
+            char[] values = new char[mCard + a.mCard];
+            int i = 0, j = 0, n = 0;
+            while (i < mCard && j < a.mCard) {
+                char v1 = mValues[i], v2 = a.mValues[j];
+                if (v1 < v2) {
+                    values[n++] = v1;
+                    i++;
+                } else if (v1 > v2) {
+                    values[n++] = v2;
+                    j++;
+                } else {
+                    i++;
+                    j++;
+                }
+            }
+            while (i < mCard) {
+                values[n++] = mValues[i++];
+            }
+            while (j < a.mCard) {
+                values[n++] = a.mValues[j++];
+            }
+            return new ArrayContainer(values, n);
+        }
+
+        int andCardinality(Container c) {
+            int n = 0;
+            if (c instanceof BitmapContainer) {
+                long[] words = ((BitmapContainer) c).mWords;
+                for (int i=0; i<mCard; i++) {
+                    char v = mValues[i];
+                    if ((words[v >>> 6] & (1L << v)) != 0) {
+                        n++;
+                    }
+                }
+            } else {
+                ArrayContainer a = (ArrayContainer) c;
+                int i = 0, j = 0;
+                while (i < mCard && j < a.mCard) {
+                    char v1 = mValues[i], v2 = a.mValues[j];
+                    if (v1 < v2) {
+                        i++;
+                    } else if (v1 > v2) {
+                        j++;
+                    } else {
+                        n++;
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            return n;
+        }
+
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(mValues, mCard), mCard);
+        }
+
+        Container trim() {
+            if (mValues.length > mCard) {
+                mValues = Arrays.copyOf(mValues, mCard);
+            }
+            return this;
+        }
+
+        long sizeInBytes() {
+            return 32L + 2L*mValues.length;
+        }
+
+        void write(DataOutput out) throws IOException {
+            for (int i=0; i<mCard; i++) {
+                out.writeChar(mValues[i]);
+            }
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+
+        private long[] mWords = new long[BITMAP_WORDS];
+        private int mCard;
+
+        static BitmapContainer read(DataInput in, int card) throws IOException {
+            BitmapContainer b = new BitmapContainer();
+            int n = 0;
+            for (int i=0; i<BITMAP_WORDS; i++) {
+                long w = in.readLong();
+                b.mWords[i] = w;
+                n += Long.bitCount(w);
+            }
+            if (n != card) {
+                throw new IOException("bitmap cardinality mismatch: " + n + " != " + card);
+            }
+            b.mCard = card;
+            return b;
+        }
+
+        int cardinality() {
+            return mCard;
+        }
+
+        boolean contains(int low) {
+            return (mWords[low >>> 6] & (1L << low)) != 0;
+        }
+
+        Container add(int low) {
+            long w = mWords[low >>> 6];
+            long bit = 1L << low;
+            if ((w & bit) == 0) {
+                mWords[low >>> 6] = w | bit;
+                mCard++;
+            }
+            return this;
+        }
+
+        Container remove(int low) {
+            long w = mWords[low >>> 6];
+            long bit = 1L << low;
+            if ((w & bit) != 0) {
+                mWords[low >>> 6] = w & ~bit;
+                mCard--;
+                return normalize();
+            }
+            return this;
+        }
+
+        int nextValue(int from) {
+            if (from > 0xFFFF) {
+                return -1;
+            }
+            int i = from >>> 6;
+            long w = mWords[i] & (-1L << from);
+            while (w == 0) {
+                if (++i == BITMAP_WORDS) {
+                    return -1;
+                }
+                w = mWords[i];
+            }
+            return (i << 6) + Long.numberOfTrailingZeros(w);
+        }
+
+        int select(int n) {
+            for (int i=0; i<BITMAP_WORDS; i++) {
+                long w = mWords[i];
+                int bc = Long.bitCount(w);
+                if (n < bc) {
+                    for (int j=0; j<n; j++) {
+                        w &= w - 1;
+                    }
+                    return (i << 6) + Long.numberOfTrailingZeros(w);
+                }
+                n -= bc;
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        int fill(int[] dest, int offset, int key) {
+            for (int i=0; i<BITMAP_WORDS; i++) {
+                long w = mWords[i];
+                while (w != 0) {
+                    dest[offset++] = value(key, (i << 6) + Long.numberOfTrailingZeros(w));
+                    w &= w - 1;
+                }
+            }
+            return offset;
+        }
+
+        // Returns an array container if this has few enough values.
+        Container normalize() {
+            if (mCard > ARRAY_MAX) {
+                return this;
+            }
+            char[] values = new char[mCard];
+            int n = 0;
+            for (int i=0; i<BITMAP_WORDS; i++) {
+                long w = mWords[i];
+                while (w != 0) {
+                    values[n++] = (char) ((i << 6) + Long.numberOfTrailingZeros(w));
+                    w &= w - 1;
+                }
+            }
+            return new ArrayContainer(values, n);
+        }
+
+        void setAll(ArrayContainer a) {
+            for (int i=0; i<a.mCard; i++) {
+                add(a.mValues[i]);
+            }
+        }
+
+        void flipAll(ArrayContainer a) {
+            final long[] words = mWords;
+            for (int i=0; i<a.mCard; i++) {
+                int v = a.mValues[i];
+                long bit = 1L << v;
+                long w = words[v >>> 6];
+                mCard += (w & bit) == 0 ? 1 : -1;
+                words[v >>> 6] = w ^ bit;
+            }
+        }
+
+        BitmapContainer copyBitmap() {
+            BitmapContainer b = new BitmapContainer();
+            System.arraycopy(mWords, 0, b.mWords, 0, BITMAP_WORDS);
+            b.mCard = mCard;
+            return b;
+        }
+
+        Container or(Container c) {
+            BitmapContainer b = copyBitmap();
+            if (c instanceof ArrayContainer) {
+                b.setAll((ArrayContainer) c);
+            } else {
+                long[] words = b.mWords, other = ((BitmapContainer) c).mWords;
+                int card = 0;
+                for (int i=0; i<BITMAP_WORDS; i++) {
+                    words[i] |= other[i];
+                    card += Long.bitCount(words[i]);
+                }
+                b.mCard = card;
+            }
+            return b;
+        }
+
+        Container and(Container c) {
+            if (c instanceof ArrayContainer) {
+                return c.and(this);
+            }
+            BitmapContainer b = new BitmapContainer();
+            long[] words = b.mWords, other = ((BitmapContainer) c).mWords;
+            int card = 0;
+            for (int i=0; i<BITMAP_WORDS; i++) {
+                words[i] = mWords[i] & other[i];
+                card += Long.bitCount(words[i]);
+            }
+            b.mCard = card;
+            return b.normalize();
+        }
+
+        Container xor(Container c) {
+            BitmapContainer b = copyBitmap();
+            if (c instanceof ArrayContainer) {
+                b.flipAll((ArrayContainer) c);
+            } else {
+                long[] words = b.mWords, other = ((BitmapContainer) c).mWords;
+                int card = 0;
+                for (int i=0; i<BITMAP_WORDS; i++) {
+                    words[i] ^= other[i];
+                    card += Long.bitCount(words[i]);
+                }
+                b.mCard = card;
+            }
+            return b.normalize();
+        }
+
+        int andCardinality(Container c) {
+            if (c instanceof ArrayContainer) {
+                return c.andCardinality(this);
+            }
+            long[] other = ((BitmapContainer) c).mWords;
+            int card = 0;
+            for (int i=0; i<BITMAP_WORDS; i++) {
+                card += Long.bitCount(mWords[i] & other[i]);
+            }
+            return card;
+        }
+
+        Container copy() {
+            return copyBitmap();
+        }
+
+        Container trim() {
+            return this;
+        }
+
+        long sizeInBytes() {
+            return 32L + 8L*BITMAP_WORDS;
+        }
+
+        void write(DataOutput out) throws IOException {
+            for (int i=0; i<BITMAP_WORDS; i++) {
+                out.writeLong(mWords[i]);
+            }
+        }
+    }
+
+    // Walks the containers in order.  Removal goes through the set and then
+    // relocates the container of the next value, since removal may replace
+    // or drop the container of the last.
+    private class Itr implements IntCollectionIterator {
+
+        private int mIndex;
+        private int mNextLow = -1;
+        private int mLast;
+        private boolean mCanRemove;
+        private int mExpectedModCount = mModCount;
+
+        Itr() {
+            if (mContainerCount > 0) {
+                mNextLow = mContainers[0].nextValue(0);
+            }
+        }
+
+        public boolean hasNext() {
+            return mNextLow >= 0;
+        }
+
+        public int next() {
+            if (mNextLow < 0) {
+                throw new NoSuchElementException();
+            }
+            checkForComodification();
+            mLast = value(mKeys[mIndex], mNextLow);
+            mCanRemove = true;
+            advance();
+            return mLast;
+        }
+
+        private void advance() {
+            mNextLow = mContainers[mIndex].nextValue(mNextLow + 1);
+            while (mNextLow < 0 && ++mIndex < mContainerCount) {
+                mNextLow = mContainers[mIndex].nextValue(0);
+            }
+        }
+
+        public void remove() {
+            if (!mCanRemove) {
+                throw new IllegalStateException();
+            }
+            checkForComodification();
+            int nextKey = mNextLow >= 0 ? mKeys[mIndex] : -1;
+            RoaringIntSet.this.remove(mLast);
+            if (nextKey >= 0) {
+                mIndex = indexOf(nextKey);
+            }
+            mCanRemove = false;
+            mExpectedModCount = mModCount;
+        }
+
+        private void checkForComodification() {
+            if (mModCount != mExpectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+}
@@ -0,0 +1,608 @@
+package gov.pnnl.jac.geom;
+
+import gov.pnnl.jac.task.Cancelable;
+import gov.pnnl.jac.task.ProgressHandler;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CancellationException;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Reads and writes coordinate data in a self-describing, versioned binary
+ * container designed to be opened by memory-mapping rather than by
+ * parsing.  Converting a csv file to this format once means that subsequent
+ * jobs can open the data in milliseconds, regardless of its size, through
+ * <tt>open()</tt>, which returns a <tt>MappedBinaryCoordinateList</tt>
+ * that reads values directly from the mapped file.</p>
+ *
+ * <p>The values may be stored in row-major order, which favors access to
+ * whole coordinates as in clustering, or in column-major order, which favors
+ * access to whole dimensions as in projection and statistics.  They may be
+ * stored as doubles or as floats, and in either byte order, though writing
+ * them in the native order of the platform that will read them avoids
+ * byte swapping.</p>
+ *
+ * <p>The file consists of a fixed-length header, a table of CRC32
+ * checksums, each covering one block of the data region, a CRC32 of the
+ * header and table, and padding up to the start of the data, which is
+ * page-aligned.  The header and table are always big-endian.  The
+ * fixed-length header contains:</p>
+ *
+ * <ul>
+ * <li>the magic number <tt>"JACCOORD"</tt> (8 bytes)</li>
+ * <li>the format version (int)</li>
+ * <li>flags for the layout, the value type, and the byte order (int)</li>
+ * <li>the dimension count and the coordinate count (ints)</li>
+ * <li>the checksum block size in bytes and the number of blocks (ints)</li>
+ * <li>the offset and length of the data region (longs)</li>
+ * </ul>
+ *
+ * <p>Only the header checksum is verified when a file is opened, since
+ * verifying the data would mean reading all of it.  Use <tt>verify()</tt>
+ * to check the data itself.</p>
+ */
+public final class BinaryCoordinateFile {
+
+    /**
+     * The order in which values are stored.
+     */
+    public enum Layout {
+        /** All values of each coordinate are contiguous. */
+        ROW_MAJOR,
+        /** All values of each dimension are contiguous. */
+        COLUMN_MAJOR
+    }
+
+    /**
+     * The magic number at the beginning of every file, "JACCOORD" in ASCII.
+     */
+    public static final long MAGIC = 0x4A4143434F4F5244L;
+
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int CURRENT_VERSION = 1;
+
+    /**
+     * The default number of data bytes covered by each checksum.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    static final int FLAG_COLUMN_MAJOR = 0x1;
+    static final int FLAG_FLOATS = 0x2;
+    static final int FLAG_LITTLE_ENDIAN = 0x4;
+
+    // All the flags understood by version 1.
+    private static final int KNOWN_FLAGS = FLAG_COLUMN_MAJOR | FLAG_FLOATS | FLAG_LITTLE_ENDIAN;
+
+    // Length of the fixed portion of the header.
+    private static final int FIXED_HEADER_LEN = 48;
+
+    // The data region starts on a multiple of this.
+    private static final long DATA_ALIGNMENT = 4096L;
+
+    private BinaryCoordinateFile() {
+    }
+
+    /**
+     * Describes the contents of a file, as read from its header.
+     */
+    public static final class Header {
+
+        private int mVersion;
+        private int mFlags;
+        private int mDim;
+        private int mCount;
+        private int mBlockSize;
+        private int[] mChecksums;
+        private long mDataOffset;
+        private long mDataLength;
+
+        private Header() {
+        }
+
+        public int getVersion() {
+            return mVersion;
+        }
+
+        public Layout getLayout() {
+            return (mFlags & FLAG_COLUMN_MAJOR) != 0 ? Layout.COLUMN_MAJOR : Layout.ROW_MAJOR;
+        }
+
+        public boolean getUseFloats() {
+            return (mFlags & FLAG_FLOATS) != 0;
+        }
+
+        public ByteOrder getByteOrder() {
+            return (mFlags & FLAG_LITTLE_ENDIAN) != 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        }
+
+        public int getDimensionCount() {
+            return mDim;
+        }
+
+        public int getCoordinateCount() {
+            return mCount;
+        }
+
+        /**
+         * Returns the number of bytes occupied by each value.
+         * @return
+         */
+        public int getValueSize() {
+            return getUseFloats() ? 4 : 8;
+        }
+
+        public int getBlockSize() {
+            return mBlockSize;
+        }
+
+        public int getBlockCount() {
+            return mChecksums.length;
+        }
+
+        public long getDataOffset() {
+            return mDataOffset;
+        }
+
+        public long getDataLength() {
+            return mDataLength;
+        }
+
+        int getChecksum(int block) {
+            return mChecksums[block];
+        }
+
+        void setChecksum(int block, int checksum) {
+            mChecksums[block] = checksum;
+        }
+
+        // The length of the header, including the table and its checksum.
+        private int headerLength() {
+            return FIXED_HEADER_LEN + 4*mChecksums.length + 4;
+        }
+
+        private byte[] toBytes() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(headerLength());
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(MAGIC);
+            out.writeInt(mVersion);
+            out.writeInt(mFlags);
+            out.writeInt(mDim);
+            out.writeInt(mCount);
+            out.writeInt(mBlockSize);
+            out.writeInt(mChecksums.length);
+            out.writeLong(mDataOffset);
+            out.writeLong(mDataLength);
+            for (int i=0; i<mChecksums.length; i++) {
+                out.writeInt(mChecksums[i]);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Writes coordinate data to a file in row-major order as doubles, in the
+     * native byte order.
+     *
+     * @param coords the coordinate data.
+     * @param file the destination, which is overwritten if it exists.
+     *
+     * @throws IOException if an IO error occurs.
+     */
+    public static void write(CoordinateList coords, File file) throws IOException {
+        write(coords, file, Layout.ROW_MAJOR, false, ByteOrder.nativeOrder(), null, null);
+    }
+
+    /**
+     * Writes coordinate data to a file.
+     *
+     * @param coords the coordinate data.
+     * @param file the destination, which is overwritten if it exists.
+     * @param layout the order in which to store the values.
+     * @param useFloats if true, values are stored as floats, otherwise as doubles.
+     * @param byteOrder the byte order of the values.  If null, the native order is used.
+     * @param cancelable if non-null, checked periodically to see if writing should be cancelled.
+     * @param ph if non-null, used to post progress.
+     *
+     * @throws IOException if an IO error occurs.
+     * @throws CancellationException if writing is cancelled, in which case
+     *   the file is deleted.
+     */
+    public static void write(CoordinateList coords, File file, Layout layout,
+            boolean useFloats, ByteOrder byteOrder, Cancelable cancelable,
+            ProgressHandler ph) throws IOException, CancellationException {
+
+        if (layout == null) throw new NullPointerException();
+        if (byteOrder == null) {
+            byteOrder = ByteOrder.nativeOrder();
+        }
+
+        final int dim = coords.getDimensionCount();
+        final int count = coords.getCoordinateCount();
+
+        Header header = newHeader(dim, count, layout, useFloats, byteOrder);
+
+        final boolean columnMajor = layout == Layout.COLUMN_MAJOR;
+        final int outerCount = columnMajor ? dim : count;
+
+        if (ph != null) {
+            ph.subsection(1.0, outerCount);
+            ph.postBegin();
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        boolean ok = false;
+
+        try {
+
+            raf.setLength(0L);
+            FileChannel channel = raf.getChannel();
+            channel.position(header.mDataOffset);
+
+            BlockWriter writer = new BlockWriter(channel, header, byteOrder);
+            double[] buffer = new double[columnMajor ? count : dim];
+
+            for (int i=0; i<outerCount; i++) {
+                if (cancelable != null && cancelable.isCanceled()) {
+                    throw new CancellationException();
+                }
+                if (columnMajor) {
+                    coords.getDimensionValues(i, buffer);
+                } else {
+                    coords.getCoordinates(i, buffer);
+                }
+                if (useFloats) {
+                    for (int j=0; j<buffer.length; j++) {
+                        writer.putFloat((float) buffer[j]);
+                    }
+                } else {
+                    for (int j=0; j<buffer.length; j++) {
+                        writer.putDouble(buffer[j]);
+                    }
+                }
+                if (ph != null) {
+                    ph.postStep();
+                }
+            }
+
+            writer.finish();
+
+            channel.write(ByteBuffer.wrap(header.toBytes()), 0L);
+            raf.setLength(header.mDataOffset + header.mDataLength);
+
+            ok = true;
+
+        } finally {
+
+            try {
+                raf.close();
+            } catch (IOException ioe) {
+            }
+
+            if (!ok) {
+                file.delete();
+            }
+
+            if (ph != null) {
+                ph.postEnd();
+            }
+        }
+    }
+
+    /**
+     * Creates a file sized for the specified number of coordinates and
+     * opens it for writing by memory-mapping it, so that data too large to
+     * hold in memory can be written directly into the file.  The values are
+     * initially zero.  The checksums are computed when the returned list's
+     * file is closed, so it must be closed for the file to verify.
+     *
+     * @param file the destination, which is overwritten if it exists.
+     * @param dim the number of dimensions.
+     * @param count the number of coordinates.
+     * @param layout the order in which to store the values.
+     * @param useFloats if true, values are stored as floats, otherwise as doubles.
+     * @param byteOrder the byte order of the values.  If null, the native order is used.
+     *
+     * @return a writable coordinate list, which also implements
+     *   <tt>FloatCoordinateList</tt> if <tt>useFloats</tt> is true.
+     *
+     * @throws IOException if an IO error occurs.
+     */
+    public static MappedBinaryCoordinateList create(File file, int dim, int count,
+            Layout layout, boolean useFloats, ByteOrder byteOrder) throws IOException {
+
+        if (layout == null) throw new NullPointerException();
+        if (dim < 0 || count < 0) {
+            throw new IllegalArgumentException("negative dimension or coordinate count");
+        }
+        if (byteOrder == null) {
+            byteOrder = ByteOrder.nativeOrder();
+        }
+
+        Header header = newHeader(dim, count, layout, useFloats, byteOrder);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        boolean ok = false;
+
+        try {
+            raf.setLength(0L);
+            raf.getChannel().write(ByteBuffer.wrap(header.toBytes()), 0L);
+            raf.setLength(header.mDataOffset + header.mDataLength);
+            raf.close();
+            raf = null;
+            MappedBinaryCoordinateList list = open(file, true);
+            ok = true;
+            return list;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ioe) {
+                }
+            }
+            if (!ok) {
+                file.delete();
+            }
+        }
+    }
+
+    // Creates the header for a file, with the checksums yet to be filled in.
+    private static Header newHeader(int dim, int count, Layout layout, boolean useFloats,
+            ByteOrder byteOrder) throws IOException {
+
+        final int valueSize = useFloats ? 4 : 8;
+        final long dataLength = (long) valueSize * dim * count;
+        final int blockSize = DEFAULT_BLOCK_SIZE;
+        final long blockCount = (dataLength + blockSize - 1)/blockSize;
+        if (blockCount > (Integer.MAX_VALUE - FIXED_HEADER_LEN)/4) {
+            throw new IOException("data too large: " + dataLength + " bytes");
+        }
+
+        Header header = new Header();
+        header.mVersion = CURRENT_VERSION;
+        header.mFlags = (layout == Layout.COLUMN_MAJOR ? FLAG_COLUMN_MAJOR : 0) |
+            (useFloats ? FLAG_FLOATS : 0) |
+            (byteOrder == ByteOrder.LITTLE_ENDIAN ? FLAG_LITTLE_ENDIAN : 0);
+        header.mDim = dim;
+        header.mCount = count;
+        header.mBlockSize = blockSize;
+        header.mChecksums = new int[(int) blockCount];
+        header.mDataOffset = align(header.headerLength());
+        header.mDataLength = dataLength;
+
+        return header;
+    }
+
+    /**
+     * Reads and validates the header of a file.
+     *
+     * @param file
+     * @return
+     * @throws IOException if an IO error occurs or the file is not in the expected format.
+     */
+    public static Header readHeader(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return readHeader(raf, file);
+        } finally {
+            try {
+                raf.close();
+            } catch (IOException ioe) {
+            }
+        }
+    }
+
+    static Header readHeader(RandomAccessFile raf, File file) throws IOException {
+
+        raf.seek(0L);
+
+        if (raf.length() < FIXED_HEADER_LEN || raf.readLong() != MAGIC) {
+            throw new IOException("not a binary coordinate file: " + file);
+        }
+
+        Header header = new Header();
+        header.mVersion = raf.readInt();
+        if (header.mVersion < 1 || header.mVersion > CURRENT_VERSION) {
+            throw new IOException("unsupported version " + header.mVersion + ": " + file);
+        }
+
+        header.mFlags = raf.readInt();
+        if ((header.mFlags & ~KNOWN_FLAGS) != 0) {
+            throw new IOException("unsupported flags 0x" +
+                Integer.toHexString(header.mFlags) + ": " + file);
+        }
+
+        header.mDim = raf.readInt();
+        header.mCount = raf.readInt();
+        header.mBlockSize = raf.readInt();
+        int blockCount = raf.readInt();
+        header.mDataOffset = raf.readLong();
+        header.mDataLength = raf.readLong();
+
+        if (header.mDim < 0 || header.mCount < 0 || header.mBlockSize <= 0 ||
+                header.mBlockSize % 8 != 0 || blockCount < 0 ||
+                blockCount > (raf.length() - FIXED_HEADER_LEN)/4) {
+            throw new IOException("corrupt header: " + file);
+        }
+
+        header.mChecksums = new int[blockCount];
+        for (int i=0; i<blockCount; i++) {
+            header.mChecksums[i] = raf.readInt();
+        }
+        int headerChecksum = raf.readInt();
+
+        // Recompute the checksum of everything preceding it.
+        byte[] bytes = new byte[FIXED_HEADER_LEN + 4*blockCount];
+        raf.seek(0L);
+        raf.readFully(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if ((int) crc.getValue() != headerChecksum) {
+            throw new IOException("header checksum mismatch: " + file);
+        }
+
+        long expectedLength = (long) header.getValueSize() * header.mDim * header.mCount;
+        if (header.mDataLength != expectedLength ||
+                blockCount != (expectedLength + header.mBlockSize - 1)/header.mBlockSize ||
+                header.mDataOffset < header.headerLength() ||
+                raf.length() < header.mDataOffset + header.mDataLength) {
+            throw new IOException("corrupt header or truncated file: " + file);
+        }
+
+        return header;
+    }
+
+    /**
+     * Opens a file for reading by memory-mapping it.  No data is read
+     * until it is accessed through the returned list.
+     *
+     * @param file
+     * @return a read-only coordinate list, which also implements
+     *   <tt>FloatCoordinateList</tt> if the file stores floats.
+     * @throws IOException if an IO error occurs or the file is not in the expected format.
+     */
+    public static MappedBinaryCoordinateList open(File file) throws IOException {
+        return open(file, false);
+    }
+
+    /**
+     * Opens a file by memory-mapping it.  If writable, changes made through
+     * the returned list are written to the file, and its checksums are
+     * updated when the list's file is closed.
+     *
+     * @param file
+     * @param writable
+     * @return a coordinate list, which also implements
+     *   <tt>FloatCoordinateList</tt> if the file stores floats.
+     * @throws IOException if an IO error occurs or the file is not in the expected format.
+     */
+    public static MappedBinaryCoordinateList open(File file, boolean writable) throws IOException {
+        return MappedBinaryCoordinateList.open(file, writable);
+    }
+
+    /**
+     * Verifies the checksums of all data blocks in a file.
+     *
+     * @param file
+     * @return true if all checksums match, false otherwise.
+     * @throws IOException if an IO error occurs or the header is invalid.
+     */
+    public static boolean verify(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            Header header = readHeader(raf, file);
+            int[] checksums = computeChecksums(raf.getChannel(), header);
+            for (int i=0; i<checksums.length; i++) {
+                if (checksums[i] != header.getChecksum(i)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            try {
+                raf.close();
+            } catch (IOException ioe) {
+            }
+        }
+    }
+
+    // Recomputes the checksums of the data blocks and rewrites the header.
+    static void updateChecksums(RandomAccessFile raf, Header header) throws IOException {
+        int[] checksums = computeChecksums(raf.getChannel(), header);
+        for (int i=0; i<checksums.length; i++) {
+            header.setChecksum(i, checksums[i]);
+        }
+        raf.getChannel().write(ByteBuffer.wrap(header.toBytes()), 0L);
+    }
+
+    private static int[] computeChecksums(FileChannel channel, Header header) throws IOException {
+        int blockCount = header.getBlockCount();
+        int[] checksums = new int[blockCount];
+        byte[] bytes = new byte[header.mBlockSize];
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        CRC32 crc = new CRC32();
+        long pos = header.mDataOffset;
+        long end = pos + header.mDataLength;
+        for (int b=0; b<blockCount; b++) {
+            int len = (int) Math.min(header.mBlockSize, end - pos);
+            buf.clear();
+            buf.limit(len);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, pos + buf.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            crc.reset();
+            crc.update(bytes, 0, len);
+            checksums[b] = (int) crc.getValue();
+            pos += len;
+        }
+        return checksums;
+    }
+
+    private static long align(long offset) {
+        return (offset + DATA_ALIGNMENT - 1)/DATA_ALIGNMENT*DATA_ALIGNMENT;
+    }
+
+    // Buffers values into checksum blocks and writes them sequentially.
+    private static class BlockWriter {
+
+        private FileChannel mChannel;
+        private Header mHeader;
+        private byte[] mBytes;
+        private ByteBuffer mBuf;
+        private CRC32 mCRC = new CRC32();
+        private int mBlock;
+
+        BlockWriter(FileChannel channel, Header header, ByteOrder byteOrder) {
+            mChannel = channel;
+            mHeader = header;
+            mBytes = new byte[header.mBlockSize];
+            mBuf = ByteBuffer.wrap(mBytes).order(byteOrder);
+        }
+
+        void putDouble(double d) throws IOException {
+            mBuf.putDouble(d);
+            if (!mBuf.hasRemaining()) {
+                flushBlock();
+            }
+        }
+
+        void putFloat(float f) throws IOException {
+            mBuf.putFloat(f);
+            if (!mBuf.hasRemaining()) {
+                flushBlock();
+            }
+        }
+
+        void finish() throws IOException {
+            if (mBuf.position() > 0) {
+                flushBlock();
+            }
+            if (mBlock != mHeader.getBlockCount()) {
+                throw new IOException("wrote " + mBlock + " blocks, expected " +
+                    mHeader.getBlockCount());
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            int len = mBuf.position();
+            mCRC.reset();
+            mCRC.update(mBytes, 0, len);
+            mHeader.setChecksum(mBlock++, (int) mCRC.getValue());
+            mBuf.flip();
+            while (mBuf.hasRemaining()) {
+                mChannel.write(mBuf);
+            }
+            mBuf.clear();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package gov.pnnl.jac.geom;
+
+import gov.pnnl.jac.collections.DoubleArrayList;
+import gov.pnnl.jac.collections.IntArrayList;
+import gov.pnnl.jac.util.SortUtils;
+
+import java.util.Arrays;
+
+/**
+ * <p>A <tt>SparseRowCoordinateList</tt> that stores its coordinates in
+ * compressed-sparse-row (CSR) form: one array of row offsets, one array of
+ * the dimensions of all nonzeros, and one array of all nonzero values.  For
+ * high-dimensional data such as TF-IDF vectors, this takes three arrays in total
+ * instead of two list objects per coordinate, and lets distances and averages be
+ * computed from the nonzeros alone.</p>
+ *
+ * <p>The nonzero structure is fixed when the list is constructed.  Existing
+ * nonzero values may be changed through the setters, but attempting to set a
+ * nonzero value in a position that is zero in the structure results in an
+ * <tt>UnsupportedOperationException</tt>.  Use a <tt>CSRCoordinateList.Builder</tt>
+ * to assemble the structure one coordinate at a time.</p>
+ */
+public class CSRCoordinateList extends AbstractCoordinateList
+    implements SparseRowCoordinateList {
+
+    // Coordinate i has its nonzeros in positions
+    // [mRowOffsets[i], mRowOffsets[i+1]) of mColumnIndices and mValues.
+    private int[] mRowOffsets;
+    private int[] mColumnIndices;
+    private double[] mValues;
+    private int mMaxNonZeroCount;
+
+    /**
+     * Constructs a new <tt>CSRCoordinateList</tt> from arrays already in
+     * CSR form.  The arrays are not copied.
+     *
+     * @param dimensions the number of dimensions.
+     * @param rowOffsets array of length coordinateCount + 1, beginning with 0,
+     *   containing the offset of each coordinate's first nonzero.  The last
+     *   element is the total number of nonzeros.
+     * @param columnIndices the dimensions of the nonzeros, ascending within each
+     *   coordinate.
+     * @param values the nonzero values.
+     *
+     * @throws IllegalArgumentException if the arrays are inconsistent.
+     */
+    public CSRCoordinateList(int dimensions, int[] rowOffsets,
+            int[] columnIndices, double[] values) {
+        if (dimensions < 0) {
+            throw new IllegalArgumentException("dimensions < 0: " + dimensions);
+        }
+        if (rowOffsets.length == 0 || rowOffsets[0] != 0) {
+            throw new IllegalArgumentException("rowOffsets must begin with 0");
+        }
+        final int nnz = rowOffsets[rowOffsets.length - 1];
+        if (columnIndices.length != nnz || values.length != nnz) {
+            throw new IllegalArgumentException("number of nonzeros " + nnz +
+                    " does not agree with array lengths " + columnIndices.length +
+                    " and " + values.length);
+        }
+        mDim = dimensions;
+        mCount = rowOffsets.length - 1;
+        for (int i=0; i<mCount; i++) {
+            int start = rowOffsets[i];
+            int end = rowOffsets[i+1];
+            if (end < start) {
+                throw new IllegalArgumentException("rowOffsets not ascending at " + i);
+            }
+            for (int j=start; j<end; j++) {
+                int col = columnIndices[j];
+                if (col < 0 || col >= dimensions) {
+                    throw new IllegalArgumentException("dimension out of range: " + col);
+                }
+                if (j > start && col <= columnIndices[j-1]) {
+                    throw new IllegalArgumentException(
+                        "dimensions not strictly ascending for coordinate " + i);
+                }
+            }
+            mMaxNonZeroCount = Math.max(mMaxNonZeroCount, end - start);
+        }
+        mRowOffsets = rowOffsets;
+        mColumnIndices = columnIndices;
+        mValues = values;
+    }
+
+    /**
+     * Creates a <tt>CSRCoordinateList</tt> containing the same values as another
+     * <tt>CoordinateList</tt>.  If the source is a <tt>SparseRowCoordinateList</tt>,
+     * its nonzeros are copied directly, otherwise each coordinate is scanned for
+     * nonzeros.
+     *
+     * @param source
+     * @return
+     */
+    public static CSRCoordinateList copyOf(CoordinateList source) {
+        final int dim = source.getDimensionCount();
+        final int count = source.getCoordinateCount();
+        Builder builder = new Builder(dim);
+        if (source instanceof SparseRowCoordinateList) {
+            SparseRowCoordinateList sparse = (SparseRowCoordinateList) source;
+            int maxNonZeros = sparse.getMaxNonZeroCount();
+            int[] indices = new int[maxNonZeros];
+            double[] values = new double[maxNonZeros];
+            for (int i=0; i<count; i++) {
+                int nnz = sparse.getNonZeros(i, indices, values);
+                builder.addCoordinates(indices, values, nnz);
+            }
+        } else {
+            double[] coords = new double[dim];
+            int[] indices = new int[dim];
+            double[] values = new double[dim];
+            for (int i=0; i<count; i++) {
+                source.getCoordinates(i, coords);
+                int nnz = 0;
+                for (int d=0; d<dim; d++) {
+                    if (coords[d] != 0.0) {
+                        indices[nnz] = d;
+                        values[nnz++] = coords[d];
+                    }
+                }
+                builder.addCoordinates(indices, values, nnz);
+            }
+        }
+        return builder.build();
+    }
+
+    public int getNonZeroCount(int ndx) {
+        checkIndex(ndx);
+        return mRowOffsets[ndx+1] - mRowOffsets[ndx];
+    }
+
+    public int getMaxNonZeroCount() {
+        return mMaxNonZeroCount;
+    }
+
+    /**
+     * Returns the total number of nonzeros in all coordinates.
+     * @return
+     */
+    public int getTotalNonZeroCount() {
+        return mRowOffsets[mCount];
+    }
+
+    public int getNonZeros(int ndx, int[] indices, double[] values) {
+        checkIndex(ndx);
+        final int start = mRowOffsets[ndx];
+        final int nnz = mRowOffsets[ndx+1] - start;
+        if (indices.length < nnz || values.length < nnz) {
+            throw new IllegalArgumentException("buffers too short for " + nnz + " nonzeros");
+        }
+        System.arraycopy(mColumnIndices, start, indices, 0, nnz);
+        System.arraycopy(mValues, start, values, 0, nnz);
+        return nnz;
+    }
+
+    public double[] getCoordinates(int ndx, double[] coords) {
+        checkIndex(ndx);
+        double[] c = null;
+        if (coords != null) {
+            checkDimensions(coords.length);
+            c = coords;
+            Arrays.fill(c, 0.0);
+        } else {
+            c = new double[mDim];
+        }
+        final int end = mRowOffsets[ndx+1];
+        for (int j=mRowOffsets[ndx]; j<end; j++) {
+            c[mColumnIndices[j]] = mValues[j];
+        }
+        return c;
+    }
+
+    public void setCoordinates(int ndx, double[] coords) {
+        checkIndex(ndx);
+        checkDimensions(coords.length);
+        final int start = mRowOffsets[ndx];
+        final int end = mRowOffsets[ndx+1];
+        // Check before changing anything, so a failure leaves the coordinate intact.
+        int j = start;
+        for (int d=0; d<mDim; d++) {
+            if (j < end && mColumnIndices[j] == d) {
+                j++;
+            } else if (coords[d] != 0.0) {
+                throw new UnsupportedOperationException(
+                    "cannot add a nonzero to a CSRCoordinateList: coordinate " +
+                    ndx + ", dimension " + d);
+            }
+        }
+        for (j=start; j<end; j++) {
+            mValues[j] = coords[mColumnIndices[j]];
+        }
+    }
+
+    public double getCoordinateQuick(int ndx, int dim) {
+        int j = find(ndx, dim);
+        return j >= 0 ? mValues[j] : 0.0;
+    }
+
+    public void setCoordinateQuick(int ndx, int dim, double coord) {
+        int j = find(ndx, dim);
+        if (j >= 0) {
+            mValues[j] = coord;
+        } else if (coord != 0.0) {
+            throw new UnsupportedOperationException(
+                "cannot add a nonzero to a CSRCoordinateList: coordinate " +
+                ndx + ", dimension " + dim);
+        }
+    }
+
+    // Returns the position of the specified dimension of the specified
+    // coordinate in mColumnIndices, or -1 if it is zero.
+    private int find(int ndx, int dim) {
+        int j = Arrays.binarySearch(mColumnIndices, mRowOffsets[ndx], mRowOffsets[ndx+1], dim);
+        return j >= 0 ? j : -1;
+    }
+
+    public double[] getDimensionValues(int dim, double[] values) {
+        checkDimension(dim);
+        double[] v = null;
+        if (values != null) {
+            if (values.length != mCount) {
+                throw new IllegalArgumentException(String
+                        .valueOf(values.length)
+                        + " != " + mCount);
+            }
+            v = values;
+        } else {
+            v = new double[mCount];
+        }
+        for (int i=0; i<mCount; i++) {
+            int j = find(i, dim);
+            v[i] = j >= 0 ? mValues[j] : 0.0;
+        }
+        return v;
+    }
+
+    public double[] computeAverage(int[] indices, double[] avg) {
+        checkIndices(indices);
+        double[] rtn = null;
+        if (avg != null) {
+            checkDimensions(avg.length);
+            rtn = avg;
+        } else {
+            rtn = new double[mDim];
+        }
+        Arrays.fill(rtn, 0.0);
+        // Implicit zeros count toward the average, but NaNs do not, so only
+        // the NaNs need to be counted per dimension.
+        int[] nanCounts = new int[mDim];
+        final int n = indices.length;
+        for (int i = 0; i < n; i++) {
+            int ndx = indices[i];
+            final int end = mRowOffsets[ndx+1];
+            for (int j=mRowOffsets[ndx]; j<end; j++) {
+                double dv = mValues[j];
+                if (!Double.isNaN(dv)) {
+                    rtn[mColumnIndices[j]] += dv;
+                } else {
+                    nanCounts[mColumnIndices[j]]++;
+                }
+            }
+        }
+        for (int d = 0; d < mDim; d++) {
+            int ct = n - nanCounts[d];
+            if (ct >= 1) {
+                rtn[d] /= ct;
+            } else {
+                // No information in dimension d.
+                rtn[d] = Double.NaN;
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Builder for assembling a <tt>CSRCoordinateList</tt> one coordinate at a time.
+     */
+    public static class Builder {
+
+        private int mDimensions;
+        private IntArrayList mRowOffsets = new IntArrayList();
+        private IntArrayList mColumnIndices = new IntArrayList();
+        private DoubleArrayList mValues = new DoubleArrayList();
+
+        /**
+         * Constructor.
+         * @param dimensions the number of dimensions.  If less than 0, the
+         *   number of dimensions is taken to be one more than the highest
+         *   dimension of any nonzero added.
+         */
+        public Builder(int dimensions) {
+            mDimensions = dimensions;
+            mRowOffsets.add(0);
+        }
+
+        public Builder() {
+            this(-1);
+        }
+
+        /**
+         * Appends a coordinate given its nonzero dimensions and values, which need
+         * not be sorted.  Explicit zero values are dropped.  The arrays are not
+         * modified.
+         *
+         * @param indices
+         * @param values
+         * @param nonZeroCount the number of entries of indices and values to use.
+         * @return this builder.
+         */
+        public Builder addCoordinates(int[] indices, double[] values, int nonZeroCount) {
+            int[] sortedIndices = new int[nonZeroCount];
+            double[] sortedValues = new double[nonZeroCount];
+            System.arraycopy(indices, 0, sortedIndices, 0, nonZeroCount);
+            System.arraycopy(values, 0, sortedValues, 0, nonZeroCount);
+            SortUtils.parallelSort(sortedIndices, sortedValues);
+            for (int i=0; i<nonZeroCount; i++) {
+                if (i > 0 && sortedIndices[i] == sortedIndices[i-1]) {
+                    throw new IllegalArgumentException("duplicate dimension: " + sortedIndices[i]);
+                }
+                if (sortedValues[i] != 0.0) {
+                    mColumnIndices.add(sortedIndices[i]);
+                    mValues.add(sortedValues[i]);
+                }
+            }
+            mRowOffsets.add(mColumnIndices.size());
+            return this;
+        }
+
+        /**
+         * Appends a dense coordinate, keeping only its nonzeros.
+         *
+         * @param coords
+         * @return this builder.
+         */
+        public Builder addCoordinates(double[] coords) {
+            for (int d=0; d<coords.length; d++) {
+                if (coords[d] != 0.0) {
+                    mColumnIndices.add(d);
+                    mValues.add(coords[d]);
+                }
+            }
+            mRowOffsets.add(mColumnIndices.size());
+            return this;
+        }
+
+        /**
+         * Returns the number of coordinates added so far.
+         * @return
+         */
+        public int getCoordinateCount() {
+            return mRowOffsets.size() - 1;
+        }
+
+        public CSRCoordinateList build() {
+            int[] columnIndices = mColumnIndices.toArray();
+            int dim = mDimensions;
+            if (dim < 0) {
+                dim = 0;
+                for (int i=0; i<columnIndices.length; i++) {
+                    if (columnIndices[i] >= dim) {
+                        dim = columnIndices[i] + 1;
+                    }
+                }
+            }
+            return new CSRCoordinateList(dim, mRowOffsets.toArray(),
+                columnIndices, mValues.toArray());
+        }
+    }
+}
@@ -32,6 +32,169 @@ public class CoordinateIO {
 		return loadCSV(file, null, ",", 0, 0, nameForTuples, factory, cancelable, ph);
 	}
 
+	/**
+	 * Loads a csv file with a <tt>MappedCSVLoader</tt>, which memory-maps the file and 
+	 * parses it on multiple threads.  The result is the same as that of the equivalent 
+	 * call to <tt>loadCSV()</tt>.
+	 * 
+	 * @param file the csv file.
+	 * @param charSet the character set name.  If null, the default character set is used.
+	 * @param delimiter the delimiter characters.
+	 * @param startColumn the first column to examine for numeric data.
+	 * @param numThreads the number of threads.  If not positive, the number of processors is used.
+	 * @param nameForTuples the name to assign to the CoordinateList within its factory.
+	 * @param factory the CoordinateListFactory, which will manage the CoordinateList.
+	 * @param cancelable if non-null, checked periodically to see if loading should be cancelled.
+	 * @param ph if non-null, used to post progress.
+	 * 
+	 * @return a CoordinateList containing the data.
+	 * 
+	 * @throws IOException if some kind if IO error occurs.
+	 * 
+	 * @throws CancellationException if loading is cancelled.
+	 */
+	public static CoordinateList loadCSVParallel(
+			File file, 
+			String charSet, 
+			String delimiter, 
+			int startColumn,
+			int numThreads,
+			String nameForTuples,
+			CoordinateListFactory factory,
+			Cancelable cancelable,
+			ProgressHandler ph) throws IOException, CancellationException {
+		MappedCSVLoader loader = new MappedCSVLoader(file);
+		loader.setCharSet(charSet);
+		loader.setDelimiter(delimiter);
+		loader.setStartColumn(startColumn);
+		loader.setNumThreads(numThreads);
+		return loader.load(nameForTuples, factory, cancelable, ph);
+	}
+
+	/**
+	 * Converts a csv file to the binary format of <tt>BinaryCoordinateFile</tt>, so
+	 * the data can subsequently be opened by memory-mapping instead of parsing.  A
+	 * <tt>MappedCSVLoader</tt> counts the rows, so the binary file can be created at
+	 * its full size and mapped, and then parses the values directly into the mapped
+	 * file.  The data is never held in memory, so files of any size may be converted.
+	 * 
+	 * @param csvFile the csv file.
+	 * @param charSet the character set name.  If null, the default character set is used.
+	 * @param delimiter the delimiter characters.
+	 * @param startColumn the first column to examine for numeric data.
+	 * @param binaryFile the destination, which is overwritten if it exists.
+	 * @param layout the order in which to store the values.
+	 * @param useFloats if true, the values are stored as floats, otherwise as doubles.
+	 * @param cancelable if non-null, checked periodically to see if conversion should be cancelled.
+	 * @param ph if non-null, used to post progress.
+	 * 
+	 * @throws IOException if some kind if IO error occurs.
+	 * 
+	 * @throws CancellationException if conversion is cancelled.
+	 */
+	public static void convertCSVToBinary(
+			File csvFile, 
+			String charSet, 
+			String delimiter, 
+			int startColumn,
+			File binaryFile,
+			BinaryCoordinateFile.Layout layout,
+			boolean useFloats,
+			Cancelable cancelable,
+			ProgressHandler ph) throws IOException, CancellationException {
+		if (layout == null) throw new NullPointerException();
+		MappedCSVLoader loader = new MappedCSVLoader(csvFile);
+		loader.setCharSet(charSet);
+		loader.setDelimiter(delimiter);
+		loader.setStartColumn(startColumn);
+		BinaryFileFactory factory = new BinaryFileFactory(binaryFile, layout, useFloats);
+		boolean ok = false;
+		try {
+			loader.load(csvFile.getName(), factory, cancelable, ph);
+			// Closing the file computes its checksums.
+			factory.closeAll();
+			ok = true;
+		} finally {
+			if (!ok) {
+				try {
+					factory.discard();
+				} catch (IOException ioe) {
+					logger.error(ioe);
+				}
+				binaryFile.delete();
+			}
+		}
+	}
+
+	// Creates the single coordinate list into which convertCSVToBinary() loads a
+	// csv file, a writable mapping of the binary file.
+	private static class BinaryFileFactory implements CoordinateListFactory {
+
+		private File mFile;
+		private BinaryCoordinateFile.Layout mLayout;
+		private boolean mUseFloats;
+		private MappedBinaryCoordinateList mCoords;
+
+		BinaryFileFactory(File file, BinaryCoordinateFile.Layout layout, boolean useFloats) {
+			mFile = file;
+			mLayout = layout;
+			mUseFloats = useFloats;
+		}
+
+		public synchronized CoordinateList createCoordinateList(String id, int dimensions,
+				int coordCount) throws IOException {
+			if (mCoords != null) {
+				throw new IOException("coordinate list already created");
+			}
+			mCoords = BinaryCoordinateFile.create(mFile, dimensions, coordCount, 
+					mLayout, mUseFloats, null);
+			return mCoords;
+		}
+
+		public CoordinateList openCoordinateList(String id) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		public CoordinateList copyCoordinateList(String id, CoordinateList sourceCoordList) 
+				throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		public Set<String> coordinateListNames() {
+			return Collections.emptySet();
+		}
+
+		public boolean hasCoordinatesFor(String name) {
+			return false;
+		}
+
+		public void saveCoordinateList(CoordinateList coordList) throws IOException {
+		}
+
+		public void deleteCoordinateList(CoordinateList coordList) throws IOException {
+			throw new UnsupportedOperationException();
+		}
+
+		public synchronized void closeCoordinateList(CoordinateList coordList) throws IOException {
+			if (coordList == mCoords) {
+				closeAll();
+			}
+		}
+
+		public synchronized void closeAll() throws IOException {
+			if (mCoords != null) {
+				mCoords.closeFile();
+			}
+		}
+
+		// Closes the file without computing its checksums.
+		synchronized void discard() throws IOException {
+			if (mCoords != null) {
+				mCoords.discardFile();
+			}
+		}
+	}
+
 	public static CoordinateList loadCSV(
 			File file, String charSet, 
 			String delimiter, 
@@ -287,6 +287,29 @@ public final class CoordinateMath {
 		return Math.sqrt(sum);
 	}
 
+	/**
+	 * Computes the sum of the squares of an array of double values,
+	 * ignoring NaNs.  Unlike <tt>norm2()</tt>, the sum is neither 
+	 * rescaled for NaNs nor square-rooted.  This is the quantity 
+	 * the <tt>SparseDistanceFunc</tt> kernels require for the dense
+	 * coordinate.
+	 * 
+	 * @param coordBuffer - array containing the values.
+	 * 
+	 * @return - the sum of the squares.
+	 */
+	public static double squaredNorm(double[] coordBuffer) {
+		double sum = 0.0;
+		int n = coordBuffer.length;
+		for (int i = 0; i < n; i++) {
+			double d = coordBuffer[i];
+			if (!Double.isNaN(d)) {
+				sum += d * d;
+			}
+		}
+		return sum;
+	}
+
 	/**
 	 * Returns the dot product of the two arrays of double values.
 	 * 
@@ -15,17 +15,36 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
 	
 	public static final String FILENAME_PREFIX = "coords_";
 	public static final String FILENAME_SUFFIX = ".dat";
+	public static final String FLOAT_FILENAME_SUFFIX = ".fdat";
 	public static final String MULTI_DIRECTORY = "multi";
 	
 	private File mDir;
 	private long mRAMThreshold, mFileThreshold;
+	// If true, new coordinate lists store their values as floats.
+	private boolean mUseFloats;
 	
 	private Map<String, Object> mCoordListMap = new HashMap<String, Object> ();
 	private Object mSingleFileSentinel = new Object();
 	private Object mMultiFileSentinel = new Object();
+	private Object mFloatFileSentinel = new Object();
 	
-	public FSCoordinateListFactory(File dir, long ramThreshold, long fileThreshold)
-	throws IOException {
+	/**
+	 * Constructor.
+	 * 
+	 * @param dir the directory in which coordinate files are kept.
+	 * @param ramThreshold the size in bytes at or below which coordinate lists 
+	 *   are kept in memory.
+	 * @param fileThreshold the size in bytes at or below which double coordinate lists
+	 *   are kept in a single file.  Float coordinate lists are always kept in a
+	 *   single file when too large for memory.
+	 * @param useFloats if true, new coordinate lists store their values as floats, using
+	 *   <tt>SimpleFloatCoordinateList</tt> in memory and 
+	 *   <tt>FileMappedFloatCoordinateList</tt> on disk.
+	 *   
+	 * @throws IOException
+	 */
+	public FSCoordinateListFactory(File dir, long ramThreshold, long fileThreshold, 
+			boolean useFloats) throws IOException {
 		
 		if (dir.exists() && !dir.isDirectory()) {
 			throw new IOException("not a directory: " + dir);
@@ -38,6 +57,7 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
 		mDir = dir;
 		mRAMThreshold = ramThreshold;
 		mFileThreshold = fileThreshold;
+		mUseFloats = useFloats;
 		
 		if (!mDir.exists()) {
 			if (!mDir.mkdir()) {
@@ -58,10 +78,23 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
 		loadExistingCoordinateListNames();
 	}
 	
+	public FSCoordinateListFactory(File dir, long ramThreshold, long fileThreshold)
+	throws IOException {
+		this(dir, ramThreshold, fileThreshold, false);
+	}
+	
 	public FSCoordinateListFactory(File dir) throws IOException {
 		this(dir, DEFAULT_RAM_THRESHOLD, DEFAULT_FILE_THRESHOLD);
 	}
 	
+	/**
+	 * Returns true if this factory creates float-backed coordinate lists.
+	 * @return
+	 */
+	public boolean getUseFloats() {
+		return mUseFloats;
+	}
+	
     private void loadExistingCoordinateListNames() throws IOException {
     	
     	File[] singleFiles = mDir.listFiles(new FileFilter() {
@@ -88,6 +121,31 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
     			LOGGER.error(ioe);
     		}
     	}
+    	
+    	File[] floatFiles = mDir.listFiles(new FileFilter() {
+    		@Override
+    		public boolean accept(File f) {
+    			if (f.isFile()) {
+    				String name = f.getName();
+    				return name.startsWith(FILENAME_PREFIX) && name.endsWith(FLOAT_FILENAME_SUFFIX);
+    			}
+    			return false;
+    		}
+    	});
+    	
+    	for (int i=0; i<floatFiles.length; i++) {
+    		File f = floatFiles[i];
+    		try {
+    			if (FileMappedFloatCoordinateList.validateFile(f)) {
+    				String fname = f.getName();
+    				String tupleName = fname.substring(FILENAME_PREFIX.length(), 
+                        fname.length() - FLOAT_FILENAME_SUFFIX.length());
+    				mCoordListMap.put(tupleName, mFloatFileSentinel);
+    			}
+    		} catch (IOException ioe) {
+    			LOGGER.error(ioe);
+    		}
+    	}
     
     	File[] multiDirs = multiDirectory().listFiles();
     	for (int i=0; i<multiDirs.length; i++) {
@@ -117,6 +175,13 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
 		}
 		
 		CoordinateList coords = null;
+		
+		if (mUseFloats) {
+			coords = createFloatCoordinateList(id, dimensions, coordCount);
+			mCoordListMap.put(id, coords);
+			return coords;
+		}
+		
 		long dataSize = 8L*coordCount*dimensions;
 		if (dataSize <= mRAMThreshold) {
 			try {
@@ -142,10 +207,36 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
 		return coords;
 	}
 
+	// Creates a float-backed coordinate list, in memory if small enough, otherwise
+	// mapped from a file.  Since FileMappedFloatCoordinateList maps its file in
+	// segments, a single file suffices for any size.
+	private CoordinateList createFloatCoordinateList(String id, int dimensions, 
+			int coordCount) throws IOException {
+		CoordinateList coords = null;
+		long dataSize = 4L*coordCount*dimensions;
+		if (dataSize <= mRAMThreshold) {
+			try {
+				coords = new SimpleFloatCoordinateList(dimensions, coordCount);
+			} catch (OutOfMemoryError me) {
+				coords = null;
+				System.gc();
+			}
+		}
+		if (coords == null) {
+			coords = FileMappedFloatCoordinateList.createNew(getFloatFileFor(id), 
+					dimensions, coordCount);
+		}
+		return coords;
+	}
+
 	public File getFileFor(String id) {
 		return new File(mDir, getFilename(id));
 	}
 	
+	public File getFloatFileFor(String id) {
+		return new File(mDir, FILENAME_PREFIX + id + FLOAT_FILENAME_SUFFIX);
+	}
+	
 	public synchronized CoordinateList openCoordinateList(String id) throws IOException {
 		
 		CoordinateList coords = null;
@@ -163,6 +254,13 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
 			} else {
 				coords = FileMappedCoordinateList.openExisting(f);
 			}
+		} else if (o == mFloatFileSentinel) {
+			File f = getFloatFileFor(id);
+			if (f.length() <= mRAMThreshold) {
+				coords = SimpleFloatCoordinateList.load(f);
+			} else {
+				coords = FileMappedFloatCoordinateList.openExisting(f);
+			}
 		} else if (o == mMultiFileSentinel) {
 			File dir = new File(mDir, getDirname(id));
 			if (dir.isDirectory()) {
@@ -172,6 +270,8 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
 			coords = (CoordinateList) o;
 			if (coords instanceof FileMappedCoordinateList) {
 				((FileMappedCoordinateList) coords).openFile();
+			} else if (coords instanceof FileMappedFloatCoordinateList) {
+				((FileMappedFloatCoordinateList) coords).openFile();
 			} else if (coords instanceof MultiFileMappedCoordinateList) {
 				((MultiFileMappedCoordinateList) coords).open();
 			}
@@ -253,10 +353,21 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
 		
 		CoordinateList coords = createCoordinateList(id, dimensions, coordinateCount);
 		
-		double[] buffer = new double[dimensions];
-		for (int i=0; i<coordinateCount; i++) {
-			sourceCoordList.getCoordinates(i, buffer);
-			coords.setCoordinates(i, buffer);
+		if (coords instanceof FloatCoordinateList && sourceCoordList instanceof FloatCoordinateList) {
+			// Avoid widening and narrowing every value.
+			FloatCoordinateList src = (FloatCoordinateList) sourceCoordList;
+			FloatCoordinateList dest = (FloatCoordinateList) coords;
+			float[] buffer = new float[dimensions];
+			for (int i=0; i<coordinateCount; i++) {
+				src.getCoordinates(i, buffer);
+				dest.setCoordinates(i, buffer);
+			}
+		} else {
+			double[] buffer = new double[dimensions];
+			for (int i=0; i<coordinateCount; i++) {
+				sourceCoordList.getCoordinates(i, buffer);
+				coords.setCoordinates(i, buffer);
+			}
 		}
 		
 		return coords;
@@ -293,6 +404,13 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
         	if (!f.delete()) {
         		throw new IOException("could not delete file for coordinates associated with id " + id);
         	}
+        } else if (coordList instanceof FileMappedFloatCoordinateList) {
+        	FileMappedFloatCoordinateList fmCoordList = (FileMappedFloatCoordinateList) coordList;
+        	File f = fmCoordList.getBackingFile();
+        	fmCoordList.closeFile();
+        	if (!f.delete()) {
+        		throw new IOException("could not delete file for coordinates associated with id " + id);
+        	}
         } else if (coordList instanceof MultiFileMappedCoordinateList) {
         	MultiFileMappedCoordinateList mfmCoordList = (MultiFileMappedCoordinateList) coordList;
         	File dir = mfmCoordList.getDirectory();
@@ -301,7 +419,7 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
         		throw new IOException("could not delete directory for coordinates associated with id " + id);
         	}
         } else {
-        	File f = getFileFor(id);
+        	File f = coordList instanceof FloatCoordinateList ? getFloatFileFor(id) : getFileFor(id);
         	if (f.isFile()) {
         		if (!f.delete()) {
             		throw new IOException("could not delete file for coordinates associated with id " + id);
@@ -325,9 +443,14 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
 		if (coordList instanceof FileMappedCoordinateList) {
 			((FileMappedCoordinateList) coordList).closeFile();
 			mCoordListMap.put(id, mSingleFileSentinel);
+		} else if (coordList instanceof FileMappedFloatCoordinateList) {
+			((FileMappedFloatCoordinateList) coordList).closeFile();
+			mCoordListMap.put(id, mFloatFileSentinel);
 		} else if (coordList instanceof MultiFileMappedCoordinateList) {
 			((MultiFileMappedCoordinateList) coordList).close();
 			mCoordListMap.put(id, mMultiFileSentinel);
+		} else if (coordList instanceof SimpleFloatCoordinateList) {
+			mCoordListMap.put(id, mFloatFileSentinel);
 		} else {
 			mCoordListMap.put(id, mSingleFileSentinel);
 		}
@@ -345,8 +468,13 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
 			} else if (o instanceof MultiFileMappedCoordinateList) {
 				((MultiFileMappedCoordinateList) o).close();
 				mCoordListMap.put(ids[i], mMultiFileSentinel);
+			} else if (o instanceof FileMappedFloatCoordinateList) {
+				((FileMappedFloatCoordinateList) o).closeFile();
+				mCoordListMap.put(ids[i], mFloatFileSentinel);
 			} else if (o instanceof SimpleCoordinateList) {
 				mCoordListMap.put(ids[i], mSingleFileSentinel);
+			} else if (o instanceof SimpleFloatCoordinateList) {
+				mCoordListMap.put(ids[i], mFloatFileSentinel);
 			}
 		}
 	}
@@ -380,6 +508,10 @@ public class FSCoordinateListFactory implements CoordinateListFactory {
 		if (coordList instanceof SimpleCoordinateList) {
 			File backingFile = getFileFor(id);
 			((SimpleCoordinateList) coordList).save(backingFile);
+		} else if (coordList instanceof SimpleFloatCoordinateList) {
+			((SimpleFloatCoordinateList) coordList).save(getFloatFileFor(id));
+		} else if (coordList instanceof FileMappedFloatCoordinateList) {
+			((FileMappedFloatCoordinateList) coordList).flush();
 		}
 	}
 }
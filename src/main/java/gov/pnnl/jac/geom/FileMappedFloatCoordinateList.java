@@ -0,0 +1,350 @@
+package gov.pnnl.jac.geom;
+
+import java.io.*;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p><tt>FileMappedFloatCoordinateList</tt> is an implementation of
+ * <tt>FloatCoordinateList</tt> backed by a memory-mapped file of float data.
+ * Unlike <tt>FileMappedCoordinateList</tt>, which seeks and reads through a
+ * <tt>RandomAccessFile</tt> under a lock, this class maps the file into
+ * memory, so reads and writes of distinct coordinates may proceed from
+ * multiple threads without synchronization.</p>
+ *
+ * <p>The file consists of an 8-byte header containing the dimensions and
+ * coordinate count as ints, followed by the coordinate values as floats in
+ * row-major order.  This is the same layout written by
+ * <tt>SimpleFloatCoordinateList.save()</tt>, so either class may be
+ * instantiated from the same file.  Since a single mapping cannot
+ * exceed 2GB, the data is mapped in segments, each holding a whole number
+ * of coordinates, so no single file size limit applies.</p>
+ */
+public final class FileMappedFloatCoordinateList extends AbstractCoordinateList
+    implements FloatCoordinateList {
+
+    // Length of the header in bytes.
+    private static final long HEADER_LEN = 8L;
+
+    // The maximum number of bytes mapped by a single segment.
+    private static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+    private File mBackingFile;
+    private RandomAccessFile mRAF;
+    private MappedByteBuffer[] mMappedSegments;
+    private FloatBuffer[] mSegments;
+    private int mCoordsPerSegment;
+
+    /**
+     * Factory method for creating a new <tt>FileMappedFloatCoordinateList</tt>.
+     *
+     * @param file - the backing file, which will be overwritten if
+     *   it already exists.
+     * @param dimensions - the number of dimensions in each
+     *   coordinate.
+     * @param coordinateCount - the number of coordinates.
+     * @return - an instance of FileMappedFloatCoordinateList.
+     * @throws IOException - if an IO error occurs while trying to
+     *   create the file.
+     * @throws IllegalArgumentException - if either dimensions or
+     *   coordinateCount are negative.
+     */
+    public static FileMappedFloatCoordinateList createNew(File file,
+            int dimensions, int coordinateCount) throws IOException {
+        return new FileMappedFloatCoordinateList(file, dimensions, coordinateCount);
+    }
+
+    /**
+     * Factory method for instantiating a <tt>FileMappedFloatCoordinateList</tt>
+     * from an existing file containing coordinate data.
+     *
+     * @param file - the backing file, which should already exist.
+     * @return - an instance of FileMappedFloatCoordinateList.
+     * @throws IOException - if an IO error occurs while trying to
+     *   open the file.  This could occur if the file does not
+     *   contain float coordinate data.
+     */
+    public static FileMappedFloatCoordinateList openExisting(File file)
+    throws IOException {
+        return new FileMappedFloatCoordinateList(file);
+    }
+
+    private FileMappedFloatCoordinateList(File file, int dimensions, int coordinateCount)
+    throws IOException {
+        if (dimensions < 0) {
+            throw new IllegalArgumentException("dimensions < 0: " + dimensions);
+        }
+        if (coordinateCount < 0) {
+            throw new IllegalArgumentException("coordinateCount < 0: " + coordinateCount);
+        }
+        mDim = dimensions;
+        mCount = coordinateCount;
+        initEmptyFile(file, dimensions, coordinateCount);
+        mBackingFile = file;
+        openFile();
+    }
+
+    private FileMappedFloatCoordinateList(File file) throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException("not found: " + file);
+        }
+        mBackingFile = file;
+        openFile();
+    }
+
+    /**
+     * Returns the file in which the data is stored.
+     * @return
+     */
+    public File getBackingFile() {
+        return mBackingFile;
+    }
+
+    /**
+     * Is the backing file for this coordinate list open?
+     * @return
+     */
+    public synchronized boolean isOpen() {
+        return mRAF != null;
+    }
+
+    /**
+     * Check to see whether or not a file appears to be a valid float
+     * coordinate list file.
+     *
+     * @param f
+     * @return
+     * @throws IOException
+     */
+    public static boolean validateFile(File f) throws IOException {
+        if (f.isFile() && f.length() >= HEADER_LEN) {
+            DataInputStream in = null;
+            int coordLen = 0;
+            int coordCount = 0;
+            try {
+                in = new DataInputStream(new FileInputStream(f));
+                coordLen = in.readInt();
+                coordCount = in.readInt();
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+            return coordLen >= 0 && coordCount >= 0 &&
+                f.length() == HEADER_LEN + 4L*((long) coordLen)*coordCount;
+        }
+        return false;
+    }
+
+    /**
+     * Open and map the backing file.  If already open, no action is
+     * taken.  The file is opened in read-write mode.  Normally,
+     * you should not need to call this method, since both
+     * factory methods return instances in the open condition.
+     * @throws IOException - if an IO error occurs.
+     */
+    public synchronized void openFile() throws IOException {
+        if (!isOpen()) {
+            boolean ok = false;
+            try {
+                mRAF = new RandomAccessFile(mBackingFile, "rw");
+                mDim = mRAF.readInt();
+                mCount = mRAF.readInt();
+                long bytesPerCoord = 4L*mDim;
+                if (mDim < 0 || mCount < 0 ||
+                        mBackingFile.length() != HEADER_LEN + mCount * bytesPerCoord) {
+                    throw new IOException("improper file format");
+                }
+                mapSegments();
+                ok = true;
+            } finally {
+                if (!ok) {
+                    try {
+                        closeFile();
+                    } catch (IOException ioe) {
+                        ioe.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    // Maps the data region of the file in segments, each containing
+    // a whole number of coordinates.
+    private void mapSegments() throws IOException {
+        long bytesPerCoord = 4L*mDim;
+        mCoordsPerSegment = bytesPerCoord > 0 ?
+            (int) Math.min(mCount, MAX_SEGMENT_BYTES/bytesPerCoord) : mCount;
+        int segmentCount = 0;
+        if (mCount > 0) {
+            segmentCount = mCoordsPerSegment > 0 ?
+                (mCount + mCoordsPerSegment - 1)/mCoordsPerSegment : 1;
+        }
+        mMappedSegments = new MappedByteBuffer[segmentCount];
+        mSegments = new FloatBuffer[segmentCount];
+        FileChannel channel = mRAF.getChannel();
+        for (int i=0; i<segmentCount; i++) {
+            long firstCoord = (long) i * mCoordsPerSegment;
+            long coordsInSegment = Math.min(mCoordsPerSegment, mCount - firstCoord);
+            mMappedSegments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                HEADER_LEN + firstCoord*bytesPerCoord, coordsInSegment*bytesPerCoord);
+            mSegments[i] = mMappedSegments[i].asFloatBuffer();
+        }
+    }
+
+    /**
+     * Flushes any changes to the backing file.
+     */
+    public synchronized void flush() {
+        if (mMappedSegments != null) {
+            for (int i=0; i<mMappedSegments.length; i++) {
+                mMappedSegments[i].force();
+            }
+        }
+    }
+
+    /**
+     * Close the backing file, if open, after flushing any changes.  The
+     * coordinate list may be used again by calling openFile().
+     * @throws IOException
+     */
+    public synchronized void closeFile() throws IOException {
+        if (isOpen()) {
+            try {
+                flush();
+                mRAF.close();
+            } finally {
+                mRAF = null;
+                mMappedSegments = null;
+                mSegments = null;
+            }
+        }
+    }
+
+    // Creates a new file of the correct size.  The data region
+    // reads as zeros.
+    private static void initEmptyFile(File file, int dimensions, int coordinateCount)
+    throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0L);
+            raf.writeInt(dimensions);
+            raf.writeInt(coordinateCount);
+            raf.setLength(HEADER_LEN + 4L*dimensions*coordinateCount);
+        } finally {
+            raf.close();
+        }
+    }
+
+    // Ensures file is open and returns the segments.
+    private FloatBuffer[] segments() {
+        FloatBuffer[] segments = mSegments;
+        if (segments == null) {
+            throw new IllegalStateException("not open");
+        }
+        return segments;
+    }
+
+    public void setCoordinates(int ndx, double[] coords) {
+        checkIndex(ndx);
+        checkDimensions(coords.length);
+        FloatBuffer fb = segments()[ndx/mCoordsPerSegment];
+        int start = (ndx%mCoordsPerSegment)*mDim;
+        for (int d=0; d<mDim; d++) {
+            fb.put(start + d, (float) coords[d]);
+        }
+    }
+
+    public void setCoordinates(int ndx, float[] coords) {
+        checkIndex(ndx);
+        checkDimensions(coords.length);
+        FloatBuffer fb = segments()[ndx/mCoordsPerSegment];
+        int start = (ndx%mCoordsPerSegment)*mDim;
+        for (int d=0; d<mDim; d++) {
+            fb.put(start + d, coords[d]);
+        }
+    }
+
+    public double[] getCoordinates(int ndx, double[] coords) {
+        checkIndex(ndx);
+        double[] c = null;
+        if (coords != null) {
+            checkDimensions(coords.length);
+            c = coords;
+        } else {
+            c = new double[mDim];
+        }
+        FloatBuffer fb = segments()[ndx/mCoordsPerSegment];
+        int start = (ndx%mCoordsPerSegment)*mDim;
+        for (int d=0; d<mDim; d++) {
+            c[d] = fb.get(start + d);
+        }
+        return c;
+    }
+
+    public float[] getCoordinates(int ndx, float[] coords) {
+        checkIndex(ndx);
+        float[] c = null;
+        if (coords != null) {
+            checkDimensions(coords.length);
+            c = coords;
+        } else {
+            c = new float[mDim];
+        }
+        FloatBuffer fb = segments()[ndx/mCoordsPerSegment];
+        int start = (ndx%mCoordsPerSegment)*mDim;
+        for (int d=0; d<mDim; d++) {
+            c[d] = fb.get(start + d);
+        }
+        return c;
+    }
+
+    public double getCoordinateQuick(int ndx, int dim) {
+        return segments()[ndx/mCoordsPerSegment].get((ndx%mCoordsPerSegment)*mDim + dim);
+    }
+
+    public void setCoordinateQuick(int ndx, int dim, double coord) {
+        segments()[ndx/mCoordsPerSegment].put((ndx%mCoordsPerSegment)*mDim + dim, (float) coord);
+    }
+
+    public double[] computeAverage(int[] indices, double[] avg) {
+        checkIndices(indices);
+        FloatBuffer[] segments = segments();
+        double[] rtn = null;
+        if (avg != null) {
+            checkDimensions(avg.length);
+            rtn = avg;
+        } else {
+            rtn = new double[mDim];
+        }
+        java.util.Arrays.fill(rtn, 0.0);
+        int[] counts = new int[mDim];
+        int n = indices.length;
+        for (int i = 0; i < n; i++) {
+            int ndx = indices[i];
+            FloatBuffer fb = segments[ndx/mCoordsPerSegment];
+            int start = (ndx%mCoordsPerSegment)*mDim;
+            for (int d = 0; d < mDim; d++) {
+                float fv = fb.get(start + d);
+                if (!Float.isNaN(fv)) {
+                    rtn[d] += fv;
+                    counts[d]++;
+                }
+            }
+        }
+        for (int d = 0; d < mDim; d++) {
+            int ct = counts[d];
+            if (ct >= 1) {
+                rtn[d] /= ct;
+            } else {
+                // No information in dimension d.
+                rtn[d] = Double.NaN;
+            }
+        }
+        return rtn;
+    }
+}
@@ -0,0 +1,46 @@
+package gov.pnnl.jac.geom;
+
+/**
+ * <p>A <tt>FloatCoordinateList</tt> is a <tt>CoordinateList</tt> that
+ * stores its values as 32-bit floats rather than doubles.  In addition to
+ * the double-based methods of <tt>CoordinateList</tt>, it provides methods
+ * to move coordinates in and out as floats, so that distance computations
+ * and centroid updates can work on the native data without widening every
+ * value into a double buffer first.</p>
+ *
+ * <p>Since all values are stored as floats, values passed into the
+ * double-based setters are narrowed, and values returned from the
+ * double-based getters are widened from floats.</p>
+ */
+public interface FloatCoordinateList extends CoordinateList {
+
+    /**
+     * Set the coordinate values for the coordinate with the
+     * specified index.
+     * @param ndx - the coordinate index which must be in the range
+     *   <code>[0 - getCoordinateCount()-1]</code>.
+     * @param coords - the coordinate values.
+     * @throws IndexOutOfBoundsException - if <code>ndx</code> is out of range.
+     * @throws IllegalArgumentException - if <code>coords</code> is not
+     *   of length <code>getDimensions()</code>.
+     */
+    public void setCoordinates(int ndx, float[] coords);
+
+    /**
+     * Retrieve the coordinate values for the coordinate with
+     * the specified index as floats.
+     * @param ndx - the coordinate index which must be in the range
+     *   <code>[0 - getCoordinateCount()-1]</code>.
+     * @param coords - an array to hold the returned coordinates.
+     *   If non-null, must be of length <code>getDimensions()</code>.
+     *   If null, a new array is allocated and returned with the values.
+     * @return - the array containing the values, which will be the
+     *   same as the second argument if that argument is non-null.
+     * @throws IndexOutOfBoundsException - if <code>ndx</code>
+     *   is not in the valid range.
+     * @throws IllegalArgumentException - if the array passed in is
+     *   non-null but of incorrect length.
+     */
+    public float[] getCoordinates(int ndx, float[] coords);
+
+}
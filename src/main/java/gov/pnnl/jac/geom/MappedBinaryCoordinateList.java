@@ -0,0 +1,352 @@
+package gov.pnnl.jac.geom;
+
+import java.io.*;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>A <tt>CoordinateList</tt> backed by a memory-mapped file in the format
+ * written by <tt>BinaryCoordinateFile</tt>.  Values are read from and written
+ * to the mapped file directly, so opening a list takes the same time whatever
+ * its size, and distinct coordinates may be accessed from multiple threads
+ * without synchronization.  Instances are obtained from
+ * <tt>BinaryCoordinateFile.open()</tt>.  Those for files storing floats also
+ * implement <tt>FloatCoordinateList</tt>.</p>
+ *
+ * <p>Lists opened read-only throw <tt>ReadOnlyBufferException</tt> from their
+ * setters.</p>
+ */
+public abstract class MappedBinaryCoordinateList extends AbstractCoordinateList {
+
+    // The number of bytes mapped by each segment.  A power of 2, so values
+    // never straddle segments.
+    private static final int SEGMENT_SHIFT_BYTES = 30;
+
+    private File mBackingFile;
+    private boolean mWritable;
+    private BinaryCoordinateFile.Header mHeader;
+    private RandomAccessFile mRAF;
+    private MappedByteBuffer[] mMappedSegments;
+
+    // True if values are stored column-major.
+    protected boolean mColumnMajor;
+    // Log2 of the number of values in each segment.
+    protected int mSegmentShift;
+    // The number of values in each segment minus 1.
+    protected int mSegmentMask;
+
+    static MappedBinaryCoordinateList open(File file, boolean writable) throws IOException {
+        BinaryCoordinateFile.Header header = BinaryCoordinateFile.readHeader(file);
+        MappedBinaryCoordinateList list = header.getUseFloats() ?
+            new Floats(file, writable) : new Doubles(file, writable);
+        list.openFile();
+        return list;
+    }
+
+    private MappedBinaryCoordinateList(File file, boolean writable) {
+        mBackingFile = file;
+        mWritable = writable;
+    }
+
+    /**
+     * Returns the file in which the data is stored.
+     * @return
+     */
+    public File getBackingFile() {
+        return mBackingFile;
+    }
+
+    /**
+     * Returns the header of the backing file.
+     * @return
+     */
+    public BinaryCoordinateFile.Header getHeader() {
+        return mHeader;
+    }
+
+    /**
+     * Can values be set?
+     * @return
+     */
+    public boolean isWritable() {
+        return mWritable;
+    }
+
+    /**
+     * Is the backing file for this coordinate list open?
+     * @return
+     */
+    public synchronized boolean isOpen() {
+        return mRAF != null;
+    }
+
+    /**
+     * Open and map the backing file.  If already open, no action is
+     * taken.  Normally, you should not need to call this method, since
+     * lists are returned in the open condition.
+     * @throws IOException - if an IO error occurs.
+     */
+    public synchronized void openFile() throws IOException {
+        if (!isOpen()) {
+            boolean ok = false;
+            try {
+                mRAF = new RandomAccessFile(mBackingFile, mWritable ? "rw" : "r");
+                mHeader = BinaryCoordinateFile.readHeader(mRAF, mBackingFile);
+                mDim = mHeader.getDimensionCount();
+                mCount = mHeader.getCoordinateCount();
+                mColumnMajor = mHeader.getLayout() == BinaryCoordinateFile.Layout.COLUMN_MAJOR;
+                int valueShift = mHeader.getUseFloats() ? 2 : 3;
+                mSegmentShift = SEGMENT_SHIFT_BYTES - valueShift;
+                mSegmentMask = (1 << mSegmentShift) - 1;
+                long segmentBytes = 1L << SEGMENT_SHIFT_BYTES;
+                long dataLength = mHeader.getDataLength();
+                int segmentCount = (int) ((dataLength + segmentBytes - 1)/segmentBytes);
+                mMappedSegments = new MappedByteBuffer[segmentCount];
+                FileChannel channel = mRAF.getChannel();
+                FileChannel.MapMode mode = mWritable ?
+                    FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+                for (int i=0; i<segmentCount; i++) {
+                    long start = i*segmentBytes;
+                    mMappedSegments[i] = channel.map(mode, mHeader.getDataOffset() + start,
+                        Math.min(segmentBytes, dataLength - start));
+                    mMappedSegments[i].order(mHeader.getByteOrder());
+                }
+                createViews(mMappedSegments);
+                ok = true;
+            } finally {
+                if (!ok) {
+                    try {
+                        closeFile();
+                    } catch (IOException ioe) {
+                        ioe.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the backing file, if open.  If the list is writable, changes
+     * are flushed and the checksums in the file are updated.  The
+     * coordinate list may be used again by calling openFile().
+     * @throws IOException
+     */
+    public synchronized void closeFile() throws IOException {
+        closeFile(true);
+    }
+
+    // Closes the backing file without flushing changes or updating the checksums,
+    // for when the file is about to be deleted.
+    synchronized void discardFile() throws IOException {
+        closeFile(false);
+    }
+
+    private void closeFile(boolean update) throws IOException {
+        if (isOpen()) {
+            try {
+                if (update && mWritable && mMappedSegments != null) {
+                    for (int i=0; i<mMappedSegments.length; i++) {
+                        mMappedSegments[i].force();
+                    }
+                    BinaryCoordinateFile.updateChecksums(mRAF, mHeader);
+                }
+                mRAF.close();
+            } finally {
+                mRAF = null;
+                mMappedSegments = null;
+                clearViews();
+            }
+        }
+    }
+
+    // Creates the typed views of the mapped segments.
+    abstract void createViews(MappedByteBuffer[] segments);
+
+    // Releases the typed views.
+    abstract void clearViews();
+
+    // Returns the value at the specified position in the data.
+    abstract double getValue(long pos);
+
+    // Sets the value at the specified position in the data.
+    abstract void setValue(long pos, double value);
+
+    // Returns the position in the data of a value.
+    protected final long position(int ndx, int dim) {
+        return mColumnMajor ? (long) dim * mCount + ndx : (long) ndx * mDim + dim;
+    }
+
+    // The distance between values of successive dimensions for a coordinate.
+    protected final long dimensionStride() {
+        return mColumnMajor ? mCount : 1L;
+    }
+
+    public double getCoordinateQuick(int ndx, int dim) {
+        return getValue(position(ndx, dim));
+    }
+
+    public void setCoordinateQuick(int ndx, int dim, double coord) {
+        setValue(position(ndx, dim), coord);
+    }
+
+    public double[] getCoordinates(int ndx, double[] coords) {
+        checkIndex(ndx);
+        double[] c = null;
+        if (coords != null) {
+            checkDimensions(coords.length);
+            c = coords;
+        } else {
+            c = new double[mDim];
+        }
+        long pos = position(ndx, 0);
+        long stride = dimensionStride();
+        for (int d=0; d<mDim; d++) {
+            c[d] = getValue(pos);
+            pos += stride;
+        }
+        return c;
+    }
+
+    public void setCoordinates(int ndx, double[] coords) {
+        checkIndex(ndx);
+        checkDimensions(coords.length);
+        long pos = position(ndx, 0);
+        long stride = dimensionStride();
+        for (int d=0; d<mDim; d++) {
+            setValue(pos, coords[d]);
+            pos += stride;
+        }
+    }
+
+    public double[] getDimensionValues(int dim, double[] values) {
+        checkDimension(dim);
+        double[] v = null;
+        if (values != null) {
+            if (values.length != mCount) {
+                throw new IllegalArgumentException(String
+                        .valueOf(values.length)
+                        + " != " + mCount);
+            }
+            v = values;
+        } else {
+            v = new double[mCount];
+        }
+        long pos = position(0, dim);
+        long stride = mColumnMajor ? 1L : mDim;
+        for (int i=0; i<mCount; i++) {
+            v[i] = getValue(pos);
+            pos += stride;
+        }
+        return v;
+    }
+
+    // Implementation for files of doubles.
+    private static final class Doubles extends MappedBinaryCoordinateList {
+
+        private DoubleBuffer[] mSegments;
+
+        Doubles(File file, boolean writable) {
+            super(file, writable);
+        }
+
+        void createViews(MappedByteBuffer[] segments) {
+            DoubleBuffer[] views = new DoubleBuffer[segments.length];
+            for (int i=0; i<segments.length; i++) {
+                views[i] = segments[i].asDoubleBuffer();
+            }
+            mSegments = views;
+        }
+
+        void clearViews() {
+            mSegments = null;
+        }
+
+        private DoubleBuffer[] segments() {
+            DoubleBuffer[] segments = mSegments;
+            if (segments == null) {
+                throw new IllegalStateException("not open");
+            }
+            return segments;
+        }
+
+        double getValue(long pos) {
+            return segments()[(int) (pos >>> mSegmentShift)].get((int) pos & mSegmentMask);
+        }
+
+        void setValue(long pos, double value) {
+            segments()[(int) (pos >>> mSegmentShift)].put((int) pos & mSegmentMask, value);
+        }
+    }
+
+    // Implementation for files of floats.
+    private static final class Floats extends MappedBinaryCoordinateList
+        implements FloatCoordinateList {
+
+        private FloatBuffer[] mSegments;
+
+        Floats(File file, boolean writable) {
+            super(file, writable);
+        }
+
+        void createViews(MappedByteBuffer[] segments) {
+            FloatBuffer[] views = new FloatBuffer[segments.length];
+            for (int i=0; i<segments.length; i++) {
+                views[i] = segments[i].asFloatBuffer();
+            }
+            mSegments = views;
+        }
+
+        void clearViews() {
+            mSegments = null;
+        }
+
+        private FloatBuffer[] segments() {
+            FloatBuffer[] segments = mSegments;
+            if (segments == null) {
+                throw new IllegalStateException("not open");
+            }
+            return segments;
+        }
+
+        double getValue(long pos) {
+            return segments()[(int) (pos >>> mSegmentShift)].get((int) pos & mSegmentMask);
+        }
+
+        void setValue(long pos, double value) {
+            segments()[(int) (pos >>> mSegmentShift)].put((int) pos & mSegmentMask, (float) value);
+        }
+
+        public float[] getCoordinates(int ndx, float[] coords) {
+            checkIndex(ndx);
+            float[] c = null;
+            if (coords != null) {
+                checkDimensions(coords.length);
+                c = coords;
+            } else {
+                c = new float[mDim];
+            }
+            FloatBuffer[] segments = segments();
+            long pos = position(ndx, 0);
+            long stride = dimensionStride();
+            for (int d=0; d<mDim; d++) {
+                c[d] = segments[(int) (pos >>> mSegmentShift)].get((int) pos & mSegmentMask);
+                pos += stride;
+            }
+            return c;
+        }
+
+        public void setCoordinates(int ndx, float[] coords) {
+            checkIndex(ndx);
+            checkDimensions(coords.length);
+            FloatBuffer[] segments = segments();
+            long pos = position(ndx, 0);
+            long stride = dimensionStride();
+            for (int d=0; d<mDim; d++) {
+                segments[(int) (pos >>> mSegmentShift)].put((int) pos & mSegmentMask, coords[d]);
+                pos += stride;
+            }
+        }
+    }
+}
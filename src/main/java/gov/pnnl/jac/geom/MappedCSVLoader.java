@@ -0,0 +1,627 @@
+package gov.pnnl.jac.geom;
+
+import gov.pnnl.jac.task.Cancelable;
+import gov.pnnl.jac.task.ProgressHandler;
+import gov.pnnl.jac.task.TaskScheduler;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.*;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>A high-throughput loader for numeric csv files, which produces the same
+ * <tt>CoordinateList</tt> as <tt>CoordinateIO.loadCSV()</tt> with the same
+ * arguments, but which is intended for files too large to read comfortably
+ * through a <tt>BufferedReader</tt> on a single thread.</p>
+ *
+ * <p>The header lines up to and including the first row of numeric data are
+ * examined just as <tt>CoordinateIO.loadCSV()</tt> examines them, to determine
+ * the numeric columns.  The remainder of the file is split into chunks at line
+ * boundaries, and each chunk is memory-mapped and processed by a worker thread.
+ * The workers first count their rows, which only requires scanning for line
+ * terminators, so that the <tt>CoordinateList</tt> can be created from the
+ * factory and each chunk knows its first row.  The workers then parse numbers
+ * directly from the mapped bytes and write them straight into the
+ * <tt>CoordinateList</tt>.  The text is never decoded into <tt>String</tt>s
+ * except for the rare number that the fast parser declines, which is handed to
+ * <tt>Double.parseDouble()</tt>.  Therefore, the loaded values are
+ * identical to those loaded by <tt>CoordinateIO.loadCSV()</tt>.</p>
+ *
+ * <p>Since the bytes are parsed directly, the character set must encode
+ * digits, signs, points, delimiters and line terminators as single ASCII
+ * bytes, as UTF-8 and the ISO-8859 character sets do.  For other
+ * character sets, such as UTF-16, loading is delegated to
+ * <tt>CoordinateIO.loadCSV()</tt>.  The delimiters must also be ASCII.
+ * Coordinate lists written by several threads must tolerate concurrent
+ * calls to <tt>setCoordinates()</tt> for distinct indices, as those created
+ * by the factories in this package do.</p>
+ */
+public class MappedCSVLoader {
+
+    private static final Logger logger = Logger.getLogger(MappedCSVLoader.class);
+
+    /**
+     * The default number of bytes processed as a unit by each worker.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64*1024*1024;
+
+    // Exactly representable powers of 10 for the fast path in parseDouble().
+    private static final double[] POWERS_OF_10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private File mFile;
+    private String mCharSet;
+    private String mDelimiter = ",";
+    private int mStartColumn;
+    private int mNumThreads = -1;
+    private int mChunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Constructor.
+     *
+     * @param file the csv file to be loaded.
+     */
+    public MappedCSVLoader(File file) {
+        if (file == null) throw new NullPointerException();
+        mFile = file;
+    }
+
+    /**
+     * Sets the character set name.  If null, the default character set is used.
+     * @param charSet
+     */
+    public void setCharSet(String charSet) {
+        mCharSet = charSet;
+    }
+
+    /**
+     * Sets the delimiter characters, which are treated as by a <tt>StringTokenizer</tt>.
+     * The default is a comma.
+     * @param delimiter
+     */
+    public void setDelimiter(String delimiter) {
+        if (delimiter == null) throw new NullPointerException();
+        mDelimiter = delimiter;
+    }
+
+    /**
+     * Sets the starting column in case some columns at the beginning of each
+     * row should be ignored.
+     * @param startColumn
+     */
+    public void setStartColumn(int startColumn) {
+        mStartColumn = startColumn;
+    }
+
+    /**
+     * Sets the number of worker threads.  If not positive, the number of
+     * available processors is used.
+     * @param numThreads
+     */
+    public void setNumThreads(int numThreads) {
+        mNumThreads = numThreads;
+    }
+
+    /**
+     * Sets the number of bytes in each chunk of the file, which must be positive.
+     * @param chunkSize
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize <= 0: " + chunkSize);
+        }
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Loads the numeric data in the file into a <tt>CoordinateList</tt> created
+     * by the factory.
+     *
+     * @param nameForTuples the name to assign to the CoordinateList within its factory.
+     * @param factory the CoordinateListFactory, which will manage the CoordinateList.
+     * @param cancelable if non-null, this will be checked periodically to see if loading the data should be
+     *                   cancelled.  If null, it is ignored.
+     * @param ph if non-null, used to post progress.
+     *
+     * @return a CoordinateList containing the data.
+     *
+     * @throws IOException if some kind if IO error occurs.
+     * @throws CancellationException if loading is cancelled.
+     */
+    public CoordinateList load(String nameForTuples, CoordinateListFactory factory,
+            Cancelable cancelable, ProgressHandler ph) throws IOException, CancellationException {
+
+        String charSet = mCharSet != null ? mCharSet : Charset.defaultCharset().name();
+
+        byte[] delimiters = mDelimiter.getBytes("US-ASCII");
+        if (!isAsciiCompatible(charSet) || !new String(delimiters, "US-ASCII").equals(mDelimiter)) {
+            logger.info("delegating to CoordinateIO.loadCSV() for character set " + charSet);
+            return CoordinateIO.loadCSV(mFile, charSet, mDelimiter, mStartColumn, 0,
+                nameForTuples, factory, cancelable, ph);
+        }
+
+        boolean[] isDelimiter = new boolean[256];
+        for (int i=0; i<delimiters.length; i++) {
+            isDelimiter[delimiters[i] & 0xff] = true;
+        }
+
+        Header header = readHeader(charSet, cancelable);
+
+        final long fileLen = mFile.length();
+        final int cols = header.columnBits.cardinality();
+
+        int numThreads = mNumThreads > 0 ? mNumThreads : Runtime.getRuntime().availableProcessors();
+
+        RandomAccessFile raf = new RandomAccessFile(mFile, "r");
+        ExecutorService threadPool = null;
+
+        try {
+
+            FileChannel channel = raf.getChannel();
+
+            // Chunk boundaries, always just after a line terminator.
+            List<Long> boundaries = new ArrayList<Long>();
+            long pos = header.dataStart;
+            boundaries.add(pos);
+            while (pos < fileLen) {
+                pos = nextLineStart(channel, Math.min(pos + mChunkSize, fileLen), fileLen);
+                boundaries.add(pos);
+            }
+
+            final int numChunks = boundaries.size() - 1;
+
+            List<Chunk> chunks = new ArrayList<Chunk>(numChunks);
+            for (int i=0; i<numChunks; i++) {
+                long start = boundaries.get(i);
+                long end = boundaries.get(i+1);
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                chunks.add(new Chunk(buf, start, header.columnBits, header.tokenCount,
+                    isDelimiter, cancelable));
+            }
+
+            if (numThreads > 1 && numChunks > 1) {
+                threadPool = TaskScheduler.newComputeExecutor(Math.min(numThreads, numChunks));
+            }
+
+            if (ph != null) {
+                ph.subsection(1.0, 2*numChunks + 1);
+                ph.postBegin();
+            }
+
+            // Pass 1: count the rows in each chunk.
+            List<Callable<Void>> counters = new ArrayList<Callable<Void>>(numChunks);
+            for (final Chunk chunk : chunks) {
+                counters.add(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        chunk.countRows();
+                        return null;
+                    }
+                });
+            }
+            invokeAll(threadPool, counters, ph);
+
+            int rows = 0;
+            for (Chunk chunk : chunks) {
+                chunk.mFirstRow = rows;
+                long total = (long) rows + chunk.mRowCount;
+                if (total > Integer.MAX_VALUE) {
+                    throw new IOException("too many rows: " + total);
+                }
+                rows = (int) total;
+            }
+
+            if (rows == 0 || cols == 0) {
+                throw new IOException(String.format("no data found: rows = %d, columns = %d", rows, cols));
+            }
+
+            final CoordinateList tuples = factory.createCoordinateList(nameForTuples, cols, rows);
+
+            // Pass 2: parse the rows directly into the coordinate list.
+            List<Callable<Void>> parsers = new ArrayList<Callable<Void>>(numChunks);
+            for (final Chunk chunk : chunks) {
+                parsers.add(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        chunk.parseRows(tuples);
+                        return null;
+                    }
+                });
+            }
+            invokeAll(threadPool, parsers, ph);
+
+            return tuples;
+
+        } finally {
+
+            if (threadPool != null) {
+                threadPool.shutdownNow();
+            }
+
+            try {
+                raf.close();
+            } catch (IOException ioe) {
+                logger.error(ioe);
+            }
+
+            if (ph != null) {
+                ph.postEnd();
+            }
+        }
+    }
+
+    // Runs the tasks, on the pool if non-null, otherwise on the current thread,
+    // posting a step as each completes.  Translates failures into IOExceptions or
+    // CancellationExceptions.
+    private static void invokeAll(ExecutorService threadPool, List<Callable<Void>> tasks,
+            ProgressHandler ph) throws IOException {
+        try {
+            if (threadPool != null) {
+                List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks.size());
+                for (Callable<Void> task : tasks) {
+                    futures.add(threadPool.submit(task));
+                }
+                try {
+                    for (Future<Void> future : futures) {
+                        future.get();
+                        if (ph != null) ph.postStep();
+                    }
+                } finally {
+                    for (Future<Void> future : futures) {
+                        future.cancel(true);
+                    }
+                }
+            } else {
+                for (Callable<Void> task : tasks) {
+                    task.call();
+                    if (ph != null) ph.postStep();
+                }
+            }
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof CancellationException) throw (CancellationException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        } catch (InterruptedException ie) {
+            throw new CancellationException();
+        } catch (IOException ioe) {
+            throw ioe;
+        } catch (RuntimeException re) {
+            throw re;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    // Finds the start of the first line beginning at or after pos.
+    private static long nextLineStart(FileChannel channel, long pos, long fileLen) throws IOException {
+        if (pos >= fileLen) {
+            return fileLen;
+        }
+        // If pos follows a terminator, it's already at a line start.
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        long p = pos - 1;
+        while (p < fileLen) {
+            buf.clear();
+            int n = channel.read(buf, p);
+            if (n <= 0) {
+                break;
+            }
+            for (int i=0; i<n; i++) {
+                byte b = buf.get(i);
+                if (b == '\n' || b == '\r') {
+                    return p + i + 1;
+                }
+            }
+            p += n;
+        }
+        return fileLen;
+    }
+
+    // Determines the numeric columns and where the data begins, applying the
+    // same logic as CoordinateIO.parseCSVInfo() to the leading lines of the file.
+    private Header readHeader(String charSet, Cancelable cancelable) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(mFile));
+        try {
+            ByteArrayOutputStream lineBytes = new ByteArrayOutputStream();
+            long offset = 0L;
+            long lineStart = 0L;
+            int b;
+            boolean eof = false;
+            while (!eof) {
+                b = in.read();
+                eof = b < 0;
+                if (eof || b == '\n' || b == '\r') {
+                    if (cancelable != null && cancelable.isCanceled()) {
+                        throw new CancellationException();
+                    }
+                    String line = new String(lineBytes.toByteArray(), charSet).trim();
+                    lineBytes.reset();
+                    if (line.length() > 0) {
+                        StringTokenizer tokenizer = new StringTokenizer(line, mDelimiter);
+                        int tokenCount = tokenizer.countTokens();
+                        if (tokenCount > mStartColumn) {
+                            BitSet bits = new BitSet(tokenCount);
+                            for (int i=0; i<mStartColumn; i++) {
+                                tokenizer.nextToken();
+                            }
+                            for (int i=mStartColumn; i<tokenCount; i++) {
+                                try {
+                                    Double.parseDouble(tokenizer.nextToken());
+                                    bits.set(i);
+                                } catch (NumberFormatException nfe) {
+                                    // Don't worry about it.
+                                }
+                            }
+                            if (bits.cardinality() > 0) {
+                                return new Header(lineStart, tokenCount, bits);
+                            }
+                        }
+                    }
+                    lineStart = offset + 1;
+                } else {
+                    lineBytes.write(b);
+                }
+                offset++;
+            }
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ioe) {
+            }
+        }
+        throw new IOException("no numeric data found in " + mFile.getName());
+    }
+
+    // Returns true if the character set encodes the characters that matter
+    // to the parser exactly as US-ASCII does.
+    private static boolean isAsciiCompatible(String charSet) throws UnsupportedEncodingException {
+        String probe = "0123456789+-.eE\r\n\t ,;|:NaInfity";
+        return java.util.Arrays.equals(probe.getBytes(charSet), probe.getBytes("US-ASCII"));
+    }
+
+    /**
+     * Parses a double from the bytes of the buffer in positions <tt>[start, end)</tt>,
+     * returning exactly what <tt>Double.parseDouble()</tt> would return for the
+     * same characters.  Plain decimal numbers of up to 15 significant digits
+     * with small exponents, which are what csv files mostly contain, are converted
+     * without creating a String.  Anything else is passed to <tt>Double.parseDouble()</tt>.
+     *
+     * @param buf
+     * @param start
+     * @param end
+     * @return
+     * @throws NumberFormatException if the bytes do not contain a number.
+     */
+    static double parseDouble(ByteBuffer buf, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end) {
+            byte b = buf.get(i);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                i++;
+            }
+        }
+        long mantissa = 0L;
+        int significantDigits = 0;
+        int exp10 = 0;
+        boolean anyDigits = false;
+        boolean fast = true;
+        byte b = 0;
+        while (i < end && (b = buf.get(i)) >= '0' && b <= '9') {
+            anyDigits = true;
+            if (mantissa != 0L || b != '0') {
+                if (++significantDigits > 15) {
+                    fast = false;
+                    break;
+                }
+                mantissa = 10L*mantissa + (b - '0');
+            }
+            i++;
+        }
+        if (fast && i < end && b == '.') {
+            i++;
+            while (i < end && (b = buf.get(i)) >= '0' && b <= '9') {
+                anyDigits = true;
+                if (mantissa != 0L || b != '0') {
+                    if (++significantDigits > 15) {
+                        fast = false;
+                        break;
+                    }
+                    mantissa = 10L*mantissa + (b - '0');
+                }
+                exp10--;
+                i++;
+            }
+        }
+        if (fast && anyDigits && i < end && (b == 'e' || b == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < end) {
+                b = buf.get(i);
+                if (b == '-' || b == '+') {
+                    negativeExp = b == '-';
+                    i++;
+                }
+            }
+            int exp = 0;
+            boolean anyExpDigits = false;
+            while (i < end && (b = buf.get(i)) >= '0' && b <= '9') {
+                anyExpDigits = true;
+                if (exp < 10000) {
+                    exp = 10*exp + (b - '0');
+                }
+                i++;
+            }
+            if (!anyExpDigits) {
+                fast = false;
+            }
+            exp10 += negativeExp ? -exp : exp;
+        }
+        if (fast && anyDigits && i == end) {
+            if (mantissa == 0L) {
+                return negative ? -0.0 : 0.0;
+            }
+            // Both the mantissa and the power of ten are exact doubles, so a
+            // single multiplication or division is correctly rounded.
+            if (exp10 >= -22 && exp10 <= 22) {
+                double d = mantissa;
+                d = exp10 < 0 ? d/POWERS_OF_10[-exp10] : d*POWERS_OF_10[exp10];
+                return negative ? -d : d;
+            }
+        }
+        char[] chars = new char[end - start];
+        for (int j=0; j<chars.length; j++) {
+            chars[j] = (char) (buf.get(start + j) & 0xff);
+        }
+        return Double.parseDouble(new String(chars));
+    }
+
+    // What's learned from the header lines.
+    private static class Header {
+
+        // File position of the first row of data.
+        private long dataStart;
+        // The number of tokens expected on every row.
+        private int tokenCount;
+        // Set bits indicate the columns containing numeric data.
+        private BitSet columnBits;
+
+        Header(long dataStart, int tokenCount, BitSet columnBits) {
+            this.dataStart = dataStart;
+            this.tokenCount = tokenCount;
+            this.columnBits = columnBits;
+        }
+    }
+
+    // A range of lines processed by one worker.
+    private static class Chunk {
+
+        private MappedByteBuffer mBuf;
+        private long mFileOffset;
+        private boolean[] mColumnFlags;
+        private int mTokenCount;
+        private int mColumnCount;
+        private boolean[] mIsDelimiter;
+        private Cancelable mCancelable;
+        private int mRowCount;
+        private int mFirstRow;
+
+        Chunk(MappedByteBuffer buf, long fileOffset, BitSet columnBits, int tokenCount,
+                boolean[] isDelimiter, Cancelable cancelable) {
+            mBuf = buf;
+            mFileOffset = fileOffset;
+            mTokenCount = tokenCount;
+            mColumnFlags = new boolean[tokenCount];
+            for (int i=0; i<tokenCount; i++) {
+                mColumnFlags[i] = columnBits.get(i);
+            }
+            mColumnCount = columnBits.cardinality();
+            mIsDelimiter = isDelimiter;
+            mCancelable = cancelable;
+        }
+
+        private void checkForCancel() {
+            if (mCancelable != null && mCancelable.isCanceled()) {
+                throw new CancellationException();
+            }
+        }
+
+        // Counts the nonblank lines, which is all that's necessary
+        // to size the coordinate list.
+        void countRows() {
+            final ByteBuffer buf = mBuf;
+            final int len = buf.limit();
+            int rows = 0;
+            boolean blank = true;
+            for (int i=0; i<len; i++) {
+                int b = buf.get(i) & 0xff;
+                if (b == '\n' || b == '\r') {
+                    if (!blank) {
+                        rows++;
+                        if ((rows & 0xffff) == 0) {
+                            checkForCancel();
+                        }
+                    }
+                    blank = true;
+                } else if (b > ' ') {
+                    blank = false;
+                }
+            }
+            if (!blank) {
+                rows++;
+            }
+            mRowCount = rows;
+        }
+
+        void parseRows(CoordinateList tuples) throws IOException {
+            final ByteBuffer buf = mBuf;
+            final int len = buf.limit();
+            double[] buffer = new double[mColumnCount];
+            int row = mFirstRow;
+            int lineStart = 0;
+            while (lineStart < len) {
+                int lineEnd = lineStart;
+                while (lineEnd < len) {
+                    byte b = buf.get(lineEnd);
+                    if (b == '\n' || b == '\r') break;
+                    lineEnd++;
+                }
+                // Trim as String.trim() would.
+                int s = lineStart, e = lineEnd;
+                while (s < e && (buf.get(s) & 0xff) <= ' ') s++;
+                while (e > s && (buf.get(e - 1) & 0xff) <= ' ') e--;
+                if (s < e) {
+                    parseRow(buf, s, e, buffer, row);
+                    tuples.setCoordinates(row, buffer);
+                    row++;
+                    if ((row & 0x3ff) == 0) {
+                        checkForCancel();
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+        }
+
+        // Tokenizes as a StringTokenizer would, skipping runs of delimiters.
+        private void parseRow(ByteBuffer buf, int start, int end, double[] values, int row)
+            throws IOException {
+            final boolean[] isDelimiter = mIsDelimiter;
+            int token = 0;
+            int colIndex = 0;
+            int i = start;
+            while (true) {
+                while (i < end && isDelimiter[buf.get(i) & 0xff]) i++;
+                if (i >= end) break;
+                int tokenStart = i;
+                while (i < end && !isDelimiter[buf.get(i) & 0xff]) i++;
+                if (token < mTokenCount && mColumnFlags[token]) {
+                    try {
+                        values[colIndex++] = parseDouble(buf, tokenStart, i);
+                    } catch (NumberFormatException nfe) {
+                        throw new IOException(String.format(
+                            "unparseable element on row %d at byte %d", row, mFileOffset + tokenStart));
+                    }
+                }
+                token++;
+            }
+            if (token != mTokenCount) {
+                throw new IOException(String.format(
+                    "incorrect number of entries on row %d: %d expected, found %d",
+                    row, mTokenCount, token));
+            }
+        }
+    }
+}
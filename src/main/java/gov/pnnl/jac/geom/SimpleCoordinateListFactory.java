@@ -12,6 +12,32 @@ public class SimpleCoordinateListFactory implements CoordinateListFactory {
 	
 	private Map<String, CoordinateList> mCoordListMap = new HashMap<String, CoordinateList> ();
 	
+	// If true, new coordinate lists store their values as floats.
+	private boolean mUseFloats;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param useFloats if true, coordinate lists created by this factory
+	 *   are <tt>SimpleFloatCoordinateList</tt>s, which store their values as
+	 *   floats in half the memory of <tt>SimpleCoordinateList</tt>s.
+	 */
+	public SimpleCoordinateListFactory(boolean useFloats) {
+		mUseFloats = useFloats;
+	}
+	
+	public SimpleCoordinateListFactory() {
+		this(false);
+	}
+	
+	/**
+	 * Returns true if this factory creates float-backed coordinate lists.
+	 * @return
+	 */
+	public boolean getUseFloats() {
+		return mUseFloats;
+	}
+	
 	public synchronized CoordinateList copyCoordinateList(String id,
 			CoordinateList sourceCoordList) throws IOException {
 		
@@ -31,7 +57,8 @@ public class SimpleCoordinateListFactory implements CoordinateListFactory {
 
 	public synchronized CoordinateList createCoordinateList(String id, int dimensions,
 			int coordCount) throws IOException {
-		CoordinateList coords = new SimpleCoordinateList(dimensions, coordCount);
+		CoordinateList coords = mUseFloats ? new SimpleFloatCoordinateList(dimensions, coordCount) :
+			new SimpleCoordinateList(dimensions, coordCount);
 		mCoordListMap.put(id, coords);
 		return coords;
 	}
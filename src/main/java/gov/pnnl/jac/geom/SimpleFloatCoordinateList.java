@@ -0,0 +1,264 @@
+package gov.pnnl.jac.geom;
+
+import java.io.*;
+
+/**
+ * <p>An implementation of <tt>FloatCoordinateList</tt> which maintains
+ * the coordinate data in a float array in memory.  It is the single-precision
+ * counterpart of <tt>SimpleCoordinateList</tt>, requiring half the memory
+ * for the same number of coordinates and dimensions.</p>
+ */
+public class SimpleFloatCoordinateList extends AbstractCoordinateList
+    implements FloatCoordinateList {
+
+    private float[] mCoords;
+
+    /**
+     * Constructs a new <tt>SimpleFloatCoordinateList</tt> with all values
+     * initialized to zero.
+     * @param dimensions the number of dimensions.
+     * @param coordinateCount the number of coordinates.
+     */
+    public SimpleFloatCoordinateList(int dimensions, int coordinateCount) {
+        if (dimensions < 0) {
+            throw new IllegalArgumentException("dimensions < 0: " + dimensions);
+        }
+        if (coordinateCount < 0) {
+            throw new IllegalArgumentException("coordinateCount < 0: "
+                    + coordinateCount);
+        }
+        mDim = dimensions;
+        mCount = coordinateCount;
+        mCoords = new float[mDim * mCount];
+    }
+
+    /**
+     * Constructs a new <tt>SimpleFloatCoordinateList</tt> using the specified array of
+     * coordinate values.  The parameter <tt>allCoords</tt> is not copied, so any changes
+     * made directly to this array will affect the coordinate set.
+     *
+     * @param dimensions the number of dimensions.
+     * @param coordinateCount the number of coordinates.
+     * @param allCoords an array containing the coordinate values, which should be of length
+     *   dimensions * coordinateCount.
+     *
+     * @throws IllegalArgumentException if either dimensions or coordinateCount is negative, or
+     *   if allCoords.length is not equal to the product of the dimensions and the coordinates.
+     */
+    public SimpleFloatCoordinateList(int dimensions, int coordinateCount,
+            float[] allCoords) {
+        if (dimensions < 0) {
+            throw new IllegalArgumentException("dimensions < 0: " + dimensions);
+        }
+        if (coordinateCount < 0) {
+            throw new IllegalArgumentException("coordinateCount < 0: "
+                    + coordinateCount);
+        }
+        if (allCoords.length != dimensions * coordinateCount) {
+            throw new IllegalArgumentException(
+                    "invalid number of coordinate values: " + allCoords.length
+                            + " != " + (dimensions * coordinateCount));
+        }
+        mDim = dimensions;
+        mCount = coordinateCount;
+        mCoords = allCoords;
+    }
+
+    /**
+     * Creates and loads a new coordinate set from the specified input.  The
+     * format is the same as that written by <tt>save(DataOutput)</tt>:
+     * the dimensions, the count, then the values as floats.
+     *
+     * @param in
+     * @return a new <tt>SimpleFloatCoordinateList</tt> instance.
+     *
+     * @throws IOException if an instance of the coordinate list cannot be
+     *   successfully read from the input.
+     */
+    public static SimpleFloatCoordinateList load(DataInput in) throws IOException {
+        int dimensions = in.readInt();
+        int count = in.readInt();
+        if (dimensions < 0 || count < 0) {
+            throw new IOException("invalid dimensions: " + count + " by "
+                    + dimensions);
+        }
+        final int numFloats = dimensions * count;
+        float[] data = new float[numFloats];
+        for (int i = 0; i < numFloats; i++) {
+            data[i] = in.readFloat();
+        }
+        return new SimpleFloatCoordinateList(dimensions, count, data);
+    }
+
+    /**
+     * Creates and loads a new coordinate set from the specified file.
+     *
+     * @param f
+     * @return a new <tt>SimpleFloatCoordinateList</tt> instance.
+     *
+     * @throws IOException if an instance of the coordinate list cannot be
+     *   successfully read from the file.
+     */
+    public static SimpleFloatCoordinateList load(File f) throws IOException {
+        DataInputStream dis = null;
+        try {
+            dis = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(f)));
+            return load(dis);
+        } finally {
+            if (dis != null) {
+                try {
+                    dis.close();
+                } catch (IOException ioe) {
+                }
+            }
+        }
+    }
+
+    public void save(DataOutput out) throws IOException {
+        out.writeInt(mDim);
+        out.writeInt(mCount);
+        final int numFloats = mDim * mCount;
+        for (int i=0; i<numFloats; i++) {
+            out.writeFloat(mCoords[i]);
+        }
+    }
+
+    public void save(File f) throws IOException {
+        DataOutputStream dos = null;
+        try {
+            dos = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(f)));
+            save(dos);
+            dos.flush();
+        } finally {
+            if (dos != null) {
+                try {
+                    dos.close();
+                } catch (IOException ioe) {
+                }
+            }
+        }
+    }
+
+    public void setCoordinates(int ndx, double[] coords) {
+        checkIndex(ndx);
+        checkDimensions(coords.length);
+        int start = ndx * mDim;
+        for (int d = 0; d < mDim; d++) {
+            mCoords[start + d] = (float) coords[d];
+        }
+    }
+
+    public void setCoordinates(int ndx, float[] coords) {
+        checkIndex(ndx);
+        checkDimensions(coords.length);
+        System.arraycopy(coords, 0, mCoords, ndx * mDim, mDim);
+    }
+
+    public double[] getCoordinates(int ndx, double[] coords) {
+        checkIndex(ndx);
+        double[] c = null;
+        if (coords != null) {
+            checkDimensions(coords.length);
+            c = coords;
+        } else {
+            c = new double[mDim];
+        }
+        int start = ndx * mDim;
+        for (int d = 0; d < mDim; d++) {
+            c[d] = mCoords[start + d];
+        }
+        return c;
+    }
+
+    public float[] getCoordinates(int ndx, float[] coords) {
+        checkIndex(ndx);
+        float[] c = null;
+        if (coords != null) {
+            checkDimensions(coords.length);
+            c = coords;
+        } else {
+            c = new float[mDim];
+        }
+        System.arraycopy(mCoords, ndx * mDim, c, 0, mDim);
+        return c;
+    }
+
+    public void setCoordinateQuick(int ndx, int dim, double coord) {
+        mCoords[ndx * mDim + dim] = (float) coord;
+    }
+
+    public double getCoordinateQuick(int ndx, int dim) {
+        return mCoords[ndx * mDim + dim];
+    }
+
+    /**
+     * Returns a complete copy of the backing array.
+     *
+     * @return
+     */
+    public float[] getAllCoordinateData() {
+        final int n = mCoords.length;
+        float[] rtn = new float[n];
+        System.arraycopy(mCoords, 0, rtn, 0, n);
+        return rtn;
+    }
+
+    public double[] getDimensionValues(int dim, double[] values) {
+        checkDimension(dim);
+        double[] v = null;
+        if (values != null) {
+            if (values.length != mCount) {
+                throw new IllegalArgumentException(String
+                        .valueOf(values.length)
+                        + " != " + mCount);
+            }
+            v = values;
+        } else {
+            v = new double[mCount];
+        }
+        int ndx = dim;
+        for (int i = 0; i < mCount; i++) {
+            v[i] = mCoords[ndx];
+            ndx += mDim;
+        }
+        return v;
+    }
+
+    public double[] computeAverage(int[] indices, double[] avg) {
+        checkIndices(indices);
+        double[] rtn = null;
+        if (avg != null) {
+            checkDimensions(avg.length);
+            rtn = avg;
+        } else {
+            rtn = new double[mDim];
+        }
+        java.util.Arrays.fill(rtn, 0.0);
+        int[] counts = new int[mDim];
+        int n = indices.length;
+        // Sums are accumulated in doubles, so the averages are as accurate
+        // as they would be for the same data stored in a SimpleCoordinateList.
+        for (int i = 0; i < n; i++) {
+            int start = indices[i] * mDim;
+            for (int d = 0; d < mDim; d++) {
+                float fv = mCoords[start + d];
+                if (!Float.isNaN(fv)) {
+                    rtn[d] += fv;
+                    counts[d]++;
+                }
+            }
+        }
+        for (int d = 0; d < mDim; d++) {
+            int ct = counts[d];
+            if (ct >= 1) {
+                rtn[d] /= ct;
+            } else {
+                // No information in dimension d.
+                rtn[d] = Double.NaN;
+            }
+        }
+        return rtn;
+    }
+}
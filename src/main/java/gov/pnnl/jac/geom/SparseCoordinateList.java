@@ -9,12 +9,15 @@ import gov.pnnl.jac.util.ExceptionUtil;
 import gov.pnnl.jac.util.SortUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-public class SparseCoordinateList extends AbstractCoordinateList {
+public class SparseCoordinateList extends AbstractCoordinateList 
+	implements SparseRowCoordinateList {
 
 	private List<IntList> mNonZeroIndices;
 	private List<DoubleList> mNonZeroValues;
+	private int mMaxNonZeroCount;
 	
 	public SparseCoordinateList() {
         mNonZeroIndices = new ArrayList<IntList>();
@@ -35,14 +38,17 @@ public class SparseCoordinateList extends AbstractCoordinateList {
 				mNonZeroIndices.add(new IntArrayList());
 				mNonZeroValues.add(new DoubleArrayList());
 			}
-			for (int i=0; i<coords.length; i++) {
-				double d = coords[i];
-				if (d != 0.0) {
-					nonZeroIndices.add(i);
-					nonZeroValues.add(d);
-				}
+		}
+		for (int i=0; i<coords.length; i++) {
+			double d = coords[i];
+			if (d != 0.0) {
+				nonZeroIndices.add(i);
+				nonZeroValues.add(d);
 			}
 		}
+		if (nonZeroIndices.size() > mMaxNonZeroCount) {
+			mMaxNonZeroCount = nonZeroIndices.size();
+		}
 		if (add) {
 			mNonZeroIndices.add(nonZeroIndices);
 			mNonZeroValues.add(nonZeroValues);
@@ -76,6 +82,9 @@ public class SparseCoordinateList extends AbstractCoordinateList {
 		if (ndx >= mCount) {
 			mCount = ndx + 1;
 		}
+		if (indices.length > mMaxNonZeroCount) {
+			mMaxNonZeroCount = indices.length;
+		}
 		if (indices.length > 0) {
 			int max = indices[indices.length - 1];
 			if (max >= mDim) {
@@ -88,6 +97,9 @@ public class SparseCoordinateList extends AbstractCoordinateList {
 	public double[] getCoordinates(int ndx, double[] coords) {
 		checkIndex(ndx);
 		double[] rtn = coords != null && coords.length >= mDim ? coords : new double[mDim];
+		if (rtn == coords) {
+			Arrays.fill(rtn, 0.0);
+		}
 		if (ndx < mNonZeroIndices.size()) {
 			IntList nonZeroIndices = mNonZeroIndices.get(ndx);
 			DoubleList nonZeroValues = mNonZeroValues.get(ndx);
@@ -106,7 +118,7 @@ public class SparseCoordinateList extends AbstractCoordinateList {
 		double rtn = 0.0;
 		if (ndx < mNonZeroIndices.size()) {
 			IntList nonZeroIndices = mNonZeroIndices.get(ndx);
-			int n = ListUtils.binarySearch(nonZeroIndices, ndx);
+			int n = ListUtils.binarySearch(nonZeroIndices, dim);
 			if (n >= 0) {
 				rtn = mNonZeroValues.get(ndx).get(n);
 			}
@@ -114,6 +126,34 @@ public class SparseCoordinateList extends AbstractCoordinateList {
 		return rtn;
 	}
 
+	@Override
+	public int getNonZeroCount(int ndx) {
+		checkIndex(ndx);
+		return ndx < mNonZeroIndices.size() ? mNonZeroIndices.get(ndx).size() : 0;
+	}
+
+	@Override
+	public int getMaxNonZeroCount() {
+		return mMaxNonZeroCount;
+	}
+
+	@Override
+	public int getNonZeros(int ndx, int[] indices, double[] values) {
+		final int nnz = getNonZeroCount(ndx);
+		if (indices.length < nnz || values.length < nnz) {
+			throw new IllegalArgumentException("buffers too short for " + nnz + " nonzeros");
+		}
+		if (nnz > 0) {
+			IntList nonZeroIndices = mNonZeroIndices.get(ndx);
+			DoubleList nonZeroValues = mNonZeroValues.get(ndx);
+			for (int i=0; i<nnz; i++) {
+				indices[i] = nonZeroIndices.get(i);
+				values[i] = nonZeroValues.get(i);
+			}
+		}
+		return nnz;
+	}
+
 	@Override
 	public void setCoordinateQuick(int ndx, int dim, double coord) {
 		double[] coords = new double[Math.max(dim, mDim)];
@@ -0,0 +1,48 @@
+package gov.pnnl.jac.geom;
+
+/**
+ * <p>A <tt>SparseRowCoordinateList</tt> is a <tt>CoordinateList</tt> whose
+ * coordinates are mostly zero, and which can hand out each coordinate as
+ * its nonzero dimensions and values rather than as a dense array.  Sparse-aware
+ * code, such as the <tt>SparseDistanceFunc</tt> kernels, uses this access path
+ * so that the cost of processing a coordinate is proportional to its number
+ * of nonzeros rather than to the number of dimensions.</p>
+ */
+public interface SparseRowCoordinateList extends CoordinateList {
+
+    /**
+     * Get the number of nonzero values in the coordinate with
+     * the specified index.
+     * @param ndx - the coordinate index which must be in the range
+     *   <code>[0 - getCoordinateCount()-1]</code>.
+     * @return - the number of nonzeros.
+     * @throws IndexOutOfBoundsException - if <code>ndx</code>
+     *   is not in the valid range.
+     */
+    public int getNonZeroCount(int ndx);
+
+    /**
+     * Get the largest number of nonzero values in any coordinate.  Buffers
+     * of this length are large enough to pass to <tt>getNonZeros()</tt>
+     * for any index.
+     * @return - the maximum number of nonzeros.
+     */
+    public int getMaxNonZeroCount();
+
+    /**
+     * Retrieve the nonzero dimensions and values of the coordinate with
+     * the specified index.  The dimensions are returned in ascending order.
+     * @param ndx - the coordinate index which must be in the range
+     *   <code>[0 - getCoordinateCount()-1]</code>.
+     * @param indices - an array to hold the dimensions of the nonzeros, which
+     *   must be at least <code>getNonZeroCount(ndx)</code> in length.
+     * @param values - an array to hold the nonzero values, which
+     *   must be at least <code>getNonZeroCount(ndx)</code> in length.
+     * @return - the number of nonzeros placed in the arrays.
+     * @throws IndexOutOfBoundsException - if <code>ndx</code>
+     *   is not in the valid range.
+     * @throws IllegalArgumentException - if either array is too short.
+     */
+    public int getNonZeros(int ndx, int[] indices, double[] values);
+
+}
@@ -9,7 +9,7 @@ package gov.pnnl.jac.geom.distance;
  * @since 3.0.0
  *
  */
-public class ChebyshevNoNaN extends AbstractDistanceFunc {
+public class ChebyshevNoNaN extends AbstractDistanceFunc implements FloatDistanceFunc {
 
 	public ChebyshevNoNaN() {}
 	
@@ -31,6 +31,22 @@ public class ChebyshevNoNaN extends AbstractDistanceFunc {
         return dist;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public double distanceBetween(float[] coord1, double[] coord2) {
+        double dist = 0.0;
+        final int len = coord1.length;
+        for (int i = 0; i < len; i++) {
+            double diff = Math.abs(coord1[i] - coord2[i]);
+            if (diff > dist) {
+            	dist = diff;
+            }
+        }
+        return dist;
+	}
+
 	@Override
 	public String methodName() {
 		return BasicDistanceMethod.CHEBYSHEV_NO_NAN.toString();
@@ -14,7 +14,7 @@ import gov.pnnl.jac.geom.*;
  * @author not attributable
  * @version 1.0
  */
-public final class Cosine extends AbstractDistanceFunc {
+public final class Cosine extends AbstractDistanceFunc implements SparseDistanceFunc {
 
     public Cosine() {
     }
@@ -55,6 +55,30 @@ public final class Cosine extends AbstractDistanceFunc {
         return 1.0 - Math.abs(cos);
     }
 
+    public double distanceBetween(int[] indices, double[] values, int nonZeroCount,
+            double[] coord, double coordSquaredNorm) {
+
+        // Scaling by the maximum absolute value, as the dense version does, 
+        // cancels out of the ratio, so it is omitted.  As in the dense version, 
+        // a zero dot product leaves the cosine at 1.
+        double cos = 1.0;
+        double sx = 0.0, sxy = 0.0;
+
+        for (int i=0; i<nonZeroCount; i++) {
+            double dx = values[i];
+            double dy = coord[indices[i]];
+            if (!Double.isNaN(dy)) {
+                sx += dx*dx;
+                sxy += dx*dy;
+            }
+        }
+        if (sxy != 0.0) {
+            cos = sxy/Math.sqrt(sx*coordSquaredNorm);
+        }
+
+        return 1.0 - Math.abs(cos);
+    }
+
     public int hashCode() {
     	return BasicDistanceMethod.COSINE.name().hashCode();
     }
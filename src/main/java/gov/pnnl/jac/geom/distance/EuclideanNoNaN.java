@@ -12,7 +12,7 @@ package gov.pnnl.jac.geom.distance;
  * @author not attributable
  * @version 1.0
  */
-public class EuclideanNoNaN extends AbstractDistanceFunc {
+public class EuclideanNoNaN extends AbstractDistanceFunc implements FloatDistanceFunc, SparseDistanceFunc {
 
     public EuclideanNoNaN() {
     }
@@ -31,6 +31,28 @@ public class EuclideanNoNaN extends AbstractDistanceFunc {
         return Math.sqrt(distSq);
     }
     
+    public double distanceBetween(float[] coord1, double[] coord2) {
+        double distSq = 0.0;
+        int dim = coord1.length;
+        for (int i = 0; i < dim; i++) {
+            double d = coord2[i] - coord1[i];
+            distSq += d*d;
+        }
+        return Math.sqrt(distSq);
+    }
+    
+    public double distanceBetween(int[] indices, double[] values, int nonZeroCount,
+            double[] coord, double coordSquaredNorm) {
+        // |x - c|^2 = |c|^2 + sum over the nonzeros of x of (x^2 - 2xc)
+        double distSq = coordSquaredNorm;
+        for (int i = 0; i < nonZeroCount; i++) {
+            double x = values[i];
+            distSq += x*(x - 2.0*coord[indices[i]]);
+        }
+        // Guard against slightly negative values from cancellation.
+        return distSq > 0.0 ? Math.sqrt(distSq) : 0.0;
+    }
+    
     public int hashCode() {
     	return BasicDistanceMethod.EUCLIDEAN_NO_NAN.name().hashCode();
     }
@@ -0,0 +1,22 @@
+package gov.pnnl.jac.geom.distance;
+
+/**
+ * <p>A <tt>FloatDistanceFunc</tt> is a <tt>DistanceFunc</tt> that can also
+ * compute the distance between a single-precision coordinate and a
+ * double-precision coordinate, typically a point stored in a
+ * <tt>FloatCoordinateList</tt> and a cluster center.  Implementations
+ * must return exactly the same result as <tt>distanceBetween(double[], double[])</tt>
+ * would if the float coordinate were first widened to doubles.</p>
+ */
+public interface FloatDistanceFunc extends DistanceFunc {
+
+    /**
+     * Compute the distance between a float coordinate and a double
+     * coordinate.  The coordinates should have equal lengths.
+     * @param coord1
+     * @param coord2
+     * @return
+     */
+    public double distanceBetween(float[] coord1, double[] coord2);
+
+}
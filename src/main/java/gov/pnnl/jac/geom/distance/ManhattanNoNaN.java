@@ -12,7 +12,7 @@ package gov.pnnl.jac.geom.distance;
  * @author not attributable
  * @version 1.0
  */
-public class ManhattanNoNaN extends AbstractDistanceFunc {
+public class ManhattanNoNaN extends AbstractDistanceFunc implements FloatDistanceFunc {
 
     public ManhattanNoNaN() {
     }
@@ -29,6 +29,15 @@ public class ManhattanNoNaN extends AbstractDistanceFunc {
         }
         return dist;
     }
+    
+    public double distanceBetween(float[] coord1, double[] coord2) {
+        double dist = 0.0;
+        int dim = coord1.length;
+        for (int i=0; i<dim; i++) {
+            dist += Math.abs(coord2[i] - coord1[i]);
+        }
+        return dist;
+    }
 
     public int hashCode() {
     	return BasicDistanceMethod.MANHATTAN_NO_NAN.name().hashCode();
@@ -0,0 +1,34 @@
+package gov.pnnl.jac.geom.distance;
+
+/**
+ * <p>A <tt>SparseDistanceFunc</tt> is a <tt>DistanceFunc</tt> that can
+ * compute the distance between a sparse coordinate, given as its nonzero
+ * dimensions and values, and a dense coordinate such as a cluster center,
+ * without expanding the sparse coordinate.  The work done is proportional to
+ * the number of nonzeros.  For this to be possible, the caller supplies the sum 
+ * of the squares of the dense coordinate (see <tt>CoordinateMath.squaredNorm()</tt>), 
+ * which it can compute once per dense coordinate and reuse for every sparse 
+ * coordinate compared with it.</p>
+ *
+ * <p>The results are mathematically equal to those of 
+ * <tt>distanceBetween(double[], double[])</tt> on the expanded coordinate, 
+ * but may differ in the last few bits, since the sums are accumulated 
+ * in a different order.  The sparse coordinate is assumed to contain no NaNs.</p>
+ */
+public interface SparseDistanceFunc extends DistanceFunc {
+
+    /**
+     * Compute the distance between a sparse coordinate and a dense one.
+     * @param indices - the dimensions of the nonzeros of the sparse
+     *   coordinate, in ascending order.
+     * @param values - the nonzero values of the sparse coordinate.
+     * @param nonZeroCount - the number of nonzeros in indices and values.
+     * @param coord - the dense coordinate.
+     * @param coordSquaredNorm - the sum of the squares of the elements of
+     *   the dense coordinate.
+     * @return
+     */
+    public double distanceBetween(int[] indices, double[] values, int nonZeroCount,
+            double[] coord, double coordSquaredNorm);
+
+}
@@ -12,7 +12,7 @@ package gov.pnnl.jac.geom.distance;
  * @author not attributable
  * @version 1.0
  */
-public class TanimotoNoNaN extends AbstractDistanceFunc {
+public class TanimotoNoNaN extends AbstractDistanceFunc implements SparseDistanceFunc {
 
     public TanimotoNoNaN() {
     }
@@ -34,6 +34,21 @@ public class TanimotoNoNaN extends AbstractDistanceFunc {
         }
         return sdenom != 0.0 ? 1.0 - snum/sdenom : 0.0;
     }
+    
+    public double distanceBetween(int[] indices, double[] values, int nonZeroCount,
+            double[] coord, double coordSquaredNorm) {
+        // Only the nonzeros of the sparse coordinate contribute to the
+        // dot product and its sum of squares.
+        double snum = 0.0;
+        double sx = 0.0;
+        for (int i=0; i<nonZeroCount; i++) {
+            double x = values[i];
+            snum += x*coord[indices[i]];
+            sx += x*x;
+        }
+        double sdenom = sx + coordSquaredNorm - snum;
+        return sdenom != 0.0 ? 1.0 - snum/sdenom : 0.0;
+    }
 
     public int hashCode() {
     	return BasicDistanceMethod.TANIMOTO_NO_NAN.name().hashCode();
@@ -5,7 +5,9 @@ import java.awt.geom.Point2D.Float;
 /**
  * CoarseningDensityMap2D is an implementation of DensityMap2D
  * used to wrap another DensityMap2D to make it appear to have fewer
- * rows and columns.
+ * rows and columns.  When the wrapped map is a SummedAreaDensityMap2D,
+ * densities and their minimum and maximum are found from its summed-area table
+ * instead of by summing the wrapped units.
  * 
  * @author d3j923
  *
@@ -69,6 +71,12 @@ public class CoarseningDensityMap2D implements DensityMap2D {
     }
 
     public int getDensity(int x, int y) {
+        if (mInnerMap instanceof SummedAreaDensityMap2D) {
+            int xs = x * mCoarseningLevel;
+            int ys = y * mCoarseningLevel;
+            return ((SummedAreaDensityMap2D) mInnerMap).getDensity(xs, ys, 
+                    xs + mCoarseningLevel, ys + mCoarseningLevel);
+        }
         int xstart = x * mCoarseningLevel;
         int xend = xstart + mCoarseningLevel;
         int ystart = y * mCoarseningLevel;
@@ -83,6 +91,9 @@ public class CoarseningDensityMap2D implements DensityMap2D {
     }
 
     public int getMinDensity() {
+        if (mInnerMap instanceof SummedAreaDensityMap2D) {
+            return ((SummedAreaDensityMap2D) mInnerMap).getMinDensity(mCoarseningLevel);
+        }
         int min = 0;
         if (mGridX > 0 && mGridY > 0) {
             min = Integer.MAX_VALUE;
@@ -99,6 +110,9 @@ public class CoarseningDensityMap2D implements DensityMap2D {
     }
 
     public int getMaxDensity() {
+        if (mInnerMap instanceof SummedAreaDensityMap2D) {
+            return ((SummedAreaDensityMap2D) mInnerMap).getMaxDensity(mCoarseningLevel);
+        }
         int max = 0;
         for (int x = 0; x < mGridX; x++) {
             for (int y = 0; y < mGridY; y++) {
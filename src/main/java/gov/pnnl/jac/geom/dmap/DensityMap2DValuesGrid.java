@@ -42,6 +42,10 @@ public class DensityMap2DValuesGrid implements ValuesGrid2D {
         int rowEnd = rowStart + mCoarsening;
         int colStart = column * mCoarsening;
         int colEnd = colStart + mCoarsening;
+        if (mDM instanceof SummedAreaDensityMap2D) {
+            return (double) ((SummedAreaDensityMap2D) mDM).getDensity(colStart, rowStart, colEnd, rowEnd)
+                    / (mCoarsening * mCoarsening);
+        }
         double sum = 0;
         for (int r = rowStart; r < rowEnd; r++) {
             for (int c = colStart; c < colEnd; c++) {
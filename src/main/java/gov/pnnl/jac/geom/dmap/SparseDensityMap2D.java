@@ -1,17 +1,16 @@
 package gov.pnnl.jac.geom.dmap;
 
+import gov.pnnl.jac.collections.IntIntLinearHashMap;
+import gov.pnnl.jac.collections.IntObjectLinearHashMap;
 import gov.pnnl.jac.projection.ProjectionData;
 
 import java.awt.geom.Point2D;
 
-import cern.colt.list.IntArrayList;
-import cern.colt.map.*;
-
 public class SparseDensityMap2D implements DensityMap2D {
 
     private int mGridX, mGridY;
     private float mXMin, mXMax, mYMin, mYMax, mUnitWidth, mUnitHeight;
-    private OpenIntObjectHashMap mDensityMaps;
+    private IntObjectLinearHashMap<IntIntLinearHashMap> mDensityMaps;
     
     public SparseDensityMap2D(int gridX, int gridY, 
             float xmin, float xmax, float ymin, float ymax) {
@@ -33,10 +32,10 @@ public class SparseDensityMap2D implements DensityMap2D {
         if (mGridY > 0) {
             mUnitHeight = (mYMax - mYMin)/mGridY;
         }
-        // There will be a separate OpenIntIntHashMap for each column (x-value).
+        // There will be a separate IntIntLinearHashMap for each column (x-value).
         // The keys of this map are x-values [0 - (mGridX - 1)].  The values
-        // are OpenIntIntHashMaps.  
-        mDensityMaps = new OpenIntObjectHashMap();
+        // are IntIntLinearHashMaps holding only the nonzero densities.  
+        mDensityMaps = new IntObjectLinearHashMap<IntIntLinearHashMap>();
     }
     
     public SparseDensityMap2D(int gridX, int gridY) {
@@ -109,10 +108,11 @@ public class SparseDensityMap2D implements DensityMap2D {
     }
 
     public int getDensity(int x, int y) {
-        OpenIntIntHashMap map = (OpenIntIntHashMap) mDensityMaps.get(x);
+        IntIntLinearHashMap map = mDensityMaps.get(x);
         int density = 0;
         if (map != null) {
-            density = map.get(y);
+            // get() returns -1 for absent keys.
+            density = Math.max(0, map.get(y));
         }
         return density;
     }
@@ -120,7 +120,7 @@ public class SparseDensityMap2D implements DensityMap2D {
     public int getMinDensity() {
         int min = Integer.MAX_VALUE;
         for (int x=0; x<mGridX; x++) {
-            OpenIntIntHashMap map = (OpenIntIntHashMap) mDensityMaps.get(x);
+            IntIntLinearHashMap map = mDensityMaps.get(x);
             if (map == null) {
                 // All densities for this value of x are 0.
                 return 0;
@@ -130,10 +130,10 @@ public class SparseDensityMap2D implements DensityMap2D {
                     // the density there is 0.
                     return 0;
                 }
-                IntArrayList keys = map.keys();
-                int sz = keys.size();
+                int[] densities = map.values();
+                int sz = densities.length;
                 for (int i=0; i<sz; i++) {
-                    int density = map.get(keys.getQuick(i));
+                    int density = densities[i];
                     if (density < min) {
                         min = density;
                     }
@@ -148,12 +148,12 @@ public class SparseDensityMap2D implements DensityMap2D {
     public int getMaxDensity() {
         int max = 0;
         for (int x=0; x<mGridX; x++) {
-            OpenIntIntHashMap map = (OpenIntIntHashMap) mDensityMaps.get(x);
+            IntIntLinearHashMap map = mDensityMaps.get(x);
             if (map != null) {
-                IntArrayList keys = map.keys();
-                int sz = keys.size();
+                int[] densities = map.values();
+                int sz = densities.length;
                 for (int i=0; i<sz; i++) {
-                    int density = map.get(keys.getQuick(i));
+                    int density = densities[i];
                     if (density > max) {
                         max = density;
                     }
@@ -167,17 +167,17 @@ public class SparseDensityMap2D implements DensityMap2D {
         if (density < 0) {
             throw new IllegalArgumentException("density cannot be negative: " + density);
         }
-        OpenIntIntHashMap map = (OpenIntIntHashMap) mDensityMaps.get(x);
+        IntIntLinearHashMap map = mDensityMaps.get(x);
         if (density == 0) {
             if (map != null && map.containsKey(y)) {
-                map.removeKey(y);
+                map.remove(y);
                 if (map.size() == 0) {
-                    mDensityMaps.removeKey(x);
+                    mDensityMaps.remove(x);
                 }
             }
         } else { // density > 0
             if (map == null) {
-                map = new OpenIntIntHashMap();
+                map = new IntIntLinearHashMap();
                 mDensityMaps.put(x, map);
             }
             map.put(y, density);
@@ -185,15 +185,12 @@ public class SparseDensityMap2D implements DensityMap2D {
     }
     
     public void incrementDensity(int x, int y) {
-        int density = 0;
-        OpenIntIntHashMap map = (OpenIntIntHashMap) mDensityMaps.get(x);
+        IntIntLinearHashMap map = mDensityMaps.get(x);
         if (map == null) {
-            map = new OpenIntIntHashMap();
+            map = new IntIntLinearHashMap();
             mDensityMaps.put(x, map);
-        } else {
-            density = map.get(y);
         }
-        map.put(y, ++density);
+        map.putOrIncrement(y, 1);
     }
  
     public static DensityMap2D generate(ProjectionData pd, int gridx, int gridy) {
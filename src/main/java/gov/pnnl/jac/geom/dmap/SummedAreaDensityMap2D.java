@@ -0,0 +1,449 @@
+package gov.pnnl.jac.geom.dmap;
+
+import gov.pnnl.jac.collections.IntIntLinearHashMap;
+import gov.pnnl.jac.projection.ProjectionData;
+import gov.pnnl.jac.task.TaskScheduler;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>An immutable <tt>DensityMap2D</tt> which keeps a summed-area table of its
+ * densities: each entry of the table is the total density of the units below
+ * and to the left of a grid point.  The total density of any rectangle of units
+ * is then found from four entries of the table, so the density of a unit of the
+ * map coarsened by any level is found in constant time, regardless of the level.
+ * The minimum and maximum densities of the map and of each coarsening level
+ * asked for are computed once and cached.</p>
+ *
+ * <p>Maps are built from projections by <tt>generate()</tt>, which bins the
+ * projections in parallel.  Each thread bins a range of the projections into a
+ * tile of its own, which is a dense array when the grid is small compared to
+ * the number of projections, and a sparse map otherwise.  The tiles are then
+ * merged and the table is computed, also in parallel.</p>
+ *
+ * <p>{@link CoarseningDensityMap2D} and {@link DensityMap2DValuesGrid} use the
+ * table when wrapping a map of this class.</p>
+ */
+public class SummedAreaDensityMap2D implements DensityMap2D {
+
+    // Minimum number of projections binned by each thread.
+    private static final int MIN_PROJECTIONS_PER_THREAD = 16384;
+
+    // Per-thread tiles are dense if the grid has no more units than this, or
+    // no more than the number of projections binned by the thread.
+    private static final int DENSE_TILE_MAX_UNITS = 1 << 20;
+
+    private int mGridX, mGridY;
+    private float mXMin, mXMax, mYMin, mYMax, mUnitWidth, mUnitHeight;
+
+    // The summed-area table, with (mGridX + 1) rows of (mGridY + 1) entries.  The
+    // entry for grid point (x, y) is the total density of units (i, j) with i < x
+    // and j < y.  Since densities count projections, the totals fit in ints.
+    private int[] mTable;
+
+    // Minimum and maximum densities for each coarsening level computed so far.
+    private ConcurrentHashMap<Integer, int[]> mMinMaxByLevel = new ConcurrentHashMap<Integer, int[]>();
+
+    private SummedAreaDensityMap2D(int gridX, int gridY,
+            float xmin, float xmax, float ymin, float ymax) {
+        if (gridX <= 0) {
+            throw new IllegalArgumentException("gridX <= 0: " + gridX);
+        }
+        if (gridY <= 0) {
+            throw new IllegalArgumentException("gridY <= 0: " + gridY);
+        }
+        if ((long) (gridX + 1) * (gridY + 1) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("grid too large: " + gridX + " x " + gridY);
+        }
+        mGridX = gridX;
+        mGridY = gridY;
+        mXMin = Math.min(xmin, xmax);
+        mXMax = Math.max(xmin, xmax);
+        mUnitWidth = (mXMax - mXMin)/mGridX;
+        mYMin = Math.min(ymin, ymax);
+        mYMax = Math.max(ymin, ymax);
+        mUnitHeight = (mYMax - mYMin)/mGridY;
+        mTable = new int[(gridX + 1) * (gridY + 1)];
+    }
+
+    public int getGridLengthX() {
+        return mGridX;
+    }
+
+    public int getGridLengthY() {
+        return mGridY;
+    }
+
+    public float getUnitWidth() {
+        return mUnitWidth;
+    }
+
+    public float getUnitHeight() {
+        return mUnitHeight;
+    }
+
+    public float getOriginX() {
+        return mXMin;
+    }
+
+    public float getOriginY() {
+        return mYMin;
+    }
+
+    /**
+     * Translate the x component of the given point into
+     * an integer in the range <tt>[0 - (getGridLengthX() - 1)]</tt>,
+     * as <tt>SparseDensityMap2D</tt> does.  If the point's x component is
+     * not in the proper range, -1 is returned.
+     * @param point
+     * @return integer x-index.
+     */
+    public int getXIndex(Point2D.Float point) {
+        return xIndex(point.x);
+    }
+
+    /**
+     * Translate the y component of the given point into
+     * an integer in the range <tt>[0 - (getGridLengthY() - 1)]</tt>,
+     * as <tt>SparseDensityMap2D</tt> does.  If the point's y component is
+     * not in the proper range, -1 is returned.
+     * @param point
+     * @return integer y-index.
+     */
+    public int getYIndex(Point2D.Float point) {
+        return yIndex(point.y);
+    }
+
+    private int xIndex(float px) {
+        int x = -1;
+        if (px >= mXMin && px <= mXMax) {
+            x = (int) ((px - mXMin)/mUnitWidth);
+            if (x == mGridX) {
+                x--;
+            }
+        }
+        return x;
+    }
+
+    private int yIndex(float py) {
+        int y = -1;
+        if (py >= mYMin && py <= mYMax) {
+            y = (int) ((py - mYMin)/mUnitHeight);
+            if (y == mGridY) {
+                y--;
+            }
+        }
+        return y;
+    }
+
+    public int getDensity(int x, int y) {
+        if (x < 0 || x >= mGridX || y < 0 || y >= mGridY) {
+            return 0;
+        }
+        return getDensity(x, y, x + 1, y + 1);
+    }
+
+    /**
+     * Get the total density of the units (x, y) with <tt>x0 &lt;= x &lt; x1</tt>
+     * and <tt>y0 &lt;= y &lt; y1</tt>.  The bounds are clipped to the grid.
+     *
+     * @param x0
+     * @param y0
+     * @param x1
+     * @param y1
+     * @return
+     */
+    public int getDensity(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(x0, 0);
+        y0 = Math.max(y0, 0);
+        x1 = Math.min(x1, mGridX);
+        y1 = Math.min(y1, mGridY);
+        if (x0 >= x1 || y0 >= y1) {
+            return 0;
+        }
+        final int w = mGridY + 1;
+        return mTable[x1*w + y1] - mTable[x0*w + y1] - mTable[x1*w + y0] + mTable[x0*w + y0];
+    }
+
+    /**
+     * Get the total density of all units.
+     * @return
+     */
+    public int getTotalDensity() {
+        return mTable[mTable.length - 1];
+    }
+
+    public int getMinDensity() {
+        return getMinDensity(1);
+    }
+
+    public int getMaxDensity() {
+        return getMaxDensity(1);
+    }
+
+    /**
+     * Get the minimum density of the map coarsened by the specified level,
+     * as by a <tt>CoarseningDensityMap2D</tt>.
+     * @param coarseningLevel
+     * @return
+     */
+    public int getMinDensity(int coarseningLevel) {
+        return minMax(coarseningLevel)[0];
+    }
+
+    /**
+     * Get the maximum density of the map coarsened by the specified level,
+     * as by a <tt>CoarseningDensityMap2D</tt>.
+     * @param coarseningLevel
+     * @return
+     */
+    public int getMaxDensity(int coarseningLevel) {
+        return minMax(coarseningLevel)[1];
+    }
+
+    private int[] minMax(int level) {
+        if (level <= 0) {
+            throw new IllegalArgumentException("coarsening level <= 0: " + level);
+        }
+        int[] minMax = mMinMaxByLevel.get(level);
+        if (minMax == null) {
+            int gx = mGridX / level;
+            int gy = mGridY / level;
+            int min = 0, max = 0;
+            if (gx > 0 && gy > 0) {
+                min = Integer.MAX_VALUE;
+                for (int x = 0; x < gx; x++) {
+                    int xs = x * level;
+                    for (int y = 0; y < gy; y++) {
+                        int ys = y * level;
+                        int d = getDensity(xs, ys, xs + level, ys + level);
+                        if (d < min) {
+                            min = d;
+                        }
+                        if (d > max) {
+                            max = d;
+                        }
+                    }
+                }
+            }
+            minMax = new int[] { min, max };
+            mMinMaxByLevel.put(level, minMax);
+        }
+        return minMax;
+    }
+
+    /**
+     * Returns a view of this map coarsened by the specified level.
+     * @param coarseningLevel
+     * @return
+     */
+    public DensityMap2D coarsen(int coarseningLevel) {
+        return new CoarseningDensityMap2D(this, coarseningLevel);
+    }
+
+    /**
+     * Generates a density map from the first two dimensions of the projections,
+     * over the range of their allowed values, as
+     * <tt>SparseDensityMap2D.generate()</tt> does.
+     *
+     * @param pd
+     * @param gridx
+     * @param gridy
+     * @param numWorkerThreads the maximum number of threads to use.  If non-positive,
+     *   the compute parallelism is used.
+     * @return
+     * @throws Exception
+     */
+    public static SummedAreaDensityMap2D generate(final ProjectionData pd, int gridx, int gridy,
+            int numWorkerThreads) throws Exception {
+
+        final int pdim = pd.getDimensionCount();
+        if (pdim < 2) {
+            throw new IllegalArgumentException("ProjectionData has only " +
+                    pdim + " dimensions.");
+        }
+
+        final SummedAreaDensityMap2D dm = new SummedAreaDensityMap2D(gridx, gridy,
+                pd.getMinAllowed(0), pd.getMaxAllowed(0),
+                pd.getMinAllowed(1), pd.getMaxAllowed(1));
+
+        final int projectionCount = pd.getProjectionCount();
+        final int gx = dm.mGridX;
+        final int gy = dm.mGridY;
+        final int units = gx * gy;
+
+        int maxThreads = numWorkerThreads <= 0 ? TaskScheduler.getComputeParallelism() : numWorkerThreads;
+        int workers = Math.max(1, Math.min(maxThreads, projectionCount/MIN_PROJECTIONS_PER_THREAD));
+
+        final int perWorker = projectionCount/workers;
+        final boolean dense = units <= DENSE_TILE_MAX_UNITS || units <= perWorker;
+
+        // Bin the projections into tiles, whose keys are x*gy + y.
+        List<Callable<Object>> binners = new ArrayList<Callable<Object>>(workers);
+        for (int w = 0; w < workers; w++) {
+            final int start = (int) ((long) w * projectionCount / workers);
+            final int end = (int) ((long) (w + 1) * projectionCount / workers);
+            binners.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    int[] denseTile = dense ? new int[units] : null;
+                    IntIntLinearHashMap sparseTile = dense ? null : new IntIntLinearHashMap();
+                    float[] projectionBuffer = new float[pdim];
+                    for (int i = start; i < end; i++) {
+                        pd.getProjection(i, projectionBuffer);
+                        int x = dm.xIndex(projectionBuffer[0]);
+                        int y = dm.yIndex(projectionBuffer[1]);
+                        if (x >= 0 && y >= 0) {
+                            if (dense) {
+                                denseTile[x*gy + y]++;
+                            } else {
+                                sparseTile.putOrIncrement(x*gy + y, 1);
+                            }
+                        }
+                    }
+                    return dense ? denseTile : sparseTile;
+                }
+            });
+        }
+
+        final List<Object> tiles = invoke(binners, workers);
+
+        // Merge the tiles into the table, offset by one row and column, then
+        // take cumulative sums along y in each row.  Rows are split among the threads.
+        final int[] table = dm.mTable;
+        final int w = gy + 1;
+        List<Callable<Object>> mergers = new ArrayList<Callable<Object>>(workers);
+        for (int t = 0; t < workers; t++) {
+            final int xstart = (int) ((long) t * gx / workers);
+            final int xend = (int) ((long) (t + 1) * gx / workers);
+            mergers.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    int keyStart = xstart * gy;
+                    int keyEnd = xend * gy;
+                    for (Object tile : tiles) {
+                        if (tile instanceof int[]) {
+                            int[] denseTile = (int[]) tile;
+                            for (int x = xstart; x < xend; x++) {
+                                int offset = (x + 1)*w + 1;
+                                int key = x*gy;
+                                for (int y = 0; y < gy; y++) {
+                                    table[offset + y] += denseTile[key + y];
+                                }
+                            }
+                        } else {
+                            IntIntLinearHashMap sparseTile = (IntIntLinearHashMap) tile;
+                            int[] keys = sparseTile.keys();
+                            int[] values = sparseTile.values();
+                            for (int k = 0; k < keys.length; k++) {
+                                int key = keys[k];
+                                if (key >= keyStart && key < keyEnd) {
+                                    int x = key / gy;
+                                    table[(x + 1)*w + (key - x*gy) + 1] += values[k];
+                                }
+                            }
+                        }
+                    }
+                    for (int x = xstart + 1; x <= xend; x++) {
+                        int offset = x*w;
+                        for (int y = 1; y <= gy; y++) {
+                            table[offset + y] += table[offset + y - 1];
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        invoke(mergers, workers);
+
+        // Cumulative sums along x, with the columns split among the threads.
+        List<Callable<Object>> summers = new ArrayList<Callable<Object>>(workers);
+        for (int t = 0; t < workers; t++) {
+            final int ystart = 1 + (int) ((long) t * gy / workers);
+            final int yend = 1 + (int) ((long) (t + 1) * gy / workers);
+            summers.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    for (int x = 2; x <= gx; x++) {
+                        int offset = x*w;
+                        int prevOffset = offset - w;
+                        for (int y = ystart; y < yend; y++) {
+                            table[offset + y] += table[prevOffset + y];
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        invoke(summers, workers);
+
+        return dm;
+    }
+
+    /**
+     * Generates a density map as <tt>generate(pd, gridx, gridy, numWorkerThreads)</tt>
+     * does, using the compute parallelism.
+     *
+     * @param pd
+     * @param gridx
+     * @param gridy
+     * @return
+     * @throws Exception
+     */
+    public static SummedAreaDensityMap2D generate(ProjectionData pd, int gridx, int gridy)
+            throws Exception {
+        return generate(pd, gridx, gridy, -1);
+    }
+
+    /**
+     * Builds a map with the densities of another map.
+     *
+     * @param map
+     * @return
+     */
+    public static SummedAreaDensityMap2D copyOf(DensityMap2D map) {
+        int gx = map.getGridLengthX();
+        int gy = map.getGridLengthY();
+        float x0 = map.getOriginX();
+        float y0 = map.getOriginY();
+        SummedAreaDensityMap2D dm = new SummedAreaDensityMap2D(gx, gy,
+                x0, x0 + gx * map.getUnitWidth(), y0, y0 + gy * map.getUnitHeight());
+        int[] table = dm.mTable;
+        int w = gy + 1;
+        for (int x = 1; x <= gx; x++) {
+            int offset = x*w;
+            int prevOffset = offset - w;
+            int rowSum = 0;
+            for (int y = 1; y <= gy; y++) {
+                rowSum += map.getDensity(x - 1, y - 1);
+                table[offset + y] = table[prevOffset + y] + rowSum;
+            }
+        }
+        return dm;
+    }
+
+    private static List<Object> invoke(List<Callable<Object>> tasks, int workers) throws Exception {
+        List<Object> results = new ArrayList<Object>(tasks.size());
+        if (workers > 1) {
+            ExecutorService threadPool = TaskScheduler.newComputeExecutor(workers);
+            try {
+                for (Future<Object> future : threadPool.invokeAll(tasks)) {
+                    results.add(future.get());
+                }
+            } finally {
+                threadPool.shutdownNow();
+            }
+        } else {
+            for (Callable<Object> task : tasks) {
+                results.add(task.call());
+            }
+        }
+        return results;
+    }
+}
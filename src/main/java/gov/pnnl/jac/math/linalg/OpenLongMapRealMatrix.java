@@ -1,7 +1,7 @@
 package gov.pnnl.jac.math.linalg;
 
 import gov.pnnl.jac.collections.LongCollectionIterator;
-import gov.pnnl.jac.collections.LongDoubleHashMap;
+import gov.pnnl.jac.collections.LongDoubleLinearHashMap;
 import gov.pnnl.jac.collections.LongDoubleMap;
 import gov.pnnl.jac.math.linalg.ResizableRealMatrix;
 import gov.pnnl.jac.util.DataConverter;
@@ -35,7 +35,7 @@ public class OpenLongMapRealMatrix extends AbstractRealMatrix
 		super(rows, columns);
 		this.rows = rows;
 		this.columns = columns;
-		this.nonZeroEntries = new LongDoubleHashMap();
+		this.nonZeroEntries = new LongDoubleLinearHashMap();
 		// So it'll return 0s instead of NaNs for the missing value.
 		this.nonZeroEntries.setMissingValue(0.0);
 	}
@@ -58,7 +58,7 @@ public class OpenLongMapRealMatrix extends AbstractRealMatrix
 		
 		if (row < rows) {
 		
-			LongDoubleMap newMap = new LongDoubleHashMap(nonZeroEntries.size() * 2);
+			LongDoubleMap newMap = new LongDoubleLinearHashMap(nonZeroEntries.size() * 2);
 			newMap.setMissingValue(0.0);
 			
 			LongCollectionIterator it = nonZeroEntries.keyIterator();
@@ -92,7 +92,7 @@ public class OpenLongMapRealMatrix extends AbstractRealMatrix
 		
 		ExceptionUtil.checkInBounds(row, 0, rows-1);
 	
-		LongDoubleMap newMap = new LongDoubleHashMap(nonZeroEntries.size() * 2);
+		LongDoubleMap newMap = new LongDoubleLinearHashMap(nonZeroEntries.size() * 2);
 		newMap.setMissingValue(0.0);
 		
 		LongCollectionIterator it = nonZeroEntries.keyIterator();
@@ -129,7 +129,7 @@ public class OpenLongMapRealMatrix extends AbstractRealMatrix
 		
 		if (col < columns) {
 		
-			LongDoubleMap newMap = new LongDoubleHashMap(nonZeroEntries.size() * 2);
+			LongDoubleMap newMap = new LongDoubleLinearHashMap(nonZeroEntries.size() * 2);
 			newMap.setMissingValue(0.0);
 			
 			LongCollectionIterator it = nonZeroEntries.keyIterator();
@@ -163,7 +163,7 @@ public class OpenLongMapRealMatrix extends AbstractRealMatrix
 		
 		ExceptionUtil.checkInBounds(col, 0, columns-1);
 	
-		LongDoubleMap newMap = new LongDoubleHashMap(nonZeroEntries.size() * 2);
+		LongDoubleMap newMap = new LongDoubleLinearHashMap(nonZeroEntries.size() * 2);
 		newMap.setMissingValue(0.0);
 		
 		LongCollectionIterator it = nonZeroEntries.keyIterator();
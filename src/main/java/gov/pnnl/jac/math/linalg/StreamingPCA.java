@@ -0,0 +1,641 @@
+package gov.pnnl.jac.math.linalg;
+
+import gov.pnnl.jac.geom.CoordinateList;
+import gov.pnnl.jac.task.TaskScheduler;
+import gov.pnnl.jac.util.XoroshiroRandom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.EigenDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * <p>Performs principal component analysis on the coordinates of a
+ * <tt>CoordinateList</tt> by making passes over them, so unlike {@link PCA},
+ * the data never have to be copied into a <tt>RealMatrix</tt>.  This makes it
+ * usable with lists too large for memory, such as file-backed lists.  Each pass
+ * divides the coordinates into contiguous ranges, one for each worker thread,
+ * each thread accumulating into buffers of its own, which are summed in order
+ * when the pass is done.  NaNs are treated as zeros.</p>
+ *
+ * <p>Two methods are available:</p>
+ * <ul>
+ * <li><tt>Method.COVARIANCE</tt> accumulates the d x d covariance matrix in one
+ * pass and performs a full eigenvalue decomposition of it.  This takes time
+ * proportional to n*d<sup>2</sup> and a d x d buffer for each thread, which is
+ * fine for moderate dimensionalities.</li>
+ * <li><tt>Method.RANDOMIZED</tt> finds only the leading components by randomized
+ * subspace iteration, as described in "Finding structure with randomness", Halko,
+ * Martinsson and Tropp, 2011.  A random d x l basis, l being the number of components
+ * plus some oversampling, is repeatedly multiplied by the covariance and
+ * orthonormalized, each multiplication being a pass taking time proportional to n*d*l,
+ * without forming the covariance.  The components are then extracted from the
+ * projection of the covariance onto the basis.  The more power iterations, the more
+ * accurate the components when the eigenvalues decay slowly.</li>
+ * </ul>
+ * <p><tt>Method.AUTO</tt>, the default, uses the covariance method when the
+ * dimensionality is no more than <tt>RANDOMIZED_DIMENSION_THRESHOLD</tt> or the
+ * randomized basis would not be much smaller than the dimensionality, and the
+ * randomized method otherwise.</p>
+ *
+ * <p>By default, the coordinates are centered on their mean before the covariance is
+ * computed.  Unlike <tt>PCA</tt>, the covariance is divided by the number of
+ * coordinates, so the variances are the mean squared values of the centered
+ * data along the components.  Turning off centering gives the same components as
+ * <tt>PCA</tt>, which does not center.</p>
+ */
+public class StreamingPCA {
+
+    public enum Method {
+        AUTO, COVARIANCE, RANDOMIZED
+    }
+
+    /**
+     * The dimensionality above which <tt>Method.AUTO</tt> uses the randomized method.
+     */
+    public static final int RANDOMIZED_DIMENSION_THRESHOLD = 512;
+
+    public static final int DEFAULT_OVERSAMPLING = 10;
+    public static final int DEFAULT_POWER_ITERATIONS = 3;
+
+    // Minimum number of coordinates processed by each thread in a pass.
+    private static final int MIN_COORDS_PER_THREAD = 4096;
+
+    // Number of coordinates buffered for each update of a covariance accumulator,
+    // so each row of the accumulator is reused while in cache.
+    private static final int COVARIANCE_ROWS_PER_UPDATE = 16;
+
+    private CoordinateList mData;
+    private PCA.CovarianceType mCovarianceType = PCA.CovarianceType.COVARIANCE;
+    private int mIndices;
+    private boolean mCenter = true;
+    private Method mMethod = Method.AUTO;
+    private int mNumWorkerThreads = 1;
+    private int mOversampling = DEFAULT_OVERSAMPLING;
+    private int mPowerIterations = DEFAULT_POWER_ITERATIONS;
+    private long mSeed;
+
+    private Method mMethodUsed;
+    private int mCoordCount;
+    private int mDimensions;
+
+    // Subtracted from, then multiplied by, the coordinates before the
+    // covariance is computed.
+    private double[] mOffsets;
+    private double[] mScales;
+
+    private double[] mMean;
+    private RealMatrix mPrincipalComponents;
+    private RealVector mVariance;
+
+    private StreamingPCA(CoordinateList data, int indices) {
+        if (data == null) {
+            throw new NullPointerException();
+        }
+        int dim = data.getDimensionCount();
+        if (data.getCoordinateCount() == 0 || dim == 0) {
+            throw new IllegalArgumentException("data must have at least 1 coordinate and 1 dimension");
+        }
+        if (indices <= 0 || indices > dim) {
+            throw new IllegalArgumentException("indices not in (0 - " + dim + "]: " + indices);
+        }
+        mData = data;
+        mIndices = indices;
+        mSeed = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns a d x k matrix whose columns are the principal components, in
+     * order of decreasing variance.
+     * @return
+     */
+    public RealMatrix getPrincipalComponents() {
+        return mPrincipalComponents;
+    }
+
+    /**
+     * Returns the variances along the principal components, which are the
+     * eigenvalues of the covariance (or correlation) matrix.
+     * @return
+     */
+    public RealVector getVariance() {
+        return mVariance;
+    }
+
+    /**
+     * Returns the mean of the coordinates, NaNs having been counted as zeros.
+     * @return
+     */
+    public double[] getMean() {
+        return (double[]) mMean.clone();
+    }
+
+    /**
+     * Returns the method that was used, which is never <tt>Method.AUTO</tt>.
+     * @return
+     */
+    public Method getMethodUsed() {
+        return mMethodUsed;
+    }
+
+    /**
+     * Projects a coordinate onto the principal components, after centering and
+     * scaling it as the coordinates were for computing the covariance.
+     *
+     * @param coords the coordinate, NaNs in which are taken to be zeros.
+     * @param projection an array to receive the projection.  If null or of
+     *   the wrong length, a new array is allocated.
+     * @return the array containing the projection.
+     */
+    public double[] project(double[] coords, double[] projection) {
+        if (coords.length != mDimensions) {
+            throw new IllegalArgumentException("dimension mismatch: " +
+                    coords.length + " != " + mDimensions);
+        }
+        int k = mPrincipalComponents.getColumnDimension();
+        if (projection == null || projection.length != k) {
+            projection = new double[k];
+        }
+        double[] x = new double[mDimensions];
+        transform(coords, x);
+        for (int c=0; c<k; c++) {
+            double sum = 0.0;
+            for (int j=0; j<mDimensions; j++) {
+                sum += x[j] * mPrincipalComponents.getEntry(j, c);
+            }
+            projection[c] = sum;
+        }
+        return projection;
+    }
+
+    private void compute() {
+
+        mCoordCount = mData.getCoordinateCount();
+        mDimensions = mData.getDimensionCount();
+
+        int d = mDimensions;
+        int l = Math.min(d, mIndices + mOversampling);
+
+        mMethodUsed = mMethod;
+        if (mMethodUsed == Method.AUTO) {
+            mMethodUsed = (d <= RANDOMIZED_DIMENSION_THRESHOLD || 2*l >= d) ?
+                    Method.COVARIANCE : Method.RANDOMIZED;
+        }
+
+        computeOffsetsAndScales();
+
+        if (mMethodUsed == Method.COVARIANCE) {
+            computeFromCovariance();
+        } else {
+            computeRandomized(l);
+        }
+    }
+
+    // The first pass, which computes the means and the mean squares.
+    private void computeOffsetsAndScales() {
+
+        final int d = mDimensions;
+
+        double[] sums = accumulate(2*d, new AccumulatorFactory() {
+            @Override
+            public Accumulator newAccumulator(final double[] values) {
+                return new Accumulator() {
+                    @Override
+                    public void add(double[] coords) {
+                        for (int j=0; j<d; j++) {
+                            double v = coords[j];
+                            if (!Double.isNaN(v)) {
+                                values[j] += v;
+                                values[d + j] += v*v;
+                            }
+                        }
+                    }
+                };
+            }
+        });
+
+        mMean = new double[d];
+        mOffsets = new double[d];
+        mScales = new double[d];
+
+        double n = mCoordCount;
+        for (int j=0; j<d; j++) {
+            double mean = sums[j]/n;
+            mMean[j] = mean;
+            double meanSq = sums[d + j]/n;
+            double variance = mCenter ? Math.max(0.0, meanSq - mean*mean) : meanSq;
+            if (mCenter) {
+                mOffsets[j] = mean;
+            }
+            if (mCovarianceType == PCA.CovarianceType.CORRELATION) {
+                // A dimension without variance has no correlation with the others,
+                // so it is dropped.
+                mScales[j] = variance > 0.0 ? 1.0/Math.sqrt(variance) : 0.0;
+            } else {
+                mScales[j] = 1.0;
+            }
+        }
+    }
+
+    // Centers and scales coords into x, with NaNs becoming zeros.
+    private void transform(double[] coords, double[] x) {
+        for (int j=0; j<mDimensions; j++) {
+            double v = coords[j];
+            x[j] = Double.isNaN(v) ? 0.0 : (v - mOffsets[j]) * mScales[j];
+        }
+    }
+
+    private void computeFromCovariance() {
+
+        final int d = mDimensions;
+
+        double[] upper = accumulate(d*d, new AccumulatorFactory() {
+            @Override
+            public Accumulator newAccumulator(final double[] values) {
+                return new Accumulator() {
+
+                    final double[][] rows = new double[COVARIANCE_ROWS_PER_UPDATE][d];
+                    int rowCount;
+
+                    @Override
+                    public void add(double[] coords) {
+                        transform(coords, rows[rowCount++]);
+                        if (rowCount == rows.length) {
+                            finish();
+                        }
+                    }
+
+                    @Override
+                    public void finish() {
+                        // Only the upper triangle is accumulated.
+                        for (int i=0; i<d; i++) {
+                            int offset = i*d;
+                            for (int r=0; r<rowCount; r++) {
+                                double[] row = rows[r];
+                                double xi = row[i];
+                                if (xi != 0.0) {
+                                    for (int j=i; j<d; j++) {
+                                        values[offset + j] += xi * row[j];
+                                    }
+                                }
+                            }
+                        }
+                        rowCount = 0;
+                    }
+                };
+            }
+        });
+
+        double n = mCoordCount;
+        double[][] cov = new double[d][d];
+        for (int i=0; i<d; i++) {
+            for (int j=i; j<d; j++) {
+                double v = upper[i*d + j]/n;
+                cov[i][j] = v;
+                cov[j][i] = v;
+            }
+        }
+
+        EigenDecomposition ed = new EigenDecomposition(new Array2DRowRealMatrix(cov, false), 0.0);
+
+        setComponents(ed, null);
+    }
+
+    private void computeRandomized(int l) {
+
+        int d = mDimensions;
+        Random random = new XoroshiroRandom(mSeed);
+
+        double[] basis = new double[d*l];
+        for (int i=0; i<basis.length; i++) {
+            basis[i] = random.nextGaussian();
+        }
+        orthonormalize(basis, d, l, random);
+
+        for (int iter=0; iter<mPowerIterations; iter++) {
+            basis = multiplyByCovariance(basis, l);
+            orthonormalize(basis, d, l, random);
+        }
+
+        // Rayleigh-Ritz: decompose the covariance projected onto the basis.
+        double[] product = multiplyByCovariance(basis, l);
+        double[][] small = new double[l][l];
+        for (int a=0; a<l; a++) {
+            for (int b=a; b<l; b++) {
+                double sum = 0.0;
+                for (int j=0; j<d; j++) {
+                    sum += basis[j*l + a] * product[j*l + b] + basis[j*l + b] * product[j*l + a];
+                }
+                small[a][b] = small[b][a] = 0.5*sum;
+            }
+        }
+
+        EigenDecomposition ed = new EigenDecomposition(new Array2DRowRealMatrix(small, false), 0.0);
+
+        setComponents(ed, basis);
+    }
+
+    // Returns the covariance times the d x l matrix q, both matrices being stored by rows.
+    private double[] multiplyByCovariance(final double[] q, final int l) {
+
+        final int d = mDimensions;
+
+        double[] product = accumulate(d*l, new AccumulatorFactory() {
+            @Override
+            public Accumulator newAccumulator(final double[] values) {
+                return new Accumulator() {
+
+                    final double[] x = new double[d];
+                    final double[] y = new double[l];
+
+                    @Override
+                    public void add(double[] coords) {
+                        transform(coords, x);
+                        Arrays.fill(y, 0.0);
+                        for (int j=0; j<d; j++) {
+                            double xj = x[j];
+                            if (xj != 0.0) {
+                                int offset = j*l;
+                                for (int c=0; c<l; c++) {
+                                    y[c] += xj * q[offset + c];
+                                }
+                            }
+                        }
+                        for (int j=0; j<d; j++) {
+                            double xj = x[j];
+                            if (xj != 0.0) {
+                                int offset = j*l;
+                                for (int c=0; c<l; c++) {
+                                    values[offset + c] += xj * y[c];
+                                }
+                            }
+                        }
+                    }
+                };
+            }
+        });
+
+        double n = mCoordCount;
+        for (int i=0; i<product.length; i++) {
+            product[i] /= n;
+        }
+
+        return product;
+    }
+
+    // Orthonormalizes the columns of the d x l matrix q, stored by rows, by modified
+    // Gram-Schmidt applied twice.  Columns that turn out to be dependent on the ones
+    // before them are replaced by random columns.
+    private static void orthonormalize(double[] q, int d, int l, Random random) {
+        for (int c=0; c<l; c++) {
+            int attempts = 0;
+            while (true) {
+                double original = columnNorm(q, d, l, c);
+                for (int pass=0; pass<2; pass++) {
+                    for (int p=0; p<c; p++) {
+                        double dot = 0.0;
+                        for (int j=0; j<d; j++) {
+                            dot += q[j*l + p] * q[j*l + c];
+                        }
+                        for (int j=0; j<d; j++) {
+                            q[j*l + c] -= dot * q[j*l + p];
+                        }
+                    }
+                }
+                double norm = columnNorm(q, d, l, c);
+                if (norm > 1.0e-10 * original && norm > 0.0) {
+                    for (int j=0; j<d; j++) {
+                        q[j*l + c] /= norm;
+                    }
+                    break;
+                }
+                if (++attempts > 10) {
+                    throw new IllegalStateException("could not orthonormalize basis");
+                }
+                for (int j=0; j<d; j++) {
+                    q[j*l + c] = random.nextGaussian();
+                }
+            }
+        }
+    }
+
+    private static double columnNorm(double[] q, int d, int l, int c) {
+        double sum = 0.0;
+        for (int j=0; j<d; j++) {
+            double v = q[j*l + c];
+            sum += v*v;
+        }
+        return Math.sqrt(sum);
+    }
+
+    // Sets the principal components and variances from the leading eigenvectors
+    // and eigenvalues of the decomposition.  If basis is not null, it's the d x l
+    // basis onto which the decomposed matrix was projected.
+    private void setComponents(EigenDecomposition ed, double[] basis) {
+
+        final double[] eigenvalues = ed.getRealEigenvalues();
+
+        Integer[] order = new Integer[eigenvalues.length];
+        for (int i=0; i<order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return Double.compare(eigenvalues[i2], eigenvalues[i1]);
+            }
+        });
+
+        int d = mDimensions;
+        int l = eigenvalues.length;
+        int k = mIndices;
+
+        mPrincipalComponents = new Array2DRowRealMatrix(d, k);
+        mVariance = new ArrayRealVector(k);
+
+        for (int c=0; c<k; c++) {
+            int e = order[c];
+            RealVector eigenVec = ed.getEigenvector(e);
+            for (int j=0; j<d; j++) {
+                double v;
+                if (basis == null) {
+                    v = eigenVec.getEntry(j);
+                } else {
+                    v = 0.0;
+                    for (int a=0; a<l; a++) {
+                        v += basis[j*l + a] * eigenVec.getEntry(a);
+                    }
+                }
+                mPrincipalComponents.setEntry(j, c, v);
+            }
+            mVariance.setEntry(c, Math.max(0.0, eigenvalues[e]));
+        }
+    }
+
+    // Makes a pass over the coordinates, returning the sum of the values of
+    // the accumulators for the ranges of coordinates.
+    private double[] accumulate(final int size, final AccumulatorFactory factory) {
+
+        final int n = mCoordCount;
+        final int d = mDimensions;
+
+        int workers = mNumWorkerThreads <= 0 ? TaskScheduler.getComputeParallelism() : mNumWorkerThreads;
+        workers = Math.max(1, Math.min(workers, n/MIN_COORDS_PER_THREAD));
+
+        List<Callable<double[]>> ranges = new ArrayList<Callable<double[]>>(workers);
+        for (int w=0; w<workers; w++) {
+            final int start = (int) ((long) w * n / workers);
+            final int end = (int) ((long) (w + 1) * n / workers);
+            ranges.add(new Callable<double[]>() {
+                @Override
+                public double[] call() {
+                    double[] values = new double[size];
+                    Accumulator acc = factory.newAccumulator(values);
+                    double[] coords = new double[d];
+                    for (int i=start; i<end; i++) {
+                        mData.getCoordinates(i, coords);
+                        acc.add(coords);
+                    }
+                    acc.finish();
+                    return values;
+                }
+            });
+        }
+
+        if (workers == 1) {
+            try {
+                return ranges.get(0).call();
+            } catch (RuntimeException re) {
+                throw re;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        double[] total = null;
+        ExecutorService threadPool = TaskScheduler.newComputeExecutor(workers);
+        try {
+            for (Future<double[]> future : threadPool.invokeAll(ranges)) {
+                double[] values = future.get();
+                if (total == null) {
+                    total = values;
+                } else {
+                    for (int i=0; i<size; i++) {
+                        total[i] += values[i];
+                    }
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted");
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            threadPool.shutdownNow();
+        }
+
+        return total;
+    }
+
+    // Accumulates values from the coordinates of one range into an array.
+    private static abstract class Accumulator {
+        public abstract void add(double[] coords);
+        public void finish() {}
+    }
+
+    private static interface AccumulatorFactory {
+        Accumulator newAccumulator(double[] values);
+    }
+
+    public static class Builder {
+
+        private StreamingPCA mPCA;
+
+        /**
+         * Starts building the analysis of the specified data.
+         *
+         * @param data the coordinates to analyze.
+         * @param indices the number of principal components to compute.
+         */
+        public Builder(CoordinateList data, int indices) {
+            mPCA = new StreamingPCA(data, indices);
+        }
+
+        public Builder covarianceType(PCA.CovarianceType covType) {
+            if (covType == null) {
+                throw new NullPointerException();
+            }
+            mPCA.mCovarianceType = covType;
+            return this;
+        }
+
+        public Builder center(boolean center) {
+            mPCA.mCenter = center;
+            return this;
+        }
+
+        public Builder method(Method method) {
+            if (method == null) {
+                throw new NullPointerException();
+            }
+            mPCA.mMethod = method;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads for the passes over the data.  If
+         * non-positive, the compute parallelism is used.
+         */
+        public Builder numWorkerThreads(int numWorkerThreads) {
+            mPCA.mNumWorkerThreads = numWorkerThreads;
+            return this;
+        }
+
+        public Builder oversampling(int oversampling) {
+            if (oversampling < 0) {
+                throw new IllegalArgumentException("oversampling < 0: " + oversampling);
+            }
+            mPCA.mOversampling = oversampling;
+            return this;
+        }
+
+        public Builder powerIterations(int powerIterations) {
+            if (powerIterations < 0) {
+                throw new IllegalArgumentException("powerIterations < 0: " + powerIterations);
+            }
+            mPCA.mPowerIterations = powerIterations;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            mPCA.mSeed = seed;
+            return this;
+        }
+
+        /**
+         * Performs the analysis, returning the result.
+         */
+        public StreamingPCA build() {
+            mPCA.compute();
+            return mPCA;
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package gov.pnnl.jac.projection;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
@@ -8,9 +13,85 @@ import org.apache.commons.math3.linear.RealVector;
 
 import gov.pnnl.jac.geom.CoordinateList;
 import gov.pnnl.jac.task.AbstractTask;
+import gov.pnnl.jac.task.TaskScheduler;
 
 public abstract class AbstractProjectionTask extends AbstractTask<ProjectionData> {
 
+    // Minimum number of coordinates projected by each thread.
+    private static final int MIN_COORDS_PER_THREAD = 4096;
+
+    /**
+     * Projects the coordinates onto the columns of the projection matrix,
+     * storing the projections in the projection data.  NaNs in the coordinates
+     * are taken to be zeros.  The coordinates are divided into contiguous ranges
+     * projected in parallel, but the results do not depend on the number of threads.
+     *
+     * @param coordList the coordinates, which must be safe for concurrent reading
+     *   if more than one thread is used.
+     * @param projMatrix a matrix with a row for every dimension of the coordinates 
+     *   and a column for every dimension of the projection.
+     * @param projData receives the projections.
+     * @param numWorkerThreads the maximum number of threads to use.  If non-positive, 
+     *   the compute parallelism is used.
+     * @throws Exception
+     */
+    protected static void project(final CoordinateList coordList, RealMatrix projMatrix,
+            final ProjectionData projData, int numWorkerThreads) throws Exception {
+
+        final int numCoords = coordList.getCoordinateCount();
+        final int numDim = coordList.getDimensionCount();
+        final int projectionDim = projMatrix.getColumnDimension();
+
+        // The columns of the matrix, copied once instead of for every coordinate.
+        final double[][] columns = new double[projectionDim][];
+        for (int j = 0; j < projectionDim; j++) {
+            columns[j] = projMatrix.getColumn(j);
+        }
+
+        int workers = numWorkerThreads <= 0 ? TaskScheduler.getComputeParallelism() : numWorkerThreads;
+        workers = Math.max(1, Math.min(workers, numCoords/MIN_COORDS_PER_THREAD));
+
+        List<Callable<Void>> ranges = new ArrayList<Callable<Void>>(workers);
+        for (int w = 0; w < workers; w++) {
+            final int start = (int) ((long) w * numCoords / workers);
+            final int end = (int) ((long) (w + 1) * numCoords / workers);
+            ranges.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    double[] coordBuf = new double[numDim];
+                    float[] projectionBuf = new float[projectionDim];
+                    for (int i = start; i < end; i++) {
+                        coordList.getCoordinates(i, coordBuf);
+                        for (int j = 0; j < projectionDim; j++) {
+                            double[] column = columns[j];
+                            double dot = 0.0;
+                            for (int k = 0; k < numDim; k++) {
+                                double d = coordBuf[k];
+                                dot += (Double.isNaN(d) ? 0.0 : d) * column[k];
+                            }
+                            projectionBuf[j] = (float) dot;
+                        }
+                        projData.setProjection(i, projectionBuf);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        if (workers == 1) {
+            ranges.get(0).call();
+        } else {
+            ExecutorService threadPool = TaskScheduler.newComputeExecutor(workers);
+            try {
+                for (Future<Void> future : threadPool.invokeAll(ranges)) {
+                    future.get();
+                }
+            } finally {
+                threadPool.shutdownNow();
+            }
+        }
+    }
+
     protected static RealMatrix computeMinMax(CoordinateList coordList) {
 
         int rows = coordList.getCoordinateCount();
@@ -0,0 +1,162 @@
+package gov.pnnl.jac.projection;
+
+import gov.pnnl.jac.geom.distance.DistanceFunc;
+import gov.pnnl.jac.geom.distance.EuclideanNoNaN;
+import gov.pnnl.jac.util.ExceptionUtil;
+
+/**
+ * <p>Encapsulates the parameters for a {@link LandmarkMDSProjectionTask}.</p>
+ */
+public class LandmarkMDSProjectionParams implements Cloneable {
+
+    public static final int DEFAULT_NUM_LANDMARKS = 50;
+
+    // The dimensionality of the projection.
+    private int mNumDimensions = 2;
+    // The number of landmarks to embed by classical MDS.
+    private int mNumLandmarks = DEFAULT_NUM_LANDMARKS;
+    // The number of worker threads for the passes over the coordinates.
+    // If -1, then select based on the compute parallelism.
+    private int mNumWorkerThreads = -1;
+    // Seeds the random choices of candidate landmarks.
+    private long mRandomSeed;
+    // The distance function.
+    private DistanceFunc mDistanceFunc;
+
+    public LandmarkMDSProjectionParams(int numDimensions,
+            int numLandmarks,
+            int numWorkerThreads,
+            long randomSeed,
+            DistanceFunc distanceFunc) {
+        if (numDimensions <= 0) {
+            throw new IllegalArgumentException("number of dimensions <= 0: " + numDimensions);
+        }
+        if (numLandmarks <= numDimensions) {
+            throw new IllegalArgumentException("number of landmarks must exceed the number of dimensions: " +
+                    numLandmarks);
+        }
+        if (distanceFunc == null) {
+            throw new NullPointerException();
+        }
+        mNumDimensions = numDimensions;
+        mNumLandmarks = numLandmarks;
+        mNumWorkerThreads = numWorkerThreads > 0 ? numWorkerThreads : -1;
+        mRandomSeed = randomSeed;
+        mDistanceFunc = distanceFunc;
+    }
+
+    public LandmarkMDSProjectionParams() {
+        this(2, DEFAULT_NUM_LANDMARKS, -1, System.currentTimeMillis(), new EuclideanNoNaN());
+    }
+
+    public int getNumDimensions() {
+        return mNumDimensions;
+    }
+
+    public int getNumLandmarks() {
+        return mNumLandmarks;
+    }
+
+    public int getNumWorkerThreads() {
+        return mNumWorkerThreads;
+    }
+
+    public void setNumWorkerThreads(int numWorkerThreads) {
+        mNumWorkerThreads = numWorkerThreads > 0 ? numWorkerThreads : -1;
+    }
+
+    public long getRandomSeed() {
+        return mRandomSeed;
+    }
+
+    public void setRandomSeed(long randomSeed) {
+        mRandomSeed = randomSeed;
+    }
+
+    public DistanceFunc getDistanceFunc() {
+        return mDistanceFunc;
+    }
+
+    public void setDistanceFunc(DistanceFunc distanceFunc) {
+        if (distanceFunc == null) throw new NullPointerException();
+        mDistanceFunc = distanceFunc;
+    }
+
+    public Object clone() {
+        try {
+            return super.clone();
+        } catch (CloneNotSupportedException cnse) {
+            throw new InternalError();
+        }
+    }
+
+    public int hashCode() {
+        int hc = mNumDimensions;
+        hc = 31 * hc + mNumLandmarks;
+        hc = 31 * hc + mNumWorkerThreads;
+        hc = 31 * hc + (int) (mRandomSeed ^ (mRandomSeed >>> 32));
+        hc = 31 * hc + mDistanceFunc.hashCode();
+        return hc;
+    }
+
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (o instanceof LandmarkMDSProjectionParams) {
+            LandmarkMDSProjectionParams other = (LandmarkMDSProjectionParams) o;
+            return this.mNumDimensions == other.mNumDimensions
+                    && this.mNumLandmarks == other.mNumLandmarks
+                    && this.mNumWorkerThreads == other.mNumWorkerThreads
+                    && this.mRandomSeed == other.mRandomSeed
+                    && this.mDistanceFunc.equals(other.mDistanceFunc);
+        }
+        return false;
+    }
+
+    public static class Builder {
+
+        private int mNumDimensions = 2;
+        private int mNumLandmarks = DEFAULT_NUM_LANDMARKS;
+        private int mNumWorkerThreads = -1;
+        private long mRandomSeed = System.currentTimeMillis();
+        private DistanceFunc mDistanceFunc;
+
+        public Builder() {}
+
+        public Builder numDimensions(int numDimensions) {
+            ExceptionUtil.checkPositive(numDimensions);
+            mNumDimensions = numDimensions;
+            return this;
+        }
+
+        public Builder numLandmarks(int numLandmarks) {
+            ExceptionUtil.checkPositive(numLandmarks);
+            mNumLandmarks = numLandmarks;
+            return this;
+        }
+
+        public Builder numWorkerThreads(int numWorkerThreads) {
+            mNumWorkerThreads = numWorkerThreads;
+            return this;
+        }
+
+        public Builder randomSeed(long randomSeed) {
+            mRandomSeed = randomSeed;
+            return this;
+        }
+
+        public Builder distanceFunc(DistanceFunc distanceFunc) {
+            ExceptionUtil.checkNotNull(distanceFunc);
+            mDistanceFunc = distanceFunc;
+            return this;
+        }
+
+        public LandmarkMDSProjectionParams build() {
+            if (mDistanceFunc == null) {
+                mDistanceFunc = new EuclideanNoNaN();
+            }
+            return new LandmarkMDSProjectionParams(mNumDimensions, mNumLandmarks,
+                    mNumWorkerThreads, mRandomSeed, mDistanceFunc);
+        }
+    }
+}
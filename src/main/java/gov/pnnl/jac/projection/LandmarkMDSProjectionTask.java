@@ -0,0 +1,346 @@
+package gov.pnnl.jac.projection;
+
+import gov.pnnl.jac.geom.CoordinateList;
+import gov.pnnl.jac.geom.distance.DistanceFunc;
+import gov.pnnl.jac.task.ProgressHandler;
+import gov.pnnl.jac.task.TaskScheduler;
+import gov.pnnl.jac.util.XoroshiroRandom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.EigenDecomposition;
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * <p>Projects coordinates by landmark multidimensional scaling, as described in
+ * "Sparse multidimensional scaling using landmark points", de Silva and Tenenbaum,
+ * 2004.  Full classical MDS needs the n x n matrix of distances, so it cannot be
+ * applied to more than a few thousand coordinates.  Landmark MDS embeds only a
+ * small number of landmarks by classical MDS, then places every coordinate by
+ * triangulation from its distances to the landmarks, which needs memory proportional
+ * to the number of landmarks and time proportional to n times the number of
+ * landmarks.  Since distances are computed only by the distance function,
+ * any <tt>DistanceFunc</tt> may be used.</p>
+ *
+ * <p>The landmarks are chosen by the MaxMin method, each being the candidate
+ * farthest from the landmarks already chosen, which spreads them over the data.
+ * To avoid a pass over all the coordinates for each landmark, the candidates are
+ * a stratified random sample of the coordinates.  The triangulation, the only pass
+ * over all the coordinates, is done in parallel on contiguous ranges of coordinates.</p>
+ *
+ * <p>As with the other projection tasks, the projections of the coordinates and of the
+ * landmarks are normalized together to [0 - 1] in every dimension, preserving their
+ * aspect ratio.</p>
+ */
+public class LandmarkMDSProjectionTask extends AbstractProjectionTask {
+
+    // The number of candidates from which each landmark is chosen.
+    private static final int CANDIDATES_PER_LANDMARK = 100;
+
+    // Minimum number of coordinates triangulated by each thread.
+    private static final int MIN_COORDS_PER_THREAD = 4096;
+
+    // How often the triangulation threads check for cancellation.
+    private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+    // The inputs.
+    private CoordinateList mCoordinates;
+    private LandmarkMDSProjectionParams mParams;
+
+    // The outputs or products of doTask().
+    private int[] mLandmarkIndices;
+    private ProjectionData mLandmarkProjection;
+    private ProjectionData mPointProjection;
+
+    public LandmarkMDSProjectionTask(CoordinateList coordinates,
+            LandmarkMDSProjectionParams params) {
+        if (coordinates == null || params == null) {
+            throw new NullPointerException();
+        }
+        mCoordinates = coordinates;
+        mParams = params;
+    }
+
+    public LandmarkMDSProjectionTask(CoordinateList coordinates) {
+        this(coordinates, new LandmarkMDSProjectionParams());
+    }
+
+    public String taskName() {
+        return "landmark MDS projection";
+    }
+
+    /**
+     * Returns the indices of the coordinates chosen as landmarks.
+     * @return
+     */
+    public int[] getLandmarkIndices() {
+        return mLandmarkIndices != null ? (int[]) mLandmarkIndices.clone() : null;
+    }
+
+    /**
+     * Returns the projection of the landmarks, in the order of the indices returned
+     * by <tt>getLandmarkIndices()</tt>.
+     * @return
+     */
+    public ProjectionData getLandmarkProjection() {
+        return mLandmarkProjection;
+    }
+
+    public ProjectionData getPointProjection() {
+        return mPointProjection;
+    }
+
+    protected ProjectionData doTask() throws Exception {
+
+        ProgressHandler ph = new ProgressHandler(this, 4);
+        ph.postBegin();
+
+        int numCoords = mCoordinates.getCoordinateCount();
+        int numDim = mCoordinates.getDimensionCount();
+        int projectionDim = mParams.getNumDimensions();
+        DistanceFunc distFunc = mParams.getDistanceFunc();
+
+        if (numCoords <= projectionDim) {
+            error("the number of coordinates must exceed the number of dimensions: " + numCoords);
+        }
+
+        // Choose the landmarks and compute their squared distances.
+        int[] landmarks = chooseLandmarks(distFunc);
+        int numLandmarks = landmarks.length;
+        if (numLandmarks <= projectionDim) {
+            error("only " + numLandmarks + " distinct landmarks could be found");
+        }
+
+        double[][] landmarkCoords = new double[numLandmarks][numDim];
+        for (int i = 0; i < numLandmarks; i++) {
+            mCoordinates.getCoordinates(landmarks[i], landmarkCoords[i]);
+        }
+
+        double[][] sqDist = new double[numLandmarks][numLandmarks];
+        for (int i = 0; i < numLandmarks; i++) {
+            for (int j = i + 1; j < numLandmarks; j++) {
+                double d = distFunc.distanceBetween(landmarkCoords[i], landmarkCoords[j]);
+                sqDist[i][j] = sqDist[j][i] = d * d;
+            }
+        }
+
+        ph.postStep();
+        checkForCancel();
+
+        // Classical MDS of the landmarks: the embedding comes from the leading eigenvectors
+        // of the double-centered matrix of squared distances.
+        double[] meanSqDist = new double[numLandmarks];
+        double grandMean = 0.0;
+        for (int i = 0; i < numLandmarks; i++) {
+            double sum = 0.0;
+            for (int j = 0; j < numLandmarks; j++) {
+                sum += sqDist[i][j];
+            }
+            meanSqDist[i] = sum / numLandmarks;
+            grandMean += meanSqDist[i];
+        }
+        grandMean /= numLandmarks;
+
+        double[][] b = new double[numLandmarks][numLandmarks];
+        for (int i = 0; i < numLandmarks; i++) {
+            for (int j = 0; j < numLandmarks; j++) {
+                b[i][j] = -0.5 * (sqDist[i][j] - meanSqDist[i] - meanSqDist[j] + grandMean);
+            }
+        }
+
+        EigenDecomposition ed = new EigenDecomposition(new Array2DRowRealMatrix(b, false), 0.0);
+        final double[] eigenvalues = ed.getRealEigenvalues();
+        Integer[] order = new Integer[eigenvalues.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return Double.compare(eigenvalues[i2], eigenvalues[i1]);
+            }
+        });
+
+        // Landmark embedding, and the pseudoinverse of its transpose used for triangulation.
+        // Dimensions without positive eigenvalues are left at 0.
+        double eigenTolerance = 1.0e-10 * Math.max(eigenvalues[order[0]], 0.0);
+        float[][] landmarkProj = new float[numLandmarks][projectionDim];
+        final double[][] pseudoInverse = new double[projectionDim][numLandmarks];
+        for (int c = 0; c < projectionDim; c++) {
+            double lambda = eigenvalues[order[c]];
+            if (lambda > eigenTolerance) {
+                RealVector v = ed.getEigenvector(order[c]);
+                double sqrtLambda = Math.sqrt(lambda);
+                for (int i = 0; i < numLandmarks; i++) {
+                    landmarkProj[i][c] = (float) (v.getEntry(i) * sqrtLambda);
+                    pseudoInverse[c][i] = v.getEntry(i) / sqrtLambda;
+                }
+            }
+        }
+
+        ph.postStep();
+        checkForCancel();
+
+        // Generate the projection data.  Have to pass in minAllowed and maxAllowed
+        // with extreme values, since they default to restricting values to [0 - 1].
+        float[] minAllowed = new float[projectionDim];
+        float[] maxAllowed = new float[projectionDim];
+        Arrays.fill(minAllowed, -Float.MAX_VALUE);
+        Arrays.fill(maxAllowed, Float.MAX_VALUE);
+
+        SimpleProjectionData landmarkProjection = new SimpleProjectionData(
+                numLandmarks, projectionDim, minAllowed, maxAllowed);
+        for (int i = 0; i < numLandmarks; i++) {
+            landmarkProjection.setProjection(i, landmarkProj[i]);
+        }
+
+        SimpleProjectionData pointProjection = new SimpleProjectionData(
+                numCoords, projectionDim, minAllowed, maxAllowed);
+
+        triangulate(landmarkCoords, meanSqDist, pseudoInverse, pointProjection);
+
+        checkForCancel();
+        ph.postStep();
+
+        // Do the final normalization.
+        normalizeGlobally(landmarkProjection, pointProjection);
+        ph.postStep();
+
+        mLandmarkIndices = landmarks;
+        mLandmarkProjection = landmarkProjection;
+        mPointProjection = pointProjection;
+
+        ph.postEnd();
+
+        return mPointProjection;
+    }
+
+    // Chooses the landmarks by MaxMin from a stratified random sample of the coordinates.
+    // Fewer than the requested number are returned if the candidates run out of distinct
+    // coordinates.
+    private int[] chooseLandmarks(DistanceFunc distFunc) {
+
+        int numCoords = mCoordinates.getCoordinateCount();
+        int numDim = mCoordinates.getDimensionCount();
+        int numLandmarks = Math.min(mParams.getNumLandmarks(), numCoords);
+
+        Random random = new XoroshiroRandom(mParams.getRandomSeed());
+
+        int numCandidates = (int) Math.min(numCoords, (long) numLandmarks * CANDIDATES_PER_LANDMARK);
+        int[] candidates = new int[numCandidates];
+        for (int c = 0; c < numCandidates; c++) {
+            int lo = (int) ((long) c * numCoords / numCandidates);
+            int hi = (int) ((long) (c + 1) * numCoords / numCandidates);
+            candidates[c] = lo + random.nextInt(hi - lo);
+        }
+
+        double[][] candidateCoords = new double[numCandidates][numDim];
+        for (int c = 0; c < numCandidates; c++) {
+            mCoordinates.getCoordinates(candidates[c], candidateCoords[c]);
+        }
+
+        // Distance from each candidate to the nearest landmark chosen so far.
+        double[] minDist = new double[numCandidates];
+        Arrays.fill(minDist, Double.POSITIVE_INFINITY);
+
+        int[] landmarks = new int[numLandmarks];
+        int count = 0;
+        int next = random.nextInt(numCandidates);
+
+        while (count < numLandmarks) {
+            landmarks[count++] = candidates[next];
+            double[] landmark = candidateCoords[next];
+            int farthest = -1;
+            double farthestDist = 0.0;
+            for (int c = 0; c < numCandidates; c++) {
+                double d = distFunc.distanceBetween(landmark, candidateCoords[c]);
+                if (d < minDist[c]) {
+                    minDist[c] = d;
+                }
+                if (minDist[c] > farthestDist) {
+                    farthestDist = minDist[c];
+                    farthest = c;
+                }
+            }
+            if (farthest < 0) {
+                // Every candidate coincides with a landmark.
+                break;
+            }
+            next = farthest;
+        }
+
+        return count < numLandmarks ? Arrays.copyOf(landmarks, count) : landmarks;
+    }
+
+    // Places every coordinate from its squared distances to the landmarks, which is done in
+    // parallel on contiguous ranges of coordinates.
+    private void triangulate(final double[][] landmarkCoords, final double[] meanSqDist,
+            final double[][] pseudoInverse, final ProjectionData pointProjection) throws Exception {
+
+        final int numCoords = mCoordinates.getCoordinateCount();
+        final int numDim = mCoordinates.getDimensionCount();
+        final int numLandmarks = landmarkCoords.length;
+        final int projectionDim = pseudoInverse.length;
+
+        int workers = mParams.getNumWorkerThreads() <= 0 ?
+                TaskScheduler.getComputeParallelism() : mParams.getNumWorkerThreads();
+        workers = Math.max(1, Math.min(workers, numCoords/MIN_COORDS_PER_THREAD));
+
+        List<Callable<Void>> ranges = new ArrayList<Callable<Void>>(workers);
+        for (int w = 0; w < workers; w++) {
+            final int start = (int) ((long) w * numCoords / workers);
+            final int end = (int) ((long) (w + 1) * numCoords / workers);
+            // Distance functions are not assumed to be thread-safe.
+            final DistanceFunc distFunc = mParams.getDistanceFunc().clone();
+            ranges.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    double[] coords = new double[numDim];
+                    double[] sqDistDiffs = new double[numLandmarks];
+                    float[] projectionBuf = new float[projectionDim];
+                    for (int i = start; i < end; i++) {
+                        if ((i - start) % CANCEL_CHECK_INTERVAL == 0 && isCancelled()) {
+                            return null;
+                        }
+                        mCoordinates.getCoordinates(i, coords);
+                        for (int j = 0; j < numLandmarks; j++) {
+                            double d = distFunc.distanceBetween(coords, landmarkCoords[j]);
+                            sqDistDiffs[j] = d * d - meanSqDist[j];
+                        }
+                        for (int c = 0; c < projectionDim; c++) {
+                            double[] row = pseudoInverse[c];
+                            double sum = 0.0;
+                            for (int j = 0; j < numLandmarks; j++) {
+                                sum += row[j] * sqDistDiffs[j];
+                            }
+                            projectionBuf[c] = (float) (-0.5 * sum);
+                        }
+                        pointProjection.setProjection(i, projectionBuf);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        if (workers == 1) {
+            ranges.get(0).call();
+        } else {
+            ExecutorService threadPool = TaskScheduler.newComputeExecutor(workers);
+            try {
+                for (Future<Void> future : threadPool.invokeAll(ranges)) {
+                    future.get();
+                }
+            } finally {
+                threadPool.shutdownNow();
+            }
+        }
+    }
+}
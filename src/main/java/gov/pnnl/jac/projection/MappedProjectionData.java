@@ -0,0 +1,459 @@
+package gov.pnnl.jac.projection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * <p>A <tt>ProjectionData</tt> whose projections are stored in a file mapped
+ * into memory rather than on the heap, so it can hold more projections than
+ * would fit in memory.  The file has the format written by
+ * <tt>ProjectionDataSerializer.save()</tt>, so files saved by the serializer
+ * are opened by mapping them, without reading or copying any projections, and
+ * files created by this class can be loaded by the serializer.  The file is mapped
+ * in chunks of at most 1GB, each holding a power-of-two number of projections.</p>
+ *
+ * <p>The minimum and maximum of each dimension are cached.  They are found by
+ * one pass over the projections the first time either is asked for, then kept
+ * up to date by <tt>setProjection()</tt>: a value beyond the cached minimum or
+ * maximum replaces it, and overwriting the value equal to the minimum or maximum
+ * invalidates the cache, so it is recomputed when next needed.  Projections may
+ * be set from multiple threads at once, provided they are distinct, but the
+ * minimum and maximum should not be asked for until the threads have finished.</p>
+ *
+ * <p>Instances opened read-only throw <tt>ReadOnlyBufferException</tt> from
+ * the methods which modify them.</p>
+ */
+public class MappedProjectionData implements ProjectionData {
+
+    // The format version written by ProjectionDataSerializer.
+    private static final int SERIAL_VERSION = 1;
+
+    // Length of the header before the allowed values.
+    private static final int HEADER_FIXED_LEN = 12;
+
+    // Maximum number of bytes of projections in a chunk.
+    private static final long MAX_CHUNK_BYTES = 1L << 30;
+
+    private int mProjectionCount;
+    private int mDimensionCount;
+
+    private FileChannel.MapMode mMapMode;
+
+    // The header, holding the counts and the allowed values.
+    private MappedByteBuffer mHeader;
+    // The chunks of projections, chunk i holding those with indices
+    // (i << mChunkShift) up to but not including ((i + 1) << mChunkShift).
+    private FloatBuffer[] mChunks;
+    private MappedByteBuffer[] mMappedChunks;
+    private int mChunkShift;
+    private int mChunkMask;
+
+    private float[] mMinAllowed, mMaxAllowed;
+
+    // Cached actual minimums and maximums, only meaningful if mExtremaValid.
+    private float[] mMin, mMax;
+    private volatile boolean mExtremaValid;
+
+    private MappedProjectionData(int projectionCount, int dimensionCount) {
+        mProjectionCount = projectionCount;
+        mDimensionCount = dimensionCount;
+        mMin = new float[dimensionCount];
+        mMax = new float[dimensionCount];
+    }
+
+    /**
+     * Creates projection data stored in the specified file, which is replaced
+     * if it exists.  The projections are initially 0.
+     *
+     * @param projectionCount
+     * @param dimensionCount
+     * @param minAllowed the minimum allowed values.  If null, <tt>-Float.MAX_VALUE</tt> is used.
+     * @param maxAllowed the maximum allowed values.  If null, <tt>Float.MAX_VALUE</tt> is used.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static MappedProjectionData create(int projectionCount, int dimensionCount,
+            float[] minAllowed, float[] maxAllowed, File file) throws IOException {
+        if (projectionCount < 0) {
+            throw new IllegalArgumentException("negative projectionCount: " + projectionCount);
+        }
+        if (dimensionCount <= 0) {
+            throw new IllegalArgumentException("dimensionCount not positive: " + dimensionCount);
+        }
+        MappedProjectionData pd = new MappedProjectionData(projectionCount, dimensionCount);
+        pd.mMinAllowed = new float[dimensionCount];
+        pd.mMaxAllowed = new float[dimensionCount];
+        if (minAllowed != null) {
+            pd.checkProjectionBuffer(minAllowed);
+            System.arraycopy(minAllowed, 0, pd.mMinAllowed, 0, dimensionCount);
+        } else {
+            Arrays.fill(pd.mMinAllowed, -Float.MAX_VALUE);
+        }
+        if (maxAllowed != null) {
+            pd.checkProjectionBuffer(maxAllowed);
+            System.arraycopy(maxAllowed, 0, pd.mMaxAllowed, 0, dimensionCount);
+        } else {
+            Arrays.fill(pd.mMaxAllowed, Float.MAX_VALUE);
+        }
+        pd.mapFile(file, FileChannel.MapMode.READ_WRITE, true);
+        return pd;
+    }
+
+    /**
+     * Opens read-only projection data saved by <tt>ProjectionDataSerializer</tt>
+     * or created by <tt>create()</tt>, by mapping the file into memory.
+     *
+     * @param file
+     * @return
+     * @throws IOException if an IO error occurs or the file is not a
+     *   projection data file.
+     */
+    public static MappedProjectionData open(File file) throws IOException {
+        return open(file, false);
+    }
+
+    /**
+     * Opens projection data saved by <tt>ProjectionDataSerializer</tt>
+     * or created by <tt>create()</tt>, by mapping the file into memory.  If
+     * writable is true, changes are written through to the file.
+     *
+     * @param file
+     * @param writable
+     * @return
+     * @throws IOException if an IO error occurs or the file is not a
+     *   projection data file.
+     */
+    public static MappedProjectionData open(File file, boolean writable) throws IOException {
+        return open(file, writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY);
+    }
+
+    // Opens the file with the specified mapping mode.  With MapMode.PRIVATE, the
+    // projection data may be modified without changing the file.
+    static MappedProjectionData open(File file, FileChannel.MapMode mode) throws IOException {
+        ByteBuffer fixed = ByteBuffer.allocate(HEADER_FIXED_LEN);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            while (fixed.hasRemaining()) {
+                if (channel.read(fixed, fixed.position()) < 0) {
+                    throw new IOException("not a projection data file: " + file);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        int version = fixed.getInt(0);
+        if (version != SERIAL_VERSION) {
+            throw new IOException("unrecognized serial version: " + version);
+        }
+        int projectionCount = fixed.getInt(4);
+        int dimensionCount = fixed.getInt(8);
+        if (projectionCount < 0 || dimensionCount <= 0) {
+            throw new IOException("invalid projection data: " + projectionCount +
+                    " projections of " + dimensionCount + " dimensions");
+        }
+        if (file.length() < dataOffset(dimensionCount) + 4L * projectionCount * dimensionCount) {
+            throw new IOException("projection data file is truncated: " + file);
+        }
+        MappedProjectionData pd = new MappedProjectionData(projectionCount, dimensionCount);
+        pd.mapFile(file, mode, false);
+        return pd;
+    }
+
+    private static long dataOffset(int dimensionCount) {
+        return HEADER_FIXED_LEN + 8L * dimensionCount;
+    }
+
+    // Maps the file, first replacing it with one of the proper length and writing
+    // the header if replace is true.  Otherwise, the allowed values are read from
+    // the header.
+    private void mapFile(File file, FileChannel.MapMode mode, boolean replace) throws IOException {
+
+        int dim = mDimensionCount;
+        long dataOffset = dataOffset(dim);
+        long bytesPerProjection = 4L * dim;
+
+        // The largest power of 2 projections fitting in a chunk.
+        int shift = 0;
+        while (shift < 30 && (bytesPerProjection << (shift + 1)) <= MAX_CHUNK_BYTES) {
+            shift++;
+        }
+        int chunkCount = (int) (((long) mProjectionCount + (1L << shift) - 1) >>> shift);
+
+        mMapMode = mode;
+        boolean readOnly = mode == FileChannel.MapMode.READ_ONLY;
+        RandomAccessFile raf = new RandomAccessFile(file, readOnly ? "r" : "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (replace) {
+                raf.setLength(0L);
+                raf.setLength(dataOffset + bytesPerProjection * mProjectionCount);
+            }
+            mHeader = channel.map(mode, 0L, dataOffset);
+            mChunks = new FloatBuffer[chunkCount];
+            mMappedChunks = new MappedByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                long first = (long) i << shift;
+                long count = Math.min(1L << shift, mProjectionCount - first);
+                mMappedChunks[i] = channel.map(mode, dataOffset + first * bytesPerProjection,
+                        count * bytesPerProjection);
+                // The serializer's format is big-endian, the default order.
+                mChunks[i] = mMappedChunks[i].asFloatBuffer();
+            }
+        } finally {
+            raf.close();
+        }
+        mChunkShift = shift;
+        mChunkMask = (1 << shift) - 1;
+
+        if (replace) {
+            mHeader.putInt(0, SERIAL_VERSION);
+            mHeader.putInt(4, mProjectionCount);
+            mHeader.putInt(8, dim);
+            for (int d = 0; d < dim; d++) {
+                writeAllowed(d);
+            }
+            // All projections are 0.
+            Arrays.fill(mMin, 0f);
+            Arrays.fill(mMax, 0f);
+            mExtremaValid = true;
+        } else {
+            mMinAllowed = new float[dim];
+            mMaxAllowed = new float[dim];
+            for (int d = 0; d < dim; d++) {
+                mMinAllowed[d] = mHeader.getFloat(HEADER_FIXED_LEN + 8 * d);
+                mMaxAllowed[d] = mHeader.getFloat(HEADER_FIXED_LEN + 8 * d + 4);
+            }
+        }
+    }
+
+    private void writeAllowed(int dimension) {
+        mHeader.putFloat(HEADER_FIXED_LEN + 8 * dimension, mMinAllowed[dimension]);
+        mHeader.putFloat(HEADER_FIXED_LEN + 8 * dimension + 4, mMaxAllowed[dimension]);
+    }
+
+    /**
+     * Forces any changes out to the storage device, if the data were
+     * created or opened writable.  Otherwise, does nothing.
+     */
+    public void force() {
+        if (mMapMode == FileChannel.MapMode.READ_WRITE) {
+            mHeader.force();
+            for (MappedByteBuffer chunk : mMappedChunks) {
+                chunk.force();
+            }
+        }
+    }
+
+    private void checkIndex(int ndx) {
+        if (ndx < 0 || ndx >= mProjectionCount) {
+            throw new IndexOutOfBoundsException("ndx out of bounds: " + ndx);
+        }
+    }
+
+    private void checkDimension(int dimension) {
+        if (dimension < 0 || dimension >= mDimensionCount) {
+            throw new IndexOutOfBoundsException("dimension out of bounds: " + dimension);
+        }
+    }
+
+    private void checkProjectionBuffer(float[] projection) {
+        if (projection.length != mDimensionCount) {
+            throw new IllegalArgumentException("incorrect number of dimensions: " +
+                    projection.length + " != " + mDimensionCount);
+        }
+    }
+
+    public int getProjectionCount() {
+        return mProjectionCount;
+    }
+
+    public int getDimensionCount() {
+        return mDimensionCount;
+    }
+
+    public float getMinAllowed(int dimension) {
+        return mMinAllowed[dimension];
+    }
+
+    public float getMaxAllowed(int dimension) {
+        return mMaxAllowed[dimension];
+    }
+
+    public void setMinAllowed(int dimension, float value) {
+        checkDimension(dimension);
+        if (mHeader.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        mMinAllowed[dimension] = value;
+        writeAllowed(dimension);
+    }
+
+    public void setMaxAllowed(int dimension, float value) {
+        checkDimension(dimension);
+        if (mHeader.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        mMaxAllowed[dimension] = value;
+        writeAllowed(dimension);
+    }
+
+    /**
+     * Get the minimum actual value for a projection in the specified
+     * dimension, or the maximum allowed value if it's smaller, as
+     * <tt>SimpleProjectionData</tt> does.
+     */
+    public float getMin(int dimension) {
+        checkDimension(dimension);
+        ensureExtrema();
+        return Math.min(mMin[dimension], getMaxAllowed(dimension));
+    }
+
+    /**
+     * Get the maximum actual value for a projection in the specified
+     * dimension, or the minimum allowed value if it's larger, as
+     * <tt>SimpleProjectionData</tt> does.
+     */
+    public float getMax(int dimension) {
+        checkDimension(dimension);
+        ensureExtrema();
+        return Math.max(mMax[dimension], getMinAllowed(dimension));
+    }
+
+    private void ensureExtrema() {
+        if (!mExtremaValid) {
+            synchronized (this) {
+                if (!mExtremaValid) {
+                    computeExtrema();
+                }
+            }
+        }
+    }
+
+    // Scans all the projections for the extrema of every dimension.
+    private void computeExtrema() {
+        final int dim = mDimensionCount;
+        float[] min = new float[dim];
+        float[] max = new float[dim];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        for (FloatBuffer chunk : mChunks) {
+            int len = chunk.limit();
+            for (int i = 0; i < len; i += dim) {
+                for (int d = 0; d < dim; d++) {
+                    float value = chunk.get(i + d);
+                    if (value < min[d]) {
+                        min[d] = value;
+                    }
+                    if (value > max[d]) {
+                        max[d] = value;
+                    }
+                }
+            }
+        }
+        System.arraycopy(min, 0, mMin, 0, dim);
+        System.arraycopy(max, 0, mMax, 0, dim);
+        mExtremaValid = true;
+    }
+
+    // Updates the cached extrema for a value replacing another.
+    private void updateExtrema(int dimension, float oldValue, float newValue) {
+        if (!mExtremaValid) {
+            return;
+        }
+        if ((oldValue == mMin[dimension] && newValue > oldValue) ||
+                (oldValue == mMax[dimension] && newValue < oldValue)) {
+            // The old value may have been the only one at the extreme.
+            mExtremaValid = false;
+            return;
+        }
+        if (newValue < mMin[dimension] || newValue > mMax[dimension]) {
+            synchronized (this) {
+                if (newValue < mMin[dimension]) {
+                    mMin[dimension] = newValue;
+                }
+                if (newValue > mMax[dimension]) {
+                    mMax[dimension] = newValue;
+                }
+            }
+        }
+    }
+
+    public void setProjection(int ndx, float[] projection) {
+        checkIndex(ndx);
+        checkProjectionBuffer(projection);
+        FloatBuffer chunk = mChunks[ndx >>> mChunkShift];
+        int offset = (ndx & mChunkMask) * mDimensionCount;
+        for (int d = 0; d < mDimensionCount; d++) {
+            float value = projection[d];
+            float oldValue = chunk.get(offset + d);
+            chunk.put(offset + d, value);
+            updateExtrema(d, oldValue, value);
+        }
+    }
+
+    public void setProjection(int ndx, int dimension, float projection) {
+        checkIndex(ndx);
+        checkDimension(dimension);
+        FloatBuffer chunk = mChunks[ndx >>> mChunkShift];
+        int offset = (ndx & mChunkMask) * mDimensionCount + dimension;
+        float oldValue = chunk.get(offset);
+        chunk.put(offset, projection);
+        updateExtrema(dimension, oldValue, projection);
+    }
+
+    public float[] getProjection(int ndx, float[] projection) {
+        checkIndex(ndx);
+        float[] rtn = projection;
+        if (rtn == null || rtn.length < mDimensionCount) {
+            rtn = new float[mDimensionCount];
+        }
+        FloatBuffer chunk = mChunks[ndx >>> mChunkShift];
+        int offset = (ndx & mChunkMask) * mDimensionCount;
+        for (int d = 0; d < mDimensionCount; d++) {
+            rtn[d] = chunk.get(offset + d);
+        }
+        return rtn;
+    }
+
+    public float getProjection(int ndx, int dimension) {
+        checkIndex(ndx);
+        checkDimension(dimension);
+        return mChunks[ndx >>> mChunkShift].get((ndx & mChunkMask) * mDimensionCount + dimension);
+    }
+
+    public void normalize() {
+        float[] mins = new float[mDimensionCount];
+        float[] spreads = new float[mDimensionCount];
+        for (int i=0; i<mDimensionCount; i++) {
+            mins[i] = getMin(i);
+            spreads[i] = getMax(i) - mins[i];
+        }
+        float[] projBuffer = new float[mDimensionCount];
+        for (int i=0; i<mProjectionCount; i++) {
+            getProjection(i, projBuffer);
+            for (int d=0; d<mDimensionCount; d++) {
+                float spread = spreads[d];
+                if (spread > 0f) {
+                    projBuffer[d] = (projBuffer[d] - mins[d])/spread;
+                } else {
+                    projBuffer[d] = 0.5f;
+                }
+            }
+            setProjection(i, projBuffer);
+        }
+        for (int d=0; d<mDimensionCount; d++) {
+            mMinAllowed[d] = 0f;
+            mMaxAllowed[d] = 1f;
+            writeAllowed(d);
+        }
+    }
+}
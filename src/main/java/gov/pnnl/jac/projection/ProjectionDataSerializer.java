@@ -1,6 +1,11 @@
 package gov.pnnl.jac.projection;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 /**
  * Contains utility methods for serialization and deserialization of
@@ -13,29 +18,75 @@ public final class ProjectionDataSerializer {
 
     private static final int SERIAL_VERSION = 1;
     
+    // Size of the buffer used for writing files.
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    
     private ProjectionDataSerializer() {}
     
     /**
      * Saves the given projection information to a file
-     * in binary format.
+     * in binary format.  The data is written to a temporary file in the same
+     * directory, which then replaces the file, so a file that is mapped,
+     * possibly by <code>pd</code> itself, is never truncated.
      * 
      * @param pd
      * @param file
      * @throws IOException
      */
     public static void save(ProjectionData pd, File file) throws IOException {
-        DataOutputStream dos = null;
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmpFile = File.createTempFile("pdata", ".tmp", dir);
+        boolean ok = false;
+        try {
+            write(pd, tmpFile);
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), 
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), file.toPath(), 
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            ok = true;
+        } finally {
+            if (!ok) {
+                tmpFile.delete();
+            }
+        }
+    }
+    
+    private static void write(ProjectionData pd, File file) throws IOException {
+        // Written through a channel from a buffer of floats, rather than
+        // through a DataOutputStream one float at a time.
+        FileOutputStream fos = new FileOutputStream(file);
         try {
-            dos = new DataOutputStream(new BufferedOutputStream(
-                    new FileOutputStream(file)));
-            save(pd, dos);
-            dos.flush();
-            dos.close();
-            dos = null;
+            FileChannel channel = fos.getChannel();
+            int projCount = pd.getProjectionCount();
+            int dim = pd.getDimensionCount();
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(WRITE_BUFFER_SIZE, 12 + 8*dim));
+            buffer.putInt(SERIAL_VERSION);
+            buffer.putInt(projCount);
+            buffer.putInt(dim);
+            for (int i=0; i<dim; i++) {
+                buffer.putFloat(pd.getMinAllowed(i));
+                buffer.putFloat(pd.getMaxAllowed(i));
+            }
+            float[] projection = new float[dim];
+            for (int i=0; i<projCount; i++) {
+                if (buffer.remaining() < 4*dim) {
+                    writeFully(channel, buffer);
+                }
+                pd.getProjection(i, projection);
+                for (int j=0; j<dim; j++) {
+                    buffer.putFloat(projection[j]);
+                }
+            }
+            writeFully(channel, buffer);
+            fos.close();
+            fos = null;
         } finally {
-            if (dos != null) {
+            if (fos != null) {
                 try {
-                    dos.close();
+                    fos.close();
                 } catch (IOException e) {
                     // Ignore -- don't want to mask the other problem.
                 }
@@ -43,6 +94,14 @@ public final class ProjectionDataSerializer {
         }
     }
     
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
     /**
      * Saves the projection data to the given data output in binary
      * format.
@@ -98,6 +157,22 @@ public final class ProjectionDataSerializer {
         }
     }
 
+    /**
+     * Like <code>load(File)</code>, but maps the file into memory instead of 
+     * reading it onto the heap, for files too large to read.  The mapping is 
+     * private, so the data may be modified without changing the file, as with 
+     * data read onto the heap.  It may be saved back to the same file with 
+     * <code>save()</code>, which replaces the file rather than overwriting it.
+     * 
+     * @param file
+     * @return
+     * @throws IOException if an IO error occurs or the file is not a 
+     *   projection data file.  Private mapping requires the file to be writable.
+     */
+    public static MappedProjectionData loadMapped(File file) throws IOException {
+        return MappedProjectionData.open(file, FileChannel.MapMode.PRIVATE);
+    }
+
     /**
      * Instantiates a projection data object from binary data
      * read from the given input.
@@ -118,10 +193,6 @@ public final class ProjectionDataSerializer {
                 maxAllowed[i] = in.readFloat();
             }
             try {
-                // Currently only supports SimpleProjectionData.
-                // May need to threshold this and return a 
-                // different class that doesn't store all its data in memory
-                // if it exceeds the threshold.
                 SimpleProjectionData pd = new SimpleProjectionData(
                     projCount, dim, minAllowed, maxAllowed);
                 float[] buffer = new float[dim];
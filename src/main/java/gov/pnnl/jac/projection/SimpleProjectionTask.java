@@ -3,15 +3,14 @@ package gov.pnnl.jac.projection;
 import gov.pnnl.jac.geom.CoordinateList;
 import gov.pnnl.jac.geom.RealMatrixCoordinateList;
 import gov.pnnl.jac.math.linalg.PCA;
+import gov.pnnl.jac.math.linalg.StreamingPCA;
 import gov.pnnl.jac.task.ProgressHandler;
 import gov.pnnl.jac.util.ExceptionUtil;
 
 import java.util.Arrays;
 
-import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealMatrixChangingVisitor;
-import org.apache.commons.math3.linear.RealVector;
 
 public class SimpleProjectionTask extends AbstractProjectionTask {
 
@@ -19,9 +18,11 @@ public class SimpleProjectionTask extends AbstractProjectionTask {
     // The inputs.
     private CoordinateList mCoordinates;
     private RealMatrix mPCAMatrix;
+    private CoordinateList mPCACoordinates;
     private boolean mNormalizeDimensions;
     private boolean mNormalizeCoordinates;
     private int mDimensions;
+    private int mNumWorkerThreads = 1;
     
     // The outputs or products of doTask().
     private ProjectionData mProjection;
@@ -41,6 +42,38 @@ public class SimpleProjectionTask extends AbstractProjectionTask {
         mDimensions = dimensions;
     }
 
+    /**
+     * Constructor for computing the principal components from the coordinates 
+     * in a list, which may be the coordinates to be projected.  The components
+     * are computed by passes over the list with a {@link StreamingPCA}, so
+     * neither list is ever copied into a matrix.  As with a PCA matrix, the 
+     * coordinates are not centered for computing the components.
+     * 
+     * @param coordinates the coordinates to project.
+     * @param pcaCoordinates the coordinates from which to compute the principal
+     *   components.
+     * @param normalizeDimensions
+     * @param normalizeCoordinates
+     * @param dimensions
+     * @param numWorkerThreads the number of threads for computing the components
+     *   and the projections.  If non-positive, the compute parallelism is used.
+     */
+    public SimpleProjectionTask(CoordinateList coordinates, CoordinateList pcaCoordinates,
+            boolean normalizeDimensions,
+            boolean normalizeCoordinates,
+            int dimensions,
+            int numWorkerThreads) {
+        if (coordinates == null || pcaCoordinates == null) {
+            throw new NullPointerException();
+        }
+        mCoordinates = coordinates;
+        mPCACoordinates = pcaCoordinates;
+        mNormalizeDimensions = normalizeDimensions;
+        mNormalizeCoordinates = normalizeCoordinates;
+        mDimensions = dimensions;
+        mNumWorkerThreads = numWorkerThreads;
+    }
+
     public String taskName() {
         return "projection";
     }
@@ -53,6 +86,21 @@ public class SimpleProjectionTask extends AbstractProjectionTask {
         return mPCAProjection;
     }
 
+    /**
+     * Sets the number of threads used for computing the components from a list
+     * and for projecting the coordinates. If non-positive, 
+     * the compute parallelism is used.
+     * 
+     * @param numWorkerThreads
+     */
+    public void setNumWorkerThreads(int numWorkerThreads) {
+        mNumWorkerThreads = numWorkerThreads;
+    }
+    
+    public int getNumWorkerThreads() {
+        return mNumWorkerThreads;
+    }
+
     protected ProjectionData doTask() throws Exception {
 
         int steps = 4;
@@ -64,44 +112,53 @@ public class SimpleProjectionTask extends AbstractProjectionTask {
         ProgressHandler ph = new ProgressHandler(this, steps);
         ph.postBegin();
 
-        int numPCARows = mPCAMatrix.getRowDimension();
         int numCoords = mCoordinates.getCoordinateCount();
         int numDim = mCoordinates.getDimensionCount();
         int projectionDim = mDimensions;
         
         ExceptionUtil.checkInBounds(projectionDim, 1, numDim - 1);
 
-        RealMatrixChangingVisitor nanRemover = new RealMatrixChangingVisitor() {
+        CoordinateList pcaCoordinates = mPCACoordinates;
+        RealMatrix projMatrix = null;
+        
+        if (mPCAMatrix != null) {
+            
+            RealMatrixChangingVisitor nanRemover = new RealMatrixChangingVisitor() {
+
+                @Override
+                public void start(int rows, int columns, int startRow, int endRow,
+                        int startColumn, int endColumn) {
+                }
 
-            @Override
-            public void start(int rows, int columns, int startRow, int endRow,
-                    int startColumn, int endColumn) {
-            }
+                @Override
+                public double visit(int row, int column, double value) {
+                    if (Double.isNaN(value)) return 0.0;
+                    return value;
+                }
 
-            @Override
-            public double visit(int row, int column, double value) {
-                if (Double.isNaN(value)) return 0.0;
-                return value;
-            }
+                @Override
+                public double end() {
+                    return 0;
+                }
 
-            @Override
-            public double end() {
-                return 0;
-            }
+            };
+
+            // Eliminate NaNs, if any.
+            mPCAMatrix.walkInColumnOrder(nanRemover);
             
-        };
-        
-        // Eliminate NaNs, if any.
-        mPCAMatrix.walkInColumnOrder(nanRemover);
+            pcaCoordinates = new RealMatrixCoordinateList(mPCAMatrix);
+        }
         
         if (mNormalizeDimensions) {
             // Compute the mins and maxes.  This was originally done from the coordinates,
             // not the cluster centers, but Dave Gillen changed it to this to get
             // the result to more closely match IN-SPIRE's.
-            RealMatrix dimMinMax = computeMinMax(mPCAMatrix);
+            RealMatrix dimMinMax = mPCAMatrix != null ? computeMinMax(mPCAMatrix) : 
+                computeMinMax(pcaCoordinates);
             // Normalize the cluster centers.
-            normalizeDimensions(
-                    new RealMatrixCoordinateList(mPCAMatrix), dimMinMax);
+            if (pcaCoordinates != mCoordinates) {
+                normalizeDimensions(pcaCoordinates, dimMinMax);
+            }
             // Normalize the coordinates.  Since this changes the coordinates,
             // projection should be done on a COPY of the coordinates if the original coordinates
             // need to be preserved.            
@@ -110,8 +167,19 @@ public class SimpleProjectionTask extends AbstractProjectionTask {
         }
 
         // Compute the projection matrix.
-        PCA pca = new PCA(mPCAMatrix, PCA.CovarianceType.COVARIANCE, projectionDim);
-        RealMatrix projMatrix = pca.getPrincipalComponents();
+        if (mPCAMatrix != null) {
+            PCA pca = new PCA(mPCAMatrix, PCA.CovarianceType.COVARIANCE, projectionDim);
+            projMatrix = pca.getPrincipalComponents();
+        } else {
+            // Not centered, to give the same components as PCA.  The seed is fixed
+            // so that the randomized method gives the same projection every time.
+            StreamingPCA pca = new StreamingPCA.Builder(pcaCoordinates, projectionDim)
+                .center(false)
+                .numWorkerThreads(mNumWorkerThreads)
+                .seed(0L)
+                .build();
+            projMatrix = pca.getPrincipalComponents();
+        }
         
         standardizeOrientation(projMatrix);
 
@@ -125,41 +193,27 @@ public class SimpleProjectionTask extends AbstractProjectionTask {
         Arrays.fill(minAllowed, -Float.MAX_VALUE);
         Arrays.fill(maxAllowed, Float.MAX_VALUE);
 
-        // Compute the cluster projection.
-        SimpleProjectionData pcaProjection = new SimpleProjectionData(
-                numPCARows, projectionDim, minAllowed, maxAllowed);
-
-        final float[] projectionBuf = new float[projectionDim];
-
-        for (int i = 0; i < numPCARows; i++) {
-            RealVector centroid = mPCAMatrix.getRowVector(i);
-            for (int j = 0; j < projectionDim; j++) {
-                RealVector column = projMatrix.getColumnVector(j);
-                projectionBuf[j] = (float) centroid.dotProduct(column);
-            }
-            pcaProjection.setProjection(i, projectionBuf);
-        }
-
-        ph.postStep();
-
         // Compute the point projection.
         SimpleProjectionData pointProjection = new SimpleProjectionData(
                 numCoords, projectionDim, minAllowed, maxAllowed);
 
-        RealVector coordinate = new ArrayRealVector(numDim);
-        double[] coordBuf = new double[numDim];
+        project(mCoordinates, projMatrix, pointProjection, mNumWorkerThreads);
 
-        for (int i = 0; i < numCoords; i++) {
-            mCoordinates.getCoordinates(i, coordBuf);
-            for (int j=0; j<numDim; j++) {
-                double d = coordBuf[j];
-                coordinate.setEntry(j, Double.isNaN(d) ? 0.0 : d);
-            }
-            for (int j = 0; j < projectionDim; j++) {
-                RealVector column = projMatrix.getColumnVector(j);
-                projectionBuf[j] = (float) coordinate.dotProduct(column);
+        ph.postStep();
+
+        // Compute the PCA projection, copying the point projection if the 
+        // components came from the points.
+        int numPCARows = pcaCoordinates.getCoordinateCount();
+        SimpleProjectionData pcaProjection = new SimpleProjectionData(
+                numPCARows, projectionDim, minAllowed, maxAllowed);
+
+        if (pcaCoordinates == mCoordinates) {
+            float[] projectionBuf = new float[projectionDim];
+            for (int i = 0; i < numPCARows; i++) {
+                pcaProjection.setProjection(i, pointProjection.getProjection(i, projectionBuf));
             }
-            pointProjection.setProjection(i, projectionBuf);
+        } else {
+            project(pcaCoordinates, projMatrix, pcaProjection, mNumWorkerThreads);
         }
 
         ph.postStep();
@@ -2,6 +2,8 @@ package gov.pnnl.jac.task;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.swing.ProgressMonitor;
 import org.apache.log4j.Logger;
 
@@ -51,6 +53,12 @@ public abstract class AbstractTask<V> implements Task<V> {
         
         // Set to true by pause;
         private volatile boolean mPauseFlag;
+        
+        // Guards waiting for the task to end or to be resumed.  A lock
+        // rather than the task's monitor, so that waiting virtual threads
+        // release their carrier threads.
+        private final ReentrantLock mStateLock = new ReentrantLock();
+        private final Condition mStateChanged = mStateLock.newCondition();
 
         // Endpoints for progress reporting.  To have the expected effect,
         // these must be set before the task is started.
@@ -75,14 +83,23 @@ public abstract class AbstractTask<V> implements Task<V> {
 
 			private static final long serialVersionUID = 1L;
 			
-			// Get all the listeners in an array, then send the events.
-			// Don't iterate through the listeners and send events.  A listener
-			// might remove itself, which cause the iterator to throw a
-                        // ConcurrentModificationException.
+			// Snapshot of the listeners, replaced whenever one is added or
+			// removed, so sending an event neither copies the list nor
+			// trips over a listener removing itself.
+			private volatile TaskListener[] mSnapshot = new TaskListener[0];
+			
 			private TaskListener[] getAll() {
-				TaskListener [] rtn = new TaskListener [this.size()];
-				this.toArray(rtn);
-				return rtn;
+				return mSnapshot;
+			}
+			
+			// Called with the list locked after each change.
+			private void updateSnapshot() {
+				mSnapshot = this.toArray(new TaskListener[this.size()]);
+			}
+			
+			// Cheaper than size(), which isn't safe to call unsynchronized.
+			private boolean hasListeners() {
+				return mSnapshot.length > 0;
 			}
 
 			public synchronized void taskBegun(TaskEvent e) {
@@ -127,6 +144,7 @@ public abstract class AbstractTask<V> implements Task<V> {
             synchronized (mListeners) {
                 if (!mListeners.contains(l)) {
                     mListeners.add(l);
+                    mListeners.updateSnapshot();
                 }
             }
         }
@@ -139,7 +157,9 @@ public abstract class AbstractTask<V> implements Task<V> {
          */
         public void removeTaskListener(TaskListener l) {
             synchronized (mListeners) {
-                mListeners.remove(l);
+                if (mListeners.remove(l)) {
+                    mListeners.updateSnapshot();
+                }
             }
         }
 
@@ -194,10 +214,13 @@ public abstract class AbstractTask<V> implements Task<V> {
          *   while waiting.
          */
         public V get() throws InterruptedException, ExecutionException {
-            while(!mHasEnded) {
-                synchronized (this) {
-                   wait();
+            mStateLock.lockInterruptibly();
+            try {
+                while(!mHasEnded) {
+                    mStateChanged.await();
                 }
+            } finally {
+                mStateLock.unlock();
             }
             return getResultAfterHasEnded();
         }
@@ -218,16 +241,17 @@ public abstract class AbstractTask<V> implements Task<V> {
          */
         public V get(long timeout, TimeUnit unit) 
             throws InterruptedException, ExecutionException, TimeoutException {
-            long timeLimit = System.currentTimeMillis() + unit.toMillis(timeout);
-            while(!mHasEnded) {
-                long timeToWait = timeLimit - System.currentTimeMillis();
-                if (timeToWait > 0) {
-                    synchronized (this) {
-                        wait(timeToWait);
+            long timeToWait = unit.toNanos(timeout);
+            mStateLock.lockInterruptibly();
+            try {
+                while(!mHasEnded) {
+                    if (timeToWait <= 0L) {
+                        throw new TimeoutException();
                     }
-                } else if (!mHasEnded) {
-                    throw new TimeoutException();
+                    timeToWait = mStateChanged.awaitNanos(timeToWait);
                 }
+            } finally {
+                mStateLock.unlock();
             }
             return getResultAfterHasEnded();
         }
@@ -259,20 +283,30 @@ public abstract class AbstractTask<V> implements Task<V> {
         /**
          * Pause this task if it is running.
          */
-        public synchronized void pause() {
-        	if (!mPauseFlag && this.isBegun() && !this.isEnded()) {
-        		mPauseFlag = true;
-        		notifyAll();
+        public void pause() {
+        	mStateLock.lock();
+        	try {
+        		if (!mPauseFlag && this.isBegun() && !this.isEnded()) {
+        			mPauseFlag = true;
+        			mStateChanged.signalAll();
+        		}
+        	} finally {
+        		mStateLock.unlock();
         	}
         }
         
         /**
          * Resumes this task if it is paused.
          */
-        public synchronized void play() {
-        	if (mPauseFlag) {
-        		mPauseFlag = false;
-        		notifyAll();
+        public void play() {
+        	mStateLock.lock();
+        	try {
+        		if (mPauseFlag) {
+        			mPauseFlag = false;
+        			mStateChanged.signalAll();
+        		}
+        	} finally {
+        		mStateLock.unlock();
         	}
         }
         
@@ -420,9 +454,7 @@ public abstract class AbstractTask<V> implements Task<V> {
                     // Break from the hang in checkForCancel() if
                     // paused.
                     if (mPauseFlag) {
-                    	synchronized (this) {
-                    		notifyAll();
-                    	}
+                    	signalStateChanged();
                     }
                     if (mPM != null) {
                         mPM.close();
@@ -553,7 +585,7 @@ public abstract class AbstractTask<V> implements Task<V> {
         // taskBegun() methods.
         private void postBegun() {
         	if (!mHasBegun) {
-        		if (mListeners.size() > 0) {
+        		if (mListeners.hasListeners()) {
         			mListeners.taskBegun(new TaskEvent(this, this.taskName() + " has begun"));
         		}
             }
@@ -570,7 +602,7 @@ public abstract class AbstractTask<V> implements Task<V> {
         
         // Post a message to listeners with no cancellation check.
         private void transmitMessage(String msg) {
-            if (mListeners.size() > 0) {
+            if (mListeners.hasListeners()) {
             	mListeners.taskMessage(new TaskEvent(this, msg));
             }
             if (mPM != null) {
@@ -584,7 +616,7 @@ public abstract class AbstractTask<V> implements Task<V> {
             if (mHasBegun && !mHasEnded) {
                 checkForCancel();
                 mProgress = progress;
-                if (mListeners.size() > 0) {
+                if (mListeners.hasListeners()) {
                 	mListeners.taskProgress(new TaskEvent(this, null));
                 }
                 if (mPM != null) {
@@ -599,10 +631,8 @@ public abstract class AbstractTask<V> implements Task<V> {
         private void postEnded() {
             if (mHasBegun && !mHasEnded) {
                 mHasEnded = true;
-                synchronized (this) {
-                    notifyAll();
-                }
-                if (mListeners.size() > 0) {
+                signalStateChanged();
+                if (mListeners.hasListeners()) {
                 	String msg = null;
                 	if (mOutcome == TaskOutcome.SUCCESS) {
                 		msg = this.taskName() + " has ended successfully";
@@ -619,6 +649,16 @@ public abstract class AbstractTask<V> implements Task<V> {
             }
         }
         
+        // Wakes threads waiting for the task to end or be resumed.
+        private void signalStateChanged() {
+            mStateLock.lock();
+            try {
+                mStateChanged.signalAll();
+            } finally {
+                mStateLock.unlock();
+            }
+        }
+        
         /**
          * Associate a ProgressMonitor with this AbstractTask.  If you click the cancel
          * button on the ProgressMonitor dialog, the dialog closes, and the
@@ -648,13 +688,16 @@ public abstract class AbstractTask<V> implements Task<V> {
         		// it calls this method.
         		transmitMessage(this.taskName() + " has been paused");
         		// Hang in this loop until either play() or cancel() is called.
-        		synchronized (this) {
+        		mStateLock.lock();
+        		try {
         			while (mPauseFlag && !mCancelFlag) {
         				try {
-        					wait(1000L);
+        					mStateChanged.await(1000L, TimeUnit.MILLISECONDS);
         				} catch (InterruptedException ie) {
         				}
         			}
+        		} finally {
+        			mStateLock.unlock();
         		}
             	// Whenever cancelled, pop a CancellationException
             	if (mCancelFlag) {
@@ -0,0 +1,294 @@
+package gov.pnnl.jac.task;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>An <tt>ExecutorService</tt> which runs its work on a shared
+ * <tt>ForkJoinPool</tt>, but never occupies more than a fixed number of the
+ * pool's threads at once.  Instances are obtained from
+ * <tt>TaskScheduler.newComputeExecutor()</tt>.</p>
+ *
+ * <p>Submitted work is held in a queue private to the executor.  Up to
+ * the budget, "slot" runners are dispatched to the pool, each of which
+ * runs work from the queue until it is empty.  A pool thread calling
+ * <tt>invokeAll()</tt> counts against the budget and helps run queued work
+ * itself before waiting on the rest.  So nested parallelism, such as work
+ * running on the pool which itself calls <tt>invokeAll()</tt> on
+ * another compute executor, always makes progress without starting more
+ * threads than the pool's parallelism.  Other threads, such as the
+ * (possibly virtual) threads running tasks, only wait, so that all the
+ * computation happens on the pool.</p>
+ *
+ * <p>Shutting down an executor affects only its own work, not the
+ * shared pool.</p>
+ */
+final class BudgetedExecutorService extends AbstractExecutorService {
+
+	private final ForkJoinPool mPool;
+	private final int mBudget;
+
+	// Work waiting to be run.  This and the fields below are guarded by this.
+	private final ArrayDeque<Runnable> mQueue = new ArrayDeque<Runnable>();
+	// Number of slot runners dispatched to the pool and not yet finished.
+	private int mActiveSlots;
+	// Number of items of work currently running, including those being
+	// run by helping callers.
+	private int mRunningCount;
+	// The pool threads currently running work, so they may be interrupted
+	// by shutdownNow().
+	private final Set<Thread> mRunningThreads = new HashSet<Thread>();
+	private boolean mShutdown;
+	private boolean mInterrupting;
+
+	BudgetedExecutorService(ForkJoinPool pool, int budget) {
+		if (pool == null) {
+			throw new NullPointerException();
+		}
+		if (budget <= 0) {
+			throw new IllegalArgumentException("budget must be positive");
+		}
+		mPool = pool;
+		mBudget = budget;
+	}
+
+	/**
+	 * Returns the maximum number of threads that may run work for this
+	 * executor at once.
+	 *
+	 * @return
+	 */
+	public int getBudget() {
+		return mBudget;
+	}
+
+	public void execute(Runnable command) {
+		if (command == null) {
+			throw new NullPointerException();
+		}
+		int dispatch = 0;
+		synchronized (this) {
+			if (mShutdown) {
+				throw new RejectedExecutionException("executor has been shut down");
+			}
+			mQueue.add(command);
+			if (mActiveSlots < mBudget) {
+				mActiveSlots++;
+				dispatch = 1;
+			}
+		}
+		dispatchSlots(dispatch);
+	}
+
+	/**
+	 * Executes the given tasks, returning a list of futures holding their
+	 * status and results when all complete.  If called from a thread of the
+	 * pool, the thread runs queued work while the other tasks are running, so at
+	 * most the budget minus one other pool threads are engaged on its behalf.
+	 */
+	public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks)
+		throws InterruptedException {
+		if (tasks == null) {
+			throw new NullPointerException();
+		}
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		Thread current = Thread.currentThread();
+		boolean helping = current instanceof ForkJoinWorkerThread && 
+			((ForkJoinWorkerThread) current).getPool() == mPool;
+		boolean done = false;
+		try {
+			int dispatch = 0;
+			synchronized (this) {
+				if (mShutdown) {
+					throw new RejectedExecutionException("executor has been shut down");
+				}
+				for (Callable<T> c : tasks) {
+					RunnableFuture<T> f = newTaskFor(c);
+					futures.add(f);
+					mQueue.add(f);
+				}
+				// A helping caller is one of the runners, so dispatch one less 
+				// than the number of tasks.
+				int helpers = helping ? 1 : 0;
+				dispatch = Math.min(mBudget - helpers - mActiveSlots, futures.size() - helpers);
+				if (dispatch > 0) {
+					mActiveSlots += dispatch;
+				} else {
+					dispatch = 0;
+				}
+			}
+			dispatchSlots(dispatch);
+
+			if (helping) {
+				// Help out until the queue is empty.
+				runQueued(false);
+			}
+
+			// Anything still not done is being run by another thread.
+			for (Future<T> f : futures) {
+				if (!f.isDone()) {
+					try {
+						f.get();
+					} catch (CancellationException ce) {
+					} catch (ExecutionException ee) {
+					}
+				}
+			}
+			done = true;
+			return futures;
+		} finally {
+			if (!done) {
+				for (Future<T> f : futures) {
+					f.cancel(true);
+				}
+			}
+		}
+	}
+
+	public void shutdown() {
+		synchronized (this) {
+			mShutdown = true;
+			notifyAll();
+		}
+	}
+
+	public List<Runnable> shutdownNow() {
+		synchronized (this) {
+			mShutdown = true;
+			mInterrupting = true;
+			List<Runnable> pending = new ArrayList<Runnable>(mQueue);
+			mQueue.clear();
+			// Cancel the drained futures so callers waiting in invokeAll()
+			// are not left waiting on work that will never run.
+			for (Runnable r : pending) {
+				if (r instanceof Future<?>) {
+					((Future<?>) r).cancel(false);
+				}
+			}
+			for (Thread t : mRunningThreads) {
+				t.interrupt();
+			}
+			notifyAll();
+			return pending;
+		}
+	}
+
+	public synchronized boolean isShutdown() {
+		return mShutdown;
+	}
+
+	public synchronized boolean isTerminated() {
+		return mShutdown && mQueue.isEmpty() && mRunningCount == 0;
+	}
+
+	public synchronized boolean awaitTermination(long timeout, TimeUnit unit)
+		throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + nanos;
+		while (!isTerminated()) {
+			if (nanos <= 0L) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, nanos);
+			nanos = deadline - System.nanoTime();
+		}
+		return true;
+	}
+
+	private void dispatchSlots(int count) {
+		for (int i=0; i<count; i++) {
+			try {
+				mPool.execute(new SlotRunner());
+			} catch (RejectedExecutionException ree) {
+				// The pool itself was shut down.  Callers of invokeAll() still
+				// run their own work.
+				synchronized (this) {
+					mActiveSlots -= (count - i);
+				}
+				break;
+			}
+		}
+	}
+
+	// Runs work from the queue until it's empty.  A slot runner gives up its
+	// slot while still holding the lock, so work queued afterwards is never
+	// left without a runner.
+	private void runQueued(boolean poolThread) {
+		Thread thread = Thread.currentThread();
+		while (true) {
+			Runnable r = null;
+			synchronized (this) {
+				r = mQueue.poll();
+				if (r == null) {
+					if (poolThread) {
+						mActiveSlots--;
+					}
+					return;
+				}
+				mRunningCount++;
+				if (poolThread) {
+					mRunningThreads.add(thread);
+				}
+			}
+			try {
+				r.run();
+			} finally {
+				synchronized (this) {
+					mRunningCount--;
+					if (poolThread) {
+						mRunningThreads.remove(thread);
+						if (mInterrupting) {
+							// Don't leave an interrupt from shutdownNow() on
+							// a shared pool thread.
+							Thread.interrupted();
+						}
+					}
+					if (mShutdown) {
+						notifyAll();
+					}
+				}
+			}
+		}
+	}
+
+	// Dispatched to the pool to run queued work.
+	private class SlotRunner implements Runnable {
+		public void run() {
+			boolean drained = false;
+			try {
+				runQueued(true);
+				drained = true;
+			} finally {
+				if (!drained) {
+					// The work threw, so the slot is still held.  Keep the
+					// remaining queue moving with a replacement runner.
+					boolean replace = false;
+					synchronized (BudgetedExecutorService.this) {
+						if (!mShutdown && !mQueue.isEmpty()) {
+							replace = true;
+						} else {
+							mActiveSlots--;
+						}
+					}
+					if (replace) {
+						dispatchSlots(1);
+					}
+				}
+			}
+		}
+	}
+}
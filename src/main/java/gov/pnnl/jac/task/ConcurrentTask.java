@@ -8,6 +8,8 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>
@@ -36,6 +38,10 @@ public class ConcurrentTask extends CompoundTask {
 	private CyclicBarrier mBarrier;
 	private Executor mExecutor;
 	private boolean mWaiting;
+	// Guards mWaiting.  Not the monitor, so a waiting virtual thread
+	// releases its carrier.
+	private final ReentrantLock mWaitLock = new ReentrantLock();
+	private final Condition mSubtasksDone = mWaitLock.newCondition();
 
 	/**
 	 * Constructor which takes both the subtasks and their progress fractions.
@@ -119,8 +125,12 @@ public class ConcurrentTask extends CompoundTask {
 						subtasksDone();
 					}
 				});
-				mExecutor = Executors.newFixedThreadPool(maxThreads,
-						new ConcurrentTaskThreadFactory(mThreadPriority));
+				// Subtasks mostly wait, so they get virtual threads too when
+				// the scheduler is configured to use them.
+				ThreadFactory threadFactory = TaskScheduler.usingVirtualThreads() ?
+						TaskScheduler.createVirtualThreadFactory() :
+						new ConcurrentTaskThreadFactory(mThreadPriority);
+				mExecutor = Executors.newFixedThreadPool(maxThreads, threadFactory);
 			}
 
 			for (int i = 0; i < n; i++) {
@@ -185,17 +195,24 @@ public class ConcurrentTask extends CompoundTask {
 		}
 	}
 
-	private synchronized void subtasksDone() {
-		mWaiting = false;
-		notify();
+	private void subtasksDone() {
+		mWaitLock.lock();
+		try {
+			mWaiting = false;
+			mSubtasksDone.signal();
+		} finally {
+			mWaitLock.unlock();
+		}
 	}
 
-	private synchronized void waitOnSubtasks() {
-		while (mWaiting) {
-			try {
-				wait();
-			} catch (InterruptedException ie) {
+	private void waitOnSubtasks() {
+		mWaitLock.lock();
+		try {
+			while (mWaiting) {
+				mSubtasksDone.awaitUninterruptibly();
 			}
+		} finally {
+			mWaitLock.unlock();
 		}
 	}
 
@@ -1,8 +1,17 @@
 package gov.pnnl.jac.task;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * <p>Class for posting progress and message event for <code>Task</code>s</p>
  *
+ * <p><code>postStep()</code> and <code>postSteps()</code> are cheap enough to call
+ * for every item processed by an inner loop, and may be called concurrently by
+ * multiple worker threads.  Steps are accumulated in an atomic counter and only
+ * folded into the progress, and passed on to the task, when they amount to the
+ * minimum progress increment or when the minimum time increment has passed.
+ * The other methods should be called only by the thread executing the task.</p>
+ *
  * @author Grant Nakamura, R. Scarberry
  * @see Task
  * @version 1.0
@@ -16,6 +25,10 @@ public class ProgressHandler {
     public static final double DEFAULT_MIN_PROGRESS_INC = 0.01;
     public static final long DEFAULT_MIN_TIME_INC = 500L; // Half a second.
 
+    // The clock is checked by postSteps() once per this many calls.  Must be
+    // a power of 2 minus 1.
+    private static final int TIME_CHECK_MASK = 63;
+
     AbstractTask<?> mTask; // The task for the progress reporting.
     // It provides the mechanism for sending
     // the progress events.  If null, no events
@@ -28,12 +41,12 @@ public class ProgressHandler {
     // first call to post progress will work regardless of mMinValueInc.
     double mLastProgress = -Double.MAX_VALUE;
     // Time (ms) of the last post.
-    long mLastTime;
+    volatile long mLastTime;
 
     // Value that the current posting must exceed the previous posting in order
     // for the progress to actually be posted, unless mForcePost is set.
-    double mMinProgressInc = DEFAULT_MIN_PROGRESS_INC;
-    long mMinTimeInc = DEFAULT_MIN_TIME_INC;
+    volatile double mMinProgressInc = DEFAULT_MIN_PROGRESS_INC;
+    volatile long mMinTimeInc = DEFAULT_MIN_TIME_INC;
 
     /**
      * Constructor which sets up a progress handler for step-by-step
@@ -125,7 +138,7 @@ public class ProgressHandler {
       /**
        * Post a progress value with the option of forcing the post.
        */
-      private void postValue (double value, boolean force) {
+      private synchronized void postValue (double value, boolean force) {
         if(force || okToPost(value)) {
           mLastProgress = value;
           mLastTime = System.currentTimeMillis();
@@ -265,6 +278,7 @@ public class ProgressHandler {
        * @param steps - the number of steps for the new subsection.
        */
       public void subsection (double fraction, int steps) {
+        mCurrentStep.foldPendingSteps();
         Step newStep = new Step(mCurrentStep, fraction, steps);
         mCurrentStep.mCurrent = newStep.mEndStep;
         mCurrentStep = newStep;
@@ -275,6 +289,7 @@ public class ProgressHandler {
        * from the next step of the current range.</p>
        */
       public void subsection (int steps) {
+        mCurrentStep.foldPendingSteps();
         double endValue = Math.min(mCurrentStep.mEndStep,
                                    mCurrentStep.mCurrent + mCurrentStep.mStepInc);
         Step newStep = new Step(mCurrentStep, mCurrentStep.mCurrent, endValue, steps);
@@ -308,6 +323,7 @@ public class ProgressHandler {
        * Get the current progress value.
        */
       public double getCurrentProgress() {
+        mCurrentStep.foldPendingSteps();
         return mCurrentStep.mCurrent;
       }
 
@@ -322,6 +338,12 @@ public class ProgressHandler {
           private double mEndStep;
           private double mCurrent;
           private double mStepInc;
+          // Steps posted, but not yet added to mCurrent.
+          private final AtomicLong mPendingSteps = new AtomicLong();
+          // Number of calls to postSteps(), for deciding when to check the
+          // time.  Updated without synchronization, since an occasional lost
+          // update does no harm.
+          private int mCallCount;
 
           // Create a sequence
           Step (Step parent, double begin, double end, int steps) {
@@ -356,13 +378,38 @@ public class ProgressHandler {
 
           void postSteps(int steps) {
               if(steps >= 0) {
-                  mCurrent = Math.min(mEndStep, mCurrent + steps*mStepInc);
+                  long pending = mPendingSteps.addAndGet(steps);
+                  if (pending*mStepInc >= mMinProgressInc) {
+                      postPendingSteps();
+                  } else if ((mCallCount++ & TIME_CHECK_MASK) == 0 &&
+                          (System.currentTimeMillis() - mLastTime) >= mMinTimeInc) {
+                      postPendingSteps();
+                  }
+              }
+          }
+
+          // Adds the pending steps to the current progress and posts it.
+          private void postPendingSteps() {
+              synchronized (ProgressHandler.this) {
+                  foldPendingSteps();
                   postValue(mCurrent);
               }
           }
 
+          // Adds the pending steps to the current progress.
+          void foldPendingSteps() {
+              synchronized (ProgressHandler.this) {
+                  long pending = mPendingSteps.getAndSet(0L);
+                  if (pending > 0L) {
+                      mCurrent = Math.min(mEndStep, mCurrent + pending*mStepInc);
+                  }
+              }
+          }
+
           void postFraction(double fraction) {
               if(fraction >= 0.0 && fraction <= 1.0) {
+                  // Steps posted before a fraction are superseded by it.
+                  mPendingSteps.set(0L);
                   mCurrent = mBeginStep + fraction * stepWidth();
                   postValue(mCurrent);
               }
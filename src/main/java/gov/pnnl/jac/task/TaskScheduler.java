@@ -1,5 +1,6 @@
 package gov.pnnl.jac.task;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.IdentityHashMap;
@@ -9,6 +10,9 @@ import java.util.Set;
 import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
@@ -26,6 +30,20 @@ import java.util.concurrent.atomic.AtomicInteger;
  *   TaskScheduler.schedule(task);
  * </code>
  * 
+ * <p>It also manages a compute pool shared by all tasks for their internal
+ * parallel work.  Rather than starting threads of its own, a task obtains an
+ * executor from {@link #newComputeExecutor(int)} with a budget on the number
+ * of the pool's threads it may use.  However many tasks run at once, and however
+ * deeply they nest, the number of threads doing computation is bounded by
+ * the pool's parallelism.</p>
+ * 
+ * <p>On a Java runtime supporting virtual threads, {@link #configureVirtualThreads()}
+ * runs each scheduled task on a virtual thread of its own.  Since tasks
+ * spend most of their time blocked waiting on subtasks, compute 
+ * executors, or I/O, any number of them may then be scheduled without
+ * sizing a pool for them, while their computation remains bounded by the
+ * compute pool.</p>
+ * 
  * @author D3J923
  *
  */
@@ -39,6 +57,12 @@ public final class TaskScheduler {
 	private static int mMaxPoolSize = Integer.MAX_VALUE;
 	private static long mKeepAliveTime = 60L;
 	private static TimeUnit mKeepAliveTimeUnit = TimeUnit.SECONDS;
+	// If true, tasks are run on virtual threads and the settings above are ignored.
+	private static boolean mVirtualThreads;
+	
+	// The pool shared by the executors returned by newComputeExecutor().
+	private static ForkJoinPool mComputePool;
+	private static int mComputeParallelism = Runtime.getRuntime().availableProcessors();
 	
 	// The currently-running tasks.  Keys and values are the same.  Used as a set
 	// even though it's a map, since IdentityHashSets do not exist.
@@ -65,7 +89,7 @@ public final class TaskScheduler {
 	private TaskScheduler() {}
 	
 	public static boolean multithreadingEnabled() {
-		return Math.max(mCorePoolSize, mMaxPoolSize) > 1;
+		return mVirtualThreads || Math.max(mCorePoolSize, mMaxPoolSize) > 1;
 	}
 	
     /**
@@ -175,6 +199,7 @@ public final class TaskScheduler {
 		mCorePoolSize = mMaxPoolSize = numThreads;
 		mKeepAliveTime = 0L;
 		mKeepAliveTimeUnit = TimeUnit.MILLISECONDS;
+		mVirtualThreads = false;
 		mExecutor = null;
 	}
 	
@@ -208,9 +233,133 @@ public final class TaskScheduler {
 		setCorePoolSize(corePoolSize);
 		setMaximumPoolSize(maxPoolSize);
 		setKeepAliveTime(keepAliveTime, timeUnit);
+		mVirtualThreads = false;
+		mExecutor = null;
+	}
+	
+	/**
+	 * Configure tasks to be run on virtual threads, one per task, rather than
+	 * on the internal thread pool.  Calling {@link #configureFixedThreadPool(int)} or
+	 * {@link #configureCachedThreadPool(int, int, long, TimeUnit)} switches back
+	 * to a thread pool.
+	 * 
+	 * @throws UnsupportedOperationException if the Java runtime does not
+	 *   support virtual threads.
+	 */
+	public synchronized static void configureVirtualThreads() {
+		// Fails early if unavailable.
+		createVirtualThreadFactory();
+		mVirtualThreads = true;
 		mExecutor = null;
 	}
 	
+	/**
+	 * Returns true if tasks are configured to run on virtual threads.
+	 * 
+	 * @return
+	 */
+	public synchronized static boolean usingVirtualThreads() {
+		return mVirtualThreads;
+	}
+	
+	/**
+	 * Returns true if the Java runtime supports virtual threads, so that
+	 * {@link #configureVirtualThreads()} may be called.
+	 * 
+	 * @return
+	 */
+	public static boolean virtualThreadsAvailable() {
+		try {
+			createVirtualThreadFactory();
+			return true;
+		} catch (UnsupportedOperationException uoe) {
+			return false;
+		}
+	}
+	
+	// Obtains a factory for virtual threads by reflection, since they're not
+	// available at the language level this library is compiled for.
+	static ThreadFactory createVirtualThreadFactory() {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method name = builderClass.getMethod("name", String.class, long.class);
+			builder = name.invoke(builder, "taskscheduler_virtual-", 1L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (Exception e) {
+			// Pre-21 runtimes lack the methods, and 19 and 20 throw unless
+			// preview features are enabled.
+			UnsupportedOperationException uoe = new UnsupportedOperationException(
+					"virtual threads are not supported by this Java runtime");
+			uoe.initCause(e);
+			throw uoe;
+		}
+	}
+	
+	/**
+	 * Sets the number of threads in the shared compute pool.  Executors already
+	 * returned by {@link #newComputeExecutor(int)} continue to use the pool 
+	 * that was in place when they were created.
+	 * 
+	 * @param parallelism the number of threads.
+	 * 
+	 * @throws IllegalArgumentException if parallelism is less than or equal to zero.
+	 */
+	public synchronized static void setComputeParallelism(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("parallelism must be positive");
+		}
+		if (parallelism != mComputeParallelism) {
+			mComputeParallelism = parallelism;
+			// Not shut down, since executors may still be using it.  Its idle
+			// threads terminate on their own.
+			mComputePool = null;
+		}
+	}
+	
+	/**
+	 * Returns the number of threads in the shared compute pool.
+	 * 
+	 * @return
+	 */
+	public synchronized static int getComputeParallelism() {
+		return mComputeParallelism;
+	}
+	
+	/**
+	 * Returns the shared compute pool, creating it if necessary.
+	 * 
+	 * @return
+	 */
+	public synchronized static ForkJoinPool getComputePool() {
+		if (mComputePool == null) {
+			mComputePool = new ForkJoinPool(mComputeParallelism, 
+					new ComputeThreadFactory(), null, true);
+		}
+		return mComputePool;
+	}
+	
+	/**
+	 * Returns an executor for a task's parallel work that runs on the
+	 * shared compute pool, but never on more than <tt>budget</tt> of its threads at
+	 * once.  Pool threads calling <tt>invokeAll()</tt> on the executor help run the
+	 * work, so it may be called by work running on the pool itself.  
+	 * Shutting down the executor does not affect the pool.
+	 * 
+	 * @param budget the maximum number of threads to use.  If non-positive, or
+	 *   greater than the compute parallelism, the compute parallelism is used.
+	 *   
+	 * @return
+	 */
+	public static ExecutorService newComputeExecutor(int budget) {
+		ForkJoinPool pool = getComputePool();
+		int parallelism = pool.getParallelism();
+		if (budget <= 0 || budget > parallelism) {
+			budget = parallelism;
+		}
+		return new BudgetedExecutorService(pool, budget);
+	}
+	
 	/**
 	 * Shuts down the internal thread pool.  Tasks currently in its queue continue to
 	 * be executed, but no new tasks may be submitted.
@@ -302,7 +451,16 @@ public final class TaskScheduler {
 			
 			synchronized (TaskScheduler.class) {
 		
-				if (mExecutor == null) {
+				if (mExecutor == null && mVirtualThreads) {
+					
+					// Every task gets a new thread, since idle threads terminate
+					// immediately.  Virtual threads are cheap, so there's no
+					// point in keeping them around.
+					mExecutor = new ThreadPoolExecutor(
+							0, Integer.MAX_VALUE, 0L, TimeUnit.MILLISECONDS,
+							new SynchronousQueue<Runnable>(), createVirtualThreadFactory());
+					
+				} else if (mExecutor == null) {
 					
 					BlockingQueue<Runnable> queue = null;
 					long keepAliveTime = 0L;
@@ -336,6 +494,29 @@ public final class TaskScheduler {
 		return mExecutor;
 	}
 	
+    /**
+     * Creates the daemon worker threads of the compute pool.
+     */
+    static class ComputeThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+    	
+        static final AtomicInteger poolNumber = new AtomicInteger(1);
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        final String namePrefix;
+
+        ComputeThreadFactory() {
+            namePrefix = "taskscheduler_compute-" +
+                          poolNumber.getAndIncrement() +
+                         "-thread-";
+        }
+
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) {};
+            t.setName(namePrefix + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
     /**
      * This is used in place of a DefaultThreadFactory so the threads in the pool
      * are daemons.
@@ -0,0 +1,195 @@
+package gov.pnnl.jac.task;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>A <code>TaskListener</code> which forwards the events it receives to another
+ * listener from a single dispatcher thread shared by all instances, rather than
+ * from the threads executing tasks.  Events are delivered at most once per
+ * interval.  Progress events are coalesced, so the delegate sees only the
+ * latest progress; begun, message, and ended events are all delivered in the
+ * order posted.  To use, register it in place of the delegate:</p>
+ * <code>
+ *   task.addTaskListener(new ThrottledTaskListener(listener));
+ * </code>
+ * <p>A slow listener then cannot hold up the computation, and a task that posts
+ * progress thousands of times a second costs its listener only a few calls.
+ * Since the delegate is called asynchronously, it must not rely on the task's
+ * state being the same as when the event was posted.</p>
+ */
+public class ThrottledTaskListener implements TaskListener {
+
+    private static final Logger LOGGER = Logger.getLogger(ThrottledTaskListener.class);
+
+    /**
+     * The default minimum time between deliveries in milliseconds.
+     */
+    public static final long DEFAULT_INTERVAL = 100L;
+
+    // Kinds of events held in the queue.
+    private static final int BEGUN = 0;
+    private static final int MESSAGE = 1;
+    private static final int ENDED = 2;
+
+    // The single thread which delivers the events of all instances.
+    private static ScheduledExecutorService sDispatcher;
+
+    private final TaskListener mDelegate;
+    private final long mInterval;
+
+    // Begun, message, and ended events waiting to be delivered.
+    private final ConcurrentLinkedQueue<QueuedEvent> mQueue =
+        new ConcurrentLinkedQueue<QueuedEvent>();
+    // The latest progress event not yet delivered.
+    private final AtomicReference<TaskEvent> mProgress = new AtomicReference<TaskEvent>();
+    // True while a delivery is scheduled.
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    // Time of the last delivery, only accessed by the dispatcher thread and
+    // in scheduling.
+    private volatile long mLastDelivery;
+
+    /**
+     * Constructor.
+     * @param delegate the listener to which events are forwarded.
+     * @param intervalMS the minimum time between deliveries in milliseconds.
+     */
+    public ThrottledTaskListener(TaskListener delegate, long intervalMS) {
+        if (delegate == null) {
+            throw new NullPointerException();
+        }
+        if (intervalMS < 0L) {
+            throw new IllegalArgumentException("negative interval: " + intervalMS);
+        }
+        mDelegate = delegate;
+        mInterval = intervalMS;
+    }
+
+    /**
+     * Constructor which uses the default interval.
+     * @param delegate the listener to which events are forwarded.
+     */
+    public ThrottledTaskListener(TaskListener delegate) {
+        this(delegate, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Returns the listener to which events are forwarded.
+     * @return
+     */
+    public TaskListener getDelegate() {
+        return mDelegate;
+    }
+
+    public void taskBegun(TaskEvent e) {
+        mQueue.add(new QueuedEvent(BEGUN, e));
+        scheduleDelivery(false);
+    }
+
+    public void taskMessage(TaskEvent e) {
+        mQueue.add(new QueuedEvent(MESSAGE, e));
+        scheduleDelivery(false);
+    }
+
+    public void taskProgress(TaskEvent e) {
+        mProgress.set(e);
+        scheduleDelivery(false);
+    }
+
+    public void taskEnded(TaskEvent e) {
+        mQueue.add(new QueuedEvent(ENDED, e));
+        // Don't make anyone wait for the end.
+        scheduleDelivery(true);
+    }
+
+    private void scheduleDelivery(boolean immediately) {
+        if (mScheduled.compareAndSet(false, true)) {
+            long delay = immediately ? 0L :
+                Math.max(0L, mLastDelivery + mInterval - System.currentTimeMillis());
+            dispatcher().schedule(new Runnable() {
+                public void run() {
+                    deliver();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } else if (immediately) {
+            // A delivery may already be scheduled for later, so
+            // add an extra one now.  Deliveries are all on the same thread, so
+            // there's no harm if it finds nothing to deliver.
+            dispatcher().execute(new Runnable() {
+                public void run() {
+                    deliver();
+                }
+            });
+        }
+    }
+
+    // Called on the dispatcher thread.
+    private void deliver() {
+        // Cleared first, so events arriving while delivering get a
+        // delivery of their own.
+        mScheduled.set(false);
+        mLastDelivery = System.currentTimeMillis();
+        QueuedEvent qe = null;
+        while ((qe = mQueue.poll()) != null) {
+            if (qe.mKind == ENDED) {
+                deliverProgress();
+            }
+            try {
+                switch (qe.mKind) {
+                case BEGUN:
+                    mDelegate.taskBegun(qe.mEvent);
+                    break;
+                case MESSAGE:
+                    mDelegate.taskMessage(qe.mEvent);
+                    break;
+                case ENDED:
+                    mDelegate.taskEnded(qe.mEvent);
+                    break;
+                }
+            } catch (RuntimeException re) {
+                LOGGER.error("Exception in task listener", re);
+            }
+        }
+        deliverProgress();
+    }
+
+    private void deliverProgress() {
+        TaskEvent e = mProgress.getAndSet(null);
+        if (e != null) {
+            try {
+                mDelegate.taskProgress(e);
+            } catch (RuntimeException re) {
+                LOGGER.error("Exception in task listener", re);
+            }
+        }
+    }
+
+    private static synchronized ScheduledExecutorService dispatcher() {
+        if (sDispatcher == null) {
+            sDispatcher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "taskevent_dispatcher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return sDispatcher;
+    }
+
+    private static class QueuedEvent {
+        final int mKind;
+        final TaskEvent mEvent;
+        QueuedEvent(int kind, TaskEvent event) {
+            mKind = kind;
+            mEvent = event;
+        }
+    }
+}
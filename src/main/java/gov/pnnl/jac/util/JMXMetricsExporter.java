@@ -0,0 +1,146 @@
+package gov.pnnl.jac.util;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.*;
+
+/**
+ * <p>A <tt>MetricsExporter</tt> which registers each metric as an MBean with
+ * read-only attributes for its values, under object names of the form
+ * <tt>gov.pnnl.jac:type=Metrics,name=kmeans.assignment</tt>.  Attributes are
+ * read live, so exporting once is enough for metrics that already exist;
+ * export again to register metrics created since.</p>
+ */
+public class JMXMetricsExporter implements MetricsExporter {
+
+    /**
+     * The default domain of the object names.
+     */
+    public static final String DEFAULT_DOMAIN = "gov.pnnl.jac";
+
+    private final MBeanServer mServer;
+    private final String mDomain;
+    private final Map<String, ObjectName> mRegistered = new HashMap<String, ObjectName>();
+
+    /**
+     * Constructor.
+     * @param server the server with which to register.
+     * @param domain the domain of the object names.
+     */
+    public JMXMetricsExporter(MBeanServer server, String domain) {
+        if (server == null || domain == null) {
+            throw new NullPointerException();
+        }
+        mServer = server;
+        mDomain = domain;
+    }
+
+    /**
+     * Constructor which registers with the platform MBean server in the
+     * default domain.
+     */
+    public JMXMetricsExporter() {
+        this(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+    }
+
+    public synchronized void export(List<Metrics.Metric> metrics) throws IOException {
+        for (Metrics.Metric metric : metrics) {
+            if (!mRegistered.containsKey(metric.getName())) {
+                try {
+                    ObjectName name = new ObjectName(mDomain + ":type=Metrics,name=" +
+                        ObjectName.quote(metric.getName()));
+                    if (mServer.isRegistered(name)) {
+                        // Left over from another exporter.
+                        mServer.unregisterMBean(name);
+                    }
+                    mServer.registerMBean(new MetricMBean(metric), name);
+                    mRegistered.put(metric.getName(), name);
+                } catch (JMException jme) {
+                    throw new IOException("could not register " + metric.getName(), jme);
+                }
+            }
+        }
+    }
+
+    /**
+     * Unregisters all the MBeans registered by this exporter.
+     */
+    public synchronized void unregister() {
+        for (ObjectName name : new ArrayList<ObjectName>(mRegistered.values())) {
+            try {
+                mServer.unregisterMBean(name);
+            } catch (JMException jme) {
+                // Already unregistered by someone else.
+            }
+        }
+        mRegistered.clear();
+    }
+
+    // Exposes the values of a metric as attributes.
+    private static class MetricMBean implements DynamicMBean {
+
+        private final Metrics.Metric mMetric;
+        private final MBeanInfo mInfo;
+
+        MetricMBean(Metrics.Metric metric) {
+            mMetric = metric;
+            Map<String, Number> values = metric.getValues();
+            MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[values.size() + 1];
+            attrs[0] = new MBeanAttributeInfo("type", String.class.getName(),
+                "kind of metric", true, false, false);
+            int i = 1;
+            for (Map.Entry<String, Number> entry : values.entrySet()) {
+                attrs[i++] = new MBeanAttributeInfo(entry.getKey(),
+                    entry.getValue().getClass().getName(), entry.getKey(), true, false, false);
+            }
+            mInfo = new MBeanInfo(getClass().getName(), metric.getName(), attrs,
+                null, null, null);
+        }
+
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            if ("type".equals(attribute)) {
+                return mMetric.getType();
+            }
+            Number value = mMetric.getValues().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            Map<String, Number> values = mMetric.getValues();
+            for (String attribute : attributes) {
+                if ("type".equals(attribute)) {
+                    list.add(new Attribute(attribute, mMetric.getType()));
+                } else if (values.containsKey(attribute)) {
+                    list.add(new Attribute(attribute, values.get(attribute)));
+                }
+            }
+            return list;
+        }
+
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("read-only: " + attribute.getName());
+        }
+
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        public Object invoke(String actionName, Object[] params, String[] signature)
+            throws MBeanException, ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        public MBeanInfo getMBeanInfo() {
+            return mInfo;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package gov.pnnl.jac.util;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A <tt>MetricsExporter</tt> which writes each snapshot as a single line of
+ * JSON, so that repeated exports to the same stream or file form a JSON lines
+ * log.  Each line has the form</p>
+ * <code>
+ *   {"timestamp":1700000000000,"metrics":{"kmeans.assignment":{"type":"timer","count":12,...},...}}
+ * </code>
+ * <p>Timer values are in nanoseconds.</p>
+ */
+public class JSONMetricsExporter implements MetricsExporter {
+
+    private final Writer mWriter;
+
+    /**
+     * Constructor.
+     * @param writer the writer to receive the snapshots.  It is flushed, but
+     *   not closed, after each snapshot.
+     */
+    public JSONMetricsExporter(Writer writer) {
+        if (writer == null) {
+            throw new NullPointerException();
+        }
+        mWriter = writer;
+    }
+
+    /**
+     * Constructor for exporting to a file.  Snapshots are appended to the file.
+     * Call <tt>close()</tt> when done.
+     * @param file
+     * @throws IOException
+     */
+    public JSONMetricsExporter(File file) throws IOException {
+        this(new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(file, true), Charset.forName("UTF-8"))));
+    }
+
+    public synchronized void export(List<Metrics.Metric> metrics) throws IOException {
+        mWriter.write(toJSON(metrics, System.currentTimeMillis()));
+        mWriter.write('\n');
+        mWriter.flush();
+    }
+
+    /**
+     * Closes the underlying writer.
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        mWriter.close();
+    }
+
+    /**
+     * Returns a snapshot of the metrics in the format written by
+     * <tt>export()</tt>, without the line terminator.
+     * @param metrics
+     * @param timestamp
+     * @return
+     */
+    public static String toJSON(List<Metrics.Metric> metrics, long timestamp) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"timestamp\":").append(timestamp).append(",\"metrics\":{");
+        boolean first = true;
+        for (Metrics.Metric metric : metrics) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            appendString(sb, metric.getName());
+            sb.append(":{\"type\":");
+            appendString(sb, metric.getType());
+            for (Map.Entry<String, Number> entry : metric.getValues().entrySet()) {
+                sb.append(',');
+                appendString(sb, entry.getKey());
+                sb.append(':');
+                appendNumber(sb, entry.getValue());
+            }
+            sb.append('}');
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    private static void appendNumber(StringBuilder sb, Number n) {
+        if (n instanceof Double || n instanceof Float) {
+            double d = n.doubleValue();
+            // JSON has no representation for these.
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                sb.append("null");
+                return;
+            }
+        }
+        sb.append(n);
+    }
+
+    private static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
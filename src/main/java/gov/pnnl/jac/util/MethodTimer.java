@@ -19,7 +19,10 @@ import java.util.Set;
  * 
  * @author D3J923
  *
+ * @deprecated use the timers of {@link Metrics}, which are thread-safe, cost
+ *   almost nothing when disabled, and can be exported.
  */
+@Deprecated
 public final class MethodTimer {
 
     // Timing maps keyed by thread, so printStats() can output them all.
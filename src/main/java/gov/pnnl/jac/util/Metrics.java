@@ -0,0 +1,391 @@
+package gov.pnnl.jac.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Registry of named counters, timers, and histograms for measuring the phases
+ * of the algorithms.  Recording is disabled by default, in which case it costs
+ * no more than a read of a volatile flag, so instrumentation may be left in hot
+ * paths.  Call <tt>setEnabled(true)</tt> to start recording.</p>
+ *
+ * <p>Instrumented code obtains its metrics once, normally in static fields, and
+ * records to them as it runs:</p>
+ * <code>
+ *   private static final Metrics.Timer ASSIGNMENT = Metrics.timer("kmeans.assignment");
+ *   ...
+ *   long start = ASSIGNMENT.start();
+ *   try {
+ *       ...
+ *   } finally {
+ *       ASSIGNMENT.stop(start);
+ *   }
+ * </code>
+ * <p>Names are of the form <tt>algorithm.phase</tt>.  Values are totals over all
+ * threads and tasks since the metric was created or last reset.  Snapshots are
+ * published by passing a <tt>MetricsExporter</tt> to <tt>export()</tt>.</p>
+ */
+public final class Metrics {
+
+    private static volatile boolean sEnabled;
+
+    private static final ConcurrentMap<String, Metric> sMetrics =
+        new ConcurrentHashMap<String, Metric>();
+
+    private Metrics() {}
+
+    /**
+     * Enable or disable recording.
+     * @param enabled
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Is recording enabled?
+     * @return
+     */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Returns the counter with the given name, creating it if necessary.
+     * @param name
+     * @return
+     * @throws IllegalArgumentException if a metric of another kind has the name.
+     */
+    public static Counter counter(String name) {
+        return register(new Counter(name), Counter.class);
+    }
+
+    /**
+     * Returns the timer with the given name, creating it if necessary.
+     * @param name
+     * @return
+     * @throws IllegalArgumentException if a metric of another kind has the name.
+     */
+    public static Timer timer(String name) {
+        return register(new Timer(name), Timer.class);
+    }
+
+    /**
+     * Returns the histogram with the given name, creating it if necessary.
+     * @param name
+     * @return
+     * @throws IllegalArgumentException if a metric of another kind has the name.
+     */
+    public static Histogram histogram(String name) {
+        return register(new Histogram(name), Histogram.class);
+    }
+
+    private static <M extends Metric> M register(M metric, Class<M> type) {
+        Metric existing = sMetrics.putIfAbsent(metric.getName(), metric);
+        if (existing == null) {
+            return metric;
+        }
+        if (existing.getClass() != type) {
+            throw new IllegalArgumentException(metric.getName() + " is a " +
+                existing.getType() + ", not a " + metric.getType());
+        }
+        return type.cast(existing);
+    }
+
+    /**
+     * Returns the metric with the given name, or null if there is none.
+     * @param name
+     * @return
+     */
+    public static Metric getMetric(String name) {
+        return sMetrics.get(name);
+    }
+
+    /**
+     * Returns all the metrics, sorted by name.
+     * @return
+     */
+    public static List<Metric> getMetrics() {
+        List<Metric> metrics = new ArrayList<Metric>(sMetrics.values());
+        Collections.sort(metrics, new Comparator<Metric>() {
+            public int compare(Metric m1, Metric m2) {
+                return m1.getName().compareTo(m2.getName());
+            }
+        });
+        return metrics;
+    }
+
+    /**
+     * Resets the values of all the metrics.
+     */
+    public static void reset() {
+        for (Metric metric : sMetrics.values()) {
+            metric.reset();
+        }
+    }
+
+    /**
+     * Passes all the metrics to an exporter.
+     * @param exporter
+     * @throws IOException if the exporter encounters an IO error.
+     */
+    public static void export(MetricsExporter exporter) throws IOException {
+        exporter.export(getMetrics());
+    }
+
+    /**
+     * Base class of the metrics.
+     */
+    public static abstract class Metric {
+
+        private final String mName;
+
+        Metric(String name) {
+            if (name == null) {
+                throw new NullPointerException();
+            }
+            mName = name;
+        }
+
+        public final String getName() {
+            return mName;
+        }
+
+        /**
+         * Returns the kind of metric: "counter", "timer", or "histogram".
+         * @return
+         */
+        public abstract String getType();
+
+        /**
+         * Returns a snapshot of the current values, keyed by name
+         * in a consistent order.
+         * @return
+         */
+        public abstract Map<String, Number> getValues();
+
+        /**
+         * Resets the values to what they were when the metric was created.
+         */
+        public abstract void reset();
+
+        public String toString() {
+            return mName + " " + getValues();
+        }
+    }
+
+    /**
+     * A count of events, such as merges, splits, or iterations.
+     */
+    public static final class Counter extends Metric {
+
+        private final LongAdder mCount = new LongAdder();
+
+        private Counter(String name) {
+            super(name);
+        }
+
+        public void increment() {
+            if (sEnabled) {
+                mCount.increment();
+            }
+        }
+
+        public void add(long n) {
+            if (sEnabled) {
+                mCount.add(n);
+            }
+        }
+
+        public long getCount() {
+            return mCount.sum();
+        }
+
+        public String getType() {
+            return "counter";
+        }
+
+        public Map<String, Number> getValues() {
+            Map<String, Number> values = new LinkedHashMap<String, Number>();
+            values.put("count", getCount());
+            return values;
+        }
+
+        public void reset() {
+            mCount.reset();
+        }
+    }
+
+    /**
+     * Distribution of recorded non-negative values.  Counts are kept in buckets
+     * by powers of 2, so percentiles are estimates which may be off by up to
+     * a factor of 2.  The count, sum, minimum, and maximum are exact.
+     */
+    public static class Histogram extends Metric {
+
+        // Bucket 0 holds 0 and negative values, bucket i values in
+        // [2^(i-1), 2^i).
+        private final AtomicLongArray mBuckets = new AtomicLongArray(65);
+        private final LongAdder mCount = new LongAdder();
+        private final LongAdder mSum = new LongAdder();
+        private final AtomicLong mMin = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong mMax = new AtomicLong(Long.MIN_VALUE);
+
+        private Histogram(String name) {
+            super(name);
+        }
+
+        public void record(long value) {
+            if (sEnabled) {
+                recordValue(value);
+            }
+        }
+
+        final void recordValue(long value) {
+            mBuckets.incrementAndGet(value <= 0L ? 0 : 64 - Long.numberOfLeadingZeros(value));
+            mCount.increment();
+            mSum.add(value);
+            long min = mMin.get();
+            while (value < min && !mMin.compareAndSet(min, value)) {
+                min = mMin.get();
+            }
+            long max = mMax.get();
+            while (value > max && !mMax.compareAndSet(max, value)) {
+                max = mMax.get();
+            }
+        }
+
+        public long getCount() {
+            return mCount.sum();
+        }
+
+        public long getSum() {
+            return mSum.sum();
+        }
+
+        /**
+         * Returns the smallest value recorded, or 0 if none.
+         * @return
+         */
+        public long getMin() {
+            long min = mMin.get();
+            return min == Long.MAX_VALUE ? 0L : min;
+        }
+
+        /**
+         * Returns the largest value recorded, or 0 if none.
+         * @return
+         */
+        public long getMax() {
+            long max = mMax.get();
+            return max == Long.MIN_VALUE ? 0L : max;
+        }
+
+        public double getMean() {
+            long count = getCount();
+            return count > 0L ? ((double) getSum())/count : 0.0;
+        }
+
+        /**
+         * Returns an estimate of the given percentile of the recorded values:
+         * the upper bound of the bucket containing it, limited by the maximum.
+         * @param percentile a value in [0, 100].
+         * @return
+         */
+        public long getPercentile(double percentile) {
+            if (percentile < 0.0 || percentile > 100.0) {
+                throw new IllegalArgumentException("percentile not in [0, 100]: " + percentile);
+            }
+            long[] buckets = new long[mBuckets.length()];
+            long total = 0L;
+            for (int i=0; i<buckets.length; i++) {
+                buckets[i] = mBuckets.get(i);
+                total += buckets[i];
+            }
+            if (total == 0L) {
+                return 0L;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(percentile*total/100.0));
+            long cumulative = 0L;
+            for (int i=0; i<buckets.length; i++) {
+                cumulative += buckets[i];
+                if (cumulative >= rank) {
+                    long upper = i == 0 ? 0L : (i == 64 ? Long.MAX_VALUE : (1L << i) - 1L);
+                    return Math.max(getMin(), Math.min(upper, getMax()));
+                }
+            }
+            return getMax();
+        }
+
+        public String getType() {
+            return "histogram";
+        }
+
+        public Map<String, Number> getValues() {
+            Map<String, Number> values = new LinkedHashMap<String, Number>();
+            values.put("count", getCount());
+            values.put("sum", getSum());
+            values.put("min", getMin());
+            values.put("max", getMax());
+            values.put("mean", getMean());
+            values.put("p50", getPercentile(50.0));
+            values.put("p90", getPercentile(90.0));
+            values.put("p99", getPercentile(99.0));
+            return values;
+        }
+
+        public void reset() {
+            for (int i=0; i<mBuckets.length(); i++) {
+                mBuckets.set(i, 0L);
+            }
+            mCount.reset();
+            mSum.reset();
+            mMin.set(Long.MAX_VALUE);
+            mMax.set(Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * A histogram of elapsed times in nanoseconds.
+     */
+    public static final class Timer extends Histogram {
+
+        private Timer(String name) {
+            super(name);
+        }
+
+        /**
+         * Returns the start time to pass to <tt>stop()</tt>, or 0 if recording
+         * is disabled.
+         * @return
+         */
+        public long start() {
+            return sEnabled ? System.nanoTime() : 0L;
+        }
+
+        /**
+         * Records the time elapsed since the start time returned by
+         * <tt>start()</tt>.  Nothing is recorded if the start time is 0.
+         * @param startTime
+         */
+        public void stop(long startTime) {
+            if (startTime != 0L) {
+                recordValue(System.nanoTime() - startTime);
+            }
+        }
+
+        public String getType() {
+            return "timer";
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package gov.pnnl.jac.util;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * <p>Publishes snapshots of the metrics recorded by <tt>Metrics</tt>, for
+ * instance as JSON or through JMX.  Passed to <tt>Metrics.export()</tt>,
+ * which may be called as often as snapshots are wanted.</p>
+ */
+public interface MetricsExporter {
+
+    /**
+     * Publish the metrics.
+     * @param metrics the metrics, sorted by name.
+     * @throws IOException if an IO error occurs.
+     */
+    void export(List<Metrics.Metric> metrics) throws IOException;
+
+}
@@ -44,4 +44,18 @@ public final class RandomFactory {
 		}
 		return new SecureRandom(bytes);
 	}
+	
+	/**
+	 * Creates generators for <tt>count</tt> independent streams derived
+	 * from the seed, for giving each worker of a parallel computation a
+	 * generator of its own.  The generators take no locks and are not 
+	 * thread-safe.  See {@link XoroshiroRandom#streams(long, int)}.
+	 * 
+	 * @param seed
+	 * @param count
+	 * @return
+	 */
+	public static Random[] createStreams(long seed, int count) {
+		return XoroshiroRandom.streams(seed, count);
+	}
 }
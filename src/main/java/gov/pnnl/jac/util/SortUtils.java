@@ -1,6 +1,11 @@
 package gov.pnnl.jac.util;
 
+import gov.pnnl.jac.task.TaskScheduler;
+
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * <p>Contains static sorting utilities not provided by the standard
@@ -11,6 +16,13 @@ import java.util.*;
  */
 public class SortUtils {
 
+    // Ranges at least this long are sorted by parallelSort() and parallelQuickSort()
+    // on the compute pool, if it has more than one thread.
+    private static final int CONCURRENT_THRESHOLD = 1 << 16;
+
+    // Ranges shorter than this are sorted or merged without forking.
+    private static final int FORK_THRESHOLD = 1 << 13;
+
 	private SortUtils() {
 	}
 
@@ -232,6 +244,10 @@ public class SortUtils {
 	 */
 	public static void parallelSort(double[] dvalues, int[] ivalues, int from,
 			int to, boolean ascending) {
+		if (to - from >= CONCURRENT_THRESHOLD && useConcurrentSort()) {
+			concurrentSort(dvalues, ivalues, from, to, ascending);
+			return;
+		}
 		double[] dcopy = (double[]) dvalues.clone();
 		int[] icopy = (int[]) ivalues.clone();
 		mergeSort(dcopy, dvalues, icopy, ivalues, from, to, ascending);
@@ -312,6 +328,10 @@ public class SortUtils {
 	 */
 	public static void parallelSort(float[] dvalues, int[] ivalues, int from,
 			int to, boolean ascending) {
+		if (to - from >= CONCURRENT_THRESHOLD && useConcurrentSort()) {
+			concurrentSort(dvalues, ivalues, from, to, ascending);
+			return;
+		}
 		float[] dcopy = (float[]) dvalues.clone();
 		int[] icopy = (int[]) ivalues.clone();
 		mergeSort(dcopy, dvalues, icopy, ivalues, from, to, ascending);
@@ -393,6 +413,10 @@ public class SortUtils {
 	 */
 	public static void parallelSort(int[] pvalues, int[] svalues, int from,
 			int to, boolean ascending) {
+		if (to - from >= CONCURRENT_THRESHOLD && useConcurrentSort()) {
+			concurrentSort(pvalues, svalues, from, to, ascending);
+			return;
+		}
 		int[] pcopy = (int[]) pvalues.clone();
 		int[] scopy = (int[]) svalues.clone();
 		mergeSort(pcopy, pvalues, scopy, svalues, from, to, ascending);
@@ -400,6 +424,10 @@ public class SortUtils {
 
 	public static void parallelSort(int[] pvalues, double[] svalues, int from,
 			int to, boolean ascending) {
+		if (to - from >= CONCURRENT_THRESHOLD && useConcurrentSort()) {
+			concurrentSort(pvalues, svalues, from, to, ascending);
+			return;
+		}
 		int[] pcopy = (int[]) pvalues.clone();
 		double[] scopy = (double[]) svalues.clone();
 		mergeSort(pcopy, pvalues, scopy, svalues, from, to, ascending);
@@ -581,7 +609,11 @@ public class SortUtils {
             }
         }
         
-        parallelQS(maxDepth, ascending, 0, numValues, arrays);
+        if (numValues >= CONCURRENT_THRESHOLD && useConcurrentSort()) {
+            invokeConcurrent(new QuickSortAction(maxDepth, ascending, 0, numValues, arrays));
+        } else {
+            parallelQS(maxDepth, ascending, 0, numValues, arrays);
+        }
         
     }
     
@@ -593,6 +625,24 @@ public class SortUtils {
             return;
         }
         
+        long split = partition(maxDepth, ascending, offset, len, arrays);
+        
+        int s = (int) (split >>> 32);
+        if (s > 1) {
+            parallelQS(maxDepth, ascending, offset, s, arrays);
+        }
+        
+        s = (int) split;
+        if (s > 1) {
+            parallelQS(maxDepth, ascending, offset + len - s, s, arrays);
+        }
+    }
+    
+    // Partitions the range around a pseudomedian, leaving the values less than it 
+    // at the start and those greater at the end.  Returns the length of
+    // the first part in the upper 32 bits and the length of the last in the lower.
+    private static long partition(int maxDepth, boolean ascending, int offset, int len, int[]... arrays) {
+        
         final int limit = offset + len;
         
         // Select a partition element index, m
@@ -685,16 +735,490 @@ public class SortUtils {
         s = Math.min(d-c, limit-d-1);
         vecSwap(b, limit-s, s, arrays);
         
-        s = b - a;
-        if (s > 1) {
-            parallelQS(maxDepth, ascending, offset, s, arrays);
+        return ((long) (b - a) << 32) | (d - c);
+    }
+    
+    /**
+     * Sorts an array of doubles and an array of ints, preserving the 1:1
+     * correspondence between the entries, using the threads of the shared compute
+     * pool (see <tt>TaskScheduler.getComputePool()</tt>).  The order is the same 
+     * as that of <tt>parallelSort()</tt>: primary on the double values, secondary
+     * on the int values.
+     * 
+     * @param dvalues the array of double values.
+     * @param ivalues the array of int values.
+     * @param from starting index.
+     * @param to index of first element not included in the sort.
+     * @param ascending specifies the sort order.
+     * 
+     * @exception IllegalArgumentException if the arrays are not the same length,
+     *   or if from > to.
+     * @exception ArrayIndexOutOfBoundsException if from or to is out of range.
+     */
+    public static void concurrentSort(double[] dvalues, int[] ivalues, int from, 
+            int to, boolean ascending) {
+        checkLengths(dvalues.length, ivalues.length);
+        rangeCheck(dvalues.length, from, to);
+        invokeConcurrent(new MergeSortAction(new DoubleIntPairs(dvalues, ivalues, 
+                (double[]) dvalues.clone(), (int[]) ivalues.clone(), ascending), true, from, to));
+    }
+    
+    public static void concurrentSort(double[] dvalues, int[] ivalues, boolean ascending) {
+        concurrentSort(dvalues, ivalues, 0, dvalues.length, ascending);
+    }
+    
+    public static void concurrentSort(double[] dvalues, int[] ivalues) {
+        concurrentSort(dvalues, ivalues, 0, dvalues.length, true);
+    }
+
+    /**
+     * Sorts an array of floats and an array of ints in the manner of 
+     * <tt>concurrentSort(double[], int[], int, int, boolean)</tt>.
+     */
+    public static void concurrentSort(float[] dvalues, int[] ivalues, int from, 
+            int to, boolean ascending) {
+        checkLengths(dvalues.length, ivalues.length);
+        rangeCheck(dvalues.length, from, to);
+        invokeConcurrent(new MergeSortAction(new FloatIntPairs(dvalues, ivalues, 
+                (float[]) dvalues.clone(), (int[]) ivalues.clone(), ascending), true, from, to));
+    }
+    
+    public static void concurrentSort(float[] dvalues, int[] ivalues, boolean ascending) {
+        concurrentSort(dvalues, ivalues, 0, dvalues.length, ascending);
+    }
+    
+    public static void concurrentSort(float[] dvalues, int[] ivalues) {
+        concurrentSort(dvalues, ivalues, 0, dvalues.length, true);
+    }
+
+    /**
+     * Sorts two arrays of ints, primary on the first and secondary on the second, 
+     * in the manner of <tt>concurrentSort(double[], int[], int, int, boolean)</tt>.
+     */
+    public static void concurrentSort(int[] pvalues, int[] svalues, int from, 
+            int to, boolean ascending) {
+        checkLengths(pvalues.length, svalues.length);
+        rangeCheck(pvalues.length, from, to);
+        invokeConcurrent(new MergeSortAction(new IntIntPairs(pvalues, svalues, 
+                (int[]) pvalues.clone(), (int[]) svalues.clone(), ascending), true, from, to));
+    }
+    
+    public static void concurrentSort(int[] pvalues, int[] svalues, boolean ascending) {
+        concurrentSort(pvalues, svalues, 0, pvalues.length, ascending);
+    }
+    
+    public static void concurrentSort(int[] pvalues, int[] svalues) {
+        concurrentSort(pvalues, svalues, 0, pvalues.length, true);
+    }
+
+    /**
+     * Sorts an array of ints and an array of doubles, primary on the ints and
+     * secondary on the doubles, in the manner of 
+     * <tt>concurrentSort(double[], int[], int, int, boolean)</tt>.
+     */
+    public static void concurrentSort(int[] pvalues, double[] svalues, int from, 
+            int to, boolean ascending) {
+        checkLengths(pvalues.length, svalues.length);
+        rangeCheck(pvalues.length, from, to);
+        invokeConcurrent(new MergeSortAction(new IntDoublePairs(pvalues, svalues, 
+                (int[]) pvalues.clone(), (double[]) svalues.clone(), ascending), true, from, to));
+    }
+    
+    public static void concurrentSort(int[] pvalues, double[] svalues, boolean ascending) {
+        concurrentSort(pvalues, svalues, 0, pvalues.length, ascending);
+    }
+    
+    public static void concurrentSort(int[] pvalues, double[] svalues) {
+        concurrentSort(pvalues, svalues, 0, pvalues.length, true);
+    }
+    
+    /**
+     * The same as <tt>parallelQuickSort()</tt>, but partitions are sorted 
+     * by the threads of the shared compute pool.
+     * 
+     * @param maxDepth the number of arrays, from the first, to compare on.
+     * @param ascending specifies the sort order.
+     * @param arrays arrays of the same length.
+     */
+    public static void concurrentQuickSort(int maxDepth, boolean ascending, int[]... arrays) {
+        if (maxDepth <= 0 || maxDepth > arrays.length) {
+            throw new IllegalArgumentException(String.format("maxDepth not in [1 - %d]: %d", arrays.length, maxDepth));
+        }
+        final int numValues = arrays[0].length;
+        for (int i=1; i<arrays.length; i++) {
+            if (arrays[i].length != numValues) {
+                throw new IllegalArgumentException("arrays of unequal length");
+            }
+        }
+        invokeConcurrent(new QuickSortAction(maxDepth, ascending, 0, numValues, arrays));
+    }
+
+    private static boolean useConcurrentSort() {
+        return TaskScheduler.getComputeParallelism() > 1;
+    }
+    
+    private static void checkLengths(int len1, int len2) {
+        if (len1 != len2) {
+            throw new IllegalArgumentException("arrays of unequal length");
+        }
+    }
+    
+    // Runs the action on the compute pool, or directly if already
+    // running in it.
+    private static void invokeConcurrent(ForkJoinTask<?> action) {
+        ForkJoinPool pool = TaskScheduler.getComputePool();
+        if (ForkJoinTask.getPool() == pool) {
+            action.invoke();
+        } else {
+            pool.invoke(action);
         }
+    }
+
+    // The two partitions left by a partition step are disjoint, so are sorted
+    // concurrently.
+    @SuppressWarnings("serial")
+    private static class QuickSortAction extends RecursiveAction {
         
-        s = d - c;
-        if (s > 1) {
-            parallelQS(maxDepth, ascending, limit - s, s, arrays);
+        private final int mMaxDepth;
+        private final boolean mAscending;
+        private final int mOffset, mLen;
+        private final int[][] mArrays;
+        
+        QuickSortAction(int maxDepth, boolean ascending, int offset, int len, int[][] arrays) {
+            mMaxDepth = maxDepth;
+            mAscending = ascending;
+            mOffset = offset;
+            mLen = len;
+            mArrays = arrays;
+        }
+        
+        protected void compute() {
+            if (mLen < FORK_THRESHOLD) {
+                parallelQS(mMaxDepth, mAscending, mOffset, mLen, mArrays);
+                return;
+            }
+            long split = partition(mMaxDepth, mAscending, mOffset, mLen, mArrays);
+            int s1 = (int) (split >>> 32);
+            int s2 = (int) split;
+            invokeAll(new QuickSortAction(mMaxDepth, mAscending, mOffset, s1, mArrays),
+                    new QuickSortAction(mMaxDepth, mAscending, mOffset + mLen - s2, s2, mArrays));
+        }
+    }
+    
+    // Type-specific operations for the concurrent merge sort on co-sorted
+    // arrays.  Buffer A holds the arrays being sorted, buffer B copies of them.  
+    // The flags select the buffer read from or sorted into.
+    private static abstract class Pairs {
+        
+        // Sorts the range into one buffer with the sequential merge sort, 
+        // using the other as scratch.  
+        abstract void sort(boolean intoA, int low, int high);
+        
+        // Compares entries i and j in a buffer.
+        abstract int compare(boolean inA, int i, int j);
+        
+        // Copies a range to the same indexes of the other buffer.
+        abstract void copy(boolean fromA, int low, int high);
+        
+        // Merges two sorted ranges of one buffer into the other, at out.
+        abstract void merge(boolean fromA, int p, int pEnd, int q, int qEnd, int out);
+    }
+
+    // Sorts a range of both buffers into one, by sorting the halves into the
+    // other buffer concurrently and then merging them back.  At each level, 
+    // both buffers hold the unsorted values of ranges not yet reached.
+    @SuppressWarnings("serial")
+    private static class MergeSortAction extends RecursiveAction {
+        
+        private final Pairs mPairs;
+        private final boolean mIntoA;
+        private final int mLow, mHigh;
+        
+        MergeSortAction(Pairs pairs, boolean intoA, int low, int high) {
+            mPairs = pairs;
+            mIntoA = intoA;
+            mLow = low;
+            mHigh = high;
+        }
+        
+        protected void compute() {
+            if (mHigh - mLow < FORK_THRESHOLD) {
+                mPairs.sort(mIntoA, mLow, mHigh);
+                return;
+            }
+            int mid = (mLow + mHigh) >>> 1;
+            invokeAll(new MergeSortAction(mPairs, !mIntoA, mLow, mid),
+                    new MergeSortAction(mPairs, !mIntoA, mid, mHigh));
+            // Halves now sorted in the other buffer.
+            boolean fromA = !mIntoA;
+            if (mPairs.compare(fromA, mid - 1, mid) <= 0) {
+                mPairs.copy(fromA, mLow, mHigh);
+            } else {
+                new MergeAction(mPairs, fromA, mLow, mid, mid, mHigh, mLow).compute();
+            }
         }
+    }
+    
+    // Merges two sorted ranges by splitting the longer at its middle, finding
+    // the corresponding split of the other with a binary search, and merging
+    // the two pairs of pieces concurrently.  Ties go to the first range, as in
+    // the sequential merge.
+    @SuppressWarnings("serial")
+    private static class MergeAction extends RecursiveAction {
+        
+        private final Pairs mPairs;
+        private final boolean mFromA;
+        private final int mP, mPEnd, mQ, mQEnd, mOut;
         
+        MergeAction(Pairs pairs, boolean fromA, int p, int pEnd, int q, int qEnd, int out) {
+            mPairs = pairs;
+            mFromA = fromA;
+            mP = p;
+            mPEnd = pEnd;
+            mQ = q;
+            mQEnd = qEnd;
+            mOut = out;
+        }
+        
+        protected void compute() {
+            int pLen = mPEnd - mP;
+            int qLen = mQEnd - mQ;
+            if (pLen + qLen < FORK_THRESHOLD) {
+                mPairs.merge(mFromA, mP, mPEnd, mQ, mQEnd, mOut);
+                return;
+            }
+            int pSplit, qSplit;
+            if (pLen >= qLen) {
+                pSplit = (mP + mPEnd) >>> 1;
+                // First of the second range not less than the pivot.
+                int lo = mQ, hi = mQEnd;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (mPairs.compare(mFromA, mid, pSplit) < 0) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                qSplit = lo;
+            } else {
+                qSplit = (mQ + mQEnd) >>> 1;
+                // First of the first range greater than the pivot.
+                int lo = mP, hi = mPEnd;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (mPairs.compare(mFromA, mid, qSplit) <= 0) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                pSplit = lo;
+            }
+            invokeAll(new MergeAction(mPairs, mFromA, mP, pSplit, mQ, qSplit, mOut),
+                    new MergeAction(mPairs, mFromA, pSplit, mPEnd, qSplit, mQEnd, 
+                            mOut + (pSplit - mP) + (qSplit - mQ)));
+        }
+    }
+    
+    private static class DoubleIntPairs extends Pairs {
+        
+        private final double[] mA1, mB1;
+        private final int[] mA2, mB2;
+        private final boolean mAscending;
+        
+        DoubleIntPairs(double[] a1, int[] a2, double[] b1, int[] b2, boolean ascending) {
+            mA1 = a1;
+            mA2 = a2;
+            mB1 = b1;
+            mB2 = b2;
+            mAscending = ascending;
+        }
+        
+        void sort(boolean intoA, int low, int high) {
+            if (intoA) {
+                mergeSort(mB1, mA1, mB2, mA2, low, high, mAscending);
+            } else {
+                mergeSort(mA1, mB1, mA2, mB2, low, high, mAscending);
+            }
+        }
+        
+        int compare(boolean inA, int i, int j) {
+            double[] v1 = inA ? mA1 : mB1;
+            int[] v2 = inA ? mA2 : mB2;
+            return SortUtils.compare(v1[i], v1[j], v2[i], v2[j], mAscending);
+        }
+        
+        void copy(boolean fromA, int low, int high) {
+            System.arraycopy(fromA ? mA1 : mB1, low, fromA ? mB1 : mA1, low, high - low);
+            System.arraycopy(fromA ? mA2 : mB2, low, fromA ? mB2 : mA2, low, high - low);
+        }
+        
+        void merge(boolean fromA, int p, int pEnd, int q, int qEnd, int out) {
+            final double[] src1 = fromA ? mA1 : mB1, dest1 = fromA ? mB1 : mA1;
+            final int[] src2 = fromA ? mA2 : mB2, dest2 = fromA ? mB2 : mA2;
+            final int end = out + (pEnd - p) + (qEnd - q);
+            for (int i = out; i < end; i++) {
+                if (q >= qEnd || p < pEnd
+                        && SortUtils.compare(src1[p], src1[q], src2[p], src2[q], mAscending) <= 0) {
+                    dest1[i] = src1[p];
+                    dest2[i] = src2[p++];
+                } else {
+                    dest1[i] = src1[q];
+                    dest2[i] = src2[q++];
+                }
+            }
+        }
+    }
+    
+    private static class FloatIntPairs extends Pairs {
+        
+        private final float[] mA1, mB1;
+        private final int[] mA2, mB2;
+        private final boolean mAscending;
+        
+        FloatIntPairs(float[] a1, int[] a2, float[] b1, int[] b2, boolean ascending) {
+            mA1 = a1;
+            mA2 = a2;
+            mB1 = b1;
+            mB2 = b2;
+            mAscending = ascending;
+        }
+        
+        void sort(boolean intoA, int low, int high) {
+            if (intoA) {
+                mergeSort(mB1, mA1, mB2, mA2, low, high, mAscending);
+            } else {
+                mergeSort(mA1, mB1, mA2, mB2, low, high, mAscending);
+            }
+        }
+        
+        int compare(boolean inA, int i, int j) {
+            float[] v1 = inA ? mA1 : mB1;
+            int[] v2 = inA ? mA2 : mB2;
+            return SortUtils.compare(v1[i], v1[j], v2[i], v2[j], mAscending);
+        }
+        
+        void copy(boolean fromA, int low, int high) {
+            System.arraycopy(fromA ? mA1 : mB1, low, fromA ? mB1 : mA1, low, high - low);
+            System.arraycopy(fromA ? mA2 : mB2, low, fromA ? mB2 : mA2, low, high - low);
+        }
+        
+        void merge(boolean fromA, int p, int pEnd, int q, int qEnd, int out) {
+            final float[] src1 = fromA ? mA1 : mB1, dest1 = fromA ? mB1 : mA1;
+            final int[] src2 = fromA ? mA2 : mB2, dest2 = fromA ? mB2 : mA2;
+            final int end = out + (pEnd - p) + (qEnd - q);
+            for (int i = out; i < end; i++) {
+                if (q >= qEnd || p < pEnd
+                        && SortUtils.compare(src1[p], src1[q], src2[p], src2[q], mAscending) <= 0) {
+                    dest1[i] = src1[p];
+                    dest2[i] = src2[p++];
+                } else {
+                    dest1[i] = src1[q];
+                    dest2[i] = src2[q++];
+                }
+            }
+        }
+    }
+    
+    private static class IntIntPairs extends Pairs {
+        
+        private final int[] mA1, mB1;
+        private final int[] mA2, mB2;
+        private final boolean mAscending;
+        
+        IntIntPairs(int[] a1, int[] a2, int[] b1, int[] b2, boolean ascending) {
+            mA1 = a1;
+            mA2 = a2;
+            mB1 = b1;
+            mB2 = b2;
+            mAscending = ascending;
+        }
+        
+        void sort(boolean intoA, int low, int high) {
+            if (intoA) {
+                mergeSort(mB1, mA1, mB2, mA2, low, high, mAscending);
+            } else {
+                mergeSort(mA1, mB1, mA2, mB2, low, high, mAscending);
+            }
+        }
+        
+        int compare(boolean inA, int i, int j) {
+            int[] v1 = inA ? mA1 : mB1;
+            int[] v2 = inA ? mA2 : mB2;
+            return SortUtils.compare(v1[i], v1[j], v2[i], v2[j], mAscending);
+        }
+        
+        void copy(boolean fromA, int low, int high) {
+            System.arraycopy(fromA ? mA1 : mB1, low, fromA ? mB1 : mA1, low, high - low);
+            System.arraycopy(fromA ? mA2 : mB2, low, fromA ? mB2 : mA2, low, high - low);
+        }
+        
+        void merge(boolean fromA, int p, int pEnd, int q, int qEnd, int out) {
+            final int[] src1 = fromA ? mA1 : mB1, dest1 = fromA ? mB1 : mA1;
+            final int[] src2 = fromA ? mA2 : mB2, dest2 = fromA ? mB2 : mA2;
+            final int end = out + (pEnd - p) + (qEnd - q);
+            for (int i = out; i < end; i++) {
+                if (q >= qEnd || p < pEnd
+                        && SortUtils.compare(src1[p], src1[q], src2[p], src2[q], mAscending) <= 0) {
+                    dest1[i] = src1[p];
+                    dest2[i] = src2[p++];
+                } else {
+                    dest1[i] = src1[q];
+                    dest2[i] = src2[q++];
+                }
+            }
+        }
+    }
+    
+    private static class IntDoublePairs extends Pairs {
+        
+        private final int[] mA1, mB1;
+        private final double[] mA2, mB2;
+        private final boolean mAscending;
+        
+        IntDoublePairs(int[] a1, double[] a2, int[] b1, double[] b2, boolean ascending) {
+            mA1 = a1;
+            mA2 = a2;
+            mB1 = b1;
+            mB2 = b2;
+            mAscending = ascending;
+        }
+        
+        void sort(boolean intoA, int low, int high) {
+            if (intoA) {
+                mergeSort(mB1, mA1, mB2, mA2, low, high, mAscending);
+            } else {
+                mergeSort(mA1, mB1, mA2, mB2, low, high, mAscending);
+            }
+        }
+        
+        int compare(boolean inA, int i, int j) {
+            int[] v1 = inA ? mA1 : mB1;
+            double[] v2 = inA ? mA2 : mB2;
+            return SortUtils.compare(v1[i], v1[j], v2[i], v2[j], mAscending);
+        }
+        
+        void copy(boolean fromA, int low, int high) {
+            System.arraycopy(fromA ? mA1 : mB1, low, fromA ? mB1 : mA1, low, high - low);
+            System.arraycopy(fromA ? mA2 : mB2, low, fromA ? mB2 : mA2, low, high - low);
+        }
+        
+        void merge(boolean fromA, int p, int pEnd, int q, int qEnd, int out) {
+            final int[] src1 = fromA ? mA1 : mB1, dest1 = fromA ? mB1 : mA1;
+            final double[] src2 = fromA ? mA2 : mB2, dest2 = fromA ? mB2 : mA2;
+            final int end = out + (pEnd - p) + (qEnd - q);
+            for (int i = out; i < end; i++) {
+                if (q >= qEnd || p < pEnd
+                        && SortUtils.compare(src1[p], src1[q], src2[p], src2[q], mAscending) <= 0) {
+                    dest1[i] = src1[p];
+                    dest2[i] = src2[p++];
+                } else {
+                    dest1[i] = src1[q];
+                    dest2[i] = src2[q++];
+                }
+            }
+        }
     }
     
     public static int medianOf3(int[] values, int a, int b, int c) {
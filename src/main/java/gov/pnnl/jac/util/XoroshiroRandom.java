@@ -0,0 +1,201 @@
+package gov.pnnl.jac.util;
+
+import java.util.Random;
+
+/**
+ * <p>A fast, high quality random number generator using the xoroshiro128++
+ * algorithm of Blackman and Vigna, which can be split into independent
+ * streams.  Unlike the other generators in this package, it takes no locks,
+ * so it is not thread-safe: it is meant to be confined to one thread, with
+ * other threads given streams of their own.</p>
+ *
+ * <p>Streams are obtained in two ways.  <tt>jump()</tt> advances a generator
+ * by 2<sup>64</sup> values, so the generators returned by
+ * <tt>streams(seed, n)</tt>, each jumped once more than the last, never
+ * overlap in practice.  Since the streams depend only on the seed and their
+ * index, work partitioned into a fixed number of blocks, each drawing from
+ * the stream for its index, gives the same results whatever the number of
+ * threads processing the blocks.  <tt>split()</tt> returns a generator
+ * seeded from this one's output, in the manner of
+ * <tt>java.util.SplittableRandom</tt>, for when streams are needed
+ * recursively.</p>
+ *
+ * <p>Seeds are expanded into the 128 bits of state with the SplitMix64
+ * generator, so similar seeds give unrelated sequences.</p>
+ */
+public class XoroshiroRandom extends Random {
+
+    private static final long serialVersionUID = -2381069418634209613L;
+
+    // Odd increment of the SplitMix64 generator, the golden ratio times 2^64.
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // Polynomial for advancing the state by 2^64 values.
+    private static final long[] JUMP = { 0x2bd7a6a6e99c2ddcL, 0x0992ccaf6a6fca05L };
+
+    private long mS0, mS1;
+
+    private double mNextNextGaussian;
+    private boolean mHaveNextNextGaussian;
+
+    public XoroshiroRandom() {
+        this(System.nanoTime());
+    }
+
+    public XoroshiroRandom(long seed) {
+        // The superclass constructor calls setSeed().
+        super(seed);
+    }
+
+    private XoroshiroRandom(long s0, long s1) {
+        super(0L);
+        mS0 = s0;
+        mS1 = s1;
+    }
+
+    /**
+     * Returns <tt>count</tt> generators for independent streams derived from
+     * the seed.  The first is the generator constructed with the seed, and each
+     * of the others is the one before it advanced by <tt>jump()</tt>.
+     *
+     * @param seed
+     * @param count
+     * @return
+     */
+    public static XoroshiroRandom[] streams(long seed, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count < 0: " + count);
+        }
+        XoroshiroRandom[] streams = new XoroshiroRandom[count];
+        if (count > 0) {
+            streams[0] = new XoroshiroRandom(seed);
+            for (int i=1; i<count; i++) {
+                streams[i] = streams[i-1].copy();
+                streams[i].jump();
+            }
+        }
+        return streams;
+    }
+
+    /**
+     * Returns the next value of the SplitMix64 sequence seeded with <tt>x</tt>,
+     * which is a good 64-bit mixing function.
+     *
+     * @param x
+     * @return
+     */
+    public static long splitMix64(long x) {
+        long z = x + GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        long s0 = splitMix64(seed);
+        long s1 = splitMix64(seed + GOLDEN_GAMMA);
+        if ((s0 | s1) == 0L) {
+            // The all-zero state is a fixed point.
+            s0 = GOLDEN_GAMMA;
+        }
+        mS0 = s0;
+        mS1 = s1;
+        mHaveNextNextGaussian = false;
+    }
+
+    /**
+     * Returns a generator in the same state as this one.
+     * @return
+     */
+    public XoroshiroRandom copy() {
+        return new XoroshiroRandom(mS0, mS1);
+    }
+
+    /**
+     * Returns a new generator seeded from the next values of this one.
+     * @return
+     */
+    public XoroshiroRandom split() {
+        long s0 = splitMix64(nextLong());
+        long s1 = splitMix64(nextLong());
+        if ((s0 | s1) == 0L) {
+            s0 = GOLDEN_GAMMA;
+        }
+        return new XoroshiroRandom(s0, s1);
+    }
+
+    /**
+     * Advances the state as if 2<sup>64</sup> values had been generated.
+     */
+    public void jump() {
+        long s0 = 0L, s1 = 0L;
+        for (int i=0; i<JUMP.length; i++) {
+            for (int b=0; b<64; b++) {
+                if ((JUMP[i] & (1L << b)) != 0L) {
+                    s0 ^= mS0;
+                    s1 ^= mS1;
+                }
+                nextLong();
+            }
+        }
+        mS0 = s0;
+        mS1 = s1;
+        mHaveNextNextGaussian = false;
+    }
+
+    @Override
+    public long nextLong() {
+        final long s0 = mS0;
+        long s1 = mS1;
+        final long result = Long.rotateLeft(s0 + s1, 17) + s0;
+        s1 ^= s0;
+        mS0 = Long.rotateLeft(s0, 49) ^ s1 ^ (s1 << 21);
+        mS1 = Long.rotateLeft(s1, 28);
+        return result;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return nextLong() < 0L;
+    }
+
+    @Override
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public double nextGaussian() {
+        // The polar method, as in the superclass, but without its lock.
+        if (mHaveNextNextGaussian) {
+            mHaveNextNextGaussian = false;
+            return mNextNextGaussian;
+        }
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s)/s);
+        mNextNextGaussian = v2 * multiplier;
+        mHaveNextNextGaussian = true;
+        return v1 * multiplier;
+    }
+}